@@ -1,5 +1,6 @@
 package it.unisa.diem;
 
+import it.unisa.diem.Utility.PictureStore;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -24,6 +25,8 @@ public class AddressBookApplication extends Application {
        stage.initStyle(StageStyle.UNDECORATED);
        stage.setFullScreen(true);
        stage.show();
+       // Deletes the pictures left unreferenced by previous runs, in the background
+       PictureStore.start();
    }
 
    public static void setRoot(String fxml) throws IOException {
@@ -2,21 +2,24 @@ package it.unisa.diem.Controller;
 
 import it.unisa.diem.AddressBookApplication;
 import it.unisa.diem.Model.AddressBook;
+import it.unisa.diem.Model.CompressedBitmap;
 import it.unisa.diem.Model.Contact;
 import it.unisa.diem.Model.Interfaces.Checker.ImagePathChecker;
 import it.unisa.diem.Model.Interfaces.ContactList;
-import it.unisa.diem.Model.Interfaces.Filter.BaseFilter;
-import it.unisa.diem.Model.Interfaces.Filter.EmailFilter;
-import it.unisa.diem.Model.Interfaces.Filter.NameFilter;
-import it.unisa.diem.Model.Interfaces.Filter.TagFilter;
 import it.unisa.diem.Model.Interfaces.TaggableList;
 import it.unisa.diem.Model.Interfaces.TrashCan;
 import it.unisa.diem.Model.LocalDateProperty;
-import it.unisa.diem.Model.RecentlyDeleted;
+import it.unisa.diem.Model.PagedContactList;
+import it.unisa.diem.Model.QueryPlan;
+import it.unisa.diem.Model.SearchSession;
 import it.unisa.diem.Model.SafeContact;
+import it.unisa.diem.Model.SearchQuery;
 import it.unisa.diem.Model.Tag;
+import it.unisa.diem.Model.TagQuery;
+import it.unisa.diem.Model.TagStatistics;
 import it.unisa.diem.Utility.FileManager;
 import it.unisa.diem.Utility.SceneManager;
+import it.unisa.diem.Utility.SearchExecutor;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -34,16 +37,16 @@ import java.util.Map;
 import javafx.beans.Observable;
 import java.util.ResourceBundle;
 import java.util.Set;
-import java.util.function.Predicate;
+import java.util.TreeSet;
 import javafx.application.Platform;
 import javafx.beans.property.SetProperty;
+import javafx.beans.value.ChangeListener;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.MapChangeListener;
 import javafx.collections.ObservableList;
-import javafx.collections.ObservableSet;
 import javafx.collections.SetChangeListener;
 import javafx.collections.transformation.FilteredList;
 import javafx.event.ActionEvent;
@@ -58,17 +61,22 @@ import javafx.scene.control.Button;
 import javafx.scene.control.ButtonBar;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceDialog;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.ContentDisplay;
+import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
 import javafx.scene.control.MenuBar;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.SelectionMode;
 import javafx.scene.control.SplitPane;
-import it.unisa.diem.Model.Interfaces.Filter.PhoneFilter;
 import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
+import javafx.scene.control.TextInputDialog;
+import javafx.scene.control.Tooltip;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.MouseEvent;
@@ -94,8 +102,12 @@ public class AddressBookController implements Initializable {
     private TaggableList<Contact> taggableList; //< Reference to access the tag-related methods of the address book.
     private TrashCan trashCan; //< Reference to access the recently-deleted-related methods of the address book.
     private ContactList contactList; //< Reference to access the contact-list-related methods of the address book.
-    private FilteredList<Contact> filteredList; //< Data structure to store the list of contacts of the main view.
-    private Tag currentTag = null; //< Tracks the currently selectedContact tag
+    private ObservableList<Contact> shownContacts; //< Data structure to store the list of contacts of the main view: the paged view of all the contacts, or the contacts selected by the current tags.
+    private ObservableList<Contact> searchResults; //< The contacts of the main view matching the current search, the most relevant first, null if no search is shown.
+    private SearchExecutor searchExecutor; //< Searches the address book in the background as the search bar changes, showing the results of the last query only.
+    private ChangeListener<String> searchListener; //< Filters the visualized list as the search bar changes.
+    private TagQuery currentTags = TagQuery.ALL; //< The combination of tags selecting the contacts of the main view, ALL if no tag is selected
+    private MapChangeListener<Tag, SetProperty<Contact>> tagMapListener; //< Follows the tags of the address book in the tag list, moved to the new address book when it is replaced
     private boolean isNew = false; 
     private Contact selectedContact = null;
     private boolean showingDeletedContacts = false; // Flag to toggle views
@@ -185,7 +197,9 @@ public class AddressBookController implements Initializable {
     private ImageView exitButton;
 
     private ObservableList<Contact> contacts;
+    private PagedContactList pagedContacts; //< Paged view of the address book backing the list of contacts of the main view.
     private ObservableList<Contact> deletedContacts;
+    private boolean deletedContactsLoaded = false; //< True once the trash can has been read to fill deletedContacts.
     
         public boolean hasImageChanged;
         
@@ -209,7 +223,9 @@ public class AddressBookController implements Initializable {
                         //else
                         try{imported = AddressBook.readFromFile(pathToAddressBook);}
                         catch (IOException e) {
-                            imported = new AddressBook();
+                            // The file is kept as it is: the empty address book is saved beside it
+                            System.err.println("Error reading AddressBook from file. Error details: " + e.getMessage());
+                            imported = AddressBook.unreadable(pathToAddressBook);
                         }
             
                         this.taggableList = imported;
@@ -241,7 +257,7 @@ public class AddressBookController implements Initializable {
                     contactTableView.setPlaceholder(new Label("There are still no contacts"));
                     
                     Platform.runLater(() -> {
-                        if (!filteredList.isEmpty()) {
+                        if (!shownContacts.isEmpty()) {
                             contactTableView.getSelectionModel().selectFirst();
                         }
                         Contact selectedContact = (Contact)contactTableView.getSelectionModel().getSelectedItem();
@@ -267,18 +283,7 @@ public class AddressBookController implements Initializable {
                 }
             
                 private void export(){
-                    try {
-                        ObservableSet<Contact> set = FXCollections.observableSet();
-                        for(Contact c : contacts){
-                            set.add(c);
-                        }
-                        contactList.contacts().set(set);
-                        FileManager.exportToFile(pathToAddressBook, (AddressBook)contactList);
-                    } catch (StreamCorruptedException e) {
-                        e.printStackTrace();
-                    } catch (ClassCastException e) {
-                        e.printStackTrace();
-                    }  
+                    pagedContacts.getAddressBook().writeToFile(pathToAddressBook);
                 }
                 
                 private void onDeleteContact(Contact c) {
@@ -286,32 +291,49 @@ public class AddressBookController implements Initializable {
                         taggableList.removeTagFromContact(t, c);
                     
                     contactList.delete(c);
-                    contacts.remove(c);
                     clearTextFields();
-                    deletedContacts.add(c);
+                    // Otherwise the contact is listed with the others when the trash can is first shown
+                    if (deletedContactsLoaded)
+                        deletedContacts.add(c);
                 }
                 
                 private void onAddContact(Contact c){
-                    contacts.add(c);
                     contactList.add(c);
                 }
+
+                /**
+                 * Replaces the address book shown by the view, as when contacts are imported from a VCard file.
+                 * The contact list follows the paged list, which is moved to the new address book; the tags, the trash can and the searches
+                 * are moved to it as well, and the view goes back to every contact.
+                 */
+                private void useAddressBook(AddressBook book) {
+                    if (showingDeletedContacts)
+                        backToContacts();
+                    searchExecutor.cancel();
+                    currentTags = TagQuery.ALL;
+                    taggableList.getTagMap().removeListener(tagMapListener);
+                    taggableList = book;
+                    trashCan = book;
+                    pagedContacts.setAddressBook(book);
+                    searchExecutor = new SearchExecutor(new SearchSession(book));
+                    deletedContacts.clear();
+                    deletedContactsLoaded = false;
+                    searchResults = null;
+                    shownContacts = contacts;
+                    searchBar.clear();
+                    contactTableView.setItems(shownContacts);
+                    initializeTagListView();
+                }
                 
                 private void initializeRecentlyDeleted() {
-                    RecentlyDeleted rd = trashCan.trashCan();
-                    rd.removeExpired();
-                    // Initialize the FilteredList for deleted contacts
-            
-                    // Create the FilteredList for deleted contacts
+                    // Create the FilteredList for deleted contacts, filled when the trash can is first shown
                     deletedContacts = FXCollections.observableArrayList();
-                    for(Contact c : rd.contacts()){
-                        deletedContacts.add(c);
-                    }
                     deletedFilteredList = new FilteredList<Contact>(deletedContacts);
                     // Add a new column for deletion date
                     deletionDateColumn = new TableColumn<>("Deletion Date");
                     deletionDateColumn.setCellValueFactory(cellData -> {
                         // Find the deletion date for the contact
-                        for (Map.Entry<LocalDateProperty, SetProperty<Contact>> entry : rd.get().entrySet()) {
+                        for (Map.Entry<LocalDateProperty, SetProperty<Contact>> entry : trashCan.trashCan().get().entrySet()) {
                             if (entry.getValue().contains(cellData.getValue())) {
                                 LocalDate deletionDate = entry.getKey().get();
                                 // Format the date for display
@@ -328,70 +350,160 @@ public class AddressBookController implements Initializable {
                     deletionDateColumn.setPrefWidth(75);
                     contactTableView.getColumns().add(deletionDateColumn); 
                 }
+
+                /**
+                 * Reads the trash can the first time it is shown, so that opening the address book does not decode the deleted contacts.
+                 */
+                private void loadDeletedContacts() {
+                    if (deletedContactsLoaded)
+                        return;
+                    trashCan.removeExpired();
+                    deletedContacts.setAll(trashCan.trashCan().contacts());
+                    deletedContactsLoaded = true;
+                }
                 
                 private void initializeContactTableView() {
                     nameColumn.setCellValueFactory(cellData -> cellData.getValue().getName());
                     surnameColumn.setCellValueFactory(cellData -> cellData.getValue().getSurname());
             
-                    contacts = FXCollections.observableArrayList();
-                    List<Contact> temp= new ArrayList<>();
-                    for (Contact contact : contactList.contacts()) {
-                        temp.add(contact);
-                    }
-            
-                    for (Contact contact : temp) {
-                        contacts.add(contact);
-                    }
+                    // The table requests its visible rows only: the contacts are not copied
+                    pagedContacts = new PagedContactList((AddressBook)contactList);
+                    contactList = pagedContacts;
+                    contacts = pagedContacts.asObservableList();
                     
-                    filteredList = new FilteredList<Contact>(contacts);
-                    contactTableView.setItems(filteredList);
-            
+                    shownContacts = contacts;
+                    searchExecutor = new SearchExecutor(new SearchSession(pagedContacts.getAddressBook()));
+                    Tooltip searchTooltip = new Tooltip();
+                    searchTooltip.setOnShowing(event -> searchTooltip.setText(describeSearch()));
+                    searchBar.setTooltip(searchTooltip);
+                    contactTableView.setItems(shownContacts);
+                    initializeBatchTagMenu();
+                    // The results of a search do not follow the changes of the address book: they are searched again
+                    contacts.addListener((ListChangeListener<Contact>) change -> {
+                        searchExecutor.invalidate();
+                        if (searchResults != null && contactTableView.getItems() == searchResults)
+                            searchContacts(searchBar.getText());
+                        // The selected contacts do not follow the changes either: they are selected again at once, without the removed contacts,
+                        // and once the change is over, when the added contacts have their identifiers
+                        if (!currentTags.isEmpty()) {
+                            applyTagSelection();
+                            Platform.runLater(this::applyTagSelection);
+                        }
+                    });
                 }
                 
-                private <T> void initializeFilteredList(FilteredList<T> listToFilter, TextField searchBar, Predicate<T> filterPredicate) {
-                    searchBar.textProperty().addListener((observable, oldValue, newValue) -> {
-                        listToFilter.setPredicate(item -> {
-                            // If the search bar is empty, show all items
-                            if (newValue == null || newValue.trim().isEmpty()) {
-                                return true;
-                            }
-                            // Apply the custom filter predicate
-                            return filterPredicate.test(item);
+                /**
+                 * Lets several contacts be selected in the table, and tagged or untagged together from its context menu.
+                 * The tag is applied to all of them in a single operation of the address book.
+                 */
+                private void initializeBatchTagMenu() {
+                    contactTableView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+                    MenuItem tagSelected = new MenuItem("Tag selected contacts...");
+                    tagSelected.setOnAction(e -> {
+                        TextInputDialog dialog = new TextInputDialog();
+                        dialog.setTitle("Tag selected contacts");
+                        dialog.setHeaderText(null);
+                        dialog.setContentText("Tag:");
+                        dialog.showAndWait().ifPresent(name -> {
+                            Tag tag = new Tag();
+                            if (!tag.setName(name.trim()))
+                                showError("Write a valid tag.");
+                            else
+                                afterBatchTag(taggableList.addTagToContacts(tag, new ArrayList<>(contactTableView.getSelectionModel().getSelectedItems())));
                         });
                     });
+                    MenuItem untagSelected = new MenuItem("Untag selected contacts...");
+                    untagSelected.setOnAction(e -> {
+                        List<String> names = new ArrayList<>();
+                        for (Tag tag : taggableList.getTagMap().keySet())
+                            names.add(tag.getNameValue());
+                        if (names.isEmpty())
+                            return;
+                        ChoiceDialog<String> dialog = new ChoiceDialog<>(names.get(0), names);
+                        dialog.setTitle("Untag selected contacts");
+                        dialog.setHeaderText(null);
+                        dialog.setContentText("Tag:");
+                        dialog.showAndWait().ifPresent(name ->
+                            afterBatchTag(taggableList.removeTagFromContacts(taggableList.getTagRegistry().find(name), new ArrayList<>(contactTableView.getSelectionModel().getSelectedItems()))));
+                    });
+                    ContextMenu menu = new ContextMenu(tagSelected, untagSelected);
+                    // The contacts in the trash can are not tagged
+                    menu.setOnShowing(e -> {
+                        boolean disabled = showingDeletedContacts || contactTableView.getSelectionModel().getSelectedItems().isEmpty();
+                        tagSelected.setDisable(disabled);
+                        untagSelected.setDisable(disabled);
+                    });
+                    contactTableView.setContextMenu(menu);
+                }
+
+                private void afterBatchTag(int changed) {
+                    if (changed == 0)
+                        return;
+                    Contact shown = contactTableView.getSelectionModel().getSelectedItem();
+                    if (shown != null && !editing) {
+                        clearTextFields();
+                        displayContact(shown);
+                    }
+                    if (!currentTags.isEmpty())
+                        applyTagSelection();
+                }
+
+                private void initializeFilteredList(TextField searchBar, ChangeListener<String> listener) {
+                    // Only one list at a time follows the search bar
+                    if (searchListener != null)
+                        searchBar.textProperty().removeListener(searchListener);
+                    searchListener = listener;
+                    searchBar.textProperty().addListener(listener);
                 }
             
                 private void initializeContactsFilteredList(){
-                    initializeFilteredList(filteredList, searchBar, contact -> {
-                        String searchString = searchBar.getText().trim().toLowerCase();
-                        TagFilter tagFilterBase = null;
-                        if (currentTag != null) {
-                            tagFilterBase = new TagFilter(new BaseFilter(new SimpleStringProperty(currentTag.getNameValue())));
-                        }
-                        BaseFilter baseFilter = new BaseFilter(new SimpleStringProperty(searchString));
-                        TagFilter tagFilter = new TagFilter(baseFilter);
-                        NameFilter nameFilter = new NameFilter(baseFilter);
-                        PhoneFilter phoneFilter = new PhoneFilter(baseFilter);
-                        EmailFilter emailFilter = new EmailFilter(baseFilter);
+                    initializeFilteredList(searchBar, (observable, oldValue, newValue) -> searchContacts(newValue));
+                }
             
-                        boolean matchSearch = tagFilter.test(contact) || nameFilter.test(contact) || emailFilter.test(contact) || phoneFilter.test(contact);
-                        if (currentTag != null) {
-                            return tagFilterBase.test(contact) && matchSearch;
-                        } else {
-                            return matchSearch;
-                        }
-                    });
+                /**
+                 * Shows the contacts matching a search. The search runs in the background, once the user stops typing;
+                 * the session refines the results of the previous search when the query is extended.
+                 */
+                private void searchContacts(String text) {
+                    // If the search bar is empty, show all items without testing them
+                    if (text == null || text.trim().isEmpty()) {
+                        searchExecutor.cancel();
+                        showSearchResults(null);
+                        return;
+                    }
+                    searchExecutor.submit(text, currentTags, this::showSearchResults);
                 }
                 
+                private void showSearchResults(List<Contact> matches) {
+                    if (matches == null) {
+                        searchResults = null;
+                        contactTableView.setItems(shownContacts);
+                        return;
+                    }
+                    // The results are wrapped, not copied: the table only orders the rows it shows
+                    searchResults = FXCollections.observableList(matches);
+                    contactTableView.setItems(searchResults);
+                }
+                
+                /**
+                 * Returns how the query in the search bar has been run, when the tooltip of the search bar is shown:
+                 * the plan of a query restricted to fields or with negations, or how to write one.
+                 */
+                private String describeSearch() {
+                    QueryPlan plan = searchExecutor.getLastPlan();
+                    if (showingDeletedContacts || plan == null || !SearchQuery.parse(searchBar.getText()).isStructured())
+                        return "Search names, emails, phone numbers and tags.\nRestrict or exclude: tag:work name:ross phone:333 -tag:old sounds:esposito";
+                    return plan.explain();
+                }
+
                 private void initializeDeletedFilteredList(){
-                    initializeFilteredList(deletedFilteredList, searchBar, contact -> {
-                        String lowerCaseFilter = searchBar.getText().trim().toLowerCase();
-                        BaseFilter baseFilter = new BaseFilter(new SimpleStringProperty(lowerCaseFilter));
-                        TagFilter tagFilter = new TagFilter(baseFilter);
-                        NameFilter nameFilter = new NameFilter(baseFilter);
-                        PhoneFilter phoneFilter = new PhoneFilter(baseFilter);
-                        EmailFilter emailFilter = new EmailFilter(baseFilter);
-                        return tagFilter.test(contact) || nameFilter.test(contact) || emailFilter.test(contact) || phoneFilter.test(contact);
+                    initializeFilteredList(searchBar, (observable, oldValue, newValue) -> {
+                        // If the search bar is empty, show all items without testing them
+                        if (newValue == null || newValue.trim().isEmpty()) {
+                            deletedFilteredList.setPredicate(null);
+                            return;
+                        }
+                        deletedFilteredList.setPredicate(SearchSession.predicate(newValue, null));
                     });
             
                 }
@@ -407,7 +519,7 @@ public class AddressBookController implements Initializable {
             
                     tagList.setItems(tagButtons);
             
-                    taggableList.getTagMap().addListener((MapChangeListener<Tag, SetProperty<Contact>>) change -> {
+                    tagMapListener = change -> {
                         if (change.wasAdded()) {
                             Button newButton = createTagButton(change.getKey());
                             tagButtons.add(newButton);
@@ -415,26 +527,92 @@ public class AddressBookController implements Initializable {
                         if (change.wasRemoved()) {
                             tagButtons.removeIf(button -> button.getText().equals(change.getKey().toString()));
                         }
-                    });
+                    };
+                    taggableList.getTagMap().addListener(tagMapListener);
                 }
             
                 private Button createTagButton(Tag tag) {
                     Button tagButton = new Button(tag.getNameValue());
                     tagButton.setPrefWidth(80);
                     tagButton.setContentDisplay(ContentDisplay.LEFT);
-                    tagButton.setOnAction(event -> {
+                    Tooltip tooltip = new Tooltip();
+                    tooltip.setOnShowing(event -> tooltip.setText(describeTag(tag)
+                            + "\n\nClick: only this tag\nCtrl+click: also this tag\nShift+click: any of these tags\nAlt+click: not this tag"));
+                    tagButton.setTooltip(tooltip);
+                    tagButton.setOnMouseClicked(event -> {
                         if(showingDeletedContacts){
                             backToContacts();
                         }
-                        displayContactsForTag(tag);
+                        displayContactsForTags(combineTag(tag, event));
                     });
+                    styleTagButton(tagButton, tag);
                     return tagButton;
                 }
-            
-                private void displayContactsForTag(Tag tag) {
-                    currentTag = tag; // Store the currently selectedContact tag
+
+                /**
+                 * Returns the number of contacts marked with a tag and the tags most often found with it, read from the statistics of the tags
+                 * when the tooltip of its button is shown.
+                 */
+                private String describeTag(Tag tag) {
+                    TagStatistics.Snapshot statistics = taggableList.tagStatistics();
+                    StringBuilder text = new StringBuilder(statistics.count(tag) + " contacts");
+                    int shown = 0;
+                    for (Map.Entry<Tag, Integer> entry : statistics.cooccurring(tag).entrySet()) {
+                        if (shown++ == 3)
+                            break;
+                        text.append(shown == 1 ? "\nOften with: " : ", ").append(entry.getKey().getNameValue()).append(" (").append(entry.getValue()).append(")");
+                    }
+                    return text.toString();
+                }
+
+                /**
+                 * Returns the combination of tags chosen by a click on a tag button: the tag alone, or the current tags with the tag
+                 * added as required (Ctrl), as an alternative (Shift) or as excluded (Alt). Clicking again with the same key removes the tag from the combination.
+                 */
+                private TagQuery combineTag(Tag tag, MouseEvent event) {
+                    if (event.isShortcutDown())
+                        return currentTags.getAllOf().contains(tag) ? currentTags.without(tag) : currentTags.withAllOf(tag);
+                    if (event.isShiftDown())
+                        return currentTags.getAnyOf().contains(tag) ? currentTags.without(tag) : currentTags.withAnyOf(tag);
+                    if (event.isAltDown())
+                        return currentTags.getNoneOf().contains(tag) ? currentTags.without(tag) : currentTags.withNoneOf(tag);
+                    return TagQuery.of(tag);
+                }
+
+                private void displayContactsForTags(TagQuery tags) {
+                    currentTags = tags; // Store the currently selected tags
                     searchBar.clear();
-                    filteredList.setPredicate(contact -> contact.getTags().contains(tag));
+                    applyTagSelection();
+                    for (Button button : tagList.getItems())
+                        styleTagButton(button, taggableList.getTagRegistry().find(button.getText()));
+                }
+
+                /**
+                 * Shows the contacts selected by the current tags. The selection is computed once on the bitmaps of the tags,
+                 * and only the selected contacts are fetched and sorted: the other contacts of the paged list are never read.
+                 * Without tags, the table shows the paged list itself.
+                 */
+                private void applyTagSelection() {
+                    boolean shown = contactTableView.getItems() == shownContacts;
+                    if (currentTags.isEmpty())
+                        shownContacts = contacts;
+                    else
+                        shownContacts = FXCollections.observableList(pagedContacts.getAddressBook().sortedContactsOf(taggableList.select(currentTags)));
+                    if (shown)
+                        contactTableView.setItems(shownContacts);
+                }
+
+                private void styleTagButton(Button button, Tag tag) {
+                    if (tag == null)
+                        button.setStyle("");
+                    else if (currentTags.getAllOf().contains(tag))
+                        button.setStyle("-fx-font-weight: bold;");
+                    else if (currentTags.getAnyOf().contains(tag))
+                        button.setStyle("-fx-font-style: italic;");
+                    else if (currentTags.getNoneOf().contains(tag))
+                        button.setStyle("-fx-opacity: 0.5;");
+                    else
+                        button.setStyle("");
                 }
             
                 /**
@@ -631,7 +809,7 @@ public class AddressBookController implements Initializable {
                             Contact selectedContact = (Contact)contactTableView.getSelectionModel().getSelectedItem();
                             if(selectedContact != null) 
                                 onDeleteContact(selectedContact);
-                            if (!filteredList.isEmpty()) {
+                            if (!shownContacts.isEmpty()) {
                                 contactTableView.getSelectionModel().selectFirst();
                             }
                             Contact firstContact = (Contact)contactTableView.getItems().get(0);
@@ -742,6 +920,7 @@ public class AddressBookController implements Initializable {
                             }
                             removeTag();
                         }
+                        contactList.update(selectedContact);
             
                         if (!error) {
                             notEditable();
@@ -767,17 +946,15 @@ public class AddressBookController implements Initializable {
                             if (email3 != null && !email3.isEmpty()) if(!newContact.addEmail(email3)) 
                                 showError("Write a valid email");
             
-                            if(selectedTags != null)
-                                for(Tag t : selectedTags){
-                                    newContact.addTag(t.getNameValue());
-                                    taggableList.addTagToContact(t, newContact);
-                                } 
-            
-            
-                            
                             if (!error) {
                                 if (newContact != null)
                                     onAddContact((Contact)newContact);
+                                // The contact is tagged once it is in the book, so that its tags use the registry of the book
+                                if(selectedTags != null)
+                                    for(Tag t : selectedTags){
+                                        newContact.addTag(t.getNameValue());
+                                        taggableList.addTagToContact(t, newContact);
+                                    }
                                 notEditable();
                                 searchBar.clear();
                                 error = false;
@@ -796,12 +973,13 @@ public class AddressBookController implements Initializable {
     }
 
     private void removeTag() {
-        Set<Tag> tagSet = taggableList.getTagMap().keySet(); 
-        for(Tag t : tagSet) 
-            if(!selectedTags.contains(t)) {
+        // Only the tags of the contact can be unchecked: the other tags of the address book are not looked at
+        Set<Tag> kept = new TreeSet<>(selectedTags);
+        for (Tag t : selectedContact.getTags())
+            if (!kept.contains(t)) {
                 taggableList.removeTagFromContact(t, selectedContact);
+                selectedContact.removeTag(t.getNameValue());
             }
-                
     }
 
     private void showError(String message) {
@@ -885,6 +1063,7 @@ public class AddressBookController implements Initializable {
     @FXML
     public void onTrashCanSelected(ActionEvent event) {
         showingDeletedContacts = true;
+        loadDeletedContacts();
         clearTextFields();
         changeButtons();
         // Bind the FilteredList to the TableView and show the deletion date column
@@ -946,7 +1125,7 @@ public class AddressBookController implements Initializable {
      * Called when the user selects a tag from the tag list in the main view.
      * 
      * @pre There must be at least one tag in the list to select.
-     * @post {@link #filteredList} is linked to the addressbook's tag map; the list of contacts is filtered to show only those marked with the selectedContact tag.
+     * @post {@link #shownContacts} is linked to the addressbook's tag map; the list of contacts is filtered to show only those marked with the selectedContact tag.
      * @see TaggableList#getTagMap()
      */
     @FXML
@@ -959,15 +1138,14 @@ public class AddressBookController implements Initializable {
      * Called when the user clicks on the addresbook home button or types a substring in the search bar.
      *
      * @pre {@link #onSetTagFilter(ActionEvent)} must have been called after the last time this method was called.
-     * @post {@link #filteredList} is linked back to the addressbook's list of contacts; the list of contacts shows the complete list of the addressbook, or a filtered list based on the content of the search bar, if it is not empty.
+     * @post {@link #shownContacts} is linked back to the addressbook's list of contacts; the list of contacts shows the complete list of the addressbook, or a filtered list based on the content of the search bar, if it is not empty.
      * @see ContactList#contacts()
      */
     public void onResetTagFilter(ActionEvent event) {
         searchBar.clear();
         clearTextFields();
         if (!showingDeletedContacts){
-            currentTag = null; // Clear the selectedContact tag
-            filteredList.setPredicate(contact -> true); // Show all contacts
+            displayContactsForTags(TagQuery.ALL); // Clear the selected tags and show all contacts
         } else {
             backToContacts();
         }
@@ -977,7 +1155,7 @@ public class AddressBookController implements Initializable {
         // Restore the original contact list and hide the deletion date column
         showingDeletedContacts = false;
         changeButtons();
-        contactTableView.setItems(filteredList);
+        contactTableView.setItems(shownContacts);
         deletionDateColumn.setVisible(false);
         clearTextFields();
         // Remove the listener from the search bar
@@ -1025,12 +1203,7 @@ public class AddressBookController implements Initializable {
                 hasImageChanged = true;
                 AddressBook imported = FileManager.importFromVCard(selectedFile.getAbsolutePath());
                 if (imported != null) {
-                    contactList = imported;
-                    contacts.clear();
-                    for(Contact c : contactList.contacts()){
-                        contacts.add(c);
-                    }
-                    filteredList.setPredicate(filteredList.getPredicate());
+                    useAddressBook(imported);
                     contactTableView.getSelectionModel().selectFirst();
                 }
             }
@@ -1073,7 +1246,7 @@ public class AddressBookController implements Initializable {
                 File newFile = fileChooser.showSaveDialog(exitButton.getScene().getWindow());
                 if (newFile != null) {
                     try {
-                        FileManager.exportAsVCard(newFile.getAbsolutePath(), (AddressBook) contactList);
+                        FileManager.exportAsVCard(newFile.getAbsolutePath(), pagedContacts.getAddressBook());
                     } catch (IOException e) {
                         e.printStackTrace();
                         Alert errorAlert = new Alert(AlertType.ERROR);
@@ -1088,7 +1261,7 @@ public class AddressBookController implements Initializable {
                 File selectedFile = fileChooser.showOpenDialog(exitButton.getScene().getWindow());
                 if (selectedFile != null) {
                     try {
-                        FileManager.exportAsVCard(selectedFile.getAbsolutePath(), (AddressBook) contactList);
+                        FileManager.exportAsVCard(selectedFile.getAbsolutePath(), pagedContacts.getAddressBook());
                     } catch (IOException e) {
                         e.printStackTrace();
                         Alert errorAlert = new Alert(AlertType.ERROR);
@@ -1136,7 +1309,7 @@ public class AddressBookController implements Initializable {
         VBox next = new VBox(); 
         CheckBox c;
         selectedContact = (Contact)contactTableView.getSelectionModel().getSelectedItem();
-        SetProperty<Tag> temp = null;
+        Set<Tag> temp = null;
         if(selectedContact != null)
             temp = selectedContact.getTags(); 
       
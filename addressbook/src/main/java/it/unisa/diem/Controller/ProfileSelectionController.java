@@ -497,6 +497,7 @@ public class ProfileSelectionController implements Initializable {
         confirmationAlert.showAndWait().ifPresent(response -> {
             if (response == javafx.scene.control.ButtonType.OK) {
                 profileList.getProfileList().remove(profile);
+                profile.releasePicture();
                 showProfileList();
             }
         });
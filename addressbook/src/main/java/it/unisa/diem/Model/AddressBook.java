@@ -2,22 +2,40 @@ package it.unisa.diem.Model;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.OptionalDataException;
+import java.io.StreamCorruptedException;
 import java.io.Serializable;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.function.Predicate;
 
 import it.unisa.diem.Model.Interfaces.ContactList;
 import it.unisa.diem.Model.Interfaces.TaggableList;
 import it.unisa.diem.Model.Interfaces.TrashCan;
+import it.unisa.diem.Utility.AddressBookJournal;
+import it.unisa.diem.Utility.AddressBookJournal.Operation;
+import it.unisa.diem.Utility.BackgroundSaver;
 import it.unisa.diem.Utility.FileManager;
+import it.unisa.diem.Utility.PictureStore;
 import javafx.beans.property.SetProperty;
 import javafx.beans.property.MapProperty;
 import javafx.beans.property.SimpleMapProperty;
 import javafx.beans.property.SimpleSetProperty;
 import javafx.collections.FXCollections;
+import javafx.collections.SetChangeListener;
 
 /**
  * Main model for the address book view.
@@ -30,11 +48,30 @@ import javafx.collections.FXCollections;
  * @invariant recentlyDeleted != null
  */
 public class AddressBook implements Serializable, ContactList, TaggableList<Contact>, TrashCan {
+    private static final long serialVersionUID = 4117955172068818050L; /**< Pinned to the value computed for the original class, so that existing address book files stay readable */
+    private static final long READ_SAVE_TIMEOUT_MILLIS = 5000; /**< The maximum time waited for pending saves before reading a file */
     private transient SetProperty<Contact> contactsList; /**< The list of contacts to manage */
+    private transient TreeSet<Contact> sortedContacts; /**< The sorted set backing {@link #contactsList} */
     private transient MapProperty<Tag, SetProperty<Contact>> tagMap; /**< The map that stores all the tags and the sets of contacts marked with them */
+    private transient TagRegistry tagRegistry; /**< The canonical tags of the contacts of the address book, with their identifiers and the number of contacts of the list they mark */
+    private transient TagStatistics tagStatistics; /**< The number of contacts of the list marked with each pair of tags, following the tag map */
     private RecentlyDeleted recentlyDeleted; /**< The list of contacts that have been deleted within {@link RecentlyDeleted#RETENTION_PERIOD_DAYS} days */
+    private transient Callable<RecentlyDeleted> trashLoader; /**< Reads the trash can from its own file the first time it is needed, null once it has been read */
+    private int lastContactId; /**< The last identifier assigned to a contact of this address book */
+    private transient Map<Integer, Contact> contactsById; /**< The contacts of the list and of the trash can, by identifier */
+    private transient AddressBookJournal journal; /**< The journal recording the changes since the last full save, null if the address book is not bound to a file */
+    private transient BackgroundSaver saver; /**< Writes the journal and the snapshots of the address book in the background, null if the address book is not bound to a file */
+    private transient String unreadablePath; /**< The file the address book could not be read from, which it must never be written over; null if there is none */
+    private transient TrigramIndex searchIndex; /**< The trigrams of the contacts of the list, built by the first search and kept up to date afterwards, null before */
+    private transient PhoneIndex phoneIndex; /**< The phone numbers of the contacts of the list, built by the first lookup and kept up to date afterwards, null before */
+    private transient FuzzyNameIndex fuzzyIndex; /**< The words of the names of the contacts of the list, built by the first fuzzy search and kept up to date afterwards, null before */
+    private transient PhoneticIndex phoneticIndex; /**< The sound of the names of the contacts of the list, built by the first sounds-like search and kept up to date afterwards, null before */
+    private transient Map<Tag, CompressedBitmap> tagBitmaps; /**< The identifiers of the contacts in each set of {@link #tagMap}, built by the first bitmap query and kept up to date afterwards, null before */
+    private transient CompressedBitmap listedIds; /**< The identifiers of the contacts of the list, built by the first tag query without all-of and any-of tags and kept up to date afterwards, null before */
+    private transient volatile long editCount; /**< The number of edits of contacts in place, which change no set and are only seen by the searches through this count */
     
     private void writeObject(java.io.ObjectOutputStream out) throws IOException {
+        trash();
         out.defaultWriteObject();
         if(!contactsList.isEmpty())
             contactsList.get().forEach((c) -> {
@@ -55,32 +92,53 @@ public class AddressBook implements Serializable, ContactList, TaggableList<Cont
 
     private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
         in.defaultReadObject();
-        contactsList = new SimpleSetProperty<>(FXCollections.observableSet(new TreeSet<>()));
+        sortedContacts = new TreeSet<>();
+        contactsList = new SimpleSetProperty<>(FXCollections.observableSet(sortedContacts));
         tagMap = new SimpleMapProperty<>(FXCollections.observableMap(new TreeMap<>()));
+        tagRegistry = new TagRegistry();
+        tagStatistics = new TagStatistics(tagRegistry);
     
+        List<Contact> contacts = new ArrayList<>();
         Object obj;
         try{
             obj = in.readObject();
             do {
-                contactsList.add((Contact)obj);
-            } while((obj = in.readObject()) instanceof Contact);
-            
-            do {
-                Tag tag = new Tag();
-                tag.setName((String)obj);
-                SetProperty<Contact> objs = new SimpleSetProperty<>(FXCollections.observableSet(new TreeSet<>()));
-                while((obj = in.readObject())!=null){
-                    if(obj instanceof Tag)
-                        break;
-                    objs.add((Contact)obj);
-                }
-                tagMap.put(tag, objs);
+                contacts.add((Contact)obj);
             } while((obj = in.readObject()) instanceof Contact);
+            // The tag sections that follow are skipped by the stream: the tag sets are derived from the tags of the contacts,
+            // so rebuilding them also recovers the ones that could not be read
+        } catch (OptionalDataException e) {
+            // End of the contacts of a book without tags
+            if (!e.eof)
+                System.err.println("AddressBook file truncated after " + contacts.size() + " contacts: " + e);
         } catch (EOFException e) {
             // End of file reached
         } catch (Exception e) {
-            e.printStackTrace();
+            System.err.println("AddressBook file truncated after " + contacts.size() + " contacts: " + e);
         }
+        bulkLoad(contacts);
+        indexContacts();
+    }
+
+    /**
+     * Rebuilds the map of contacts by identifier, assigning an identifier to the contacts that do not have one yet
+     * (those read from files written before identifiers were introduced).
+     */
+    private void indexContacts() {
+        contactsById = new HashMap<>();
+        for (Contact c : contactsList)
+            indexContact(c);
+        for (SetProperty<Contact> deleted : recentlyDeleted.get().values())
+            for (Contact c : deleted)
+                indexContact(c);
+    }
+
+    private void indexContact(Contact c) {
+        if (c.getId() == 0 || contactsById.containsKey(c.getId()))
+            c.setId(++lastContactId);
+        else if (c.getId() > lastContactId)
+            lastContactId = c.getId();
+        contactsById.put(c.getId(), c);
     }
 
     /**
@@ -91,9 +149,57 @@ public class AddressBook implements Serializable, ContactList, TaggableList<Cont
      */
     public AddressBook() {
         // Constructor implementation
-        this.contactsList = new SimpleSetProperty<Contact>(FXCollections.observableSet(new TreeSet<Contact>()));
+        this.sortedContacts = new TreeSet<Contact>();
+        this.contactsList = new SimpleSetProperty<Contact>(FXCollections.observableSet(sortedContacts));
         this.tagMap = new SimpleMapProperty<Tag,SetProperty<Contact>>(FXCollections.observableMap(new TreeMap<Tag,SetProperty<Contact>>()));
+        this.tagRegistry = new TagRegistry();
+        this.tagStatistics = new TagStatistics(tagRegistry);
         this.recentlyDeleted = new RecentlyDeleted();
+        this.contactsById = new HashMap<>();
+    }
+
+    /**
+     * Constructs an AddressBook with the given contacts, as read from a file.
+     * The tag map is built from the tags of the contacts.
+     * 
+     * @param contacts the contacts of the list
+     * @param recentlyDeleted the contacts that have been deleted within {@link RecentlyDeleted#RETENTION_PERIOD_DAYS} days
+     * @param lastContactId the last identifier assigned to a contact of the address book
+     * @invariant contacts != null
+     * @invariant recentlyDeleted != null
+     * @see it.unisa.diem.Utility.AddressBookReader#toAddressBook(java.util.concurrent.ForkJoinPool)
+     */
+    public AddressBook(Collection<Contact> contacts, RecentlyDeleted recentlyDeleted, int lastContactId) {
+        this();
+        this.recentlyDeleted = recentlyDeleted;
+        this.lastContactId = lastContactId;
+        bulkLoad(contacts);
+        indexContacts();
+    }
+
+    /**
+     * Fills the empty list of contacts and the tag map with the given contacts, as read from a file.
+     * The contacts are usually read in order, so the sorted sets are built in linear time from the ascending runs of contacts,
+     * instead of inserting the contacts one by one.
+     * The tags of the contacts are moved to the registry of the address book, so that each tag read exists once,
+     * and counted in the statistics of the tags.
+     *
+     * @param contacts the contacts of the list
+     * @see SortedRun
+     */
+    private void bulkLoad(Collection<Contact> contacts) {
+        SortedRun<Contact> sorted = SortedRun.of(contacts);
+        sortedContacts.addAll(sorted);
+        Map<Tag, List<Contact>> tagged = new TreeMap<>();
+        for (Contact c : sorted) {
+            c.useTagRegistry(tagRegistry);
+            Set<Tag> tags = c.getTags();
+            for (Tag tag : tags)
+                tagged.computeIfAbsent(tag, t -> new ArrayList<>()).add(c);
+            tagStatistics.markAll(tags);
+        }
+        for (Map.Entry<Tag, List<Contact>> entry : tagged.entrySet())
+            tagMap.put(entry.getKey(), new SimpleSetProperty<>(FXCollections.observableSet(new TreeSet<>(SortedRun.of(entry.getValue())))));
     }
 
     /**
@@ -112,12 +218,23 @@ public class AddressBook implements Serializable, ContactList, TaggableList<Cont
         try{loadedBook = readFromFile(path);}
         catch(IOException e){
             System.err.println("Error reading AddressBook from file. Created a new AddressBook instead. Error details: " + e.getMessage());
-            loadedBook = new AddressBook();
+            loadedBook = unreadable(path);
         }
         if (loadedBook != null) {
             this.contactsList = loadedBook.contactsList;
+            this.sortedContacts = loadedBook.sortedContacts;
             this.tagMap = loadedBook.tagMap;
+            this.tagRegistry = loadedBook.tagRegistry;
+            this.tagStatistics = loadedBook.tagStatistics;
             this.recentlyDeleted = loadedBook.recentlyDeleted;
+            this.trashLoader = loadedBook.trashLoader;
+            this.lastContactId = loadedBook.lastContactId;
+            this.contactsById = loadedBook.contactsById;
+            this.journal = loadedBook.journal;
+            this.unreadablePath = loadedBook.unreadablePath;
+            this.saver = journal == null ? null : new BackgroundSaver(this, journal);
+            if (loadedBook.saver != null)
+                this.saver.markChanged(loadedBook.saver.isContactsChanged(), loadedBook.saver.isTrashChanged());
         }
     }
 
@@ -133,6 +250,17 @@ public class AddressBook implements Serializable, ContactList, TaggableList<Cont
         return contactsList;
     }
     
+    /**
+     * Returns the list of contacts as a navigable set, to walk it from any contact in its order.
+     * @important The returned set is read-only: the list must be modified through the methods of the AddressBook, so that the listeners of {@link #contacts()} are notified.
+     * 
+     * @return the sorted set of contacts
+     * @see PagedContactList
+     */
+    public NavigableSet<Contact> sortedContacts() {
+        return Collections.unmodifiableNavigableSet(sortedContacts);
+    }
+    
     /**
      * Returns the map of tags and the sets of contacts marked with them.
      * @invariant tagMap != null
@@ -151,6 +279,48 @@ public class AddressBook implements Serializable, ContactList, TaggableList<Cont
      */
     @Override
     public RecentlyDeleted trashCan() {
+        return trash();
+    }
+
+    /**
+     * Sets how the trash can is read from its own file. The trash can is read the first time it is needed,
+     * so that opening the address book does not decode the deleted contacts until they are shown.
+     * 
+     * @param loader the function reading the trash can, called at most once
+     * @see FileManager#getTrashPath(String)
+     */
+    public synchronized void setTrashLoader(Callable<RecentlyDeleted> loader) {
+        this.trashLoader = loader;
+    }
+
+    /**
+     * Checks whether the trash can has been read from its file.
+     * 
+     * @return false if the trash can will be read the next time it is needed
+     */
+    public synchronized boolean isTrashLoaded() {
+        return trashLoader == null;
+    }
+
+    private synchronized RecentlyDeleted trash() {
+        if (trashLoader != null) {
+            try {
+                recentlyDeleted = trashLoader.call();
+            } catch (Exception e) {
+                System.err.println("Error reading the trash can. An empty trash can is used instead. Error details: " + e.getMessage());
+                recentlyDeleted = new RecentlyDeleted();
+            }
+            trashLoader = null;
+            for (SetProperty<Contact> deleted : recentlyDeleted.get().values())
+                for (Contact c : deleted) {
+                    // The trash can file is more recent than the trash can read with the list, if any
+                    if (contactsById.get(c.getId()) != null && contactsList.contains(contactsById.get(c.getId())))
+                        c.setId(++lastContactId);
+                    else if (c.getId() > lastContactId)
+                        lastContactId = c.getId();
+                    contactsById.put(c.getId(), c);
+                }
+        }
         return recentlyDeleted;
     }
 
@@ -163,15 +333,72 @@ public class AddressBook implements Serializable, ContactList, TaggableList<Cont
      * @post contactsList.size() == contactsList.size()@pre + 1
      */
     @Override
-    public void add(Contact c) {
+    public synchronized void add(Contact c) {
         if (c == null) {
             throw new IllegalArgumentException("Contact cannot be null");
         }
+        c.useTagRegistry(tagRegistry);
         if(contactsList.add(c)){
+            if (contactsById.get(c.getId()) != c) {
+                indexContact(c);
+                // The identifier has been assigned after the list notified the change
+                if (listedIds != null)
+                    listedIds.add(c.getId());
+            }
             addToTagMap(c);
+            if (journal != null) {
+                journal.append(Operation.ADD, c);
+                retainPicture(c);
+                changed(true, false);
+            }
+        }
+    }
+
+    /**
+     * Notifies the address book that a contact of the list has been modified in place, so that the change is saved.
+     * 
+     * @param c the modified contact
+     * @invariant c != null
+     * @pre contactsList.contains(c)
+     */
+    @Override
+    public synchronized void update(Contact c) {
+        if (c == null) {
+            throw new IllegalArgumentException("Contact cannot be null");
+        }
+        reindex(c);
+        if (journal != null && contactsById.get(c.getId()) == c) {
+            journal.append(Operation.UPDATE, c);
+            retainPicture(c);
+            boolean listed = contactsList.contains(c);
+            changed(listed, !listed);
         }
     }
 
+    /**
+     * Returns the last identifier assigned to a contact of the address book.
+     * 
+     * @return the last identifier assigned to a contact
+     */
+    public int getLastContactId() {
+        return lastContactId;
+    }
+
+    /**
+     * Returns the contact with the specified identifier, either in the list of contacts or in the trash can.
+     * 
+     * @param id the identifier of the contact
+     * @return the contact with the given identifier, or null if there is none
+     */
+    public synchronized Contact getById(int id) {
+        Contact c = contactsById.get(id);
+        if (c == null && trashLoader != null) {
+            trash();
+            c = contactsById.get(id);
+        }
+        return c;
+    }
+
     /**
      * Deletes a contact from the list of contacts.
      * 
@@ -181,13 +408,62 @@ public class AddressBook implements Serializable, ContactList, TaggableList<Cont
      * @post contactsList.size() == contactsList.size()@pre - 1
      */
     @Override
-    public void delete(Contact c) {
+    public synchronized void delete(Contact c) {
         if (c == null) {
             throw new IllegalArgumentException("Contact cannot be null");
         }
         if (contactsList.remove(c)) {
             removeFromTagMap(c);
-            recentlyDeleted.put(c);
+            trash().put(c);
+            if (journal != null) {
+                journal.appendDelete(c, LocalDate.now());
+                changed(true, true);
+            }
+        } else if (trash().getDeletionDate(c) != null) {
+            // The contact is already in the trash can: it is removed permanently
+            recentlyDeleted.remove(c);
+            purged(c);
+        }
+    }
+
+    /**
+     * Permanently removes the contacts moved to the trash can more than {@link RecentlyDeleted#RETENTION_PERIOD_DAYS} days ago.
+     * 
+     * @post the trash can contains no expired contact
+     */
+    @Override
+    public synchronized void removeExpired() {
+        for (Contact c : trash().removeExpired())
+            purged(c);
+    }
+
+    /**
+     * Forgets a contact removed permanently from the trash can, and releases its picture.
+     * 
+     * @param c the removed contact
+     */
+    private void purged(Contact c) {
+        contactsById.remove(c.getId());
+        if (journal != null) {
+            journal.append(Operation.PURGE, c, null);
+            PictureStore.release(c.getReferencedPicture());
+            c.setReferencedPicture(null);
+            changed(false, true);
+        }
+    }
+
+    /**
+     * Moves the reference held by a saved contact in the {@link PictureStore} to its current picture.
+     * Contacts replayed from the journal are not counted again, as their references were counted when they were first saved.
+     * 
+     * @param c the saved contact
+     */
+    private void retainPicture(Contact c) {
+        String previous = c.getReferencedPicture();
+        if (!Objects.equals(previous, c.getPicture())) {
+            PictureStore.acquire(c.getPicture());
+            PictureStore.release(previous);
+            c.setReferencedPicture(c.getPicture());
         }
     }
 
@@ -200,10 +476,21 @@ public class AddressBook implements Serializable, ContactList, TaggableList<Cont
      * @post recentlyDeleted.size() == recentlyDeleted.size()@pre + 1
      */
     public void addToTagMap(Contact c) {
+        List<Tag> marked = new ArrayList<>();
+        List<Tag> added = new ArrayList<>();
         for (Tag tag : c.getTags()) {
             if (!tagMap.containsKey(tag))
                 tagMap.put(tag, new SimpleSetProperty<>(FXCollections.observableSet(new TreeSet<>())));
-            tagMap.get(tag).add(c);
+            (tagMap.get(tag).add(c) ? added : marked).add(tag);
+            if (tagBitmaps != null)
+                tagBitmaps.computeIfAbsent(tag, t -> new CompressedBitmap()).add(c.getId());
+        }
+        // A contact that is not in the book yet is counted by add(), once its tags use the registry of the book
+        if (contactsById.get(c.getId()) != c)
+            return;
+        for (Tag tag : added) {
+            tagStatistics.mark(tag, marked);
+            marked.add(tag);
         }
     }
 
@@ -215,14 +502,30 @@ public class AddressBook implements Serializable, ContactList, TaggableList<Cont
      * @post the contact is not part of any set of contacts marked with a tag
      */
     public void removeFromTagMap(Contact c) {
+        List<Tag> removed = new ArrayList<>();
         for (Tag tag : c.getTags()) {
             if (tagMap.containsKey(tag)) {
-                tagMap.get(tag).remove(c);
+                if (tagMap.get(tag).remove(c))
+                    removed.add(tag);
+                untag(tag, c);
                 if (tagMap.get(tag).isEmpty()) {
                     tagMap.remove(tag);
                 }
             }
         }
+        for (int i = 0; i < removed.size(); i++)
+            tagStatistics.unmark(removed.get(i), removed.subList(i + 1, removed.size()));
+    }
+
+    private void untag(Tag tag, Contact c) {
+        if (tagBitmaps == null)
+            return;
+        CompressedBitmap tagged = tagBitmaps.get(tag);
+        if (tagged != null) {
+            tagged.remove(c.getId());
+            if (tagged.isEmpty())
+                tagBitmaps.remove(tag);
+        }
     }
 
     /**
@@ -235,11 +538,11 @@ public class AddressBook implements Serializable, ContactList, TaggableList<Cont
      * @post contactsList.size() == contactsList.size()@pre + 1
      */
     @Override
-    public void restore(Contact c) {
+    public synchronized void restore(Contact c) {
         if (c == null) {
             throw new IllegalArgumentException("Contact cannot be null");
         }
-        for(Map.Entry<LocalDateProperty, SetProperty<Contact>> entry : recentlyDeleted.get().entrySet()){
+        for(Map.Entry<LocalDateProperty, SetProperty<Contact>> entry : trash().get().entrySet()){
             if(entry.getValue().contains(c)){
                 entry.getValue().remove(c);
                 if(entry.getValue().isEmpty()){
@@ -248,7 +551,14 @@ public class AddressBook implements Serializable, ContactList, TaggableList<Cont
                 break;
             }
         }
-        contactsList.add(c);
+        c.useTagRegistry(tagRegistry);
+        if (contactsList.add(c)) {
+            addToTagMap(c);
+            if (journal != null) {
+                journal.append(Operation.RESTORE, c, null);
+                changed(true, true);
+            }
+        }
     }
 
     
@@ -260,13 +570,21 @@ public class AddressBook implements Serializable, ContactList, TaggableList<Cont
      * @invariant t != null
      * @invariant c != null
      * @post the tag map contains the tag and the contact is part of the set of contacts marked with such tag
+     * @post a contact not added to the address book yet is left out of the tag map: its tags are mapped when it is added
      */
     @Override
-    public void addTagToContact(Tag t, Contact c) {
+    public synchronized void addTagToContact(Tag t, Contact c) {
         if (t == null || c == null) {
             throw new IllegalArgumentException("Tag and contact cannot be null");
         }
+        if (contactsById.get(c.getId()) != c)
+            return;
         addToTagMap(c);
+        reindex(c);
+        if (journal != null && contactsById.get(c.getId()) == c) {
+            journal.append(Operation.TAG_ADD, c, t.getNameValue());
+            changed(true, false);
+        }
     }
 
     /**
@@ -279,51 +597,718 @@ public class AddressBook implements Serializable, ContactList, TaggableList<Cont
      * @post the contact is not part of the set of contacts marked with such tag. If it was the last contact with that tag, the tag is removed from the tag map
      */
     @Override
-    public void removeTagFromContact(Tag t, Contact c) {
+    public synchronized void removeTagFromContact(Tag t, Contact c) {
         if (t == null || c == null) {
             throw new IllegalArgumentException("Tag and contact cannot be null");
         }
         if (tagMap.containsKey(t)) {
-            tagMap.get(t).remove(c);
+            boolean removed = tagMap.get(t).remove(c);
+            if (removed)
+                tagStatistics.unmark(t, markedWith(c, t));
+            untag(t, c);
    
             if (tagMap.get(t).isEmpty()) {
                 tagMap.remove(t);
             }
+            reindex(c);
+            if (removed && journal != null) {
+                journal.append(Operation.TAG_REMOVE, c, t.getNameValue());
+                changed(true, false);
+            }
+        }
+    }
+
+    /**
+     * Marks many contacts of the list with a tag at once, as when tagging the contacts just imported or selected in the table.
+     * The set of contacts marked with the tag is replaced once, so its listeners are notified once instead of once per contact,
+     * and the save of the address book is requested once.
+     * 
+     * @param t the tag to add
+     * @param contacts the contacts to mark
+     * @return the number of contacts marked with the tag that were not before
+     * @invariant t != null
+     * @invariant contacts != null
+     * @post every contact of contacts in the list is part of the set of contacts marked with the tag
+     */
+    @Override
+    public synchronized int addTagToContacts(Tag t, Collection<Contact> contacts) {
+        if (t == null || contacts == null) {
+            throw new IllegalArgumentException("Tag and contacts cannot be null");
+        }
+        Tag tag = tagRegistry.intern(t.getNameValue());
+        if (tag == null)
+            return 0;
+        SetProperty<Contact> marked = tagMap.get(tag);
+        Set<Contact> added = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Contact c : contacts) {
+            if (c == null || contactsById.get(c.getId()) != c || !contactsList.contains(c))
+                continue;
+            boolean unmarked = marked == null || !marked.contains(c);
+            c.addTag(tag.getNameValue());
+            if (unmarked && added.add(c))
+                tagStatistics.mark(tag, markedWith(c, tag));
+        }
+        if (added.isEmpty())
+            return 0;
+        // The marked contacts are already sorted: the new set is merged from them and the added ones, not filled one by one
+        List<Contact> merged = new ArrayList<>(marked == null ? Collections.emptySet() : marked.get());
+        merged.addAll(added);
+        TreeSet<Contact> tagged = new TreeSet<>(SortedRun.of(merged));
+        if (marked == null)
+            tagMap.put(tag, new SimpleSetProperty<>(FXCollections.observableSet(tagged)));
+        else
+            marked.set(FXCollections.observableSet(tagged));
+        CompressedBitmap ids = tagBitmaps == null ? null : tagBitmaps.computeIfAbsent(tag, k -> new CompressedBitmap());
+        for (Contact c : added) {
+            if (ids != null)
+                ids.add(c.getId());
+            reindex(c);
+            if (journal != null)
+                journal.append(Operation.TAG_ADD, c, tag.getNameValue());
+        }
+        if (journal != null)
+            changed(true, false);
+        return added.size();
+    }
+
+    /**
+     * Removes a tag from many contacts of the list at once.
+     * The set of contacts marked with the tag is replaced once, so its listeners are notified once instead of once per contact,
+     * and the save of the address book is requested once. Unlike {@link #removeTagFromContact(Tag, Contact)}, the tag is also removed from the contacts,
+     * whose new state is recorded in the journal.
+     * 
+     * @param t the tag to remove
+     * @param contacts the contacts to unmark
+     * @return the number of contacts no longer marked with the tag
+     * @invariant t != null
+     * @invariant contacts != null
+     * @post no contact of contacts in the list is marked with the tag. If they were the last contacts with that tag, the tag is removed from the tag map
+     */
+    @Override
+    public synchronized int removeTagFromContacts(Tag t, Collection<Contact> contacts) {
+        if (t == null || contacts == null) {
+            throw new IllegalArgumentException("Tag and contacts cannot be null");
+        }
+        SetProperty<Contact> marked = tagMap.get(t);
+        Set<Contact> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Contact c : contacts) {
+            if (c == null || contactsById.get(c.getId()) != c || !contactsList.contains(c) || !c.hasTag(t))
+                continue;
+            if (marked != null && marked.contains(c) && !removed.contains(c))
+                tagStatistics.unmark(t, markedWith(c, t));
+            c.removeTag(t.getNameValue());
+            removed.add(c);
+        }
+        if (removed.isEmpty())
+            return 0;
+        if (marked != null) {
+            // The contacts are compared by identity: the ones just unmarked may no longer be found by the order of the set
+            List<Contact> kept = new ArrayList<>(marked.size());
+            for (Contact c : marked)
+                if (!removed.contains(c))
+                    kept.add(c);
+            TreeSet<Contact> tagged = new TreeSet<>(SortedRun.of(kept));
+            if (tagged.isEmpty())
+                tagMap.remove(t);
+            else
+                marked.set(FXCollections.observableSet(tagged));
+        }
+        for (Contact c : removed) {
+            untag(t, c);
+            reindex(c);
+            // A tag removal alone is replayed on the tag map only: the whole contact is recorded
+            if (journal != null)
+                journal.append(Operation.UPDATE, c);
+        }
+        if (journal != null)
+            changed(true, false);
+        return removed.size();
+    }
+
+    private List<Tag> markedWith(Contact c, Tag except) {
+        List<Tag> marked = new ArrayList<>();
+        for (Tag tag : c.getTags())
+            if (tag.compareTo(except) != 0 && tagMap.containsKey(tag) && tagMap.get(tag).contains(c))
+                marked.add(tag);
+        return marked;
+    }
+
+    /**
+     * Returns the candidates of a search: the contacts of the list whose name, surname, email addresses, phone numbers or tags
+     * contain every three-character substring of the query. Every contact matched by the search filters is a candidate.
+     * The first call builds the index of the contacts, which then follows the changes of the list.
+     * 
+     * @param query the text typed in the search bar
+     * @return the candidates of the query, to be tested with the search filters, or null if the query is empty and every contact is a candidate
+     * @see TrigramIndex#candidates(String)
+     */
+    public synchronized List<Contact> searchCandidates(String query) {
+        return searchIndex().candidates(query);
+    }
+
+    /**
+     * Returns an estimate of the number of candidates of a search, without finding them: an upper bound of the number of contacts
+     * containing the query in their name, surname, email addresses, phone numbers or tags.
+     * 
+     * @param query the text typed in the search bar
+     * @return the estimated number of candidates
+     * @see TrigramIndex#estimate(String)
+     */
+    public synchronized int estimateCandidates(String query) {
+        return searchIndex().estimate(query);
+    }
+
+    private TrigramIndex searchIndex() {
+        if (searchIndex == null) {
+            searchIndex = new TrigramIndex(contactsList);
+            contactsList.addListener((SetChangeListener<Contact>) change -> {
+                if (change.wasRemoved())
+                    searchIndex.remove(change.getElementRemoved());
+                if (change.wasAdded())
+                    searchIndex.add(change.getElementAdded());
+            });
+        }
+        return searchIndex;
+    }
+
+    /**
+     * Returns the contacts of the list marked with a tag whose name contains the given substring, as tested by a {@link it.unisa.diem.Model.Interfaces.Filter.TagFilter}.
+     * 
+     * @param substring the substring to look for in the names of the tags
+     * @return the marked contacts, each once and in no particular order
+     */
+    public synchronized List<Contact> taggedWith(String substring) {
+        String sub = substring == null ? "" : SearchKeys.normalize(substring.trim());
+        CompressedBitmap tagged = new CompressedBitmap();
+        for (Map.Entry<Tag, CompressedBitmap> entry : tagBitmaps().entrySet())
+            if (SearchKeys.normalize(entry.getKey().getNameValue()).contains(sub))
+                tagged = tagged.or(entry.getValue());
+        return contactsOf(tagged);
+    }
+
+    /**
+     * Returns the registry of the tags of the address book, which gives the canonical tag of each name, its identifier,
+     * and the number of contacts of the list it marks.
+     * 
+     * @return the tag registry of the address book
+     */
+    @Override
+    public TagRegistry getTagRegistry() {
+        return tagRegistry;
+    }
+
+    /**
+     * Returns the statistics of the tags of the address book: the number of contacts of the list marked with each tag and with each pair of tags.
+     * The statistics are kept up to date as contacts are added, deleted, restored and tagged, so reading them does not scan the contacts.
+     * 
+     * @return a snapshot of the statistics, which does not follow later changes
+     */
+    @Override
+    public synchronized TagStatistics.Snapshot tagStatistics() {
+        return tagStatistics.snapshot();
+    }
+
+    /**
+     * Returns the identifiers of the contacts of the list marked with a tag.
+     * The first call builds a compressed bitmap of the identifiers of the contacts marked with each tag, which then follows the changes of the tag map:
+     * the bitmaps of several tags can be combined with {@link CompressedBitmap#and}, {@link CompressedBitmap#or} and {@link CompressedBitmap#andNot},
+     * and turned back into contacts by {@link #contactsOf(CompressedBitmap)}.
+     * 
+     * @param t the tag
+     * @return a copy of the identifiers of the marked contacts, empty if no contact is marked with the tag
+     */
+    public synchronized CompressedBitmap tagged(Tag t) {
+        CompressedBitmap tagged = tagBitmaps().get(t);
+        return tagged == null ? new CompressedBitmap() : tagged.copy();
+    }
+
+    /**
+     * Returns the identifiers of the contacts of the list marked with every given tag.
+     * 
+     * @param tags the tags
+     * @return the identifiers of the contacts marked with all the tags; empty if no tag is given
+     * @see #tagged(Tag)
+     */
+    public synchronized CompressedBitmap taggedWithAll(Collection<Tag> tags) {
+        List<CompressedBitmap> marked = new ArrayList<>(tags.size());
+        for (Tag t : tags) {
+            CompressedBitmap bitmap = tagBitmaps().get(t);
+            if (bitmap == null)
+                return new CompressedBitmap();
+            marked.add(bitmap);
+        }
+        if (marked.isEmpty())
+            return new CompressedBitmap();
+        if (marked.size() == 1)
+            return marked.get(0).copy();
+        // Starting from the rarest tags keeps the intermediate results small
+        marked.sort(Comparator.comparingInt(CompressedBitmap::cardinality));
+        CompressedBitmap tagged = marked.get(0).and(marked.get(1));
+        for (int i = 2; i < marked.size() && !tagged.isEmpty(); i++)
+            tagged = tagged.and(marked.get(i));
+        return tagged;
+    }
+
+    /**
+     * Returns the identifiers of the contacts of the list marked with at least one of the given tags.
+     * 
+     * @param tags the tags
+     * @return the identifiers of the contacts marked with any of the tags
+     * @see #tagged(Tag)
+     */
+    public synchronized CompressedBitmap taggedWithAny(Collection<Tag> tags) {
+        CompressedBitmap tagged = new CompressedBitmap();
+        for (Tag t : tags) {
+            CompressedBitmap marked = tagBitmaps().get(t);
+            if (marked != null)
+                tagged = tagged.or(marked);
+        }
+        return tagged;
+    }
+
+    /**
+     * Returns the identifiers of the contacts of the list selected by a combination of tags, computed on the bitmaps of the tags:
+     * the all-of tags are intersected, the rarest first, then with the union of the any-of tags, and the union of the none-of tags is taken away.
+     * A query with none-of tags only takes them away from the identifiers of every contact of the list, kept in a bitmap of their own.
+     * 
+     * @param query the combination of tags
+     * @return the identifiers of the selected contacts, every contact of the list if the query has no tags
+     * @throws IllegalArgumentException if query is null
+     * @see #contactsOf(CompressedBitmap)
+     */
+    @Override
+    public synchronized CompressedBitmap select(TagQuery query) {
+        if (query == null)
+            throw new IllegalArgumentException("Query cannot be null");
+        CompressedBitmap selected = null;
+        if (!query.getAllOf().isEmpty())
+            selected = taggedWithAll(query.getAllOf());
+        if (!query.getAnyOf().isEmpty() && (selected == null || !selected.isEmpty())) {
+            CompressedBitmap any = taggedWithAny(query.getAnyOf());
+            selected = selected == null ? any : selected.and(any);
+        }
+        if (selected == null)
+            selected = listedIds().copy();
+        if (!query.getNoneOf().isEmpty() && !selected.isEmpty())
+            selected = selected.andNot(taggedWithAny(query.getNoneOf()));
+        return selected;
+    }
+
+    private CompressedBitmap listedIds() {
+        if (listedIds == null) {
+            listedIds = new CompressedBitmap();
+            for (Contact c : contactsList)
+                listedIds.add(c.getId());
+            contactsList.addListener((SetChangeListener<Contact>) change -> {
+                if (change.wasRemoved())
+                    listedIds.remove(change.getElementRemoved().getId());
+                if (change.wasAdded() && change.getElementAdded().getId() != 0)
+                    listedIds.add(change.getElementAdded().getId());
+            });
+        }
+        return listedIds;
+    }
+
+    /**
+     * Returns true if a contact of the list is marked with a tag, without walking the sorted set of the tag.
+     * 
+     * @param t the tag
+     * @param c the contact
+     * @return true if the contact is in the set of the tag
+     */
+    public synchronized boolean isTagged(Tag t, Contact c) {
+        CompressedBitmap tagged = tagBitmaps().get(t);
+        return tagged != null && tagged.contains(c.getId()) && contactsById.get(c.getId()) == c;
+    }
+
+    /**
+     * Returns the contacts with the given identifiers, such as the ones returned by {@link #tagged(Tag)}.
+     * Identifiers of contacts no longer in the address book are ignored.
+     * 
+     * @param ids the identifiers of the contacts
+     * @return the contacts, by ascending identifier
+     */
+    public synchronized List<Contact> contactsOf(CompressedBitmap ids) {
+        List<Contact> contacts = new ArrayList<>(ids.cardinality());
+        ids.forEach(id -> {
+            Contact c = contactsById.get(id);
+            if (c != null)
+                contacts.add(c);
+        });
+        return contacts;
+    }
+
+    /**
+     * Returns the contacts with the given identifiers in the order of the list, such as the contacts selected by {@link #select(TagQuery)}.
+     * Only the given contacts are looked up and sorted, so the cost does not depend on the size of the list.
+     * Homonyms are ordered by identifier.
+     * 
+     * @param ids the identifiers of the contacts
+     * @return the contacts, by full name
+     */
+    public synchronized List<Contact> sortedContactsOf(CompressedBitmap ids) {
+        List<Contact> contacts = contactsOf(ids);
+        contacts.sort(Comparator.comparing((Contact c) -> c.getFullNameValue().toLowerCase()).thenComparingInt(Contact::getId));
+        return contacts;
+    }
+
+    private Map<Tag, CompressedBitmap> tagBitmaps() {
+        if (tagBitmaps == null) {
+            tagBitmaps = new TreeMap<>();
+            for (Map.Entry<Tag, SetProperty<Contact>> entry : tagMap.entrySet()) {
+                CompressedBitmap tagged = new CompressedBitmap();
+                for (Contact c : entry.getValue())
+                    tagged.add(c.getId());
+                tagBitmaps.put(entry.getKey(), tagged);
+            }
         }
+        return tagBitmaps;
+    }
+
+    /**
+     * Returns an estimate of the number of contacts returned by {@link #taggedWith(String)}, without finding them:
+     * the sum of the numbers of contacts marked with each matching tag.
+     * 
+     * @param substring the substring to look for in the names of the tags
+     * @return the estimated number of marked contacts
+     */
+    public synchronized int estimateTagged(String substring) {
+        String sub = substring == null ? "" : SearchKeys.normalize(substring.trim());
+        int tagged = 0;
+        for (Map.Entry<Tag, SetProperty<Contact>> entry : tagMap.entrySet())
+            if (SearchKeys.normalize(entry.getKey().getNameValue()).contains(sub))
+                tagged += entry.getValue().size();
+        return Math.min(tagged, contactsList.size());
+    }
+
+    /**
+     * Returns the contacts of the list owning the given phone number. Characters other than digits are ignored,
+     * so that numbers are found however they are formatted.
+     * The first call builds the index of the phone numbers, which then follows the changes of the list.
+     * 
+     * @param digits the phone number to look up
+     * @return the contacts owning the number, in no particular order
+     * @see #findByPhone(String, PhoneIndex.Match)
+     */
+    public List<Contact> findByPhone(String digits) {
+        return findByPhone(digits, PhoneIndex.Match.EXACT);
+    }
+
+    /**
+     * Returns the contacts of the list owning a phone number that is, starts with or ends with the given digits.
+     * Finding where the matches are takes time proportional to the number of digits, whatever the size of the list.
+     * The first call builds the index of the phone numbers, which then follows the changes of the list.
+     * 
+     * @param digits the digits to look up; characters other than digits are ignored
+     * @param match how the digits are matched against the phone numbers
+     * @return the matching contacts, each once and in no particular order; an empty list if digits has no digit
+     * @throws IllegalArgumentException if match is null
+     * @see PhoneIndex#find(String, PhoneIndex.Match)
+     */
+    public synchronized List<Contact> findByPhone(String digits, PhoneIndex.Match match) {
+        if (match == null)
+            throw new IllegalArgumentException("Match cannot be null");
+        if (phoneIndex == null) {
+            phoneIndex = new PhoneIndex(contactsList);
+            contactsList.addListener((SetChangeListener<Contact>) change -> {
+                if (change.wasRemoved())
+                    phoneIndex.remove(change.getElementRemoved());
+                if (change.wasAdded())
+                    phoneIndex.add(change.getElementAdded());
+            });
+        }
+        return phoneIndex.find(digits, match);
+    }
+
+    /**
+     * Returns the contacts of the list whose name is closest to a query typed with mistakes, among the ones accepted by a filter:
+     * every word of the query must be within a small edit distance from a word of the name or surname of a match.
+     * The first call builds the index of the names, which then follows the changes of the list.
+     * 
+     * @param query the text typed in the search bar
+     * @param maxDistance the highest edit distance tolerated from a word of the query, at most {@link FuzzyNameIndex#MAX_DISTANCE}
+     * @param k the highest number of contacts returned
+     * @param filter the test the contacts must pass
+     * @return at most k matching contacts, the closest first
+     * @throws IllegalArgumentException if filter is null
+     * @see FuzzyNameIndex#find(String, int, int, Predicate)
+     */
+    public synchronized List<Contact> fuzzySearch(String query, int maxDistance, int k, Predicate<? super Contact> filter) {
+        if (filter == null)
+            throw new IllegalArgumentException("Filter cannot be null");
+        if (fuzzyIndex == null) {
+            fuzzyIndex = new FuzzyNameIndex(contactsList);
+            contactsList.addListener((SetChangeListener<Contact>) change -> {
+                if (change.wasRemoved())
+                    fuzzyIndex.remove(change.getElementRemoved());
+                if (change.wasAdded())
+                    fuzzyIndex.add(change.getElementAdded());
+            });
+        }
+        return fuzzyIndex.find(query, maxDistance, k, filter);
+    }
+
+    /**
+     * Returns the contacts whose name or surname sounds like the query, such as a surname heard over the phone.
+     * 
+     * @param query the text typed in the search bar
+     * @return the matching contacts, in no particular order
+     * @see PhoneticIndex
+     */
+    public synchronized List<Contact> soundsLike(String query) {
+        return phoneticIndex().find(query);
+    }
+
+    /**
+     * Returns an estimate of the number of contacts returned by {@link #soundsLike(String)}, without finding them.
+     * 
+     * @param query the text typed in the search bar
+     * @return the estimated number of matches
+     * @see PhoneticIndex#estimate(String)
+     */
+    public synchronized int estimateSoundsLike(String query) {
+        return phoneticIndex().estimate(query);
+    }
+
+    private PhoneticIndex phoneticIndex() {
+        if (phoneticIndex == null) {
+            phoneticIndex = new PhoneticIndex(contactsList);
+            contactsList.addListener((SetChangeListener<Contact>) change -> {
+                if (change.wasRemoved())
+                    phoneticIndex.remove(change.getElementRemoved());
+                if (change.wasAdded())
+                    phoneticIndex.add(change.getElementAdded());
+            });
+        }
+        return phoneticIndex;
+    }
+
+    /**
+     * Updates a contact of the list edited in place in the indexes that have been built.
+     */
+    private void reindex(Contact c) {
+        editCount++;
+        if (searchIndex != null)
+            searchIndex.update(c);
+        if (phoneIndex != null)
+            phoneIndex.update(c);
+        if (fuzzyIndex != null)
+            fuzzyIndex.update(c);
+        if (phoneticIndex != null)
+            phoneticIndex.update(c);
+    }
+
+    /**
+     * Returns the number of times a contact has been edited in place, by {@link #update(Contact)} or by adding or removing one of its tags.
+     * Such edits notify no listener of the list: the matches of a search must be searched again when the count changes.
+     * 
+     * @return the number of edits of contacts in place
+     * @see SearchSession#invalidate()
+     */
+    public long getEditCount() {
+        return editCount;
+    }
+
+    private void changed(boolean contacts, boolean trash) {
+        if (saver != null)
+            saver.markDirty(contacts, trash);
+    }
+
+    /**
+     * Returns the saver writing the address book to its file in the background.
+     * 
+     * @return the saver of the address book, or null if the address book is not bound to a file
+     */
+    public BackgroundSaver getSaver() {
+        return saver;
+    }
+
+    /**
+     * Applies the changes recorded in a journal to the address book, without recording them again.
+     * Applying a record more than once has no further effect, so that records already included in the snapshot are harmless.
+     * 
+     * @param records the records read from the journal, in the order they have been written
+     * @see AddressBookJournal#read()
+     */
+    public synchronized void replay(List<AddressBookJournal.Record> records) {
+        AddressBookJournal active = journal;
+        journal = null;
+        int snapshotLastId = lastContactId;
+        for (AddressBookJournal.Record record : records) {
+            // Contacts created after the snapshot cannot be in the trash can file, which is only read when needed
+            Contact c = record.getContactId() > snapshotLastId ? contactsById.get(record.getContactId()) : getById(record.getContactId());
+            switch (record.getOperation()) {
+                case ADD:
+                case UPDATE:
+                    if (c != null) {
+                        if (contactsList.remove(c)) {
+                            removeFromTagMap(c);
+                            contactsById.remove(c.getId());
+                            add(record.getContact());
+                        } else {
+                            // The contact is in the trash can: its state is replaced there
+                            LocalDate deletionDate = trash().getDeletionDate(c);
+                            recentlyDeleted.remove(c);
+                            contactsById.put(c.getId(), record.getContact());
+                            recentlyDeleted.put(record.getContact(), deletionDate);
+                        }
+                    } else
+                        add(record.getContact());
+                    break;
+                case DELETE:
+                    if (c != null && contactsList.remove(c)) {
+                        removeFromTagMap(c);
+                        trash().put(c, record.getDate());
+                    }
+                    break;
+                case RESTORE:
+                    if (c != null && !contactsList.contains(c))
+                        restore(c);
+                    break;
+                case PURGE:
+                    if (c != null && !contactsList.contains(c))
+                        delete(c);
+                    break;
+                case TAG_ADD:
+                    if (c != null && contactsList.contains(c)) {
+                        c.addTag(record.getTagName());
+                        addToTagMap(c);
+                    }
+                    break;
+                case TAG_REMOVE:
+                    if (c != null) {
+                        Tag t = new Tag();
+                        t.setName(record.getTagName());
+                        removeTagFromContact(t, c);
+                    }
+                    break;
+            }
+        }
+        journal = active;
+    }
+
+    /**
+     * Returns a deep copy of the list of contacts of the address book, not bound to any file, with an empty trash can.
+     * Used to save the address book in the background while it keeps being modified: the copy never changes afterwards.
+     * The trash can is copied separately by {@link #snapshotTrash()}, as it is saved in its own file.
+     * 
+     * @return a copy of the address book without its trash can
+     */
+    public synchronized AddressBook snapshot() {
+        AddressBook copy = new AddressBook();
+        List<Contact> copies = new ArrayList<>(contactsList.size());
+        for (Contact c : contactsList)
+            copies.add(copyOf(c));
+        copy.bulkLoad(copies);
+        copy.lastContactId = lastContactId;
+        copy.indexContacts();
+        return copy;
+    }
+
+    /**
+     * Returns a deep copy of the trash can of the address book, reading it from its file if needed.
+     * 
+     * @return a copy of the trash can
+     * @see #snapshot()
+     */
+    public synchronized RecentlyDeleted snapshotTrash() {
+        RecentlyDeleted copy = new RecentlyDeleted();
+        for (Map.Entry<LocalDateProperty, SetProperty<Contact>> entry : trash().get().entrySet())
+            for (Contact c : entry.getValue())
+                copy.put(copyOf(c), entry.getKey().get());
+        return copy;
+    }
+
+    private static Contact copyOf(Contact c) {
+        String[] tags = new String[c.getTags().size()];
+        int i = 0;
+        for (Tag t : c.getTags())
+            tags[i++] = t.getNameValue();
+        return new Contact(c.getId(), c.getNameValue(), c.getSurnameValue(), c.getEmailList(), c.getPhoneNumberList(), tags, c.getPicture());
     }
 
     /**
      * Imports an AddressBook object from an internal file at the specified path.
+     * If the file is damaged, the contacts of its intact segments are recovered and the damaged file is kept aside.
      * @param path
      * @invariant path != null
      * @return the AddressBook object read from the file
-     * @see FileManager#importFromFile(String)
+     * @see FileManager#importAddressBook(String)
      */
     
     public static AddressBook readFromFile(String path) throws IOException{
         if (path == null) {
             throw new IllegalArgumentException("Path cannot be null");
         }
-        return FileManager.importFromFile(path);
+        // A save of the same file requested before (e.g. when the book was last closed) must be on disk before reading it
+        BackgroundSaver.awaitSaved(READ_SAVE_TIMEOUT_MILLIS);
+        AddressBook addressBook;
+        boolean recovered = false;
+        try {
+            addressBook = FileManager.importAddressBook(path);
+        } catch (StreamCorruptedException e) {
+            // Every intact contact is kept, instead of losing the whole book
+            addressBook = FileManager.recoverAddressBook(path);
+            recovered = true;
+            System.err.println("AddressBook file damaged, recovered the intact contacts. The damaged file has been kept in "
+                    + FileManager.getDamagedPath(path) + ". " + FileManager.getIntegrityReport(path));
+        }
+        AddressBookJournal journal = new AddressBookJournal(path);
+        List<AddressBookJournal.Record> records = journal.read();
+        addressBook.replay(records);
+        addressBook.journal = journal;
+        addressBook.saver = new BackgroundSaver(addressBook, journal);
+        // The replayed changes are only in the journal: the next snapshot must write them before emptying it.
+        // The trash can has not changed if replaying the records did not need to read it
+        if (recovered || !records.isEmpty())
+            addressBook.saver.markChanged(true, addressBook.isTrashLoaded());
+        return addressBook;
     }
 
 
+    /**
+     * Returns an empty AddressBook standing for a file that could not be read, such as a file whose journal is unreadable.
+     * The AddressBook is never written over that file, which would lose its contacts: it is saved to {@link FileManager#getUnsavedPath(String)} instead.
+     * 
+     * @param path the path of the file that could not be read
+     * @return an empty AddressBook that does not write over the file
+     */
+    public static AddressBook unreadable(String path) {
+        AddressBook addressBook = new AddressBook();
+        addressBook.unreadablePath = path;
+        return addressBook;
+    }
+
     /**
      * Exports the AddressBook object to an internal file at the specified path.
+     * The file is written in the background by the {@link BackgroundSaver} of the AddressBook, so the method returns immediately.
+     * If the AddressBook has been read from the same path, only the changes made since then are appended to its journal,
+     * and the whole file is rewritten once the journal has grown too big. Otherwise the AddressBook is bound to the new path
+     * and a full snapshot is written there. An AddressBook standing for a file that could not be read is never written over it.
      * @param path
      * @invariant path != null
-     * @see FileManager#exportToFile(String)
+     * @see FileManager#exportAddressBook(String, AddressBook)
+     * @see AddressBookJournal
      */
     public void writeToFile(String path) {
         if (path == null) {
             throw new IllegalArgumentException("Path cannot be null");
         }
+        if (path.equals(unreadablePath)) {
+            path = FileManager.getUnsavedPath(path);
+            System.err.println("AddressBook file " + unreadablePath + " could not be read and is left untouched. The AddressBook is saved to " + path + " instead.");
+        }
         
-        try {
-            FileManager.exportToFile(path,this);
-        } catch (Exception e) {
-            System.err.println("Error writing AddressBook to file: " + e.getMessage());
+        if (journal != null && journal.getAddressBookPath().equals(path)) {
+            saver.saveNow();
+            return;
+        }
+        synchronized (this) {
+            // The records of the previous file do not apply to the new one
+            journal = new AddressBookJournal(path);
+            saver = new BackgroundSaver(this, journal);
         }
+        saver.requestSnapshot();
     }
 
     /**
@@ -0,0 +1,582 @@
+package it.unisa.diem.Model;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+/**
+ * A set of non-negative ints, such as the identifiers of the contacts marked with a tag, compressed in the manner of a Roaring bitmap.
+ *
+ * The ints are split by their 16 high bits into chunks of 65536 values, and each chunk keeps its low bits in the smaller of two containers:
+ * a sorted array of 16-bit values while it holds up to {@link #ARRAY_LIMIT} ints, two bytes each, or a bitmap of 8 KiB once it holds more.
+ * Sparse sets take a few bytes per int, dense sets a bit per int, and the intersection, union and difference of two sets
+ * work a chunk at a time: merging two arrays, probing an array against a bitmap, or combining the words of two bitmaps.
+ * The ints are always visited in ascending order.
+ * A bitmap is not thread safe.
+ *
+ * @invariant keys.length == containers.length
+ * @invariant the first size keys are ascending, and their containers are not empty
+ */
+public class CompressedBitmap {
+    private static final int ARRAY_LIMIT = 4096; /**< The highest number of ints of a chunk kept in a sorted array: beyond it, a bitmap is smaller */
+    private static final int BITMAP_WORDS = 1024; /**< The number of longs of the bitmap of a chunk */
+
+    private char[] keys = new char[0]; /**< The high bits of the ints of each chunk, ascending */
+    private Container[] containers = new Container[0]; /**< The low bits of the ints of each chunk */
+    private int size; /**< The number of chunks */
+
+    /**
+     * The low bits of the ints of a chunk.
+     */
+    private abstract static class Container {
+        abstract int cardinality();
+        abstract boolean contains(char low);
+        /** Adds a value, returning the container now holding the chunk, which may be a new one. */
+        abstract Container add(char low);
+        /** Removes a value, returning the container now holding the chunk, which may be a new one. */
+        abstract Container remove(char low);
+        abstract Container copy();
+        abstract void forEach(int high, IntConsumer action);
+        /** Returns the lowest value not below from, or -1 if there is none. */
+        abstract int next(int from);
+        abstract int sizeInBytes();
+    }
+
+    /**
+     * A chunk holding up to {@link #ARRAY_LIMIT} ints, as a sorted array of their low bits.
+     */
+    private static final class ArrayContainer extends Container {
+        private char[] values; /**< The low bits, ascending, in the first cardinality positions */
+        private int cardinality; /**< The number of values */
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        @Override
+        Container add(char low) {
+            int at = Arrays.binarySearch(values, 0, cardinality, low);
+            if (at >= 0)
+                return this;
+            if (cardinality == ARRAY_LIMIT)
+                return toBitmap().add(low);
+            at = -at - 1;
+            if (cardinality == values.length)
+                values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, Math.max(4, cardinality * 2)));
+            System.arraycopy(values, at, values, at + 1, cardinality - at);
+            values[at] = low;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char low) {
+            int at = Arrays.binarySearch(values, 0, cardinality, low);
+            if (at < 0)
+                return this;
+            System.arraycopy(values, at + 1, values, at, cardinality - at - 1);
+            cardinality--;
+            return this;
+        }
+
+        BitmapContainer toBitmap() {
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < cardinality; i++)
+                words[values[i] >>> 6] |= 1L << values[i];
+            return new BitmapContainer(words, cardinality);
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, cardinality), cardinality);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < cardinality; i++)
+                action.accept(high | values[i]);
+        }
+
+        @Override
+        int next(int from) {
+            int at = Arrays.binarySearch(values, 0, cardinality, (char) from);
+            if (at < 0)
+                at = -at - 1;
+            return at < cardinality ? values[at] : -1;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return 2 * values.length;
+        }
+    }
+
+    /**
+     * A chunk holding more than {@link #ARRAY_LIMIT} ints, as a bitmap of their low bits.
+     */
+    private static final class BitmapContainer extends Container {
+        private final long[] words; /**< The bits of the values, {@link #BITMAP_WORDS} longs */
+        private int cardinality; /**< The number of bits set */
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (words[low >>> 6] & 1L << low) != 0;
+        }
+
+        @Override
+        Container add(char low) {
+            if (!contains(low)) {
+                words[low >>> 6] |= 1L << low;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char low) {
+            if (!contains(low))
+                return this;
+            words[low >>> 6] &= ~(1L << low);
+            cardinality--;
+            return cardinality <= ARRAY_LIMIT ? toArray() : this;
+        }
+
+        Container toArray() {
+            char[] values = new char[cardinality];
+            int n = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++)
+                for (long word = words[w]; word != 0; word &= word - 1)
+                    values[n++] = (char) (w << 6 | Long.numberOfTrailingZeros(word));
+            return new ArrayContainer(values, n);
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int w = 0; w < BITMAP_WORDS; w++)
+                for (long word = words[w]; word != 0; word &= word - 1)
+                    action.accept(high | w << 6 | Long.numberOfTrailingZeros(word));
+        }
+
+        @Override
+        int next(int from) {
+            int w = from >>> 6;
+            for (long word = words[w] & -1L << from; ; word = words[w]) {
+                if (word != 0)
+                    return w << 6 | Long.numberOfTrailingZeros(word);
+                if (++w == BITMAP_WORDS)
+                    return -1;
+            }
+        }
+
+        @Override
+        int sizeInBytes() {
+            return 8 * BITMAP_WORDS;
+        }
+    }
+
+    /**
+     * Creates an empty bitmap.
+     */
+    public CompressedBitmap() {
+    }
+
+    /**
+     * Creates a bitmap holding the given ints.
+     *
+     * @param[in] values the ints to hold, in any order
+     * @return the bitmap of the ints
+     * @throws IllegalArgumentException if a value is negative
+     */
+    public static CompressedBitmap of(int... values) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int value : values)
+            bitmap.add(value);
+        return bitmap;
+    }
+
+    private static char high(int value) {
+        return (char) (value >>> 16);
+    }
+
+    private static char low(int value) {
+        return (char) value;
+    }
+
+    private int find(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    /**
+     * Adds an int to the bitmap.
+     *
+     * @param[in] value the int to add
+     * @return true if the bitmap did not hold it already
+     * @throws IllegalArgumentException if value is negative
+     */
+    public boolean add(int value) {
+        if (value < 0)
+            throw new IllegalArgumentException("Value cannot be negative");
+        int at = find(high(value));
+        if (at < 0) {
+            at = -at - 1;
+            insert(at, high(value), new ArrayContainer(new char[4], 0));
+        }
+        int before = containers[at].cardinality();
+        containers[at] = containers[at].add(low(value));
+        return containers[at].cardinality() > before;
+    }
+
+    /**
+     * Removes an int from the bitmap.
+     *
+     * @param[in] value the int to remove
+     * @return true if the bitmap held it
+     */
+    public boolean remove(int value) {
+        if (value < 0)
+            return false;
+        int at = find(high(value));
+        if (at < 0)
+            return false;
+        int before = containers[at].cardinality();
+        containers[at] = containers[at].remove(low(value));
+        boolean removed = containers[at].cardinality() < before;
+        if (containers[at].cardinality() == 0) {
+            System.arraycopy(keys, at + 1, keys, at, size - at - 1);
+            System.arraycopy(containers, at + 1, containers, at, size - at - 1);
+            containers[--size] = null;
+        }
+        return removed;
+    }
+
+    /**
+     * Returns true if the bitmap holds an int.
+     *
+     * @param[in] value the int to look for
+     * @return true if the bitmap holds the int
+     */
+    public boolean contains(int value) {
+        if (value < 0)
+            return false;
+        int at = find(high(value));
+        return at >= 0 && containers[at].contains(low(value));
+    }
+
+    /**
+     * Returns the number of ints held.
+     *
+     * @return the cardinality of the bitmap
+     */
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++)
+            cardinality += containers[i].cardinality();
+        return cardinality;
+    }
+
+    /**
+     * Returns true if the bitmap holds no int.
+     *
+     * @return true if the bitmap is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns an estimate of the memory taken by the ints of the bitmap, without the overhead of the objects.
+     *
+     * @return the size of the containers and keys, in bytes
+     */
+    public long sizeInBytes() {
+        long bytes = 2L * keys.length;
+        for (int i = 0; i < size; i++)
+            bytes += containers[i].sizeInBytes();
+        return bytes;
+    }
+
+    /**
+     * Performs an action for every int held, in ascending order.
+     *
+     * @param[in] action the action to perform
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++)
+            containers[i].forEach(keys[i] << 16, action);
+    }
+
+    /**
+     * Returns an iterator over the ints held, in ascending order. The ints are found one at a time, as they are asked for,
+     * so that a caller stopping early does not pay for the rest of the bitmap.
+     * The bitmap must not be modified while it is iterated.
+     *
+     * @return the iterator
+     */
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int chunk; /**< The position of the chunk of the next int, size once every int has been returned */
+            private int low = size == 0 ? -1 : containers[0].next(0); /**< The low bits of the next int */
+
+            @Override
+            public boolean hasNext() {
+                return chunk < size;
+            }
+
+            @Override
+            public int nextInt() {
+                if (chunk >= size)
+                    throw new NoSuchElementException();
+                int value = keys[chunk] << 16 | low;
+                low = low == 0xFFFF ? -1 : containers[chunk].next(low + 1);
+                if (low < 0 && ++chunk < size)
+                    low = containers[chunk].next(0);
+                return value;
+            }
+        };
+    }
+
+    /**
+     * Returns the ints held.
+     *
+     * @return the ints of the bitmap, ascending
+     */
+    public int[] toArray() {
+        int[] values = new int[cardinality()];
+        int[] n = {0};
+        forEach(value -> values[n[0]++] = value);
+        return values;
+    }
+
+    /**
+     * Returns a copy of the bitmap, which does not change with it.
+     *
+     * @return the copy
+     */
+    public CompressedBitmap copy() {
+        CompressedBitmap copy = new CompressedBitmap();
+        copy.keys = Arrays.copyOf(keys, size);
+        copy.containers = new Container[size];
+        for (int i = 0; i < size; i++)
+            copy.containers[i] = containers[i].copy();
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Returns the ints held by both this bitmap and another.
+     *
+     * @param[in] other the other bitmap
+     * @return a new bitmap, the intersection of the two
+     */
+    public CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        for (int i = 0, j = 0; i < size && j < other.size; ) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container c = and(containers[i], other.containers[j]);
+                if (c.cardinality() > 0)
+                    result.append(keys[i], c);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ints held by this bitmap, another, or both.
+     *
+     * @param[in] other the other bitmap
+     * @return a new bitmap, the union of the two
+     */
+    public CompressedBitmap or(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0, j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || i < size && keys[i] < other.keys[j]) {
+                result.append(keys[i], containers[i].copy());
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.append(keys[i], or(containers[i], other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ints held by this bitmap but not by another.
+     *
+     * @param[in] other the other bitmap
+     * @return a new bitmap, the difference of the two
+     */
+    public CompressedBitmap andNot(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        for (int i = 0, j = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i])
+                j++;
+            Container c = j < other.size && other.keys[j] == keys[i] ? andNot(containers[i], other.containers[j]) : containers[i].copy();
+            if (c.cardinality() > 0)
+                result.append(keys[i], c);
+        }
+        return result;
+    }
+
+    private static Container and(Container a, Container b) {
+        if (a instanceof BitmapContainer && b instanceof BitmapContainer) {
+            long[] words = new long[BITMAP_WORDS];
+            int cardinality = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                words[w] = ((BitmapContainer) a).words[w] & ((BitmapContainer) b).words[w];
+                cardinality += Long.bitCount(words[w]);
+            }
+            BitmapContainer c = new BitmapContainer(words, cardinality);
+            return cardinality <= ARRAY_LIMIT ? c.toArray() : c;
+        }
+        // An array keeps the values the other container has
+        ArrayContainer array = (ArrayContainer) (a instanceof ArrayContainer ? a : b);
+        Container probed = array == a ? b : a;
+        char[] values = new char[array.cardinality];
+        int n = 0;
+        for (int i = 0; i < array.cardinality; i++)
+            if (probed.contains(array.values[i]))
+                values[n++] = array.values[i];
+        return new ArrayContainer(values, n);
+    }
+
+    private static Container or(Container a, Container b) {
+        if (a instanceof ArrayContainer && b instanceof ArrayContainer) {
+            ArrayContainer x = (ArrayContainer) a, y = (ArrayContainer) b;
+            char[] values = new char[x.cardinality + y.cardinality];
+            int i = 0, j = 0, n = 0;
+            while (i < x.cardinality || j < y.cardinality) {
+                if (j == y.cardinality || i < x.cardinality && x.values[i] < y.values[j])
+                    values[n++] = x.values[i++];
+                else if (i == x.cardinality || x.values[i] > y.values[j])
+                    values[n++] = y.values[j++];
+                else {
+                    values[n++] = x.values[i++];
+                    j++;
+                }
+            }
+            ArrayContainer c = new ArrayContainer(values, n);
+            return n <= ARRAY_LIMIT ? c : c.toBitmap();
+        }
+        // A bitmap takes the values of the other container
+        Container source = a instanceof BitmapContainer ? a : b;
+        Container other = source == a ? b : a;
+        BitmapContainer bitmap = (BitmapContainer) source.copy();
+        if (other instanceof BitmapContainer) {
+            int cardinality = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                bitmap.words[w] |= ((BitmapContainer) other).words[w];
+                cardinality += Long.bitCount(bitmap.words[w]);
+            }
+            bitmap.cardinality = cardinality;
+        } else {
+            other.forEach(0, value -> bitmap.add((char) value));
+        }
+        return bitmap;
+    }
+
+    private static Container andNot(Container a, Container b) {
+        if (a instanceof ArrayContainer) {
+            ArrayContainer array = (ArrayContainer) a;
+            char[] values = new char[array.cardinality];
+            int n = 0;
+            for (int i = 0; i < array.cardinality; i++)
+                if (!b.contains(array.values[i]))
+                    values[n++] = array.values[i];
+            return new ArrayContainer(values, n);
+        }
+        BitmapContainer bitmap = (BitmapContainer) a.copy();
+        if (b instanceof BitmapContainer) {
+            int cardinality = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                bitmap.words[w] &= ~((BitmapContainer) b).words[w];
+                cardinality += Long.bitCount(bitmap.words[w]);
+            }
+            bitmap.cardinality = cardinality;
+        } else {
+            ArrayContainer array = (ArrayContainer) b;
+            for (int i = 0; i < array.cardinality; i++)
+                if (bitmap.contains(array.values[i])) {
+                    bitmap.words[array.values[i] >>> 6] &= ~(1L << array.values[i]);
+                    bitmap.cardinality--;
+                }
+        }
+        return bitmap.cardinality <= ARRAY_LIMIT ? bitmap.toArray() : bitmap;
+    }
+
+    private void insert(int at, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, Math.max(4, size * 2));
+            containers = Arrays.copyOf(containers, Math.max(4, size * 2));
+        }
+        System.arraycopy(keys, at, keys, at + 1, size - at);
+        System.arraycopy(containers, at, containers, at + 1, size - at);
+        keys[at] = key;
+        containers[at] = container;
+        size++;
+    }
+
+    private void append(char key, Container container) {
+        insert(size, key, container);
+    }
+
+    /**
+     * Returns true if the other object is a bitmap holding the same ints.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this)
+            return true;
+        if (!(obj instanceof CompressedBitmap))
+            return false;
+        return Arrays.equals(toArray(), ((CompressedBitmap) obj).toArray());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toArray());
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -1,8 +1,8 @@
 package it.unisa.diem.Model;
 
-import java.io.DataOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -11,11 +11,13 @@ import java.io.StreamCorruptedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.util.AbstractSet;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
-import java.util.TreeSet;
+import java.util.Set;
 
 import ezvcard.VCard;
 import ezvcard.parameter.ImageType;
@@ -26,13 +28,11 @@ import ezvcard.property.StructuredName;
 import ezvcard.property.Telephone;
 import it.unisa.diem.Controller.ProfileSelectionController;
 import it.unisa.diem.Model.Interfaces.Taggable;
-import it.unisa.diem.Utility.FileManager;
+import it.unisa.diem.Utility.PictureStore;
+import javafx.beans.InvalidationListener;
 import javafx.beans.binding.Bindings;
-import javafx.beans.property.SetProperty;
-import javafx.beans.property.SimpleSetProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
-import javafx.collections.FXCollections;
 
 /**
  * A class representing a contact in the address book.
@@ -45,11 +45,12 @@ import javafx.collections.FXCollections;
  * @invariant surname!=null
  * @invariant email!=null
  * @invariant phoneNumber!=null
- * @invariant tags!=null
+ * @invariant tagIds!=null
  * @invariant fullName!=null
  */
 
 public class Contact implements Comparable<Contact>, Serializable, Taggable {
+    private static final long serialVersionUID = 4087444110225706997L; /**< Pinned to the value computed for the original class, so that existing address book files stay readable */
     public transient static final int MAX_EMAILS = 3; /**< The maximum number of emails that can be associated with a contact */
     public transient static final int MAX_PHONENUMBERS = 3; /**< The maximum number of phone numbers that can be associated with a contact */
     
@@ -58,8 +59,14 @@ public class Contact implements Comparable<Contact>, Serializable, Taggable {
     private transient StringProperty fullName; /** The full name of the person to be associated with the contact (in the form "surname name")*/
     private String[] email; /** The email addresses of the person to be associated with the contact */
     private String[] phoneNumber; /** The phone numbers of the person to be associated with the contact */
-    private transient SetProperty<Tag> tags; /** The tags associated with the contact */
+    private static final int[] NO_TAGS = new int[0]; /** The identifiers of the tags of a contact without tags */
+    private transient TagRegistry tagRegistry; /** The registry of the tags of the contact: the one of its address book, or {@link TagRegistry#DETACHED} if it has not been added to one */
+    private transient int[] tagIds; /** The identifiers in tagRegistry of the tags associated with the contact, in the order of their names; replaced, never modified, when the tags change */
     private String picture; /** The internal path of the picture associated with the contact */
+    private int id; /** The identifier of the contact inside its address book (0 if it has not been added to one yet) */
+    private transient String referencedPicture; /** The picture this contact holds a reference to in the {@link PictureStore}, null if it holds none */
+    private transient volatile int version; /** The number of changes of the searchable fields of the contact, which outdate its search keys */
+    private transient volatile SearchKeys searchKeys; /** The search keys of the contact, outdated if computed from an older version; null until first read */
 
 
     /**
@@ -80,7 +87,43 @@ public class Contact implements Comparable<Contact>, Serializable, Taggable {
         for (int i = 0; i < MAX_PHONENUMBERS; i++) {
             phoneNumber[i] = "";
         }
-        tags = new SimpleSetProperty<Tag>(FXCollections.observableSet(new TreeSet<Tag>()));
+        tagRegistry = TagRegistry.DETACHED;
+        tagIds = NO_TAGS;
+        observeSearchableFields();
+    }
+
+    /**
+     * Outdates the search keys whenever the name or the surname change, however they are changed.
+     * The email addresses, phone numbers and tags are plain arrays: their setters outdate the keys themselves.
+     */
+    private void observeSearchableFields() {
+        InvalidationListener outdate = observable -> changed();
+        name.addListener(outdate);
+        surname.addListener(outdate);
+    }
+
+    /**
+     * Outdates the search keys of the contact. Only the thread modifying the contact calls it.
+     */
+    private void changed() {
+        version++;
+    }
+
+    /**
+     * Returns the searchable fields of the contact, normalized for the search filters and indexes.
+     * They are computed at the first call after the contact changes, and shared by the following calls.
+     * Keys read while another thread modifies the contact may miss the modification, and are computed again at the next call.
+     *
+     * @return the search keys of the contact
+     */
+    public SearchKeys getSearchKeys() {
+        SearchKeys keys = searchKeys;
+        int current = version;
+        if (keys == null || keys.getVersion() != current) {
+            keys = new SearchKeys(this, current);
+            searchKeys = keys;
+        }
+        return keys;
     }
 
     /**
@@ -95,6 +138,29 @@ public class Contact implements Comparable<Contact>, Serializable, Taggable {
         setSurname(surname);
     }
 
+    /**
+     * Creates a new Contact with the given values, as read from an address book file.
+     * 
+     * @param[in] id the identifier of the Contact inside its address book
+     * @param[in] name the name of the new Contact
+     * @param[in] surname the surname of the new Contact
+     * @param[in] email the email addresses of the new Contact, padded with empty strings up to {@link #MAX_EMAILS}
+     * @param[in] phoneNumber the phone numbers of the new Contact, padded with empty strings up to {@link #MAX_PHONENUMBERS}
+     * @param[in] tags the names of the tags of the new Contact
+     * @param[in] picture the internal path of the picture of the new Contact
+     */
+    public Contact(int id, String name, String surname, String[] email, String[] phoneNumber, String[] tags, String picture) {
+        this(name, surname);
+        this.id = id;
+        System.arraycopy(email, 0, this.email, 0, MAX_EMAILS);
+        System.arraycopy(phoneNumber, 0, this.phoneNumber, 0, MAX_PHONENUMBERS);
+        for (String tag : tags)
+            addTag(tag);
+        this.picture = picture;
+        // The reference was counted when the contact was saved
+        this.referencedPicture = picture;
+    }
+
     private int size(String[] s){
         int i=0;
         for(String e:s){
@@ -105,6 +171,13 @@ public class Contact implements Comparable<Contact>, Serializable, Taggable {
         return i;
     }
 
+    private static int usedSlots(String[] s) {
+        int i = s.length;
+        while (i > 0 && s[i - 1].isEmpty())
+            i--;
+        return i;
+    }
+
     /**
      * Sets the name of the Contact to the given value.
      * 
@@ -177,7 +250,8 @@ public class Contact implements Comparable<Contact>, Serializable, Taggable {
     }
 
     /**
-     * Takes the picture at the specified path and copies it in the application's assets folder, then assigns it to the contact as a profile picture.
+     * Takes the picture at the specified path and saves it in the {@link PictureStore}, then assigns it to the contact as a profile picture.
+     * A picture already in the store is not copied again. The previous picture is deleted by the store once no contact or profile refers to it.
      * 
      * @param[in] picture the path of the picture to assign to the contact
      * @throws IOException if the picture cannot be copied in the assets folder, or the specified path is not valid
@@ -189,16 +263,7 @@ public class Contact implements Comparable<Contact>, Serializable, Taggable {
         } else if(!Files.exists(profilePicturePath)) {
             throw new FileNotFoundException("File: " + profilePicture + " does not exist.");
         } else {
-            String fileName = profilePicturePath.getFileName().toString();
-            String extension = fileName.substring(fileName.lastIndexOf('.') + 1); 
-            Path destinationPath = Paths.get(FileManager.generateProfilePicturePath(extension)); 
-            String newProfilePicturePath = Files.copy(profilePicturePath, destinationPath, StandardCopyOption.REPLACE_EXISTING).toString();
-            
-            // Delete the old profile picture if it is not the default picture
-            if (!this.picture.equals(getClass().getResource("/it/unisa/diem/view_resources/default_picture.png").toExternalForm())&&!this.picture.isEmpty()) {
-            System.out.println(Files.deleteIfExists(Paths.get(this.picture))? "Old profile picture deleted" : "Old profile picture not deleted");
-            }
-            this.picture = newProfilePicturePath;
+            this.picture = PictureStore.store(profilePicturePath);
         }
     }
 
@@ -225,6 +290,43 @@ public class Contact implements Comparable<Contact>, Serializable, Taggable {
         return picture;
     }
 
+    /**
+     * Returns the picture this contact holds a reference to in the {@link PictureStore}, which differs from {@link #getPicture()}
+     * after the picture has been changed, until the change is saved in an address book.
+     * 
+     * @return the referenced picture, null if the contact holds no reference
+     */
+    String getReferencedPicture() {
+        return referencedPicture;
+    }
+
+    /**
+     * Records the picture this contact holds a reference to in the {@link PictureStore}.
+     * 
+     * @param[in] picture the referenced picture, null if the contact holds no reference
+     */
+    void setReferencedPicture(String picture) {
+        this.referencedPicture = picture;
+    }
+
+    /**
+     * Returns the identifier assigned to the Contact by the {@link AddressBook} that contains it.
+     * 
+     * @return the identifier of the Contact, or 0 if it has not been added to an address book yet
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Sets the identifier of the Contact. Only the {@link AddressBook} is allowed to assign it.
+     * 
+     * @param[in] id the new identifier of the Contact
+     */
+    void setId(int id) {
+        this.id = id;
+    }
+
     /**
      * Returns the list of the email addresses associated to the Contact.
      * 
@@ -286,6 +388,7 @@ public class Contact implements Comparable<Contact>, Serializable, Taggable {
         for (String mail : email) {
             this.email[size(this.email)]=mail;
         }
+        changed();
         return true;
     }
 
@@ -305,6 +408,7 @@ public class Contact implements Comparable<Contact>, Serializable, Taggable {
         if(email.isEmpty())
             return false;
         this.email[index]=email;
+        changed();
         return true;
     }
 
@@ -326,6 +430,7 @@ public class Contact implements Comparable<Contact>, Serializable, Taggable {
                 email[i]=email[i+1];
             }
             email[MAX_EMAILS-1]="";
+            changed();
             return true;
         }
         else{
@@ -351,6 +456,7 @@ public class Contact implements Comparable<Contact>, Serializable, Taggable {
         for (String phone : phoneNumber) {
             this.phoneNumber[size(this.phoneNumber)]=phone;
         }
+        changed();
         return true;
     }
 
@@ -371,6 +477,7 @@ public class Contact implements Comparable<Contact>, Serializable, Taggable {
         if(phoneNumber.isEmpty())
             return false;
         this.phoneNumber[index]=phoneNumber;
+        changed();
         return true;
     }
 
@@ -391,6 +498,7 @@ public class Contact implements Comparable<Contact>, Serializable, Taggable {
                 phoneNumber[i]=phoneNumber[i+1];
             }
             phoneNumber[MAX_PHONENUMBERS-1]="";
+            changed();
             return true;
         }
         else{
@@ -408,9 +516,20 @@ public class Contact implements Comparable<Contact>, Serializable, Taggable {
      * @return true if the tag has been added (hence there was no Tag with the same name), false otherwise
      */
     public boolean addTag(String string) {
-        Tag t=new Tag();
-        if(!t.setName(string)){return false;}
-        return this.tags.add(t);
+        int tagId = tagRegistry.register(string);
+        if (tagId < 0 || indexOfTag(tagId) >= 0)
+            return false;
+        int[] ids = tagIds;
+        int at = 0;
+        while (at < ids.length && tagRegistry.get(ids[at]).getNameValue().compareTo(string) < 0)
+            at++;
+        int[] added = new int[ids.length + 1];
+        System.arraycopy(ids, 0, added, 0, at);
+        added[at] = tagId;
+        System.arraycopy(ids, at, added, at + 1, ids.length - at);
+        tagIds = added;
+        changed();
+        return true;
     }
 
     
@@ -424,9 +543,51 @@ public class Contact implements Comparable<Contact>, Serializable, Taggable {
      * @return true if the name string was valid and the tag has been removed (hence it was present), false otherwise
      */
     public boolean removeTag(String string) {
-        Tag t=new Tag();
-        if(!t.setName(string)){return false;}
-        return this.tags.remove(t);
+        int at = indexOfTag(tagRegistry.idOf(string));
+        if (at < 0)
+            return false;
+        int[] ids = tagIds;
+        int[] removed = new int[ids.length - 1];
+        System.arraycopy(ids, 0, removed, 0, at);
+        System.arraycopy(ids, at + 1, removed, at, ids.length - at - 1);
+        tagIds = removed;
+        changed();
+        return true;
+    }
+
+    /**
+     * Returns true if the contact is marked with a tag. The tag is looked up once in the registry, then compared by its identifier.
+     * 
+     * @param[in] tag the tag, or any tag with the same name
+     * @return true if the contact is marked with a tag with the same name
+     */
+    public boolean hasTag(Tag tag) {
+        return indexOfTag(tagRegistry.idOf(tag)) >= 0;
+    }
+
+    private int indexOfTag(int tagId) {
+        if (tagId < 0)
+            return -1;
+        int[] ids = tagIds;
+        for (int i = 0; i < ids.length; i++)
+            if (ids[i] == tagId)
+                return i;
+        return -1;
+    }
+
+    /**
+     * Moves the tags of the contact to the registry of the address book it is added to, so that it shares the tags of the other contacts of the book.
+     * 
+     * @param[in] registry the registry of the address book
+     */
+    void useTagRegistry(TagRegistry registry) {
+        if (registry == tagRegistry)
+            return;
+        int[] ids = new int[tagIds.length];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = registry.register(tagRegistry.get(tagIds[i]).getNameValue());
+        tagRegistry = registry;
+        tagIds = ids;
     }
 
     /**
@@ -448,11 +609,62 @@ public class Contact implements Comparable<Contact>, Serializable, Taggable {
     }
 
     /**
-     * Returns the set of tags associated with the contact.
-     * @return the set of tags associated with the contact
+     * Returns the set of tags associated with the contact, as they are when the method is called.
+     * The tags are the canonical instances of the {@link TagRegistry} of the contact, ordered by name.
+     * @return an unmodifiable set of the tags associated with the contact
+     * @see #addTag(String)
+     * @see #removeTag(String)
      */
-    public SetProperty<Tag> getTags() {
-        return tags;
+    public Set<Tag> getTags() {
+        return new TagSet(tagRegistry, tagIds);
+    }
+
+    /**
+     * The tags of a contact, read from the identifiers it had when they were asked for.
+     */
+    private static final class TagSet extends AbstractSet<Tag> {
+        private final TagRegistry registry; /** The registry of the identifiers */
+        private final int[] ids; /** The identifiers of the tags, in the order of their names */
+
+        TagSet(TagRegistry registry, int[] ids) {
+            this.registry = registry;
+            this.ids = ids;
+        }
+
+        @Override
+        public int size() {
+            return ids.length;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Tag))
+                return false;
+            int tagId = registry.idOf((Tag) o);
+            for (int id : ids)
+                if (id == tagId)
+                    return true;
+            return false;
+        }
+
+        @Override
+        public Iterator<Tag> iterator() {
+            return new Iterator<Tag>() {
+                private int next; /** The position of the next tag */
+
+                @Override
+                public boolean hasNext() {
+                    return next < ids.length;
+                }
+
+                @Override
+                public Tag next() {
+                    if (next >= ids.length)
+                        throw new NoSuchElementException();
+                    return registry.get(ids[next++]);
+                }
+            };
+        }
     }
 
     /**
@@ -494,7 +706,7 @@ public class Contact implements Comparable<Contact>, Serializable, Taggable {
      *         false otherwise
      */
     public boolean containsTag(String str) {
-        for (Tag t : tags)
+        for (Tag t : getTags())
             if (t.getNameValue().contains(str)) 
                 return true;
         return false;
@@ -531,21 +743,31 @@ public class Contact implements Comparable<Contact>, Serializable, Taggable {
        if(obj==null){return false;}
        if(obj instanceof Contact){
            Contact c=(Contact)obj;
-           return ((c.getFullNameValue().equals(this.getFullNameValue()))&&(c.getTags().equals(this.getTags()))&&(c.getEmailList().equals(this.getEmailList()))&&(c.getPhoneNumberList().equals(this.getPhoneNumberList())));
+           return ((c.getFullNameValue().equals(this.getFullNameValue()))&&sameTags(c)&&(c.getEmailList().equals(this.getEmailList()))&&(c.getPhoneNumberList().equals(this.getPhoneNumberList())));
         }
         return false;
     }
     
     @Override
     public int hashCode() {
-        return Objects.hash(fullName.get(), Arrays.hashCode(email), Arrays.hashCode(phoneNumber), tags);
+        int tagsHash = 1;
+        for (Tag t : getTags())
+            tagsHash = 31 * tagsHash + t.getNameValue().hashCode();
+        return Objects.hash(fullName.get(), Arrays.hashCode(email), Arrays.hashCode(phoneNumber), tagsHash);
+    }
+
+    private boolean sameTags(Contact c) {
+        // Tags of the same registry are the same if their identifiers are
+        if (c.tagRegistry == tagRegistry)
+            return Arrays.equals(c.tagIds, tagIds);
+        return c.getTags().equals(getTags());
     }
 
     private void writeObject(ObjectOutputStream out) throws IOException {
         out.defaultWriteObject();
         out.writeUTF(name.get());
         out.writeUTF(surname.get());
-        for (Tag tag : tags) {
+        for (Tag tag : getTags()) {
             out.writeUTF(tag.getNameValue());
         }
     }
@@ -556,17 +778,16 @@ public class Contact implements Comparable<Contact>, Serializable, Taggable {
         surname = new SimpleStringProperty(in.readUTF());
         fullName = new SimpleStringProperty();
         fullName.bind(Bindings.concat(surname, " ", name));
-        tags = new SimpleSetProperty<>(FXCollections.observableSet(new TreeSet<>()));
-        Tag t;
+        tagRegistry = TagRegistry.DETACHED;
+        tagIds = NO_TAGS;
         try {
-            while (true) {
-                t = new Tag();
-                t.setName(in.readUTF());
-                tags.add(t);
-            }
+            while (true)
+                addTag(in.readUTF());
         } catch (IOException e) {
             // End of file reached
         }
+        referencedPicture = picture;
+        observeSearchableFields();
     }
 
     public VCard toVCard() {
@@ -596,7 +817,7 @@ public class Contact implements Comparable<Contact>, Serializable, Taggable {
 
         // Add tags
         Categories categories = new Categories();
-        for (Tag tag : tags)
+        for (Tag tag : getTags())
             categories.getValues().add(tag.getNameValue());
         vCard.addCategories(categories);
 
@@ -652,35 +873,83 @@ public class Contact implements Comparable<Contact>, Serializable, Taggable {
         // Add tags
         Categories categories = vCard.getCategories();
         if (categories != null) {
-            for (String tag : categories.getValues()) {
-                Tag t = new Tag();
-                t.setName(tag);
-                result.tags.add(t);
-            }
+            for (String tag : categories.getValues())
+                result.addTag(tag);
         }
 
-        // Add picture
+        // Add picture: a photo already in the store, such as when importing the same vCard again, is not written again
         List<Photo> photos = vCard.getPhotos();
-        if (photos != null && !photos.isEmpty()) {
-            String path;
+        if (photos != null && !photos.isEmpty() && photos.get(0).getData() != null) {
+            String extension;
             Photo photo = photos.get(0);
             ImageType type=photo.getContentType();
-            if (type == ImageType.JPEG) {
-                path = FileManager.generateProfilePicturePath("jpg");
-            } else if (type == ImageType.PNG) {
-                path = FileManager.generateProfilePicturePath("png");
+            if (type == ImageType.PNG) {
+                extension = "png";
             } else if (type == ImageType.GIF) {
-                path = FileManager.generateProfilePicturePath("gif");
+                extension = "gif";
             } else {
-                path = FileManager.generateProfilePicturePath("jpg");
+                extension = "jpg";
             }
-            try (DataOutputStream dos = new DataOutputStream(new FileOutputStream(path))) {
-                dos.write(photo.getData());
-            } catch (Exception e) {
+            try {
+                result.picture = PictureStore.store(photo.getData(), extension);
+            } catch (IOException e) {
                 e.printStackTrace();
             }
-            result.picture = path;
         }   
         return result;
     }
+
+    /**
+     * Writes the Contact as a compact record, used by the address book journal and binary files.
+     * The email addresses and phone numbers are written up to the last non-empty one, with the empty slots before it,
+     * so that a value stored after an empty slot keeps its slot.
+     * 
+     * @param[in] out the output to write the record to
+     * @throws IOException if the record cannot be written
+     * @see #readRecord(DataInput)
+     */
+    public void writeRecord(DataOutput out) throws IOException {
+        out.writeInt(id);
+        out.writeUTF(name.get() == null ? "" : name.get());
+        out.writeUTF(surname.get() == null ? "" : surname.get());
+        int emails = usedSlots(email);
+        out.writeByte(emails);
+        for (int i = 0; i < emails; i++)
+            out.writeUTF(email[i]);
+        int phones = usedSlots(phoneNumber);
+        out.writeByte(phones);
+        for (int i = 0; i < phones; i++)
+            out.writeUTF(phoneNumber[i]);
+        Set<Tag> tags = getTags();
+        out.writeShort(tags.size());
+        for (Tag tag : tags)
+            out.writeUTF(tag.getNameValue());
+        out.writeUTF(picture == null ? "" : picture);
+    }
+
+    /**
+     * Reads a Contact from a record written by {@link #writeRecord(DataOutput)}.
+     * 
+     * @param[in] in the input to read the record from
+     * @return the Contact described by the record, with its identifier
+     * @throws IOException if the record cannot be read
+     */
+    public static Contact readRecord(DataInput in) throws IOException {
+        Contact result = new Contact();
+        result.id = in.readInt();
+        result.name.set(in.readUTF());
+        result.surname.set(in.readUTF());
+        int emails = in.readByte();
+        for (int i = 0; i < emails; i++)
+            result.email[i] = in.readUTF();
+        int phones = in.readByte();
+        for (int i = 0; i < phones; i++)
+            result.phoneNumber[i] = in.readUTF();
+        int tagCount = in.readShort();
+        for (int i = 0; i < tagCount; i++)
+            result.addTag(in.readUTF());
+        result.picture = in.readUTF();
+        result.referencedPicture = result.picture;
+        return result;
+    }
 }
\ No newline at end of file
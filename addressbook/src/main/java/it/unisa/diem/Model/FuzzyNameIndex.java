@@ -0,0 +1,307 @@
+package it.unisa.diem.Model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Index of the words of the names and surnames of the contacts, used to find the contacts whose name is close to a mistyped query
+ * without testing every contact.
+ *
+ * The distance between two words is their edit distance: the number of characters to insert, delete or replace to turn one into the other.
+ * The distinct words are kept in a BK-tree: the children of a word are grouped by their distance from it, so that, by the triangle inequality,
+ * a lookup only visits the children whose distance from the word differs from the distance of the query by at most the allowed one.
+ * A contact matches a query if every word of the query is close to a word of its name or surname; the matches are ranked
+ * by the sum of those distances.
+ * Contacts are compared by identity, as their equality and hash code change when they are edited.
+ *
+ * @invariant words != null
+ * @invariant owners != null
+ */
+public class FuzzyNameIndex {
+    public static final int MAX_DISTANCE = 2; /**< The highest edit distance tolerated between two words */
+    private static final int SHORT_WORD_LENGTH = 4; /**< The length up to which a word tolerates a single edit: two edits would turn it into almost anything */
+    private static final int MIN_STALE = 1024; /**< The number of unused words below which the tree is never rebuilt */
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+"); /**< The characters between two words */
+
+    /**
+     * A distinct word, with the contacts having it in their name or surname.
+     */
+    private static class Node {
+        private final String word; /**< The word, normalized as the {@link SearchKeys} */
+        private final List<Contact> owners = new ArrayList<>(1); /**< The contacts having the word, empty if the word is no longer used */
+        private Node[] children = new Node[0]; /**< The children at each distance from the word, null where there is none */
+
+        Node(String word) {
+            this.word = word;
+        }
+    }
+
+    /**
+     * A contact matching a query, with its distance from it.
+     */
+    private static class Match {
+        private final Contact contact; /**< The matching contact */
+        private int distance; /**< The sum of the distances of the words of the query from the closest words of the contact */
+        private int words; /**< The number of words of the query matched so far */
+
+        Match(Contact contact) {
+            this.contact = contact;
+        }
+    }
+
+    private Node root; /**< The root of the tree, null if no word has been indexed */
+    private final Map<String, Node> words = new HashMap<>(); /**< The node of each word of the tree */
+    private final Map<Contact, String[]> owners = new IdentityHashMap<>(); /**< The words of each indexed contact, as they were indexed */
+    private int staleWords; /**< The number of words of the tree no contact has any longer */
+
+    /**
+     * Creates an index of the names of the given contacts.
+     *
+     * @param[in] contacts the contacts to index
+     */
+    public FuzzyNameIndex(Collection<Contact> contacts) {
+        for (Contact c : contacts)
+            add(c);
+    }
+
+    /**
+     * Returns the distinct words of a text, normalized as the {@link SearchKeys}.
+     *
+     * @param[in] text the text to split
+     * @return the words of the text, an empty array if it has none or is null
+     */
+    public static String[] words(String text) {
+        if (text == null)
+            return new String[0];
+        return Arrays.stream(SEPARATORS.split(SearchKeys.normalize(text))).filter(w -> !w.isEmpty()).distinct().toArray(String[]::new);
+    }
+
+    /**
+     * Returns the words of the name and the surname of a contact.
+     *
+     * @param[in] c the contact
+     * @return the distinct words of the full name of the contact, normalized
+     */
+    public static String[] words(Contact c) {
+        return words(c.getSearchKeys().getNameSurname());
+    }
+
+    /**
+     * Returns the highest distance tolerated from a word of a query: one edit for short words, two for the others.
+     *
+     * @param[in] word the word of the query
+     * @param[in] maxDistance the highest distance requested
+     * @return the distance tolerated from the word
+     */
+    public static int tolerance(String word, int maxDistance) {
+        return Math.min(maxDistance, word.length() <= SHORT_WORD_LENGTH ? 1 : MAX_DISTANCE);
+    }
+
+    /**
+     * Returns the edit distance between two words: the number of characters to insert, delete or replace to turn one into the other.
+     *
+     * @param[in] a the first word
+     * @param[in] b the second word
+     * @return the edit distance between the words
+     */
+    public static int distance(String a, String b) {
+        return distance(a, b, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the edit distance between two words, stopping as soon as it is known to be higher than a bound.
+     *
+     * @param[in] a the first word
+     * @param[in] b the second word
+     * @param[in] bound the highest distance of interest
+     * @return the edit distance between the words, or bound + 1 if it is higher than bound
+     */
+    public static int distance(String a, String b, int bound) {
+        int over = bound == Integer.MAX_VALUE ? bound : bound + 1;
+        if (Math.abs(a.length() - b.length()) > bound)
+            return over;
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++)
+            previous[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            // Distances never decrease from a row to the next one
+            if (rowMin > bound)
+                return over;
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[b.length()], over);
+    }
+
+    /**
+     * Indexes the name of a contact, or reindexes it if the contact is already indexed.
+     *
+     * @param[in] c the contact to index
+     */
+    public void add(Contact c) {
+        remove(c);
+        String[] indexed = words(c);
+        for (String word : indexed)
+            insert(word).owners.add(c);
+        owners.put(c, indexed);
+    }
+
+    /**
+     * Removes the name of a contact from the index, using the name it had when it was indexed.
+     *
+     * @param[in] c the contact to remove
+     */
+    public void remove(Contact c) {
+        String[] indexed = owners.remove(c);
+        if (indexed == null)
+            return;
+        for (String word : indexed) {
+            Node node = words.get(word);
+            node.owners.removeIf(owner -> owner == c);
+            // Words cannot be taken out of a BK-tree: unused ones stay until the tree is rebuilt
+            if (node.owners.isEmpty())
+                staleWords++;
+        }
+        if (staleWords > MIN_STALE && staleWords > words.size() / 2)
+            rebuild();
+    }
+
+    /**
+     * Reindexes the name of a contact after it has been edited. Contacts that are not indexed are ignored.
+     *
+     * @param[in] c the edited contact
+     */
+    public void update(Contact c) {
+        if (owners.containsKey(c))
+            add(c);
+    }
+
+    /**
+     * Returns the number of indexed contacts.
+     *
+     * @return the number of contacts
+     */
+    public int size() {
+        return owners.size();
+    }
+
+    /**
+     * Returns the contacts closest to a query, among the ones accepted by a filter.
+     * Every word of the query must be within its tolerated distance from a word of the name or surname of a match.
+     *
+     * @param[in] query the text typed in the search bar
+     * @param[in] maxDistance the highest distance tolerated from a word of the query, at most {@link #MAX_DISTANCE}
+     * @param[in] k the highest number of contacts returned
+     * @param[in] filter the test the contacts must pass, such as a {@link it.unisa.diem.Model.Interfaces.Filter.TagFilter}
+     * @return at most k matching contacts, the closest first; contacts at the same distance are ordered by full name
+     * @see #tolerance(String, int)
+     */
+    public List<Contact> find(String query, int maxDistance, int k, Predicate<? super Contact> filter) {
+        String[] queryWords = words(query);
+        List<Contact> found = new ArrayList<>();
+        if (queryWords.length == 0 || root == null || k <= 0)
+            return found;
+        Map<Contact, Match> matches = new IdentityHashMap<>();
+        for (int w = 0; w < queryWords.length; w++) {
+            // The closest word of each contact counts, once
+            Map<Contact, Integer> closest = new IdentityHashMap<>();
+            int tolerance = tolerance(queryWords[w], maxDistance);
+            List<Node> pending = new ArrayList<>();
+            pending.add(root);
+            while (!pending.isEmpty()) {
+                Node node = pending.remove(pending.size() - 1);
+                int d = distance(queryWords[w], node.word);
+                if (d <= tolerance)
+                    for (Contact c : node.owners)
+                        closest.merge(c, d, Math::min);
+                for (int i = Math.max(1, d - tolerance); i <= d + tolerance && i < node.children.length; i++)
+                    if (node.children[i] != null)
+                        pending.add(node.children[i]);
+            }
+            for (Map.Entry<Contact, Integer> entry : closest.entrySet()) {
+                Match match = w == 0 ? matches.computeIfAbsent(entry.getKey(), Match::new) : matches.get(entry.getKey());
+                if (match != null && match.words == w) {
+                    match.distance += entry.getValue();
+                    match.words++;
+                }
+            }
+        }
+        Comparator<Match> closestFirst = Comparator.comparingInt((Match m) -> m.distance)
+                .thenComparing(m -> m.contact.getFullNameValue().toLowerCase())
+                .thenComparingInt(m -> m.contact.getId());
+        // The k closest matches are kept in a heap whose head is the farthest of them
+        PriorityQueue<Match> closest = new PriorityQueue<>(closestFirst.reversed());
+        for (Match match : matches.values()) {
+            if (match.words != queryWords.length || !filter.test(match.contact))
+                continue;
+            closest.add(match);
+            if (closest.size() > k)
+                closest.poll();
+        }
+        List<Match> ranked = new ArrayList<>(closest);
+        ranked.sort(closestFirst);
+        for (Match match : ranked)
+            found.add(match.contact);
+        return found;
+    }
+
+    /**
+     * Returns the node of a word, adding it to the tree if it is missing.
+     */
+    private Node insert(String word) {
+        Node node = words.get(word);
+        if (node != null) {
+            if (node.owners.isEmpty())
+                staleWords--;
+            return node;
+        }
+        node = new Node(word);
+        words.put(word, node);
+        if (root == null) {
+            root = node;
+            return node;
+        }
+        Node parent = root;
+        while (true) {
+            int d = distance(word, parent.word);
+            if (d >= parent.children.length)
+                parent.children = Arrays.copyOf(parent.children, d + 1);
+            if (parent.children[d] == null) {
+                parent.children[d] = node;
+                return node;
+            }
+            parent = parent.children[d];
+        }
+    }
+
+    /**
+     * Rebuilds the tree from the names of the indexed contacts, dropping the unused words.
+     */
+    private void rebuild() {
+        List<Contact> indexed = new ArrayList<>(owners.keySet());
+        owners.clear();
+        words.clear();
+        root = null;
+        staleWords = 0;
+        for (Contact c : indexed)
+            add(c);
+    }
+}
@@ -35,6 +35,14 @@ public interface ContactList {
      */
     void delete(Contact c);
 
+    /**
+     * Notifies the list that a Contact has been modified in place.
+     * 
+     * @param[in] c the modified Contact
+     * @pre the Contact is in the list
+     */
+    void update(Contact c);
+
     /**
      * Returns a Contact from the list.
      * 
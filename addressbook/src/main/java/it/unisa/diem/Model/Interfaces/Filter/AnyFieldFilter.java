@@ -0,0 +1,36 @@
+package it.unisa.diem.Model.Interfaces.Filter;
+
+import it.unisa.diem.Model.Contact;
+
+/**
+ * Concrete decorator of the Filter pattern that verifies if a Contact contains the substring passed to the BaseFilter in the construction chain,
+ * in any of the fields looked into by the search bar: its fullName, email, phoneNumber or tags field.
+ * Its constructor is passed as an outer method of a decorator construction chain, taking as argument another FilterDecorator, or a BaseFilter.
+ * @see NameFilter
+ * @see EmailFilter
+ * @see PhoneFilter
+ * @see TagFilter
+ */
+public class AnyFieldFilter extends FilterDecorator {
+    private final Filter[] fields; /**< The filters of the single fields, sharing the inner Filter */
+
+    /**
+     * @copydoc FilterDecorator::FilterDecorator()
+     */
+    public AnyFieldFilter(Filter filter) {
+        super(filter);
+        fields = new Filter[] {new TagFilter(filter), new NameFilter(filter), new EmailFilter(filter), new PhoneFilter(filter)};
+    }
+
+    /**
+     * @copydoc FilterDecorator::test()
+     * For this class, the condition is that one of the Contact's fullName, email, phoneNumber or tags fields contains the substring passed to the BaseFilter in the construction chain.
+     */
+    @Override
+    public boolean test(Contact contact) {
+        for (Filter field : fields)
+            if (field.test(contact))
+                return true;
+        return false;
+    }
+}
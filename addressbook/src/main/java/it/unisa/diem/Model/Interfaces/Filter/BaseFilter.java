@@ -1,6 +1,7 @@
 package it.unisa.diem.Model.Interfaces.Filter;
 
 import it.unisa.diem.Model.Contact;
+import it.unisa.diem.Model.SearchKeys;
 import javafx.beans.property.StringProperty;
 
 /**
@@ -11,6 +12,8 @@ import javafx.beans.property.StringProperty;
  */
 public class BaseFilter implements Filter {
     private StringProperty substring;
+    private String typed; /**< The value of substring the normalized one was computed from */
+    private String normalized; /**< The substring normalized as the search keys, computed once per value */
 
     /**
      * Constructs a BaseFilter with the given substring.
@@ -22,11 +25,17 @@ public class BaseFilter implements Filter {
     }
 
     /**
-     * Returns the substring to search for in the Contact, which has been passed as argument to the constructor.
+     * Returns the substring to search for in the Contact, which has been passed as argument to the constructor,
+     * trimmed and normalized as the {@link SearchKeys} of the contacts.
      */
     @Override
     public String getSubstring() {
-        return substring.get().trim().toLowerCase();
+        String value = substring.get();
+        if (value != typed) {
+            normalized = SearchKeys.normalize(value.trim());
+            typed = value;
+        }
+        return normalized;
     }
 
     /**
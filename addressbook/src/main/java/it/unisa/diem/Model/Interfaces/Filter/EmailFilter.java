@@ -24,9 +24,9 @@ public class EmailFilter extends FilterDecorator {
     @Override
     public boolean test(Contact contact) {
         String sub = getSubstring();
-        String[] emails = contact.getEmailList();
+        String[] emails = contact.getSearchKeys().getEmails();
         for (String e: emails)
-            if (e.toLowerCase().contains(sub))
+            if (e.contains(sub))
                 return true;
         return false;
     }
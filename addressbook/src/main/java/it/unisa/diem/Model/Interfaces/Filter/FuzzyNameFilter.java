@@ -0,0 +1,62 @@
+package it.unisa.diem.Model.Interfaces.Filter;
+
+import it.unisa.diem.Model.Contact;
+import it.unisa.diem.Model.FuzzyNameIndex;
+
+/**
+ * Concrete decorator of the Filter pattern that verifies if a Contact's fullName field is close to the substring passed to the BaseFilter in the construction chain,
+ * tolerating typing mistakes: every word of the substring must be within a small edit distance from a word of the name or surname.
+ * Its constructor is passed as an outer method of a decorator construction chain, taking as argument another FilterDecorator, or a BaseFilter.
+ * @see BaseFilter
+ * @see Filter
+ * @see FuzzyNameIndex
+ */
+public class FuzzyNameFilter extends FilterDecorator {
+    private final int maxDistance; /**< The highest edit distance tolerated from a word of the substring */
+
+    /**
+     * @copydoc FilterDecorator::FilterDecorator()
+     * The edit distance tolerated is the highest allowed, {@link FuzzyNameIndex#MAX_DISTANCE}.
+     */
+    public FuzzyNameFilter(Filter filter) {
+        this(filter, FuzzyNameIndex.MAX_DISTANCE);
+    }
+
+    /**
+     * Constructs a fuzzy name filter with the given inner Filter, tolerating at most the given edit distance from each word of the substring.
+     * Short words tolerate a single edit anyway.
+     * 
+     * @param[in] filter the inner Filter
+     * @param[in] maxDistance the highest edit distance tolerated, between 0 and {@link FuzzyNameIndex#MAX_DISTANCE}
+     * @see FuzzyNameIndex#tolerance(String, int)
+     */
+    public FuzzyNameFilter(Filter filter, int maxDistance) {
+        super(filter);
+        if (maxDistance < 0 || maxDistance > FuzzyNameIndex.MAX_DISTANCE)
+            throw new IllegalArgumentException("Distance must be between 0 and " + FuzzyNameIndex.MAX_DISTANCE);
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * @copydoc FilterDecorator::test()
+     * For this class, the condition is that every word of the substring passed to the BaseFilter in the construction chain is close to a word of the Contact's fullName field.
+     */
+    @Override
+    public boolean test(Contact contact) {
+        if (contact == null)
+            return false;
+        String[] words = FuzzyNameIndex.words(getSubstring());
+        if (words.length == 0)
+            return false;
+        String[] names = FuzzyNameIndex.words(contact);
+        for (String word : words) {
+            int tolerance = FuzzyNameIndex.tolerance(word, maxDistance);
+            boolean close = false;
+            for (int i = 0; i < names.length && !close; i++)
+                close = FuzzyNameIndex.distance(word, names[i], tolerance) <= tolerance;
+            if (!close)
+                return false;
+        }
+        return true;
+    }
+}
@@ -1,6 +1,7 @@
 package it.unisa.diem.Model.Interfaces.Filter;
 
 import it.unisa.diem.Model.Contact;
+import it.unisa.diem.Model.SearchKeys;
 
 
 /**
@@ -32,10 +33,8 @@ public class NameFilter extends FilterDecorator {
         if (contact == null || getSubstring().isEmpty()) {
             return false;
         }
-        String surname = contact.getSurnameValue() == null ? "" : contact.getSurnameValue().toLowerCase();
-        String name = contact.getNameValue() == null ? "" : contact.getNameValue().toLowerCase();
-        
-        return (surname + " " + name).contains(getSubstring()) ||
-               (name + " " + surname).contains(getSubstring());
+        SearchKeys keys = contact.getSearchKeys();
+        return keys.getSurnameName().contains(getSubstring()) ||
+               keys.getNameSurname().contains(getSubstring());
     }
 }
\ No newline at end of file
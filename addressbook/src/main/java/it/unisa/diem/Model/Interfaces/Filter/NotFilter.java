@@ -0,0 +1,29 @@
+package it.unisa.diem.Model.Interfaces.Filter;
+
+import it.unisa.diem.Model.Contact;
+
+/**
+ * Concrete decorator of the Filter pattern that negates the condition of the inner Filter: it verifies that a Contact does not satisfy it.
+ * Its constructor is passed as the outermost method of a decorator construction chain, taking as argument the FilterDecorator to negate,
+ * so that, for instance, {@code new NotFilter(new TagFilter(new BaseFilter(substring)))} excludes the contacts having a tag containing the substring.
+ * @see BaseFilter
+ * @see Filter
+ */
+public class NotFilter extends FilterDecorator {
+    
+    /**
+     * @copydoc FilterDecorator::FilterDecorator()
+     */
+    public NotFilter(Filter filter) {
+        super(filter);
+    }
+
+    /**
+     * @copydoc FilterDecorator::test()
+     * For this class, the condition is that the Contact does not satisfy the condition of the inner Filter.
+     */
+    @Override
+    public boolean test(Contact contact) {
+        return contact != null && !f.test(contact);
+    }
+}
@@ -24,9 +24,9 @@ public class PhoneFilter extends FilterDecorator {
     @Override
     public boolean test(Contact contact) {
         String sub = getSubstring();
-        String[] phones = contact.getPhoneNumberList();
+        String[] phones = contact.getSearchKeys().getPhones();
         for (String p: phones)
-            if (p.toLowerCase().contains(sub))
+            if (p.contains(sub))
                 return true;
         return false;
     }
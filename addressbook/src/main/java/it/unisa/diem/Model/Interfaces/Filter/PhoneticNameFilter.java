@@ -0,0 +1,40 @@
+package it.unisa.diem.Model.Interfaces.Filter;
+
+import java.util.Arrays;
+import java.util.List;
+
+import it.unisa.diem.Model.Contact;
+import it.unisa.diem.Model.PhoneticIndex;
+
+/**
+ * Concrete decorator of the Filter pattern that verifies if a Contact's fullName field sounds like the substring passed to the BaseFilter in the construction chain:
+ * every word of the substring must have the phonetic key of a word of the name or surname.
+ * Its constructor is passed as an outer method of a decorator construction chain, taking as argument another FilterDecorator, or a BaseFilter.
+ * @see BaseFilter
+ * @see Filter
+ * @see PhoneticIndex#key(String)
+ */
+public class PhoneticNameFilter extends FilterDecorator {
+
+    /**
+     * @copydoc FilterDecorator::FilterDecorator()
+     */
+    public PhoneticNameFilter(Filter filter) {
+        super(filter);
+    }
+
+    /**
+     * @copydoc FilterDecorator::test()
+     * For this class, the condition is that every word of the substring passed to the BaseFilter in the construction chain sounds like a word of the Contact's fullName field.
+     */
+    @Override
+    public boolean test(Contact contact) {
+        if (contact == null)
+            return false;
+        String[] keys = PhoneticIndex.keys(getSubstring());
+        if (keys.length == 0)
+            return false;
+        List<String> names = Arrays.asList(PhoneticIndex.keys(contact));
+        return names.containsAll(Arrays.asList(keys));
+    }
+}
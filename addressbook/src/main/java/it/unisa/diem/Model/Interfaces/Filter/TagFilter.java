@@ -1,8 +1,6 @@
 package it.unisa.diem.Model.Interfaces.Filter;
 
 import it.unisa.diem.Model.Contact;
-import it.unisa.diem.Model.Tag;
-import java.util.Set;
 
 /**
  * Concrete decorator of the Filter pattern that verifies if a Contact contains the substring passed to the BaseFilter in the construction chain, in its tags field.
@@ -26,9 +24,9 @@ public class TagFilter extends FilterDecorator {
     @Override
     public boolean test(Contact contact) {
         String sub = getSubstring();
-        Set<Tag> tags = contact.getTags().get();
-        for (Tag tag: tags)
-            if (tag.getNameValue().toLowerCase().contains(sub))
+        String[] tags = contact.getSearchKeys().getTags();
+        for (String tag: tags)
+            if (tag.contains(sub))
                 return true;
         return false;
     }
@@ -1,9 +1,15 @@
 package it.unisa.diem.Model.Interfaces;
 
+import java.util.Collection;
+
 import javafx.beans.property.MapProperty;
 import javafx.beans.property.SetProperty;
+import it.unisa.diem.Model.CompressedBitmap;
 import it.unisa.diem.Model.Contact;
 import it.unisa.diem.Model.Tag;
+import it.unisa.diem.Model.TagQuery;
+import it.unisa.diem.Model.TagRegistry;
+import it.unisa.diem.Model.TagStatistics;
 
 
 /**
@@ -33,4 +39,52 @@ public interface TaggableList<T> {
      *         false otherwise
      */
     void removeTagFromContact(Tag t, Contact c);
+
+    /**
+     * Marks many contacts with a {@link Tag} at once: the tag is added to each contact and the set of contacts marked with it
+     * is updated once, with a single change notification, instead of once per contact.
+     * 
+     * @param[in] t the Tag to add
+     * @param[in] contacts the contacts to mark; the ones not in the list, or already marked, are skipped
+     * @return the number of contacts marked
+     * @throws IllegalArgumentException if t or contacts is null
+     */
+    int addTagToContacts(Tag t, Collection<Contact> contacts);
+
+    /**
+     * Removes a {@link Tag} from many contacts at once: the tag is removed from each contact and the set of contacts marked with it
+     * is updated once, with a single change notification, instead of once per contact.
+     * 
+     * @param[in] t the Tag to remove
+     * @param[in] contacts the contacts to unmark; the ones not in the list, or not marked, are skipped
+     * @return the number of contacts unmarked
+     * @throws IllegalArgumentException if t or contacts is null
+     */
+    int removeTagFromContacts(Tag t, Collection<Contact> contacts);
+
+    /**
+     * Returns the identifiers of the elements selected by a combination of tags: marked with all of its all-of tags,
+     * with at least one of its any-of tags, if it has any, and with none of its none-of tags.
+     * The query is evaluated on an index of the tags, not by looking into the tags of each element.
+     * 
+     * @param[in] query the combination of tags
+     * @return the identifiers of the selected elements, every element if the query has no tags; a copy, which does not follow later changes
+     * @throws IllegalArgumentException if query is null
+     */
+    CompressedBitmap select(TagQuery query);
+
+    /**
+     * Returns the registry of the tags of the list, holding one canonical {@link Tag} per name with an int identifier,
+     * and the number of elements marked with each tag.
+     * 
+     * @return the tag registry of the list
+     */
+    TagRegistry getTagRegistry();
+
+    /**
+     * Returns the number of elements marked with each tag and with each pair of tags, without scanning the elements.
+     * 
+     * @return a snapshot of the statistics of the tags, which does not follow later changes
+     */
+    TagStatistics.Snapshot tagStatistics();
 }
@@ -29,4 +29,9 @@ public interface TrashCan {
      * @param[in] c the recently deleted contact to restore
      */
     void restore(Contact c);
+
+    /**
+     * Permanently removes the contacts deleted more than {@link RecentlyDeleted#RETENTION_PERIOD_DAYS} days ago.
+     */
+    void removeExpired();
 }
@@ -0,0 +1,517 @@
+package it.unisa.diem.Model;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import it.unisa.diem.Model.Interfaces.ContactList;
+import javafx.beans.property.SetProperty;
+import javafx.collections.ObservableList;
+import javafx.collections.SetChangeListener;
+
+/**
+ * {@link ContactList} giving access to the contacts of an {@link AddressBook} by their position in the sorted order,
+ * without copying the whole list.
+ *
+ * The sorted order is split into pages of about {@link #DEFAULT_PAGE_SIZE} contacts. Only the first contact and the size of each page are remembered;
+ * the contacts of a page are collected the first time one of its positions is requested, walking the sorted set from its first contact,
+ * and cached in an array of references, so that the rows a TableView shows again are not walked to again.
+ * At most {@link #getMaxCachedPages()} pages are cached: the least recently used ones are dropped when the cache is full.
+ * The cache only holds references to contacts the address book keeps anyway: it saves walks, it does not bound the memory taken by the contacts.
+ *
+ * The pages follow the changes of the address book: an added contact is counted in the page it falls into, which is split when it grows to twice its size,
+ * and a removed contact is discounted from its page. Only when homonyms or contacts renamed in place make the page of a contact ambiguous
+ * are the pages rebuilt, with a single walk over the sorted set.
+ *
+ * {@link #asObservableList()} exposes the list to a TableView, which only requests the positions of the visible rows.
+ * The list is meant to be used from the JavaFX thread.
+ *
+ * @invariant book != null
+ * @invariant the sizes of the pages add up to the number of contacts
+ */
+public class PagedContactList implements ContactList {
+    public static final int DEFAULT_PAGE_SIZE = 64; /**< The default number of contacts of a page */
+    public static final int DEFAULT_CACHE_SIZE = 4096; /**< The default maximum number of contacts whose pages are cached at the same time */
+
+    /**
+     * A window of consecutive contacts of the sorted order.
+     */
+    private static class Page {
+        private Contact first; /**< The first contact of the page */
+        private int count; /**< The number of contacts of the page */
+        private Contact[] contents; /**< The contacts of the page, null if they are not cached */
+
+        private Page(Contact first, int count) {
+            this.first = first;
+            this.count = count;
+        }
+    }
+
+    private AddressBook book; /**< The address book whose contacts are listed */
+    private final int pageSize; /**< The number of contacts of a page when the pages are built */
+    private final int maxCachedPages; /**< The maximum number of pages whose contacts are cached */
+    private final List<Page> pages; /**< The pages, in order */
+    private int[] starts; /**< The position of the first contact of each page, null if the pages have changed since it was computed */
+    private final LinkedHashMap<Page, Boolean> cached; /**< The pages whose contacts are cached, from the least to the most recently used */
+    private final VirtualContactList view; /**< The observable view of the list */
+    private final SetChangeListener<Contact> listener = this::onContactsChanged; /**< Keeps the pages and the view in sync with the address book */
+    private long pageLoads; /**< The number of pages whose contacts have been collected so far */
+    private long pageEvictions; /**< The number of pages dropped from the cache so far */
+    private long rebuilds; /**< The number of times the pages have been rebuilt */
+
+    /**
+     * Creates a paged list of the contacts of the given address book, with the default page size and cache size.
+     *
+     * @param[in] book the address book whose contacts are listed
+     */
+    public PagedContactList(AddressBook book) {
+        this(book, DEFAULT_PAGE_SIZE, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a paged list of the contacts of the given address book.
+     *
+     * @param[in] book the address book whose contacts are listed
+     * @param[in] pageSize the number of contacts of a page
+     * @param[in] cacheSize the maximum number of contacts whose pages are cached at the same time
+     * @pre pageSize > 0
+     * @pre cacheSize >= pageSize
+     */
+    public PagedContactList(AddressBook book, int pageSize, int cacheSize) {
+        if (book == null) {
+            throw new IllegalArgumentException("AddressBook cannot be null");
+        }
+        if (pageSize <= 0 || cacheSize < pageSize) {
+            throw new IllegalArgumentException("Invalid page size or cache size");
+        }
+        this.pageSize = pageSize;
+        // Pages grow up to twice their size before being split
+        this.maxCachedPages = Math.max(1, cacheSize / (2 * pageSize));
+        this.pages = new ArrayList<>();
+        this.cached = new LinkedHashMap<Page, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Page, Boolean> eldest) {
+                if (size() <= maxCachedPages)
+                    return false;
+                eldest.getKey().contents = null;
+                pageEvictions++;
+                return true;
+            }
+        };
+        this.view = new VirtualContactList(this);
+        this.book = book;
+        book.contacts().addListener(listener);
+        rebuild();
+    }
+
+    /**
+     * Returns the address book whose contacts are listed.
+     *
+     * @return the address book
+     */
+    public AddressBook getAddressBook() {
+        return book;
+    }
+
+    /**
+     * Lists the contacts of another address book, notifying the observable view that its whole content has been replaced.
+     *
+     * @param[in] book the address book whose contacts are listed from now on
+     */
+    public void setAddressBook(AddressBook book) {
+        if (book == null) {
+            throw new IllegalArgumentException("AddressBook cannot be null");
+        }
+        List<Contact> removed = new ArrayList<>(this.book.contacts());
+        this.book.contacts().removeListener(listener);
+        this.book = book;
+        book.contacts().addListener(listener);
+        rebuild();
+        view.fireReplaced(removed);
+    }
+
+    /**
+     * Returns an observable list of the contacts, which collects the contacts of the pages on demand.
+     * The list cannot be modified directly: its changes follow the ones of the address book.
+     *
+     * @return the observable view of the list
+     */
+    public ObservableList<Contact> asObservableList() {
+        return view;
+    }
+
+    @Override
+    public SetProperty<Contact> contacts() {
+        return book.contacts();
+    }
+
+    @Override
+    public void add(Contact c) {
+        book.add(c);
+    }
+
+    @Override
+    public void delete(Contact c) {
+        book.delete(c);
+    }
+
+    @Override
+    public void update(Contact c) {
+        book.update(c);
+    }
+
+    @Override
+    public Contact get(Contact c) {
+        return book.get(c);
+    }
+
+    /**
+     * Returns the number of contacts of the list.
+     *
+     * @return the number of contacts
+     */
+    public int size() {
+        return book.contacts().size();
+    }
+
+    /**
+     * Returns the contact at the specified position of the sorted order, collecting the contacts of its page if they are not cached.
+     *
+     * @param[in] index the position of the contact
+     * @pre 0 <= index < size()
+     * @return the contact at the given position
+     */
+    public Contact get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+        }
+        int p = pageAt(index);
+        return contents(p)[index - starts()[p]];
+    }
+
+    /**
+     * Returns the position of the specified contact in the sorted order.
+     *
+     * @param[in] c the contact to look for
+     * @return the position of the contact, or -1 if it is not in the list
+     */
+    public int indexOf(Contact c) {
+        if (c == null || pages.isEmpty())
+            return -1;
+        int p = lastPageBefore(key(c));
+        int offset = find(p, c, pages.get(p).count);
+        if (offset >= 0)
+            return starts()[p] + offset;
+        // The names are not in order (homonyms, or a contact renamed in place): the whole list is searched
+        int i = 0;
+        for (Contact next : book.sortedContacts()) {
+            if (next == c)
+                return i;
+            i++;
+        }
+        return -1;
+    }
+
+    private void onContactsChanged(SetChangeListener.Change<? extends Contact> change) {
+        if (change.wasRemoved()) {
+            int index = removed(change.getElementRemoved());
+            if (index < 0 || counted() != size()) {
+                rebuild();
+                index = insertionIndex(change.getElementRemoved());
+            }
+            view.fireRemoved(index, change.getElementRemoved());
+        }
+        if (change.wasAdded()) {
+            int index = added(change.getElementAdded());
+            if (index < 0 || counted() != size()) {
+                rebuild();
+                index = indexOf(change.getElementAdded());
+            }
+            if (index >= 0)
+                view.fireAdded(index);
+        }
+    }
+
+    /**
+     * Returns the number of contacts counted in the pages, which must be the number of contacts of the list.
+     */
+    private int counted() {
+        if (pages.isEmpty())
+            return 0;
+        return starts()[pages.size() - 1] + pages.get(pages.size() - 1).count;
+    }
+
+    /**
+     * Counts an added contact in its page.
+     *
+     * @return the position of the contact, or -1 if its page is ambiguous
+     */
+    private int added(Contact c) {
+        if (pages.isEmpty()) {
+            pages.add(new Page(c, 1));
+            starts = null;
+            return 0;
+        }
+        if (book.sortedContacts().first() == c) {
+            Page page = pages.get(0);
+            page.first = c;
+            page.count++;
+            changed(0);
+            return 0;
+        }
+        String key = key(c);
+        int p = lastPageBefore(key);
+        if (key(pages.get(p).first).compareTo(key) >= 0 || (p + 1 < pages.size() && key(pages.get(p + 1).first).compareTo(key) <= 0))
+            return -1;
+        // The contact is after the first contact of the page and before the first contact of the next one
+        int offset = find(p, c, pages.get(p).count + 1);
+        if (offset < 0)
+            return -1;
+        Page page = pages.get(p);
+        page.count++;
+        changed(p);
+        int index = starts()[p] + offset;
+        if (page.count >= 2 * pageSize)
+            split(p);
+        return index;
+    }
+
+    /**
+     * Discounts a removed contact from its page.
+     *
+     * @return the position the contact had, or -1 if its page is ambiguous
+     */
+    private int removed(Contact c) {
+        if (pages.isEmpty())
+            return -1;
+        String key = key(c);
+        int p = lastPageBefore(key);
+        for (int q = p; q < pages.size() && key(pages.get(q).first).compareTo(key) <= 0; q++) {
+            if (pages.get(q).first == c) {
+                // The first contact of the page is removed: the next one takes its place
+                int index = starts()[q];
+                Page page = pages.get(q);
+                if (--page.count == 0) {
+                    pages.remove(q);
+                    cached.remove(page);
+                    starts = null;
+                } else {
+                    page.first = q == 0 ? book.sortedContacts().first() : after(q - 1);
+                    changed(q);
+                }
+                return index;
+            }
+        }
+        Page page = pages.get(p);
+        if (key(page.first).compareTo(key) >= 0 || (p + 1 < pages.size() && key(pages.get(p + 1).first).compareTo(key) <= 0))
+            return -1;
+        int offset = 0;
+        Iterator<Contact> it = walk(p);
+        while (offset < page.count - 1 && it.hasNext() && key(it.next()).compareTo(key) < 0)
+            offset++;
+        page.count--;
+        changed(p);
+        return starts()[p] + offset;
+    }
+
+    /**
+     * Returns the position of the first contact whose name does not come before the name of the specified contact.
+     * It is the position the contact had before being removed from the list.
+     */
+    private int insertionIndex(Contact c) {
+        String key = key(c);
+        int i = 0;
+        for (Contact next : book.sortedContacts()) {
+            if (key(next).compareTo(key) >= 0)
+                break;
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the offset of a contact in a page, looking at the first contacts of the page only.
+     *
+     * @return the offset of the contact, or -1 if it is not among the given number of contacts
+     */
+    private int find(int p, Contact c, int limit) {
+        Iterator<Contact> it = walk(p);
+        for (int offset = 0; offset < limit && it.hasNext(); offset++)
+            if (it.next() == c)
+                return offset;
+        return -1;
+    }
+
+    /**
+     * Returns the contact following the last contact of a page.
+     */
+    private Contact after(int p) {
+        Iterator<Contact> it = walk(p);
+        for (int i = 0; i < pages.get(p).count; i++)
+            it.next();
+        return it.next();
+    }
+
+    private void split(int p) {
+        Page page = pages.get(p);
+        Iterator<Contact> it = walk(p);
+        for (int i = 0; i < pageSize; i++)
+            it.next();
+        pages.add(p + 1, new Page(it.next(), page.count - pageSize));
+        page.count = pageSize;
+        changed(p);
+        starts = null;
+    }
+
+    /**
+     * Forgets the contacts collected for a page whose content has changed.
+     */
+    private void changed(int p) {
+        Page page = pages.get(p);
+        page.contents = null;
+        cached.remove(page);
+        starts = null;
+    }
+
+    /**
+     * Builds the pages again from the sorted set.
+     */
+    private void rebuild() {
+        pages.clear();
+        cached.clear();
+        starts = null;
+        Page page = null;
+        for (Contact c : book.sortedContacts()) {
+            if (page == null || page.count == pageSize) {
+                page = new Page(c, 0);
+                pages.add(page);
+            }
+            page.count++;
+        }
+        rebuilds++;
+    }
+
+    private int[] starts() {
+        if (starts == null) {
+            int[] starts = new int[pages.size()];
+            int start = 0;
+            for (int p = 0; p < starts.length; p++) {
+                starts[p] = start;
+                start += pages.get(p).count;
+            }
+            this.starts = starts;
+        }
+        return starts;
+    }
+
+    /**
+     * Returns the page containing the specified position.
+     */
+    private int pageAt(int index) {
+        int[] starts = starts();
+        int low = 0, high = starts.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (starts[mid] <= index)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+
+    /**
+     * Returns the last page whose first contact comes strictly before the given name, or the first page.
+     */
+    private int lastPageBefore(String key) {
+        int low = 0, high = pages.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (key(pages.get(mid).first).compareTo(key) < 0)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+
+    private Contact[] contents(int p) {
+        Page page = pages.get(p);
+        if (page.contents == null) {
+            Contact[] contents = new Contact[page.count];
+            Iterator<Contact> it = walk(p);
+            for (int i = 0; i < contents.length; i++)
+                contents[i] = it.next();
+            page.contents = contents;
+            pageLoads++;
+        }
+        cached.put(page, Boolean.TRUE);
+        return page.contents;
+    }
+
+    /**
+     * Returns an iterator over the sorted set, starting from the first contact of a page.
+     */
+    private Iterator<Contact> walk(int p) {
+        Contact first = pages.get(p).first;
+        Iterator<Contact> it = book.sortedContacts().tailSet(first, true).iterator();
+        if (it.hasNext() && it.next() == first)
+            return book.sortedContacts().tailSet(first, true).iterator();
+        // Homonyms can hide a contact from the tree search: the set is walked from its first contact
+        it = book.sortedContacts().iterator();
+        for (int i = starts()[p]; i > 0 && it.hasNext(); i--)
+            it.next();
+        return it;
+    }
+
+    private static String key(Contact c) {
+        return c.getFullNameValue().toLowerCase();
+    }
+
+    /**
+     * Returns the maximum number of pages whose contacts are cached.
+     *
+     * @return the maximum number of cached pages
+     */
+    public int getMaxCachedPages() {
+        return maxCachedPages;
+    }
+
+    /**
+     * Returns the number of pages whose contacts are currently cached.
+     *
+     * @return the number of cached pages
+     */
+    public int getCachedPages() {
+        return cached.size();
+    }
+
+    /**
+     * Returns the number of times the contacts of a page have been collected, including the pages collected again after being dropped from the cache.
+     *
+     * @return the number of pages collected
+     */
+    public long getPageLoads() {
+        return pageLoads;
+    }
+
+    /**
+     * Returns the number of pages dropped from the cache so far to stay within its size.
+     *
+     * @return the number of pages dropped
+     */
+    public long getPageEvictions() {
+        return pageEvictions;
+    }
+
+    /**
+     * Returns the number of times the pages have been built from the whole sorted set, including the first time.
+     *
+     * @return the number of rebuilds
+     */
+    public long getRebuilds() {
+        return rebuilds;
+    }
+}
@@ -0,0 +1,257 @@
+package it.unisa.diem.Model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the phone numbers of the contacts, used to find the owners of a number without testing every contact.
+ *
+ * Numbers are indexed by their digits only, so that "+39 333 123 4567" and "393331234567" are the same number.
+ * The digits are stored in two tries: one reading the numbers forwards, for exact and prefix matches, and one reading them backwards,
+ * for suffix matches. A lookup walks the digits of the query from the root of a trie, so finding the node of the query takes time
+ * proportional to its length; the owners are then collected from that node (exact matches) or from all the nodes below it (prefix and suffix matches).
+ * Contacts are compared by identity, as their equality and hash code change when they are edited.
+ *
+ * @invariant numbers != null
+ * @invariant forward != null
+ * @invariant backward != null
+ */
+public class PhoneIndex {
+    private static final int MIN_STALE = 1024; /**< The number of removed numbers below which the tries are never rebuilt */
+
+    /**
+     * The ways the digits of a lookup are matched against the indexed numbers.
+     */
+    public enum Match {
+        EXACT, /**< The number is made of the digits */
+        PREFIX, /**< The number starts with the digits */
+        SUFFIX /**< The number ends with the digits */
+    }
+
+    /**
+     * A trie of decimal digits. The nodes are stored in parallel arrays; the children of a node form a linked list,
+     * so that a node takes three values whatever the number of its children.
+     */
+    private static class DigitTrie {
+        private int[] firstChild = new int[64]; /**< The first child of each node, 0 if it has none */
+        private int[] nextSibling = new int[64]; /**< The next child of the parent of each node, 0 if it is the last */
+        private byte[] digit = new byte[64]; /**< The digit leading to each node */
+        private int nodes = 1; /**< The number of nodes; node 0 is the root, which is never a child */
+        private final Map<Integer, List<Contact>> owners = new HashMap<>(); /**< The owners of the numbers ending at each node */
+
+        /**
+         * Returns the node reached by reading the given digits from the root.
+         *
+         * @param[in] digits the digits to read
+         * @param[in] reversed whether the digits are read backwards
+         * @param[in] create whether the missing nodes are created
+         * @return the node reached, or -1 if it is missing and create is false
+         */
+        int walk(String digits, boolean reversed, boolean create) {
+            int node = 0;
+            for (int i = 0; i < digits.length(); i++) {
+                byte d = (byte) (digits.charAt(reversed ? digits.length() - 1 - i : i) - '0');
+                int child = firstChild[node];
+                while (child != 0 && digit[child] != d)
+                    child = nextSibling[child];
+                if (child == 0) {
+                    if (!create)
+                        return -1;
+                    child = newNode(d);
+                    nextSibling[child] = firstChild[node];
+                    firstChild[node] = child;
+                }
+                node = child;
+            }
+            return node;
+        }
+
+        private int newNode(byte d) {
+            if (nodes == digit.length) {
+                firstChild = Arrays.copyOf(firstChild, nodes * 2);
+                nextSibling = Arrays.copyOf(nextSibling, nodes * 2);
+                digit = Arrays.copyOf(digit, nodes * 2);
+            }
+            digit[nodes] = d;
+            return nodes++;
+        }
+
+        void add(String digits, boolean reversed, Contact c) {
+            owners.computeIfAbsent(walk(digits, reversed, true), n -> new ArrayList<>(1)).add(c);
+        }
+
+        void remove(String digits, boolean reversed, Contact c) {
+            int node = walk(digits, reversed, false);
+            List<Contact> list = owners.get(node);
+            if (list == null)
+                return;
+            list.removeIf(owner -> owner == c);
+            if (list.isEmpty())
+                owners.remove(node);
+        }
+
+        /**
+         * Adds the owners of the numbers ending at a node, and at the nodes below it if subtree is true.
+         */
+        void collect(int node, boolean subtree, Set<Contact> found) {
+            List<Contact> list = owners.get(node);
+            if (list != null)
+                found.addAll(list);
+            if (!subtree)
+                return;
+            // Iterative visit, so that long numbers cannot overflow the stack
+            int[] stack = new int[16];
+            int top = 0;
+            for (int child = firstChild[node]; child != 0; child = nextSibling[child]) {
+                if (top == stack.length)
+                    stack = Arrays.copyOf(stack, top * 2);
+                stack[top++] = child;
+            }
+            while (top > 0) {
+                int n = stack[--top];
+                list = owners.get(n);
+                if (list != null)
+                    found.addAll(list);
+                for (int child = firstChild[n]; child != 0; child = nextSibling[child]) {
+                    if (top == stack.length)
+                        stack = Arrays.copyOf(stack, top * 2);
+                    stack[top++] = child;
+                }
+            }
+        }
+    }
+
+    private final Map<Contact, String[]> numbers = new IdentityHashMap<>(); /**< The digits of the numbers of each indexed contact, as they were indexed */
+    private DigitTrie forward = new DigitTrie(); /**< The numbers read forwards */
+    private DigitTrie backward = new DigitTrie(); /**< The numbers read backwards */
+    private int indexedNumbers; /**< The number of numbers in the tries */
+    private int staleNumbers; /**< The number of numbers removed since the tries were built, whose nodes may be unused */
+
+    /**
+     * Creates an index of the phone numbers of the given contacts.
+     *
+     * @param[in] contacts the contacts to index
+     */
+    public PhoneIndex(Collection<Contact> contacts) {
+        for (Contact c : contacts)
+            add(c);
+    }
+
+    /**
+     * Returns the digits of a phone number, dropping the other characters.
+     *
+     * @param[in] phone the phone number
+     * @return the digits of the number, an empty String if it has none or is null
+     */
+    public static String digits(String phone) {
+        if (phone == null)
+            return "";
+        StringBuilder digits = new StringBuilder(phone.length());
+        for (int i = 0; i < phone.length(); i++) {
+            char ch = phone.charAt(i);
+            if (ch >= '0' && ch <= '9')
+                digits.append(ch);
+        }
+        return digits.toString();
+    }
+
+    /**
+     * Indexes the phone numbers of a contact, or reindexes them if the contact is already indexed.
+     *
+     * @param[in] c the contact to index
+     */
+    public void add(Contact c) {
+        remove(c);
+        String[] phones = c.getPhoneNumberList();
+        String[] indexed = new String[phones.length];
+        for (int i = 0; i < phones.length; i++) {
+            indexed[i] = digits(phones[i]);
+            if (!indexed[i].isEmpty()) {
+                forward.add(indexed[i], false, c);
+                backward.add(indexed[i], true, c);
+                indexedNumbers++;
+            }
+        }
+        numbers.put(c, indexed);
+    }
+
+    /**
+     * Removes the phone numbers of a contact from the index, using the numbers it had when it was indexed.
+     *
+     * @param[in] c the contact to remove
+     */
+    public void remove(Contact c) {
+        String[] indexed = numbers.remove(c);
+        if (indexed == null)
+            return;
+        for (String number : indexed) {
+            if (!number.isEmpty()) {
+                forward.remove(number, false, c);
+                backward.remove(number, true, c);
+                indexedNumbers--;
+                staleNumbers++;
+            }
+        }
+        if (staleNumbers > MIN_STALE && staleNumbers > indexedNumbers)
+            rebuild();
+    }
+
+    /**
+     * Reindexes the phone numbers of a contact after it has been edited. Contacts that are not indexed are ignored.
+     *
+     * @param[in] c the edited contact
+     */
+    public void update(Contact c) {
+        if (numbers.containsKey(c))
+            add(c);
+    }
+
+    /**
+     * Returns the number of indexed contacts.
+     *
+     * @return the number of contacts
+     */
+    public int size() {
+        return numbers.size();
+    }
+
+    /**
+     * Returns the contacts owning a phone number matching the given digits. Characters other than digits are ignored.
+     *
+     * @param[in] digits the digits to look up
+     * @param[in] match how the digits are matched against the numbers
+     * @return the matching contacts, each once and in no particular order; an empty list if digits has no digit
+     */
+    public List<Contact> find(String digits, Match match) {
+        String d = digits(digits);
+        if (d.isEmpty())
+            return new ArrayList<>();
+        Set<Contact> found = Collections.newSetFromMap(new IdentityHashMap<>());
+        DigitTrie trie = match == Match.SUFFIX ? backward : forward;
+        int node = trie.walk(d, match == Match.SUFFIX, false);
+        if (node >= 0)
+            trie.collect(node, match != Match.EXACT, found);
+        return new ArrayList<>(found);
+    }
+
+    /**
+     * Rebuilds the tries from the indexed numbers, dropping the nodes left by the removed ones.
+     */
+    private void rebuild() {
+        List<Contact> indexed = new ArrayList<>(numbers.keySet());
+        numbers.clear();
+        forward = new DigitTrie();
+        backward = new DigitTrie();
+        indexedNumbers = 0;
+        staleNumbers = 0;
+        for (Contact c : indexed)
+            add(c);
+    }
+}
@@ -0,0 +1,272 @@
+package it.unisa.diem.Model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the sound of the names and surnames of the contacts, used to find the contacts whose name sounds like a query,
+ * such as a surname heard over the phone, by hash lookups instead of testing every contact.
+ *
+ * Every word of a name is reduced to a phonetic key by rules of Italian spelling, so that words written differently but pronounced alike share the key:
+ * "Esposito" and "Sposito", "Cacace" and "Caccace", "Cuomo" and "Quomo", "Iacopo" and "Jacopo". See {@link #key(String)}.
+ * A contact sounds like a query if every word of the query has the key of a word of its name or surname.
+ * Contacts are compared by identity, as their equality and hash code change when they are edited.
+ *
+ * @invariant buckets != null
+ * @invariant owners != null
+ */
+public class PhoneticIndex {
+    private final Map<String, List<Contact>> buckets = new HashMap<>(); /**< The contacts having a word with each key */
+    private final Map<Contact, String[]> owners = new IdentityHashMap<>(); /**< The keys of each indexed contact, as they were indexed */
+
+    /**
+     * Creates an index of the names of the given contacts.
+     *
+     * @param[in] contacts the contacts to index
+     */
+    public PhoneticIndex(Collection<Contact> contacts) {
+        for (Contact c : contacts)
+            add(c);
+    }
+
+    /**
+     * Returns the phonetic key of a word, following the pronunciation of Italian spelling:
+     * <ul>
+     * <li>accents and case are ignored, and so are doubled letters, which are hard to hear: "Caccace" sounds like "Cacace";</li>
+     * <li>the vowel added before an "s" followed by a consonant is ignored: "Esposito" sounds like "Sposito", "Istrice" like "Strice";</li>
+     * <li>"c", "ch", "k" and "q" are the same hard sound, as are "g" and "gh"; "c" and "g" before "e" or "i" are soft,
+     *     and an "i" between a soft consonant and a vowel is only written, as in "Ciampi" or "Giusti";</li>
+     * <li>"gn", "gli" and "sc" before "e" or "i" are single sounds; "h" is silent, "ph" sounds like "f", "x" like "ks", "j" and "y" like "i", "w" like "v".</li>
+     * </ul>
+     * The key is made of uppercase letters, one per sound, and never has the same sound twice in a row.
+     *
+     * @param[in] word the word to encode
+     * @return the phonetic key of the word, an empty String if it has no letters
+     */
+    public static String key(String word) {
+        StringBuilder letters = new StringBuilder();
+        for (char ch : SearchKeys.normalize(word).toCharArray())
+            if (Character.isLetter(ch))
+                letters.append(ch);
+        String w = letters.toString();
+        // The prosthetic vowel of "Esposito" is often not heard
+        if (w.length() > 2 && (w.charAt(0) == 'e' || w.charAt(0) == 'i') && w.charAt(1) == 's' && !isVowel(w.charAt(2)))
+            w = w.substring(1);
+        StringBuilder key = new StringBuilder(w.length());
+        for (int i = 0; i < w.length(); i++) {
+            char ch = w.charAt(i);
+            // A doubled letter sounds like a single one
+            while (i + 1 < w.length() && w.charAt(i + 1) == ch)
+                i++;
+            char next = at(w, i + 1);
+            String sound;
+            switch (ch) {
+                case 'c':
+                    if (next == 'h') {
+                        sound = "K";
+                        i++;
+                    } else if (next == 'e' || next == 'i') {
+                        sound = "C";
+                        i = skipSilentI(w, i);
+                    } else {
+                        sound = "K";
+                    }
+                    break;
+                case 'g':
+                    if (next == 'h') {
+                        sound = "G";
+                        i++;
+                    } else if (next == 'n') {
+                        sound = "Y";
+                        i++;
+                    } else if (next == 'l' && at(w, i + 2) == 'i') {
+                        sound = "W";
+                        i = skipSilentI(w, i + 1);
+                    } else if (next == 'e' || next == 'i') {
+                        sound = "J";
+                        i = skipSilentI(w, i);
+                    } else {
+                        sound = "G";
+                    }
+                    break;
+                case 's':
+                    if (next == 'c' && (at(w, i + 2) == 'e' || at(w, i + 2) == 'i')) {
+                        sound = "X";
+                        i = skipSilentI(w, i + 1);
+                    } else {
+                        sound = "S";
+                    }
+                    break;
+                case 'p':
+                    if (next == 'h') {
+                        sound = "F";
+                        i++;
+                    } else {
+                        sound = "P";
+                    }
+                    break;
+                case 'q':
+                case 'k':
+                    sound = "K";
+                    break;
+                case 'x':
+                    sound = "KS";
+                    break;
+                case 'j':
+                case 'y':
+                    sound = "I";
+                    break;
+                case 'w':
+                    sound = "V";
+                    break;
+                case 'h':
+                    sound = "";
+                    break;
+                default:
+                    sound = String.valueOf(Character.toUpperCase(ch));
+            }
+            for (int s = 0; s < sound.length(); s++)
+                if (key.length() == 0 || key.charAt(key.length() - 1) != sound.charAt(s))
+                    key.append(sound.charAt(s));
+        }
+        return key.toString();
+    }
+
+    private static boolean isVowel(char ch) {
+        return ch == 'a' || ch == 'e' || ch == 'i' || ch == 'o' || ch == 'u';
+    }
+
+    private static char at(String w, int i) {
+        return i < w.length() ? w.charAt(i) : 0;
+    }
+
+    /**
+     * Returns the position of the last letter of a soft consonant ending at position i, including the "i" that follows it if a vowel comes next,
+     * as in "cia" or "gio", where the "i" is not pronounced.
+     */
+    private static int skipSilentI(String w, int i) {
+        if (at(w, i + 1) == 'i' && isVowel(at(w, i + 2)))
+            return i + 1;
+        return i;
+    }
+
+    /**
+     * Returns the distinct phonetic keys of the words of a text.
+     *
+     * @param[in] text the text to encode
+     * @return the keys of the words of the text, an empty array if it has none or is null
+     * @see FuzzyNameIndex#words(String)
+     */
+    public static String[] keys(String text) {
+        return Arrays.stream(FuzzyNameIndex.words(text)).map(PhoneticIndex::key).filter(k -> !k.isEmpty()).distinct().toArray(String[]::new);
+    }
+
+    /**
+     * Returns the distinct phonetic keys of the name and surname of a contact.
+     *
+     * @param[in] c the contact
+     * @return the keys of the words of the full name of the contact
+     */
+    public static String[] keys(Contact c) {
+        return keys(c.getSearchKeys().getNameSurname());
+    }
+
+    /**
+     * Indexes the name of a contact, or reindexes it if the contact is already indexed.
+     *
+     * @param[in] c the contact to index
+     */
+    public void add(Contact c) {
+        remove(c);
+        String[] indexed = keys(c);
+        for (String key : indexed)
+            buckets.computeIfAbsent(key, k -> new ArrayList<>(1)).add(c);
+        owners.put(c, indexed);
+    }
+
+    /**
+     * Removes the name of a contact from the index, using the name it had when it was indexed.
+     *
+     * @param[in] c the contact to remove
+     */
+    public void remove(Contact c) {
+        String[] indexed = owners.remove(c);
+        if (indexed == null)
+            return;
+        for (String key : indexed) {
+            List<Contact> bucket = buckets.get(key);
+            bucket.removeIf(owner -> owner == c);
+            if (bucket.isEmpty())
+                buckets.remove(key);
+        }
+    }
+
+    /**
+     * Reindexes the name of a contact after it has been edited. Contacts that are not indexed are ignored.
+     *
+     * @param[in] c the edited contact
+     */
+    public void update(Contact c) {
+        if (owners.containsKey(c))
+            add(c);
+    }
+
+    /**
+     * Returns the number of indexed contacts.
+     *
+     * @return the number of contacts
+     */
+    public int size() {
+        return owners.size();
+    }
+
+    /**
+     * Returns the contacts whose name sounds like a query: every word of the query has the key of a word of their name or surname.
+     * The contacts having the rarest key of the query are looked up, then checked for the other keys.
+     *
+     * @param[in] query the text typed in the search bar
+     * @return the matching contacts, in no particular order; an empty list if the query has no letters
+     */
+    public List<Contact> find(String query) {
+        String[] queryKeys = keys(query);
+        List<Contact> found = new ArrayList<>();
+        List<Contact> rarest = null;
+        for (String key : queryKeys) {
+            List<Contact> bucket = buckets.get(key);
+            if (bucket == null)
+                return found;
+            if (rarest == null || bucket.size() < rarest.size())
+                rarest = bucket;
+        }
+        if (rarest == null)
+            return found;
+        for (Contact c : rarest)
+            if (Arrays.asList(owners.get(c)).containsAll(Arrays.asList(queryKeys)))
+                found.add(c);
+        return found;
+    }
+
+    /**
+     * Returns an estimate of the number of contacts whose name sounds like a query, without finding them:
+     * the number of contacts having its rarest key, which is an upper bound.
+     *
+     * @param[in] query the text typed in the search bar
+     * @return the estimated number of matches; 0 if the query has no letters
+     */
+    public int estimate(String query) {
+        String[] queryKeys = keys(query);
+        if (queryKeys.length == 0)
+            return 0;
+        int estimate = size();
+        for (String key : queryKeys) {
+            List<Contact> bucket = buckets.get(key);
+            estimate = Math.min(estimate, bucket == null ? 0 : bucket.size());
+        }
+        return estimate;
+    }
+}
@@ -5,12 +5,11 @@ import java.io.Serializable;
 
 import it.unisa.diem.Model.Interfaces.Checker.CharacterLimitStringChecker;
 import it.unisa.diem.Model.Interfaces.Checker.ItalianPhoneChecker;
-import it.unisa.diem.Utility.FileManager;
+import it.unisa.diem.Utility.PictureStore;
 import java.io.FileNotFoundException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 
@@ -159,31 +158,36 @@ public class Profile implements Serializable{
     }
 
     /**
-     * Takes the picture at the specified path and copies it in the application's assets folder, then assigns it as the profile picture.
+     * Takes the picture at the specified path and saves it in the {@link PictureStore}, then assigns it as the profile picture.
+     * A picture already in the store is not copied again. The profile holds a reference to its picture: the previous picture
+     * is deleted by the store once no contact or profile refers to it.
      * 
      * @param[in] profilePicture the path of the picture to assign to the contact
      * @throws FileNotFoundException if the picture cannot be copied in the assets folder, or the specified path is not valid
      */
     public void setProfilePicture(String profilePicture) throws FileNotFoundException, IOException {
         Path profilePicturePath = Paths.get(profilePicture);
+        String previous = this.profilePicture;
         if(profilePicture.isEmpty()){
             this.profilePicture = getClass().getResource("/it/unisa/diem/view_resources/default_picture.png").toExternalForm();
         } else if(!Files.exists(profilePicturePath)) {
             throw new FileNotFoundException("File: " + profilePicture + " does not exist.");
         } else {
-            String fileName = profilePicturePath.getFileName().toString();
-            String extension = fileName.substring(fileName.lastIndexOf('.') + 1); 
-            Path destinationPath = Paths.get(FileManager.generateProfilePicturePath(extension)); 
-            String newProfilePicturePath = Files.copy(profilePicturePath, destinationPath, StandardCopyOption.REPLACE_EXISTING).toString();
-            
-            // Delete the old profile picture if it is not the default picture
-            if (!this.profilePicture.equals(getClass().getResource("/it/unisa/diem/view_resources/default_picture.png").toExternalForm())&&!this.profilePicture.isEmpty()) {
-            System.out.println(Files.deleteIfExists(Paths.get(this.profilePicture))? "Old profile picture deleted" : "Old profile picture not deleted");
-            }
-            this.profilePicture = newProfilePicturePath;
+            this.profilePicture = PictureStore.store(profilePicturePath);
+        }
+        if (!this.profilePicture.equals(previous)) {
+            PictureStore.acquire(this.profilePicture);
+            PictureStore.release(previous);
         }
     }
 
+    /**
+     * Releases the reference held by the profile to its picture, when the profile is deleted.
+     */
+    public void releasePicture() {
+        PictureStore.release(profilePicture);
+    }
+
     private void writeObject(java.io.ObjectOutputStream out) throws IOException {
         out.defaultWriteObject();
         out.writeObject(name.get());
@@ -0,0 +1,357 @@
+package it.unisa.diem.Model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+/**
+ * The plan running a {@link SearchQuery} against an address book, chosen from the statistics of its indexes.
+ *
+ * The number of contacts satisfying each clause is estimated without testing them: a tag clause from the number of contacts marked with the matching tags,
+ * a sounds-like clause from the rarest phonetic key of its value, the other clauses from the rarest trigram of their value. The clause expected to be satisfied by the fewest contacts drives the plan:
+ * its candidates are taken from its index and tested against it, unless the index lists its matches only, then against the other clauses, the most selective first, so that
+ * every clause tests fewer contacts than the previous one. A negated clause cannot drive the plan, as no index lists the contacts not containing a value:
+ * a query made of negated clauses only tests every contact.
+ * The tags selected in the main view, if any, are one more step: the contacts they select are known exactly from the bitmaps of the tags,
+ * so that the selection drives the plan whenever it is smaller than the matches of every clause, and is otherwise tested by looking up identifiers.
+ * After its execution, the plan can be explained: each step with its estimate, the contacts it kept, and the time it took.
+ *
+ * @invariant steps != null
+ */
+public class QueryPlan {
+    private static final int CANCELLATION_CHECK_INTERVAL = 1024; /**< The number of contacts tested between two checks of the cancellation of the plan */
+
+    /**
+     * The ways the contacts are read by the first step of a plan.
+     */
+    public enum Access {
+        TAG_INDEX("tag index", true), /**< The contacts marked with the tags matching the clause */
+        TRIGRAM_INDEX("trigram index", false), /**< The candidates of the clause in the trigram index */
+        PHONETIC_INDEX("phonetic index", true), /**< The contacts whose name sounds like the value of the clause */
+        TAG_SELECTION("tag selection", true), /**< The contacts selected by the tags chosen in the main view */
+        FULL_SCAN("full scan", false), /**< Every contact */
+        FILTER("filter", false); /**< The contacts kept by the previous step */
+
+        private final String description; /**< The description of the access in the explanation of a plan */
+        private final boolean exact; /**< True if the contacts read all satisfy the clause, so that they need not be tested */
+
+        Access(String description, boolean exact) {
+            this.description = description;
+            this.exact = exact;
+        }
+
+        /**
+         * Returns true if the contacts read by the access all satisfy the clause of the step, and are not tested against it.
+         *
+         * @return true if the access reads the matches of the clause only
+         */
+        public boolean isExact() {
+            return exact;
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    /**
+     * A step of a plan: the contacts read by its access are tested against its clause, or against the selection of tags.
+     */
+    public static class Step {
+        private final SearchQuery.Clause clause; /**< The clause tested, null if the step tests the selection of tags or reads every contact without testing them */
+        private final TagQuery scope; /**< The selection of tags tested, null if the step tests a clause or reads every contact */
+        private final CompressedBitmap selected; /**< The identifiers of the contacts selected by scope, null if scope is */
+        private final Predicate<Contact> filter; /**< The test of the clause or of the selection, null if the step reads every contact */
+        private final int estimate; /**< The estimated number of contacts satisfying the clause */
+        private final Access access; /**< The way the step reads the contacts */
+        private int rows = -1; /**< The number of contacts kept by the step, -1 until the plan is executed */
+        private long nanos; /**< The time taken by the step, in nanoseconds */
+
+        private Step(SearchQuery.Clause clause, int estimate, Access access) {
+            this.clause = clause;
+            this.scope = null;
+            this.selected = null;
+            this.filter = clause == null ? null : clause.toFilter();
+            this.estimate = estimate;
+            this.access = access;
+        }
+
+        private Step(TagQuery scope, CompressedBitmap selected, Access access) {
+            this.clause = null;
+            this.scope = scope;
+            this.selected = selected;
+            this.filter = c -> selected.contains(c.getId());
+            this.estimate = selected.cardinality();
+            this.access = access;
+        }
+
+        /**
+         * Returns the same test read by another access.
+         */
+        private Step as(Access access) {
+            return scope == null ? new Step(clause, estimate, access) : new Step(scope, selected, access);
+        }
+
+        /**
+         * Returns the clause tested by the step.
+         *
+         * @return the clause of the step, null if the step tests the selection of tags or reads every contact without testing them
+         */
+        public SearchQuery.Clause getClause() {
+            return clause;
+        }
+
+        /**
+         * Returns the selection of tags tested by the step.
+         *
+         * @return the tags selected in the main view, null if the step tests a clause or reads every contact without testing them
+         */
+        public TagQuery getScope() {
+            return scope;
+        }
+
+        /**
+         * Returns the estimated number of contacts satisfying the clause of the step.
+         *
+         * @return the estimate of the step
+         */
+        public int getEstimate() {
+            return estimate;
+        }
+
+        /**
+         * Returns the way the step reads the contacts.
+         *
+         * @return the access of the step
+         */
+        public Access getAccess() {
+            return access;
+        }
+
+        /**
+         * Returns the number of contacts kept by the step.
+         *
+         * @return the number of contacts kept, -1 if the plan has not been executed
+         */
+        public int getRows() {
+            return rows;
+        }
+
+        /**
+         * Returns the time taken by the step.
+         *
+         * @return the duration of the step, in milliseconds
+         */
+        public double getMillis() {
+            return nanos / 1e6;
+        }
+    }
+
+    private final AddressBook addressBook; /**< The address book searched */
+    private final SearchQuery query; /**< The query run by the plan */
+    private final List<Step> steps; /**< The steps of the plan, in the order they are run */
+    private final long planNanos; /**< The time taken to choose the plan, in nanoseconds */
+
+    private QueryPlan(AddressBook addressBook, SearchQuery query, List<Step> steps, long planNanos) {
+        this.addressBook = addressBook;
+        this.query = query;
+        this.steps = Collections.unmodifiableList(steps);
+        this.planNanos = planNanos;
+    }
+
+    /**
+     * Chooses the plan running a query against an address book.
+     *
+     * @param[in] query the query to run
+     * @param[in] addressBook the address book to search
+     * @return the plan of the query
+     * @throws IllegalArgumentException if query or addressBook is null
+     * @see #plan(SearchQuery, TagQuery, AddressBook)
+     */
+    public static QueryPlan plan(SearchQuery query, AddressBook addressBook) {
+        return plan(query, TagQuery.ALL, addressBook);
+    }
+
+    /**
+     * Chooses the plan running a query against the contacts of an address book selected by a combination of tags.
+     *
+     * @param[in] query the query to run
+     * @param[in] scope the tags selected in the main view, {@link TagQuery#ALL} or null if none is
+     * @param[in] addressBook the address book to search
+     * @return the plan of the query
+     * @throws IllegalArgumentException if query or addressBook is null
+     */
+    public static QueryPlan plan(SearchQuery query, TagQuery scope, AddressBook addressBook) {
+        if (query == null || addressBook == null)
+            throw new IllegalArgumentException("Query and address book cannot be null");
+        long start = System.nanoTime();
+        int total = addressBook.contacts().size();
+        List<Step> filters = new ArrayList<>();
+        Step driver = null;
+        if (scope != null && !scope.isEmpty())
+            driver = new Step(scope, addressBook.select(scope), Access.TAG_SELECTION);
+        for (SearchQuery.Clause clause : query.getClauses()) {
+            Access access = access(clause);
+            int estimate;
+            if (access == Access.TAG_INDEX)
+                estimate = addressBook.estimateTagged(clause.getValue());
+            else if (access == Access.PHONETIC_INDEX)
+                estimate = addressBook.estimateSoundsLike(clause.getValue());
+            else
+                estimate = addressBook.estimateCandidates(clause.getValue());
+            if (clause.isNegated()) {
+                filters.add(new Step(clause, Math.max(total - estimate, 0), Access.FILTER));
+                continue;
+            }
+            Step step = new Step(clause, estimate, access);
+            if (driver == null || step.estimate < driver.estimate) {
+                if (driver != null)
+                    filters.add(driver.as(Access.FILTER));
+                driver = step;
+            } else {
+                filters.add(new Step(clause, estimate, Access.FILTER));
+            }
+        }
+        filters.sort(Comparator.comparingInt(Step::getEstimate));
+        List<Step> steps = new ArrayList<>(filters.size() + 1);
+        steps.add(driver == null ? new Step(null, total, Access.FULL_SCAN) : driver);
+        steps.addAll(filters);
+        return new QueryPlan(addressBook, query, steps, System.nanoTime() - start);
+    }
+
+    /**
+     * Returns the index listing the contacts satisfying a clause, or some more.
+     */
+    private static Access access(SearchQuery.Clause clause) {
+        switch (clause.getField()) {
+            case TAG:
+                return Access.TAG_INDEX;
+            case SOUNDS:
+                return Access.PHONETIC_INDEX;
+            default:
+                return Access.TRIGRAM_INDEX;
+        }
+    }
+
+    /**
+     * Runs the plan.
+     *
+     * @return the contacts satisfying every clause of the query, in no particular order
+     * @see #execute(BooleanSupplier)
+     */
+    public List<Contact> execute() {
+        return execute(() -> false);
+    }
+
+    /**
+     * Runs the plan, giving up as soon as it is no longer needed. The contacts kept by each step, and the time it took, are recorded for {@link #explain()}.
+     *
+     * @param[in] cancelled tells whether the search is no longer needed; checked while the contacts are tested
+     * @return the contacts satisfying every clause of the query, in no particular order
+     * @throws CancellationException if the search has been cancelled
+     */
+    public List<Contact> execute(BooleanSupplier cancelled) {
+        List<Contact> rows = null;
+        for (Step step : steps) {
+            long start = System.nanoTime();
+            if (rows == null)
+                rows = read(step);
+            boolean test = step.filter != null && !step.access.isExact();
+            List<Contact> kept = test ? new ArrayList<>() : rows;
+            if (test)
+                for (int i = 0; i < rows.size(); i++) {
+                    if (i % CANCELLATION_CHECK_INTERVAL == 0 && cancelled.getAsBoolean())
+                        throw new CancellationException();
+                    if (step.filter.test(rows.get(i)))
+                        kept.add(rows.get(i));
+                }
+            rows = kept;
+            step.rows = rows.size();
+            step.nanos = System.nanoTime() - start;
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the contacts read by the first step, before testing its clause.
+     */
+    private List<Contact> read(Step step) {
+        switch (step.access) {
+            case TAG_INDEX:
+                return addressBook.taggedWith(step.clause.getValue());
+            case PHONETIC_INDEX:
+                return addressBook.soundsLike(step.clause.getValue());
+            case TAG_SELECTION:
+                return addressBook.contactsOf(step.selected);
+            case TRIGRAM_INDEX:
+                List<Contact> candidates = addressBook.searchCandidates(step.clause.getValue());
+                if (candidates != null)
+                    return candidates;
+                // An empty value is contained by every contact
+                synchronized (addressBook) {
+                    return new ArrayList<>(addressBook.contacts());
+                }
+            default:
+                synchronized (addressBook) {
+                    return new ArrayList<>(addressBook.contacts());
+                }
+        }
+    }
+
+    /**
+     * Returns the steps of the plan.
+     *
+     * @return the steps, in the order they are run
+     */
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    /**
+     * Returns the time taken to choose the plan.
+     *
+     * @return the planning time, in milliseconds
+     */
+    public double getPlanningMillis() {
+        return planNanos / 1e6;
+    }
+
+    /**
+     * Returns a description of the plan, one step per line, with the estimated and actual number of contacts kept by each step
+     * and the time it took, if the plan has been executed.
+     *
+     * @return the explanation of the plan
+     */
+    public String explain() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("Query: %s (planned in %.3f ms)%n", query, getPlanningMillis()));
+        long total = 0;
+        for (int i = 0; i < steps.size(); i++) {
+            Step step = steps.get(i);
+            text.append(String.format("%d. %-14s %-24s estimate %d", i + 1, step.access, describe(step), step.estimate));
+            if (step.rows >= 0)
+                text.append(String.format(", rows %d, %.3f ms", step.rows, step.getMillis()));
+            text.append(String.format("%n"));
+            total += step.nanos;
+        }
+        if (!steps.isEmpty() && steps.get(0).rows >= 0)
+            text.append(String.format("Total: %.3f ms%n", total / 1e6));
+        return text.toString();
+    }
+
+    private static String describe(Step step) {
+        if (step.clause != null)
+            return step.clause.toString();
+        return step.scope == null ? "*" : "tags " + step.scope;
+    }
+
+    @Override
+    public String toString() {
+        return explain();
+    }
+}
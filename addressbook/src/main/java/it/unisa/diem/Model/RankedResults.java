@@ -0,0 +1,169 @@
+package it.unisa.diem.Model;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * The matches of a search, ordered by relevance as they are read.
+ *
+ * The relevance of a contact depends on how it contains the query, and where: an exact hit, where the query is a whole word,
+ * ranks above a prefix of a word, which ranks above any other substring; at the same kind of hit, the name ranks above the email addresses, then the phone numbers, then the tags.
+ * Contacts equally relevant are ordered by full name.
+ *
+ * The matches are not sorted: they are kept in a binary heap, the most relevant at the top, and taken out of it
+ * {@link #ORDER_BATCH} at a time, when a position past the ones already ordered is read. A table showing the first rows only orders
+ * as many contacts, in time linear in the number of matches; the following ones are ordered as the user scrolls down.
+ * The list cannot be modified.
+ *
+ * @invariant contacts != null
+ * @invariant ordered.length == contacts.length
+ */
+public class RankedResults extends AbstractList<Contact> implements RandomAccess {
+    private static final int ORDER_BATCH = 64; /**< The number of contacts ordered at a time */
+
+    private static final int EXACT = 3; /**< The relevance of a field having the query as a whole word, or equal to it */
+    private static final int PREFIX = 2; /**< The relevance of a field having a word starting with the query */
+    private static final int SUBSTRING = 1; /**< The relevance of a field containing the query elsewhere */
+    private static final int NAME = 4; /**< The weight of a hit in the name or surname */
+    private static final int EMAIL = 3; /**< The weight of a hit in an email address */
+    private static final int PHONE = 2; /**< The weight of a hit in a phone number */
+    private static final int TAG = 1; /**< The weight of a hit in a tag */
+    private static final int FIELDS = 5; /**< One more than the highest weight of a field, so that the kind of hit always prevails */
+
+    private final Contact[] contacts; /**< The matches, in no particular order */
+    private final int[] relevance; /**< The relevance of each match */
+    private final String[] names; /**< The normalized full name of each match, ordering the equally relevant ones */
+    private final int[] heap; /**< The matches not ordered yet, as a heap of their positions in {@link #contacts} */
+    private int heapSize; /**< The number of matches in the heap */
+    private final Contact[] ordered; /**< The matches ordered so far, in the first {@link #orderedCount} positions */
+    private int orderedCount; /**< The number of matches ordered so far */
+
+    /**
+     * Ranks the matches of a query.
+     *
+     * @param[in] matches the contacts matching the query, in any order
+     * @param[in] query the text typed in the search bar
+     */
+    public RankedResults(Collection<Contact> matches, String query) {
+        String q = query == null ? "" : SearchKeys.normalize(query.trim());
+        contacts = matches.toArray(new Contact[0]);
+        relevance = new int[contacts.length];
+        names = new String[contacts.length];
+        heap = new int[contacts.length];
+        ordered = new Contact[contacts.length];
+        for (int i = 0; i < contacts.length; i++) {
+            relevance[i] = relevance(contacts[i], q);
+            names[i] = contacts[i].getSearchKeys().getSurnameName();
+            heap[i] = i;
+        }
+        heapSize = contacts.length;
+        // Bottom-up construction, linear in the number of matches
+        for (int i = heapSize / 2 - 1; i >= 0; i--)
+            siftDown(i);
+    }
+
+    /**
+     * Returns the relevance of a contact for a query: the best hit of the query among its fields.
+     *
+     * @param[in] c the contact
+     * @param[in] query the text typed in the search bar, trimmed and normalized as the {@link SearchKeys}
+     * @return the relevance of the contact, higher for better hits; at least 1, as the contact is a match
+     */
+    public static int relevance(Contact c, String query) {
+        SearchKeys keys = c.getSearchKeys();
+        int best = Math.max(hit(query, keys.getName(), NAME), hit(query, keys.getSurname(), NAME));
+        // Only a query with a space can span both the name and the surname
+        if (query.indexOf(' ') >= 0)
+            best = Math.max(best, Math.max(hit(query, keys.getNameSurname(), NAME), hit(query, keys.getSurnameName(), NAME)));
+        for (String email : keys.getEmails())
+            best = Math.max(best, hit(query, email, EMAIL));
+        for (String phone : keys.getPhones())
+            best = Math.max(best, hit(query, phone, PHONE));
+        for (String tag : keys.getTags())
+            best = Math.max(best, hit(query, tag, TAG));
+        // Contacts matched otherwise, such as by the digits of a formatted phone number, rank last
+        return Math.max(best, 1);
+    }
+
+    /**
+     * Returns the relevance of a hit of the query in a field: exact if the query is a whole word of the field, a prefix if it starts a word.
+     */
+    private static int hit(String query, String field, int weight) {
+        if (query.isEmpty())
+            return 0;
+        int kind = 0;
+        for (int at = field.indexOf(query); at >= 0; at = field.indexOf(query, at + 1)) {
+            int end = at + query.length();
+            boolean startsWord = at == 0 || !Character.isLetterOrDigit(field.charAt(at - 1));
+            boolean endsWord = end == field.length() || !Character.isLetterOrDigit(field.charAt(end));
+            if (startsWord && endsWord)
+                return EXACT * FIELDS + weight;
+            kind = Math.max(kind, startsWord ? PREFIX : SUBSTRING);
+        }
+        return kind == 0 ? 0 : kind * FIELDS + weight;
+    }
+
+    /**
+     * Returns the match at the given position, ordering the matches up to it if they have not been ordered yet.
+     *
+     * @param[in] index the position of the match
+     * @return the match at the given position
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    @Override
+    public Contact get(int index) {
+        if (index < 0 || index >= contacts.length)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + contacts.length);
+        while (orderedCount <= index) {
+            for (int i = 0; i < ORDER_BATCH && heapSize > 0; i++) {
+                ordered[orderedCount++] = contacts[heap[0]];
+                heap[0] = heap[--heapSize];
+                siftDown(0);
+            }
+        }
+        return ordered[index];
+    }
+
+    @Override
+    public int size() {
+        return contacts.length;
+    }
+
+    /**
+     * Returns the number of matches ordered so far.
+     *
+     * @return the number of ordered matches
+     */
+    public int getOrderedCount() {
+        return orderedCount;
+    }
+
+    /**
+     * Returns true if the match at position a comes before the one at position b.
+     */
+    private boolean before(int a, int b) {
+        if (relevance[a] != relevance[b])
+            return relevance[a] > relevance[b];
+        int byName = names[a].compareTo(names[b]);
+        if (byName != 0)
+            return byName < 0;
+        return contacts[a].getId() < contacts[b].getId();
+    }
+
+    private void siftDown(int i) {
+        int moving = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize)
+                break;
+            if (child + 1 < heapSize && before(heap[child + 1], heap[child]))
+                child++;
+            if (!before(heap[child], moving))
+                break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = moving;
+    }
+}
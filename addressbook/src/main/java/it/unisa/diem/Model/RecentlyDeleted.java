@@ -1,8 +1,10 @@
 package it.unisa.diem.Model;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OptionalDataException;
 import java.io.Serializable;
 import java.util.Map;
 import java.util.TreeMap;
@@ -31,6 +33,7 @@ import javafx.collections.FXCollections;
  * @invariant trashCan != null
  */
 public class RecentlyDeleted implements Serializable {
+    private static final long serialVersionUID = 9193563225414647138L; /**< Pinned to the value computed for the original class, so that existing address book files stay readable */
     public static transient final int RETENTION_PERIOD_DAYS = 30; /**< The number of days a contact can be restored after its deletion */
     private transient MapProperty<LocalDateProperty, SetProperty<Contact>> trashCan; /**< The map of deleted contacts */
 
@@ -77,16 +80,26 @@ public class RecentlyDeleted implements Serializable {
     }
     
     public void put(Contact c) {
-        LocalDateProperty today = new LocalDateProperty(LocalDate.now());
+        put(c, LocalDate.now());
+    }
+
+    /**
+     * Moves a contact to the trash can, as if it was deleted on the specified date.
+     * Used when replaying the deletions recorded in the address book journal.
+     * 
+     * @param[in] c the deleted contact
+     * @param[in] deletionDate the date of the deletion
+     */
+    public void put(Contact c, LocalDate deletionDate) {
+        LocalDateProperty day = new LocalDateProperty(deletionDate);
         SetProperty<Contact> contacts;
         try{
-            if((contacts=trashCan.get().get(today))!=null){
-                contacts=trashCan.get().get(today);
+            if((contacts=trashCan.get().get(day))!=null){
                 contacts.add(c);
             }else{
                 contacts = new SimpleSetProperty<>(FXCollections.observableSet(new TreeSet<>()));
                 contacts.add(c);
-                trashCan.get().put(today, contacts);
+                trashCan.get().put(day, contacts);
             }
         }catch(NullPointerException e){
             //trashCan is null
@@ -96,6 +109,24 @@ public class RecentlyDeleted implements Serializable {
     
     
     
+    /**
+     * Returns the date on which the given contact was moved to the trash can.
+     * 
+     * @param[in] c the deleted contact
+     * @return the deletion date, or null if the contact is not in the trash can
+     */
+    public LocalDate getDeletionDate(Contact c) {
+        for (Map.Entry<LocalDateProperty, SetProperty<Contact>> entry : trashCan.entrySet())
+            if (entry.getValue().contains(c))
+                return entry.getKey().get();
+        return null;
+    }
+
+    /**
+     * Permanently removes a contact from the trash can.
+     * 
+     * @param[in] c the contact to remove
+     */
      public void remove(Contact c){
         for (Map.Entry<LocalDateProperty, SetProperty<Contact>> entry : trashCan.entrySet()) {
             if (entry.getValue().contains(c)) {
@@ -116,8 +147,10 @@ public class RecentlyDeleted implements Serializable {
      * 
      * @invariant trashCan != null
      * @post trashCan.get().size() <= trashCan.get().size()@pre
+     * @return the contacts removed
      */
-    public void removeExpired() {
+    public List<Contact> removeExpired() {
+        List<Contact> removed = new ArrayList<>();
         LocalDate today = LocalDate.now();
         Iterator<Map.Entry<LocalDateProperty, SetProperty<Contact>>> iterator = trashCan.entrySet().iterator();
         
@@ -127,12 +160,14 @@ public class RecentlyDeleted implements Serializable {
             
             // Check if the deletion date + retention period is before today
             if (deletionDate.plusDays(RETENTION_PERIOD_DAYS).isBefore(today)) {
+                removed.addAll(entry.getValue());
                 iterator.remove();
             } else {
                 // If a non-expired date is found, stop iterating
                 break;
             }
         }
+        return removed;
     }
 
     private void writeObject(ObjectOutputStream out) throws IOException {
@@ -148,21 +183,28 @@ public class RecentlyDeleted implements Serializable {
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
         in.defaultReadObject();
         initializeTrashCan();
-        Object obj;
+        SetProperty<Contact> objs = null;
+        int read = 0;
         try{
-            obj = in.readObject();
-            do {
-                LocalDate ld = (LocalDate) obj;
-                SetProperty<Contact> objs = new SimpleSetProperty<>(FXCollections.observableSet(new TreeSet<>()));
-                while((obj = in.readObject())!=null){
-                    if(obj instanceof LocalDate)
-                        break;
-                    objs.add((Contact)obj);
+            while (true) {
+                Object obj = in.readObject();
+                if (obj instanceof LocalDate) {
+                    // Each deletion date is followed by the contacts deleted on that day
+                    objs = new SimpleSetProperty<>(FXCollections.observableSet(new TreeSet<>()));
+                    trashCan.put(new LocalDateProperty((LocalDate) obj), objs);
+                } else {
+                    objs.add((Contact) obj);
+                    read++;
                 }
-                trashCan.put(new LocalDateProperty(ld), objs);
-            } while((obj = in.readObject()) instanceof Contact);
-        } catch(Exception e){
-            //EOF
+            }
+        } catch (OptionalDataException e) {
+            // End of the trash can
+            if (!e.eof)
+                System.err.println("Trash can truncated after " + read + " contacts: " + e);
+        } catch (EOFException e) {
+            // End of file reached
+        } catch (Exception e) {
+            System.err.println("Trash can truncated after " + read + " contacts: " + e);
         }
     }
 }
@@ -9,6 +9,7 @@ import it.unisa.diem.Model.Interfaces.Checker.SimpleEmailChecker;
  * A safe version of the {@link Contact} class, which uses {@link Checker} instances to ensure that no illegal value is assigned to its fields.
  */
 public class SafeContact extends Contact {
+    private static final long serialVersionUID = 1535834217290791675L; /**< Pinned to the value computed for the original class, so that existing address book files stay readable */
     public static final int MAX_NAME_LEN = 50;
     public static final int MAX_SURNAME_LEN = 50;
     
@@ -0,0 +1,146 @@
+package it.unisa.diem.Model;
+
+import java.text.Normalizer;
+import java.util.regex.Pattern;
+
+/**
+ * The searchable fields of a {@link Contact}, normalized once for the search filters and indexes: lowercased, and without accents,
+ * so that "citta" finds "Citt&agrave;" and "Muller" finds "M&uuml;ller".
+ *
+ * The keys of a contact are computed when first read, and computed again the first time they are read after the contact changes:
+ * see {@link Contact#getSearchKeys()}. Testing a contact against a filter reads them without creating any object.
+ * The keys cannot be modified.
+ *
+ * @invariant name != null && surname != null && surnameName != null && nameSurname != null
+ * @invariant emails != null && phones != null && tags != null
+ */
+public final class SearchKeys {
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+"); /**< The accents and other marks left as separate characters by the decomposition of a text */
+
+    private final int version; /**< The version of the contact the keys were computed from */
+    private final String name; /**< The normalized name */
+    private final String surname; /**< The normalized surname */
+    private final String surnameName; /**< The normalized surname and name, separated by a space */
+    private final String nameSurname; /**< The normalized name and surname, separated by a space */
+    private final String[] emails; /**< The normalized email addresses, empty strings included */
+    private final String[] phones; /**< The normalized phone numbers, empty strings included */
+    private final String[] tags; /**< The normalized names of the tags */
+
+    /**
+     * Computes the keys of a contact.
+     *
+     * @param[in] c the contact
+     * @param[in] version the version of the contact, read before its fields
+     */
+    SearchKeys(Contact c, int version) {
+        this.version = version;
+        name = normalize(c.getNameValue());
+        surname = normalize(c.getSurnameValue());
+        surnameName = surname + " " + name;
+        nameSurname = name + " " + surname;
+        String[] emailList = c.getEmailList();
+        emails = new String[emailList.length];
+        for (int i = 0; i < emailList.length; i++)
+            emails[i] = normalize(emailList[i]);
+        String[] phoneList = c.getPhoneNumberList();
+        phones = new String[phoneList.length];
+        for (int i = 0; i < phoneList.length; i++)
+            phones[i] = normalize(phoneList[i]);
+        Tag[] tagList = c.getTags().toArray(new Tag[0]);
+        tags = new String[tagList.length];
+        for (int i = 0; i < tagList.length; i++)
+            tags[i] = normalize(tagList[i].getNameValue());
+    }
+
+    /**
+     * Normalizes a text as the search keys are: lowercased, and without accents.
+     * A text made of lowercase ASCII characters only is returned as it is, without creating a new String.
+     *
+     * @param[in] text the text to normalize
+     * @return the normalized text, an empty String if text is null
+     */
+    public static String normalize(String text) {
+        if (text == null)
+            return "";
+        for (int i = 0; i < text.length(); i++)
+            if (text.charAt(i) >= 128)
+                return MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase();
+        // Plain ASCII has no accents to remove
+        return text.toLowerCase();
+    }
+
+    /**
+     * Returns the version of the contact the keys were computed from: they are outdated if the contact has changed since.
+     *
+     * @return the version of the contact
+     */
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the normalized name.
+     *
+     * @return the normalized name, an empty String if there is none
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the normalized surname.
+     *
+     * @return the normalized surname, an empty String if there is none
+     */
+    public String getSurname() {
+        return surname;
+    }
+
+    /**
+     * Returns the normalized surname and name, in the form "surname name".
+     *
+     * @return the normalized full name, surname first
+     */
+    public String getSurnameName() {
+        return surnameName;
+    }
+
+    /**
+     * Returns the normalized name and surname, in the form "name surname".
+     *
+     * @return the normalized full name, name first
+     */
+    public String getNameSurname() {
+        return nameSurname;
+    }
+
+    /**
+     * Returns the normalized email addresses.
+     * @important The returned array is read-only.
+     *
+     * @return the normalized email addresses, in the order of {@link Contact#getEmailList()}
+     */
+    public String[] getEmails() {
+        return emails;
+    }
+
+    /**
+     * Returns the normalized phone numbers.
+     * @important The returned array is read-only.
+     *
+     * @return the normalized phone numbers, in the order of {@link Contact#getPhoneNumberList()}
+     */
+    public String[] getPhones() {
+        return phones;
+    }
+
+    /**
+     * Returns the normalized names of the tags.
+     * @important The returned array is read-only.
+     *
+     * @return the normalized names of the tags, in the order of {@link Contact#getTags()}
+     */
+    public String[] getTags() {
+        return tags;
+    }
+}
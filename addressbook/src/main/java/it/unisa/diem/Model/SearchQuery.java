@@ -0,0 +1,303 @@
+package it.unisa.diem.Model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import it.unisa.diem.Model.Interfaces.Filter.AnyFieldFilter;
+import it.unisa.diem.Model.Interfaces.Filter.BaseFilter;
+import it.unisa.diem.Model.Interfaces.Filter.EmailFilter;
+import it.unisa.diem.Model.Interfaces.Filter.Filter;
+import it.unisa.diem.Model.Interfaces.Filter.NameFilter;
+import it.unisa.diem.Model.Interfaces.Filter.NotFilter;
+import it.unisa.diem.Model.Interfaces.Filter.PhoneFilter;
+import it.unisa.diem.Model.Interfaces.Filter.PhoneticNameFilter;
+import it.unisa.diem.Model.Interfaces.Filter.TagFilter;
+import javafx.beans.property.SimpleStringProperty;
+
+/**
+ * A query typed in the search bar, split into clauses that a contact must all satisfy.
+ *
+ * A clause is a substring, optionally restricted to a field by one of the prefixes {@code name:}, {@code email:}, {@code phone:} and {@code tag:},
+ * and optionally negated by a leading {@code -}: {@code tag:work name:ross phone:333 -tag:old} matches the contacts having a tag containing "work",
+ * a name or surname containing "ross" and a phone number containing "333", and no tag containing "old".
+ * Substrings with spaces are written between double quotes: {@code name:"mario rossi"}. The words outside of any field are kept together,
+ * as a single substring looked for in every field.
+ * The prefix {@code sounds:} switches a clause to a sounds-like search: {@code sounds:esposito} matches the contacts whose name or surname
+ * is pronounced like "Esposito", such as "Sposito", as told by the {@link PhoneticIndex}.
+ * A query without fields and negations is a plain search: its text is a single substring, looked for in every field, as it always was.
+ *
+ * @invariant clauses != null
+ */
+public class SearchQuery {
+
+    /**
+     * The fields a clause can be restricted to.
+     */
+    public enum Field {
+        ANY(""), /**< Any field looked into by the search bar */
+        NAME("name"), /**< The name and the surname */
+        EMAIL("email"), /**< The email addresses */
+        PHONE("phone"), /**< The phone numbers */
+        TAG("tag"), /**< The names of the tags */
+        SOUNDS("sounds"); /**< The sound of the name and the surname */
+
+        private final String keyword; /**< The prefix restricting a clause to the field, without the colon */
+
+        Field(String keyword) {
+            this.keyword = keyword;
+        }
+
+        /**
+         * Returns the prefix restricting a clause to the field.
+         *
+         * @return the prefix of the field, without the colon; an empty String for {@link #ANY}
+         */
+        public String getKeyword() {
+            return keyword;
+        }
+    }
+
+    /**
+     * A condition of a query: the given field of the contact contains the value, or does not if the clause is negated.
+     */
+    public static class Clause {
+        private final Field field; /**< The field looked into */
+        private final String value; /**< The substring looked for, trimmed and normalized as the {@link SearchKeys} */
+        private final boolean negated; /**< True if the contacts must not contain the value */
+
+        /**
+         * Creates a clause.
+         *
+         * @param[in] field the field looked into
+         * @param[in] value the substring looked for
+         * @param[in] negated true if the contacts must not contain the value
+         * @throws IllegalArgumentException if field or value is null
+         */
+        public Clause(Field field, String value, boolean negated) {
+            if (field == null || value == null)
+                throw new IllegalArgumentException("Field and value cannot be null");
+            this.field = field;
+            this.value = SearchKeys.normalize(value.trim());
+            this.negated = negated;
+        }
+
+        /**
+         * Returns the field looked into.
+         *
+         * @return the field of the clause
+         */
+        public Field getField() {
+            return field;
+        }
+
+        /**
+         * Returns the substring looked for.
+         *
+         * @return the value of the clause, trimmed and normalized
+         */
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * Returns true if the contacts must not contain the value.
+         *
+         * @return true if the clause is negated
+         */
+        public boolean isNegated() {
+            return negated;
+        }
+
+        /**
+         * Builds the filter testing the clause, as a decorator chain over a {@link BaseFilter} holding the value.
+         *
+         * @return the filter of the clause
+         */
+        public Filter toFilter() {
+            BaseFilter base = new BaseFilter(new SimpleStringProperty(value));
+            Filter filter;
+            switch (field) {
+                case NAME:
+                    filter = new NameFilter(base);
+                    break;
+                case EMAIL:
+                    filter = new EmailFilter(base);
+                    break;
+                case PHONE:
+                    filter = new PhoneFilter(base);
+                    break;
+                case TAG:
+                    filter = new TagFilter(base);
+                    break;
+                case SOUNDS:
+                    filter = new PhoneticNameFilter(base);
+                    break;
+                default:
+                    filter = new AnyFieldFilter(base);
+            }
+            return negated ? new NotFilter(filter) : filter;
+        }
+
+        /**
+         * Returns the clause as it is written in a query.
+         */
+        @Override
+        public String toString() {
+            String text = value.indexOf(' ') >= 0 ? "\"" + value + "\"" : value;
+            return (negated ? "-" : "") + (field == Field.ANY ? "" : field.getKeyword() + ":") + text;
+        }
+    }
+
+    private final List<Clause> clauses; /**< The clauses of the query, in the order they were written */
+
+    private SearchQuery(List<Clause> clauses) {
+        this.clauses = Collections.unmodifiableList(clauses);
+    }
+
+    /**
+     * Parses the text typed in the search bar.
+     *
+     * @param[in] text the text typed in the search bar
+     * @return the query written in the text; a query without clauses if the text is empty or null
+     */
+    public static SearchQuery parse(String text) {
+        List<Clause> clauses = new ArrayList<>();
+        if (text == null)
+            return new SearchQuery(clauses);
+        List<String> terms = terms(text);
+        boolean plain = true;
+        for (String term : terms)
+            plain &= field(term) == null && !negated(term);
+        if (plain) {
+            // Without fields and negations, the whole text is one substring, spaces included
+            if (!text.trim().isEmpty())
+                clauses.add(new Clause(Field.ANY, text, false));
+            return new SearchQuery(clauses);
+        }
+        StringBuilder free = new StringBuilder();
+        for (String term : terms) {
+            boolean negated = negated(term);
+            String body = negated ? term.substring(1) : term;
+            Field field = field(body);
+            if (field != null)
+                body = body.substring(field.getKeyword().length() + 1);
+            body = unquote(body);
+            if (body.trim().isEmpty())
+                continue;
+            if (field == null && !negated)
+                free.append(free.length() == 0 ? "" : " ").append(body);
+            else
+                clauses.add(new Clause(field == null ? Field.ANY : field, body, negated));
+        }
+        if (free.length() > 0)
+            clauses.add(0, new Clause(Field.ANY, free.toString(), false));
+        return new SearchQuery(clauses);
+    }
+
+    /**
+     * Splits a text into terms at the spaces outside of double quotes.
+     */
+    private static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        StringBuilder term = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch == '"')
+                quoted = !quoted;
+            if (Character.isWhitespace(ch) && !quoted) {
+                if (term.length() > 0)
+                    terms.add(term.toString());
+                term.setLength(0);
+            } else {
+                term.append(ch);
+            }
+        }
+        if (term.length() > 0)
+            terms.add(term.toString());
+        return terms;
+    }
+
+    private static boolean negated(String term) {
+        return term.length() > 1 && term.charAt(0) == '-';
+    }
+
+    /**
+     * Returns the field a term is restricted to, ignoring its negation, or null if it has no field prefix.
+     */
+    private static Field field(String term) {
+        String body = negated(term) ? term.substring(1) : term;
+        int colon = body.indexOf(':');
+        if (colon <= 0)
+            return null;
+        String keyword = body.substring(0, colon).toLowerCase();
+        for (Field field : Field.values())
+            if (field != Field.ANY && field.getKeyword().equals(keyword))
+                return field;
+        return null;
+    }
+
+    private static String unquote(String body) {
+        return body.replace("\"", "");
+    }
+
+    /**
+     * Returns a copy of the query restricted to the contacts having a tag containing the name of the given one.
+     *
+     * @param[in] tag the selected tag, null if none is
+     * @return the restricted query, or this query if tag is null
+     */
+    public SearchQuery withTag(Tag tag) {
+        if (tag == null)
+            return this;
+        List<Clause> restricted = new ArrayList<>(clauses);
+        restricted.add(new Clause(Field.TAG, tag.getNameValue(), false));
+        return new SearchQuery(restricted);
+    }
+
+    /**
+     * Returns the clauses of the query.
+     *
+     * @return the clauses, in the order they were written; words outside of any field come first
+     */
+    public List<Clause> getClauses() {
+        return clauses;
+    }
+
+    /**
+     * Returns true if the query uses fields or negations, false if it is a plain search.
+     *
+     * @return true if the query is not a plain search
+     */
+    public boolean isStructured() {
+        for (Clause clause : clauses)
+            if (clause.getField() != Field.ANY || clause.isNegated())
+                return true;
+        return false;
+    }
+
+    /**
+     * Returns the text the matches are ranked by: the words outside of any field, or else the value of the first name, email, phone or sounds-like clause
+     * that is not negated, so that the names spelled as the query come first.
+     *
+     * @return the text ranking the matches, an empty String if there is none
+     */
+    public String getRankingText() {
+        for (Clause clause : clauses)
+            if (!clause.isNegated() && clause.getField() != Field.TAG)
+                return clause.getValue();
+        return "";
+    }
+
+    /**
+     * Returns the query as it is written in the search bar, with one space between the clauses.
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (Clause clause : clauses)
+            text.append(text.length() == 0 ? "" : " ").append(clause);
+        return text.toString();
+    }
+}
@@ -0,0 +1,230 @@
+package it.unisa.diem.Model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import it.unisa.diem.Model.Interfaces.Filter.BaseFilter;
+import it.unisa.diem.Model.Interfaces.Filter.EmailFilter;
+import it.unisa.diem.Model.Interfaces.Filter.FuzzyNameFilter;
+import it.unisa.diem.Model.Interfaces.Filter.NameFilter;
+import it.unisa.diem.Model.Interfaces.Filter.PhoneFilter;
+import it.unisa.diem.Model.Interfaces.Filter.TagFilter;
+import javafx.beans.property.SimpleStringProperty;
+
+/**
+ * The searches typed in the search bar of an address book, one character at a time.
+ *
+ * A contact matches a search if its name, surname, email addresses, phone numbers or tags contain the query, and it is selected by
+ * the tags chosen in the main view, if any: see {@link TagQuery}. Such matches also contain any shorter part of the query: when a query extends the previous one within
+ * the same tags, its matches are found among the previous matches only, so that each typed character tests fewer contacts.
+ * Other queries, such as the ones left by deleting characters, are searched among the candidates given by the index of the address book.
+ * The matches are ranked by relevance, and only ordered as they are read: see {@link RankedResults}.
+ * When no contact contains the query, it may have been mistyped: the contacts whose names are closest to it are shown instead.
+ * A query restricted to fields or with negations, such as {@code tag:work name:ross -tag:old}, is run by the {@link QueryPlan} chosen
+ * from the statistics of the indexes instead: see {@link SearchQuery}.
+ * The matches of the last query are kept until the session is invalidated, which must be done whenever the contacts change.
+ * Contacts edited in place notify no listener, so the session invalidates itself when the {@link AddressBook#getEditCount()} changes.
+ * A session is not thread safe: it must be used by one thread at a time. Only the plan of the last query can be read from another thread.
+ *
+ * @invariant addressBook != null
+ */
+public class SearchSession {
+    private static final int CANCELLATION_CHECK_INTERVAL = 1024; /**< The number of contacts tested between two checks of the cancellation of a search */
+    private static final int FUZZY_RESULTS = 50; /**< The highest number of contacts shown when nothing contains the query and the closest names are shown instead */
+    private static final Pattern FORMATTED_PHONE = Pattern.compile("[0-9+()./\\- ]+"); /**< The characters of a query looking like a formatted phone number */
+
+    private final AddressBook addressBook; /**< The address book searched */
+    private String query; /**< The last query, trimmed and normalized as the {@link SearchKeys}, null if there are no matches to refine */
+    private TagQuery scope; /**< The tags chosen for the last query, null if there are no matches to refine */
+    private List<Contact> matches; /**< The matches of the last query, in no particular order, null if there are none to refine */
+    private volatile QueryPlan lastPlan; /**< The plan of the last query restricted to fields or with negations, null if there was none */
+    private long editCount; /**< The number of edits of contacts in place of the address book when the matches were found */
+
+    /**
+     * Creates a session searching the given address book.
+     *
+     * @param[in] addressBook the address book to search
+     * @throws IllegalArgumentException if addressBook is null
+     */
+    public SearchSession(AddressBook addressBook) {
+        if (addressBook == null)
+            throw new IllegalArgumentException("Address book cannot be null");
+        this.addressBook = addressBook;
+    }
+
+    /**
+     * Builds the test of a search: the contact contains the query in its name, surname, email addresses, phone numbers or tags,
+     * and is marked with the given tag, if any.
+     *
+     * @param[in] text the text typed in the search bar
+     * @param[in] tag the selected tag, null if none is
+     * @return the test of the search
+     */
+    public static Predicate<Contact> predicate(String text, Tag tag) {
+        BaseFilter baseFilter = new BaseFilter(new SimpleStringProperty(text));
+        Predicate<Contact> matchSearch = new TagFilter(baseFilter).or(new NameFilter(baseFilter)).or(new EmailFilter(baseFilter)).or(new PhoneFilter(baseFilter));
+        if (tag == null)
+            return matchSearch;
+        return tagPredicate(tag).and(matchSearch);
+    }
+
+    /**
+     * Builds the test of a search tolerating typing mistakes: every word of the query is close to a word of the name or surname of the contact,
+     * and the contact is marked with the given tag, if any.
+     *
+     * @param[in] text the text typed in the search bar
+     * @param[in] tag the selected tag, null if none is
+     * @return the test of the search
+     * @see FuzzyNameFilter
+     */
+    public static Predicate<Contact> fuzzyPredicate(String text, Tag tag) {
+        Predicate<Contact> matchName = new FuzzyNameFilter(new BaseFilter(new SimpleStringProperty(text)));
+        if (tag == null)
+            return matchName;
+        return tagPredicate(tag).and(matchName);
+    }
+
+    private static Predicate<Contact> tagPredicate(Tag tag) {
+        return new TagFilter(new BaseFilter(new SimpleStringProperty(tag.getNameValue())));
+    }
+
+    /**
+     * Returns the contacts matching a search, the most relevant first.
+     * A query that looks like a formatted phone number, such as "333 123 4567" or "+39 333-1234567", also matches the contacts
+     * with a number starting or ending with its digits. If no contact matches, the contacts whose names are closest to the query are returned instead,
+     * the closest first.
+     *
+     * @param[in] text the text typed in the search bar
+     * @param[in] scope the tags chosen in the main view, {@link TagQuery#ALL} or null if none is
+     * @return the matching contacts, not to be modified, or null if the query is empty and every contact matches
+     */
+    public List<Contact> search(String text, TagQuery scope) {
+        return search(text, scope, () -> false);
+    }
+
+    /**
+     * Returns the contacts matching a search, the most relevant first, giving up as soon as the search is no longer needed.
+     * A cancelled search leaves the session as it was.
+     *
+     * @param[in] text the text typed in the search bar
+     * @param[in] scope the tags chosen in the main view, {@link TagQuery#ALL} or null if none is
+     * @param[in] cancelled tells whether the search is no longer needed; checked while the contacts are tested
+     * @return the matching contacts, not to be modified, or null if the query is empty and every contact matches
+     * @throws CancellationException if the search has been cancelled
+     * @see #search(String, TagQuery)
+     */
+    public List<Contact> search(String text, TagQuery scope, BooleanSupplier cancelled) {
+        long edits = addressBook.getEditCount();
+        if (edits != editCount)
+            invalidate();
+        String q = text == null ? "" : SearchKeys.normalize(text.trim());
+        if (q.isEmpty()) {
+            invalidate();
+            return null;
+        }
+        SearchQuery parsed = SearchQuery.parse(text);
+        if (parsed.isStructured()) {
+            // The chosen tags are one more step of the plan. Its matches are not refined, as removing a negation widens them
+            QueryPlan plan = QueryPlan.plan(parsed, scope, addressBook);
+            List<Contact> found = plan.execute(cancelled);
+            lastPlan = plan;
+            invalidate();
+            return new RankedResults(found, parsed.getRankingText());
+        }
+        if (scope == null)
+            scope = TagQuery.ALL;
+        // The contacts selected by the tags are looked up in their bitmap, not by walking the tags of each contact
+        CompressedBitmap selected = scope.isEmpty() ? null : addressBook.select(scope);
+        Predicate<Contact> inScope = selected == null ? null : c -> selected.contains(c.getId());
+        Predicate<Contact> predicate = predicate(q, null);
+        if (inScope != null)
+            predicate = inScope.and(predicate);
+        List<Contact> phoneOwners = phoneOwners(q);
+        List<Contact> found = new ArrayList<>();
+        if (matches != null && phoneOwners.isEmpty() && scope.equals(this.scope) && q.contains(query)) {
+            // The matches of the extended query are among the previous ones
+            for (int i = 0; i < matches.size(); i++)
+                if (test(predicate, matches.get(i), i, cancelled))
+                    found.add(matches.get(i));
+        } else {
+            List<Contact> candidates = addressBook.searchCandidates(q);
+            if (selected != null && selected.cardinality() < candidates.size())
+                candidates = addressBook.contactsOf(selected);
+            if (!phoneOwners.isEmpty()) {
+                // A formatted number matches the numbers starting or ending with its digits, whatever the filters say
+                Set<Contact> owners = Collections.newSetFromMap(new IdentityHashMap<>());
+                owners.addAll(phoneOwners);
+                Set<Contact> known = Collections.newSetFromMap(new IdentityHashMap<>());
+                known.addAll(candidates);
+                for (Contact c : owners)
+                    if (known.add(c))
+                        candidates.add(c);
+                Predicate<Contact> matchPhone = owners::contains;
+                if (inScope != null)
+                    matchPhone = matchPhone.and(inScope);
+                predicate = predicate.or(matchPhone);
+            }
+            for (int i = 0; i < candidates.size(); i++)
+                if (test(predicate, candidates.get(i), i, cancelled))
+                    found.add(candidates.get(i));
+        }
+        query = q;
+        this.scope = scope;
+        matches = found;
+        editCount = edits;
+        // Nothing contains the query, which may have been mistyped. The closest names are not refined by the next query, as they do not shrink when it grows
+        if (found.isEmpty()) {
+            Predicate<Contact> close = fuzzyPredicate(q, null);
+            if (inScope != null)
+                close = inScope.and(close);
+            return Collections.unmodifiableList(addressBook.fuzzySearch(q, FuzzyNameIndex.MAX_DISTANCE, FUZZY_RESULTS, close));
+        }
+        return new RankedResults(found, q);
+    }
+
+    private static boolean test(Predicate<Contact> predicate, Contact c, int tested, BooleanSupplier cancelled) {
+        if (tested % CANCELLATION_CHECK_INTERVAL == 0 && cancelled.getAsBoolean())
+            throw new CancellationException();
+        return predicate.test(c);
+    }
+
+    /**
+     * Returns the plan of the last query restricted to fields or with negations, with the contacts kept by each step and the time it took.
+     *
+     * @return the plan of the last such query, null if there was none
+     * @see QueryPlan#explain()
+     */
+    public QueryPlan getLastPlan() {
+        return lastPlan;
+    }
+
+    /**
+     * Forgets the matches of the last query, so that the next search looks into every contact again.
+     * To be called whenever the contacts of the address book change.
+     */
+    public void invalidate() {
+        query = null;
+        scope = null;
+        matches = null;
+    }
+
+    /**
+     * Returns the owners of the numbers starting or ending with the digits of a query that looks like a formatted phone number.
+     * Numbers made of digits only are already matched by the search filters.
+     */
+    private List<Contact> phoneOwners(String q) {
+        String digits = PhoneIndex.digits(q);
+        if (digits.isEmpty() || digits.equals(q) || !FORMATTED_PHONE.matcher(q).matches())
+            return Collections.emptyList();
+        List<Contact> owners = addressBook.findByPhone(digits, PhoneIndex.Match.PREFIX);
+        owners.addAll(addressBook.findByPhone(digits, PhoneIndex.Match.SUFFIX));
+        return owners;
+    }
+}
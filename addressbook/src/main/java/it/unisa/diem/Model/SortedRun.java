@@ -0,0 +1,138 @@
+package it.unisa.diem.Model;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+/**
+ * Read-only {@link SortedSet} view of a list whose elements are already in their natural order.
+ *
+ * A {@link java.util.TreeSet} filled from a SortedSet, through its constructor or through addAll() while it is empty, is built in linear time
+ * from the iterator of the set, without comparing its elements. This view lets a list of contacts decoded in order be bulk-loaded that way,
+ * instead of inserting the contacts one by one with O(log n) comparisons each.
+ * The set cannot be modified; its head, tail and subsets are views of ranges of the same list, whose bounds are found by binary search.
+ *
+ * @invariant elements != null
+ * @invariant the elements are in strictly ascending order
+ */
+class SortedRun<E extends Comparable<? super E>> extends AbstractSet<E> implements SortedSet<E> {
+    private final List<E> elements; /**< The elements of the set, in ascending order */
+
+    private SortedRun(List<E> elements) {
+        this.elements = elements;
+    }
+
+    /**
+     * Sorts the given elements by merging the ascending runs they are made of: a list that is already sorted is only scanned once.
+     * As when adding them to a sorted set, an element comparing equal to the element before it is discarded.
+     *
+     * @param[in] elements the elements to sort, usually decoded from a file in ascending order
+     * @return the view of the sorted elements
+     */
+    static <E extends Comparable<? super E>> SortedRun<E> of(Collection<E> elements) {
+        List<List<E>> runs = new ArrayList<>();
+        List<E> run = new ArrayList<>();
+        for (E e : elements) {
+            if (!run.isEmpty()) {
+                int result = run.get(run.size() - 1).compareTo(e);
+                if (result == 0)
+                    continue;
+                if (result > 0) {
+                    runs.add(run);
+                    run = new ArrayList<>();
+                }
+            }
+            run.add(e);
+        }
+        runs.add(run);
+        // Pairwise merges, as few runs are expected
+        while (runs.size() > 1) {
+            List<List<E>> merged = new ArrayList<>((runs.size() + 1) / 2);
+            for (int i = 0; i + 1 < runs.size(); i += 2)
+                merged.add(merge(runs.get(i), runs.get(i + 1)));
+            if (runs.size() % 2 == 1)
+                merged.add(runs.get(runs.size() - 1));
+            runs = merged;
+        }
+        return new SortedRun<>(runs.get(0));
+    }
+
+    private static <E extends Comparable<? super E>> List<E> merge(List<E> left, List<E> right) {
+        List<E> merged = new ArrayList<>(left.size() + right.size());
+        int i = 0, j = 0;
+        while (i < left.size() || j < right.size()) {
+            E next;
+            if (j == right.size() || (i < left.size() && left.get(i).compareTo(right.get(j)) <= 0))
+                next = left.get(i++);
+            else
+                next = right.get(j++);
+            if (merged.isEmpty() || merged.get(merged.size() - 1).compareTo(next) != 0)
+                merged.add(next);
+        }
+        return merged;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return Collections.unmodifiableList(elements).iterator();
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+
+    @Override
+    public Comparator<? super E> comparator() {
+        return null;
+    }
+
+    @Override
+    public E first() {
+        if (elements.isEmpty())
+            throw new NoSuchElementException();
+        return elements.get(0);
+    }
+
+    @Override
+    public E last() {
+        if (elements.isEmpty())
+            throw new NoSuchElementException();
+        return elements.get(elements.size() - 1);
+    }
+
+    @Override
+    public SortedSet<E> subSet(E fromElement, E toElement) {
+        if (fromElement.compareTo(toElement) > 0)
+            throw new IllegalArgumentException("fromElement cannot follow toElement");
+        return range(lowerBound(fromElement), lowerBound(toElement));
+    }
+
+    @Override
+    public SortedSet<E> headSet(E toElement) {
+        return range(0, lowerBound(toElement));
+    }
+
+    @Override
+    public SortedSet<E> tailSet(E fromElement) {
+        return range(lowerBound(fromElement), elements.size());
+    }
+
+    private SortedSet<E> range(int from, int to) {
+        return new SortedRun<>(elements.subList(from, to));
+    }
+
+    /**
+     * Returns the position of the first element not lower than the given one, the size of the list if there is none.
+     */
+    private int lowerBound(E e) {
+        int at = Collections.binarySearch(elements, e);
+        return at >= 0 ? at : -at - 1;
+    }
+}
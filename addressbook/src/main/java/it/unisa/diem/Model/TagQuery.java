@@ -0,0 +1,213 @@
+package it.unisa.diem.Model;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A combination of tags selecting the contacts shown in the main view: the contacts marked with all of some tags,
+ * with at least one of some others, and with none of the rest.
+ * For example, the query with all of "work", any of "rome" and "milan" and none of "old" selects the contacts marked with "work"
+ * and with "rome" or "milan", but not with "old". A query with no tags selects every contact.
+ *
+ * A query is evaluated by {@link it.unisa.diem.Model.Interfaces.TaggableList#select(TagQuery)} on the bitmaps of the tags,
+ * without looking into the tags of each contact. A query is immutable: each change returns a new query.
+ * Tags are compared by name, and each tag has a single role in a query: adding it in a role removes it from the others.
+ *
+ * @invariant allOf != null
+ * @invariant anyOf != null
+ * @invariant noneOf != null
+ */
+public final class TagQuery {
+    public static final TagQuery ALL = new TagQuery(Collections.emptySet(), Collections.emptySet(), Collections.emptySet()); /**< The query selecting every contact */
+
+    private final Set<Tag> allOf; /**< The tags every selected contact is marked with */
+    private final Set<Tag> anyOf; /**< The tags of which every selected contact is marked with at least one */
+    private final Set<Tag> noneOf; /**< The tags no selected contact is marked with */
+
+    /**
+     * Creates a query. A tag given in more than one role keeps the last one: none of, then any of, then all of.
+     *
+     * @param[in] allOf the tags every selected contact must be marked with
+     * @param[in] anyOf the tags of which every selected contact must be marked with at least one; ignored if empty
+     * @param[in] noneOf the tags no selected contact must be marked with
+     * @throws IllegalArgumentException if a collection is null or holds null
+     */
+    public TagQuery(Collection<Tag> allOf, Collection<Tag> anyOf, Collection<Tag> noneOf) {
+        Set<Tag> all = sorted(allOf);
+        Set<Tag> any = sorted(anyOf);
+        any.removeAll(all);
+        Set<Tag> none = sorted(noneOf);
+        none.removeAll(all);
+        none.removeAll(any);
+        this.allOf = Collections.unmodifiableSet(all);
+        this.anyOf = Collections.unmodifiableSet(any);
+        this.noneOf = Collections.unmodifiableSet(none);
+    }
+
+    /**
+     * Returns the query selecting the contacts marked with a tag.
+     *
+     * @param[in] tag the tag
+     * @return the query with the tag only, {@link #ALL} if tag is null
+     */
+    public static TagQuery of(Tag tag) {
+        return tag == null ? ALL : ALL.withAllOf(tag);
+    }
+
+    /**
+     * Returns a copy of the query where every selected contact must also be marked with a tag.
+     *
+     * @param[in] tag the tag
+     * @return the new query
+     * @throws IllegalArgumentException if tag is null
+     */
+    public TagQuery withAllOf(Tag tag) {
+        Set<Tag> all = new TreeSet<>(allOf);
+        all.add(requireTag(tag));
+        return new TagQuery(all, without(anyOf, tag), without(noneOf, tag));
+    }
+
+    /**
+     * Returns a copy of the query where every selected contact must be marked with a tag or with another tag of the any-of role.
+     *
+     * @param[in] tag the tag
+     * @return the new query
+     * @throws IllegalArgumentException if tag is null
+     */
+    public TagQuery withAnyOf(Tag tag) {
+        Set<Tag> any = new TreeSet<>(anyOf);
+        any.add(requireTag(tag));
+        return new TagQuery(without(allOf, tag), any, without(noneOf, tag));
+    }
+
+    /**
+     * Returns a copy of the query where no selected contact may be marked with a tag.
+     *
+     * @param[in] tag the tag
+     * @return the new query
+     * @throws IllegalArgumentException if tag is null
+     */
+    public TagQuery withNoneOf(Tag tag) {
+        Set<Tag> none = new TreeSet<>(noneOf);
+        none.add(requireTag(tag));
+        return new TagQuery(without(allOf, tag), without(anyOf, tag), none);
+    }
+
+    /**
+     * Returns a copy of the query without a tag, whatever its role.
+     *
+     * @param[in] tag the tag
+     * @return the new query, this query if it does not have the tag
+     */
+    public TagQuery without(Tag tag) {
+        if (!contains(tag))
+            return this;
+        return new TagQuery(without(allOf, tag), without(anyOf, tag), without(noneOf, tag));
+    }
+
+    private static Set<Tag> sorted(Collection<Tag> tags) {
+        if (tags == null)
+            throw new IllegalArgumentException("Tags cannot be null");
+        Set<Tag> sorted = new TreeSet<>();
+        for (Tag tag : tags)
+            sorted.add(requireTag(tag));
+        return sorted;
+    }
+
+    private static Tag requireTag(Tag tag) {
+        if (tag == null)
+            throw new IllegalArgumentException("Tag cannot be null");
+        return tag;
+    }
+
+    private static Set<Tag> without(Set<Tag> tags, Tag tag) {
+        Set<Tag> left = new TreeSet<>(tags);
+        left.remove(tag);
+        return left;
+    }
+
+    /**
+     * Returns the tags every selected contact is marked with.
+     *
+     * @return the all-of tags, sorted by name; not to be modified
+     */
+    public Set<Tag> getAllOf() {
+        return allOf;
+    }
+
+    /**
+     * Returns the tags of which every selected contact is marked with at least one.
+     *
+     * @return the any-of tags, sorted by name; not to be modified
+     */
+    public Set<Tag> getAnyOf() {
+        return anyOf;
+    }
+
+    /**
+     * Returns the tags no selected contact is marked with.
+     *
+     * @return the none-of tags, sorted by name; not to be modified
+     */
+    public Set<Tag> getNoneOf() {
+        return noneOf;
+    }
+
+    /**
+     * Returns true if the query has a tag, in any role.
+     *
+     * @param[in] tag the tag
+     * @return true if the tag is in the query
+     */
+    public boolean contains(Tag tag) {
+        return tag != null && (allOf.contains(tag) || anyOf.contains(tag) || noneOf.contains(tag));
+    }
+
+    /**
+     * Returns true if the query has no tags, and selects every contact.
+     *
+     * @return true if the query is {@link #ALL}
+     */
+    public boolean isEmpty() {
+        return allOf.isEmpty() && anyOf.isEmpty() && noneOf.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof TagQuery))
+            return false;
+        TagQuery other = (TagQuery) obj;
+        return allOf.equals(other.allOf) && anyOf.equals(other.anyOf) && noneOf.equals(other.noneOf);
+    }
+
+    @Override
+    public int hashCode() {
+        return (names(allOf, "", " ") + "|" + names(anyOf, "", " ") + "|" + names(noneOf, "", " ")).hashCode();
+    }
+
+    /**
+     * Returns the query as a tag expression, such as {@code work AND (rome OR milan) NOT old}, or {@code *} if it selects every contact.
+     */
+    @Override
+    public String toString() {
+        if (isEmpty())
+            return "*";
+        StringBuilder text = new StringBuilder(names(allOf, "", " AND "));
+        if (!anyOf.isEmpty()) {
+            text.append(text.length() == 0 ? "" : " AND ");
+            text.append(anyOf.size() > 1 && !allOf.isEmpty() ? "(" + names(anyOf, "", " OR ") + ")" : names(anyOf, "", " OR "));
+        }
+        if (!noneOf.isEmpty())
+            text.append(text.length() == 0 ? "" : " ").append(names(noneOf, "NOT ", " "));
+        return text.toString();
+    }
+
+    private static String names(Set<Tag> tags, String prefix, String separator) {
+        StringBuilder text = new StringBuilder();
+        for (Tag tag : tags)
+            text.append(text.length() == 0 ? "" : separator).append(prefix).append(tag.getNameValue());
+        return text.toString();
+    }
+}
@@ -0,0 +1,154 @@
+package it.unisa.diem.Model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import it.unisa.diem.Model.Interfaces.Checker.CharacterLimitStringChecker;
+
+/**
+ * The tags of an address book, one canonical {@link Tag} per name, each with an int identifier.
+ *
+ * Contacts keep the identifiers of their tags in the registry of their address book instead of tags of their own,
+ * so that a tag marking thousands of contacts exists once, and two tags of the same book are compared by their identifiers.
+ * Identifiers are given in the order the names are first seen, starting from 0, and never change for the life of the registry.
+ * The registry also counts the contacts of the list of its address book marked with each tag.
+ * Contacts not added to an address book, such as the ones just created or read from a file, use the shared {@link #DETACHED} registry,
+ * and move to the registry of their book when they are added to it.
+ * The canonical tags are shared by every contact marked with them: they must never be renamed.
+ * A registry is thread safe.
+ *
+ * @invariant ids.size() == size
+ * @invariant tags[i].getNameValue() is the name with identifier i, for every i < size
+ */
+public class TagRegistry {
+    static final TagRegistry DETACHED = new TagRegistry(); /**< The registry of the tags of the contacts not added to any address book */
+
+    private final Map<String, Integer> ids = new HashMap<>(); /**< The identifier of each name */
+    private Tag[] tags = new Tag[16]; /**< The canonical tag of each identifier */
+    private int[] counts = new int[16]; /**< The number of contacts of the list marked with the tag of each identifier */
+    private int size; /**< The number of tags */
+
+    /**
+     * Returns the identifier of a tag name, registering it if it is new.
+     *
+     * @param[in] name the name of the tag
+     * @return the identifier of the name, -1 if it is not a valid tag name
+     * @see Tag#setName(String)
+     */
+    public synchronized int register(String name) {
+        Integer id = ids.get(name);
+        if (id != null)
+            return id;
+        if (!new CharacterLimitStringChecker(Tag.MAX_TAGLENGTH).check(name))
+            return -1;
+        Tag tag = new Tag();
+        tag.setNameValue(name);
+        if (size == tags.length) {
+            tags = Arrays.copyOf(tags, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+        }
+        tags[size] = tag;
+        ids.put(name, size);
+        return size++;
+    }
+
+    /**
+     * Returns the canonical tag of a name, registering it if it is new.
+     *
+     * @param[in] name the name of the tag
+     * @return the tag with the given name, null if it is not a valid tag name
+     */
+    public synchronized Tag intern(String name) {
+        int id = register(name);
+        return id < 0 ? null : tags[id];
+    }
+
+    /**
+     * Returns the identifier of a tag name, without registering it.
+     *
+     * @param[in] name the name of the tag
+     * @return the identifier of the name, -1 if it has never been registered
+     */
+    public synchronized int idOf(String name) {
+        Integer id = name == null ? null : ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the identifier of a tag, which may be its canonical instance or any tag with the same name.
+     *
+     * @param[in] tag the tag
+     * @return the identifier of the name of the tag, -1 if it has never been registered or tag is null
+     */
+    public int idOf(Tag tag) {
+        return tag == null ? -1 : idOf(tag.getNameValue());
+    }
+
+    /**
+     * Returns the canonical tag with an identifier.
+     *
+     * @param[in] id the identifier
+     * @return the tag with the identifier
+     * @throws IndexOutOfBoundsException if no tag has the identifier
+     */
+    public synchronized Tag get(int id) {
+        if (id < 0 || id >= size)
+            throw new IndexOutOfBoundsException("No tag with identifier " + id);
+        return tags[id];
+    }
+
+    /**
+     * Returns the canonical tag of a name, without registering it.
+     *
+     * @param[in] name the name of the tag
+     * @return the tag with the given name, null if it has never been registered
+     */
+    public synchronized Tag find(String name) {
+        int id = idOf(name);
+        return id < 0 ? null : tags[id];
+    }
+
+    /**
+     * Returns the number of tags registered, including the ones no longer marking any contact.
+     *
+     * @return the number of tags
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of contacts of the list of the address book marked with a tag.
+     *
+     * @param[in] tag the tag, or any tag with the same name
+     * @return the number of marked contacts, 0 if the tag has never been registered
+     */
+    public synchronized int cardinality(Tag tag) {
+        int id = idOf(tag);
+        return id < 0 ? 0 : counts[id];
+    }
+
+    /**
+     * Returns the number of contacts of the list of the address book marked with each tag that marks at least one.
+     *
+     * @return the number of contacts of each tag, by tag name
+     */
+    public synchronized Map<Tag, Integer> cardinalities() {
+        Map<Tag, Integer> cardinalities = new TreeMap<>();
+        for (int id = 0; id < size; id++)
+            if (counts[id] > 0)
+                cardinalities.put(tags[id], counts[id]);
+        return cardinalities;
+    }
+
+    /**
+     * Updates the number of contacts of the list marked with a tag, as a contact is marked or unmarked.
+     */
+    synchronized void count(Tag tag, int delta) {
+        int id = idOf(tag);
+        if (id >= 0)
+            counts[id] += delta;
+    }
+}
@@ -0,0 +1,194 @@
+package it.unisa.diem.Model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The number of contacts of the list of an address book marked with each tag, and with each pair of tags.
+ *
+ * The statistics follow the tag map of the address book: each time a contact joins or leaves the set of a tag, the count of the tag
+ * and the counts of its pairs with the other tags of the contact are updated, in time proportional to the number of tags of the contact.
+ * The counts of the tags are kept by the {@link TagRegistry}; the counts of the pairs form a sparse symmetric matrix,
+ * holding the pairs of tags marking at least one contact together only.
+ * The user interface and the reports read a {@link Snapshot}, which never changes, without scanning the contacts or the tag map.
+ * The statistics are not thread safe: they are updated and copied under the lock of their address book.
+ *
+ * @invariant registry != null
+ * @invariant together.get(a).get(b) == together.get(b).get(a) > 0 for every pair of tag identifiers held
+ */
+public class TagStatistics {
+    private final TagRegistry registry; /**< The registry of the tags, which counts the contacts of each tag */
+    private final List<Map<Integer, Integer>> together = new ArrayList<>(); /**< For each tag identifier, the number of contacts marked with it and with each other tag, null if there are none */
+
+    /**
+     * Creates the statistics of the tags of a registry, with no contacts.
+     *
+     * @param[in] registry the registry of the tags of the address book
+     * @throws IllegalArgumentException if registry is null
+     */
+    public TagStatistics(TagRegistry registry) {
+        if (registry == null)
+            throw new IllegalArgumentException("Registry cannot be null");
+        this.registry = registry;
+    }
+
+    /**
+     * Counts a contact joining the set of a tag.
+     *
+     * @param[in] tag the tag marking the contact
+     * @param[in] others the other tags whose sets the contact is already in
+     */
+    void mark(Tag tag, Collection<Tag> others) {
+        registry.count(tag, 1);
+        int id = registry.idOf(tag);
+        for (Tag other : others)
+            pair(id, registry.idOf(other), 1);
+    }
+
+    /**
+     * Counts a contact leaving the set of a tag.
+     *
+     * @param[in] tag the tag no longer marking the contact
+     * @param[in] others the other tags whose sets the contact is still in
+     */
+    void unmark(Tag tag, Collection<Tag> others) {
+        registry.count(tag, -1);
+        int id = registry.idOf(tag);
+        for (Tag other : others)
+            pair(id, registry.idOf(other), -1);
+    }
+
+    /**
+     * Counts a contact joining the sets of all its tags at once, as when an address book is read.
+     *
+     * @param[in] tags the tags marking the contact
+     */
+    void markAll(Collection<Tag> tags) {
+        List<Tag> marked = new ArrayList<>(tags.size());
+        for (Tag tag : tags) {
+            mark(tag, marked);
+            marked.add(tag);
+        }
+    }
+
+    private void pair(int a, int b, int delta) {
+        if (a < 0 || b < 0 || a == b)
+            return;
+        add(a, b, delta);
+        add(b, a, delta);
+    }
+
+    private void add(int from, int to, int delta) {
+        while (together.size() <= from)
+            together.add(null);
+        Map<Integer, Integer> row = together.get(from);
+        if (row == null) {
+            row = new HashMap<>();
+            together.set(from, row);
+        }
+        int count = row.getOrDefault(to, 0) + delta;
+        if (count > 0) {
+            row.put(to, count);
+        } else {
+            row.remove(to);
+            if (row.isEmpty())
+                together.set(from, null);
+        }
+    }
+
+    /**
+     * Returns a copy of the statistics, which does not change with the address book.
+     *
+     * @return the snapshot of the statistics
+     */
+    public Snapshot snapshot() {
+        List<Map<Integer, Integer>> rows = new ArrayList<>(together.size());
+        for (Map<Integer, Integer> row : together)
+            rows.add(row == null ? null : new HashMap<>(row));
+        return new Snapshot(registry, registry.cardinalities(), rows);
+    }
+
+    /**
+     * The statistics of the tags of an address book at a given moment.
+     */
+    public static final class Snapshot {
+        private final TagRegistry registry; /**< The registry giving the identifiers of the tags, which never change */
+        private final Map<Tag, Integer> counts; /**< The number of contacts of each tag marking at least one, by tag name */
+        private final List<Map<Integer, Integer>> together; /**< For each tag identifier, the number of contacts marked with it and with each other tag */
+
+        private Snapshot(TagRegistry registry, Map<Tag, Integer> counts, List<Map<Integer, Integer>> together) {
+            this.registry = registry;
+            this.counts = Collections.unmodifiableMap(counts);
+            this.together = together;
+        }
+
+        /**
+         * Returns the number of contacts marked with a tag.
+         *
+         * @param[in] tag the tag, or any tag with the same name
+         * @return the number of marked contacts
+         */
+        public int count(Tag tag) {
+            Integer count = counts.get(tag);
+            return count == null ? 0 : count;
+        }
+
+        /**
+         * Returns the number of contacts marked with each tag marking at least one.
+         *
+         * @return the number of contacts of each tag, by tag name; not to be modified
+         */
+        public Map<Tag, Integer> getCounts() {
+            return counts;
+        }
+
+        /**
+         * Returns the number of contacts marked with both of two tags.
+         *
+         * @param[in] a a tag
+         * @param[in] b another tag, or the same
+         * @return the number of contacts marked with both tags, the number of contacts of the tag if they are the same
+         */
+        public int cooccurrence(Tag a, Tag b) {
+            int idA = registry.idOf(a);
+            int idB = registry.idOf(b);
+            if (idA < 0 || idB < 0)
+                return 0;
+            if (idA == idB)
+                return count(a);
+            Map<Integer, Integer> row = row(idA);
+            Integer count = row == null ? null : row.get(idB);
+            return count == null ? 0 : count;
+        }
+
+        /**
+         * Returns the tags marking some contacts together with a tag, the most frequent first.
+         *
+         * @param[in] tag the tag
+         * @return the number of contacts marked with the tag and with each other tag, by decreasing number and then by tag name; empty if there are none
+         */
+        public Map<Tag, Integer> cooccurring(Tag tag) {
+            int id = registry.idOf(tag);
+            Map<Integer, Integer> row = id < 0 ? null : row(id);
+            Map<Tag, Integer> cooccurring = new LinkedHashMap<>();
+            if (row == null)
+                return cooccurring;
+            List<Map.Entry<Integer, Integer>> entries = new ArrayList<>(row.entrySet());
+            entries.sort((x, y) -> x.getValue().equals(y.getValue())
+                    ? registry.get(x.getKey()).compareTo(registry.get(y.getKey()))
+                    : y.getValue() - x.getValue());
+            for (Map.Entry<Integer, Integer> entry : entries)
+                cooccurring.put(registry.get(entry.getKey()), entry.getValue());
+            return cooccurring;
+        }
+
+        private Map<Integer, Integer> row(int id) {
+            return id < together.size() ? together.get(id) : null;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package it.unisa.diem.Model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the three-character substrings (trigrams) of the contacts, used to find the contacts containing a string
+ * without testing every contact.
+ *
+ * The indexed texts are exactly the ones the search filters look into, normalized the same way, as read from their {@link SearchKeys}: "surname name" and "name surname",
+ * the email addresses, the phone numbers and the names of the tags. A contact containing the query in one of them contains every
+ * trigram of the query, so the candidates of a query are the contacts having all its trigrams: they are found by intersecting
+ * the lists of contacts of the trigrams, starting from the shortest, and then tested with the search filters.
+ * Every text is surrounded by a boundary character, so that a query of one or two characters is also found inside some trigram:
+ * such queries collect the contacts of the trigrams containing them.
+ *
+ * Each indexed contact is given a slot number. The lists of a trigram hold the slots of its contacts in ascending order,
+ * so that membership is a binary search. An edited contact takes a new slot; the slots are renumbered when too many are unused.
+ * Contacts are compared by identity, as their equality and hash code change when they are edited.
+ *
+ * @invariant postings != null
+ * @invariant entries != null
+ */
+public class TrigramIndex {
+    private static final char BOUNDARY = '\u0000'; /**< Surrounds every indexed text; never part of a query */
+    private static final int MIN_SLOTS = 1024; /**< The number of slots below which unused slots are never reclaimed */
+
+    /**
+     * The slots of the contacts containing a trigram, in ascending order.
+     */
+    private static class Postings {
+        private int[] slots = new int[2]; /**< The slots, in the first {@link #size} positions */
+        private int size; /**< The number of slots */
+
+        void add(int slot) {
+            // Slots are given in ascending order, so appending keeps the list sorted
+            if (size == slots.length)
+                slots = Arrays.copyOf(slots, size * 2);
+            slots[size++] = slot;
+        }
+
+        void remove(int slot) {
+            int i = Arrays.binarySearch(slots, 0, size, slot);
+            if (i >= 0) {
+                System.arraycopy(slots, i + 1, slots, i, size - i - 1);
+                size--;
+            }
+        }
+
+        boolean contains(int slot) {
+            return Arrays.binarySearch(slots, 0, size, slot) >= 0;
+        }
+    }
+
+    /**
+     * An indexed contact.
+     */
+    private static class Entry {
+        private final int slot; /**< The slot of the contact */
+        private final String text; /**< The indexed texts of the contact, each surrounded by {@link #BOUNDARY} */
+
+        Entry(int slot, String text) {
+            this.slot = slot;
+            this.text = text;
+        }
+    }
+
+    private final Map<Long, Postings> postings = new HashMap<>(); /**< The slots of the contacts containing each trigram */
+    private final Map<Contact, Entry> entries = new IdentityHashMap<>(); /**< The slot and the texts of each indexed contact */
+    private Contact[] contacts = new Contact[16]; /**< The contact in each slot, null if the slot is unused */
+    private int slots; /**< The number of slots given so far */
+
+    /**
+     * Creates an index of the given contacts.
+     *
+     * @param[in] contacts the contacts to index
+     */
+    public TrigramIndex(Collection<Contact> contacts) {
+        for (Contact c : contacts)
+            add(c);
+    }
+
+    /**
+     * Returns the texts of a contact looked into by the search filters, normalized as the filters read them from its {@link SearchKeys},
+     * each surrounded by {@link #BOUNDARY}.
+     *
+     * @param[in] c the contact
+     * @return the concatenated texts
+     */
+    static String text(Contact c) {
+        StringBuilder text = new StringBuilder();
+        SearchKeys keys = c.getSearchKeys();
+        append(text, keys.getSurnameName());
+        append(text, keys.getNameSurname());
+        for (String email : keys.getEmails())
+            append(text, email);
+        for (String phone : keys.getPhones())
+            append(text, phone);
+        for (String tag : keys.getTags())
+            append(text, tag);
+        return text.toString();
+    }
+
+    private static void append(StringBuilder text, String field) {
+        if (!field.isEmpty())
+            text.append(BOUNDARY).append(field).append(BOUNDARY);
+    }
+
+    private static long gram(CharSequence s, int i) {
+        return (long) s.charAt(i) << 32 | (long) s.charAt(i + 1) << 16 | s.charAt(i + 2);
+    }
+
+    /**
+     * Indexes a contact, or reindexes it if it is already indexed.
+     *
+     * @param[in] c the contact to index
+     */
+    public void add(Contact c) {
+        remove(c);
+        if (slots == contacts.length)
+            contacts = Arrays.copyOf(contacts, slots * 2);
+        Entry entry = new Entry(slots++, text(c));
+        contacts[entry.slot] = c;
+        entries.put(c, entry);
+        long previous = -1;
+        for (long gram : grams(entry.text)) {
+            // The grams are sorted: each distinct one is added once
+            if (gram != previous)
+                postings.computeIfAbsent(gram, g -> new Postings()).add(entry.slot);
+            previous = gram;
+        }
+    }
+
+    /**
+     * Removes a contact from the index, using the texts it had when it was indexed.
+     *
+     * @param[in] c the contact to remove
+     */
+    public void remove(Contact c) {
+        Entry entry = entries.remove(c);
+        if (entry == null)
+            return;
+        contacts[entry.slot] = null;
+        long previous = -1;
+        for (long gram : grams(entry.text)) {
+            if (gram != previous) {
+                Postings list = postings.get(gram);
+                list.remove(entry.slot);
+                if (list.size == 0)
+                    postings.remove(gram);
+            }
+            previous = gram;
+        }
+        if (slots > MIN_SLOTS && slots > 2 * entries.size())
+            renumber();
+    }
+
+    /**
+     * Reindexes a contact after it has been edited. Contacts that are not indexed are ignored.
+     *
+     * @param[in] c the edited contact
+     */
+    public void update(Contact c) {
+        if (entries.containsKey(c))
+            add(c);
+    }
+
+    /**
+     * Returns the number of indexed contacts.
+     *
+     * @return the number of contacts
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of distinct trigrams of the indexed contacts.
+     *
+     * @return the number of trigrams
+     */
+    public int getTrigramCount() {
+        return postings.size();
+    }
+
+    /**
+     * Returns the candidates of a query: the contacts whose texts contain every trigram of the query,
+     * or, for queries shorter than three characters, a trigram containing the query.
+     * Every contact matched by the search filters is a candidate.
+     *
+     * @param[in] query the text typed in the search bar
+     * @return the candidates of the query, in no particular order, or null if the query is empty and every contact is a candidate
+     */
+    public List<Contact> candidates(String query) {
+        String q = query == null ? "" : SearchKeys.normalize(query.trim());
+        if (q.isEmpty())
+            return null;
+        List<Contact> candidates = new ArrayList<>();
+        if (q.length() < 3) {
+            BitSet found = new BitSet(slots);
+            for (Map.Entry<Long, Postings> entry : postings.entrySet()) {
+                long gram = entry.getKey();
+                String chars = new String(new char[] {(char) (gram >>> 32), (char) (gram >>> 16), (char) gram});
+                if (chars.contains(q)) {
+                    Postings list = entry.getValue();
+                    for (int i = 0; i < list.size; i++)
+                        found.set(list.slots[i]);
+                }
+            }
+            for (int slot = found.nextSetBit(0); slot >= 0; slot = found.nextSetBit(slot + 1))
+                candidates.add(contacts[slot]);
+            return candidates;
+        }
+        long[] grams = grams(q);
+        List<Postings> lists = new ArrayList<>(grams.length);
+        for (int i = 0; i < grams.length; i++) {
+            if (i > 0 && grams[i] == grams[i - 1])
+                continue;
+            Postings list = postings.get(grams[i]);
+            if (list == null)
+                return candidates;
+            lists.add(list);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+        Postings shortest = lists.get(0);
+        for (int i = 0; i < shortest.size; i++) {
+            int slot = shortest.slots[i];
+            boolean all = true;
+            for (int j = 1; j < lists.size() && all; j++)
+                all = lists.get(j).contains(slot);
+            if (all)
+                candidates.add(contacts[slot]);
+        }
+        return candidates;
+    }
+
+    /**
+     * Returns an estimate of the number of candidates of a query, without finding them: the number of contacts having its rarest trigram,
+     * which is an upper bound of the number of candidates.
+     *
+     * @param[in] query the text typed in the search bar
+     * @return the estimated number of candidates; every indexed contact for queries shorter than three characters
+     */
+    public int estimate(String query) {
+        String q = query == null ? "" : SearchKeys.normalize(query.trim());
+        if (q.length() < 3)
+            return size();
+        int estimate = size();
+        for (long gram : grams(q)) {
+            Postings list = postings.get(gram);
+            if (list == null)
+                return 0;
+            estimate = Math.min(estimate, list.size);
+        }
+        return estimate;
+    }
+
+    /**
+     * Returns the trigrams of a text, sorted.
+     */
+    private static long[] grams(String text) {
+        if (text.length() < 3)
+            return new long[0];
+        long[] grams = new long[text.length() - 2];
+        for (int i = 0; i < grams.length; i++)
+            grams[i] = gram(text, i);
+        Arrays.sort(grams);
+        return grams;
+    }
+
+    /**
+     * Gives consecutive slots to the indexed contacts, rebuilding the lists of the trigrams.
+     */
+    private void renumber() {
+        List<Contact> indexed = new ArrayList<>(entries.keySet());
+        entries.clear();
+        postings.clear();
+        contacts = new Contact[Math.max(16, indexed.size())];
+        slots = 0;
+        for (Contact c : indexed)
+            add(c);
+    }
+}
@@ -0,0 +1,61 @@
+package it.unisa.diem.Model;
+
+import java.util.List;
+
+import javafx.collections.ObservableListBase;
+
+/**
+ * Read-only {@link javafx.collections.ObservableList} view of a {@link PagedContactList}.
+ * The contacts are requested from the paged list one position at a time, so a TableView showing this list only fills the pages of its visible rows.
+ *
+ * @invariant source != null
+ * @see PagedContactList#asObservableList()
+ */
+public class VirtualContactList extends ObservableListBase<Contact> {
+    private final PagedContactList source; /**< The paged list providing the contacts */
+
+    VirtualContactList(PagedContactList source) {
+        this.source = source;
+    }
+
+    @Override
+    public Contact get(int index) {
+        return source.get(index);
+    }
+
+    @Override
+    public int size() {
+        return source.size();
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return o instanceof Contact ? source.indexOf((Contact) o) : -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    void fireAdded(int index) {
+        beginChange();
+        nextAdd(index, index + 1);
+        endChange();
+    }
+
+    void fireRemoved(int index, Contact removed) {
+        beginChange();
+        nextRemove(index, removed);
+        endChange();
+    }
+
+    void fireReplaced(List<Contact> removed) {
+        beginChange();
+        if (!removed.isEmpty())
+            nextRemove(0, removed);
+        if (size() > 0)
+            nextAdd(0, size());
+        endChange();
+    }
+}
@@ -0,0 +1,265 @@
+package it.unisa.diem.Utility;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import it.unisa.diem.Model.AddressBook;
+import it.unisa.diem.Model.Contact;
+import it.unisa.diem.Model.LocalDateProperty;
+import it.unisa.diem.Model.RecentlyDeleted;
+import it.unisa.diem.Model.Tag;
+import javafx.beans.property.SetProperty;
+
+/**
+ * Compact binary file format for {@link AddressBook}s, replacing Java serialization.
+ *
+ * The file is laid out as follows (integers are unsigned variable-length quantities unless stated otherwise):
+ * - header: the {@link #MAGIC} bytes, the format {@link #VERSION} (2 bytes) and the last contact identifier assigned by the book;
+ * - tag dictionary: the number of tags, followed by their names in alphabetical order. Contacts refer to tags by their index in the dictionary;
+ * - contacts: the number of contacts, followed by one length-prefixed record per contact, in the order of the list;
+ * - trash can: the number of deletion dates, each followed by the epoch day, the number of contacts deleted on that day and their records;
+ * - offsets table: the position in the file of each contact record, as a 4-byte integer, so that any record can be located without reading the others;
+ * - segment table: the checksums of the header and tag dictionary, of the trash can and of the offsets table, then the number of segments of contacts,
+ *   each described by the position in the list of its first contact, the position in the file of its first record and its checksum (all 4-byte integers);
+ * - trailer: the position of the offsets table, of the trash can and of the segment table (8 bytes each), the checksum of the segment table and
+ *   of the three positions (4 bytes), followed by the {@link #MAGIC} bytes again.
+ *
+ * The records of the contacts are grouped in segments of at least {@link #MIN_SEGMENT_RECORDS} records, each starting with a restart point,
+ * so that every segment can be checked and decoded on its own: a damaged segment only loses its own contacts.
+ * Checksums are CRC-32 values of the bytes they cover.
+ *
+ * Each record stores the full name ("surname name") front-coded against the previous record: only the length of the prefix shared
+ * with it and the remaining characters are written. Some records, the restart points, write the full name whole (a shared length of 0),
+ * so that a name can be decoded starting from the closest restart point before it. A record is a restart point when the hash of its
+ * full name is a multiple of {@link #RESTART_INTERVAL}, or when {@link #MAX_RESTART_INTERVAL} records have passed since the last one:
+ * as the restart points depend on the names rather than on the positions, adding or removing a contact only changes the encoding of the records near it.
+ * Strings are written as their UTF-8 length followed by their UTF-8 bytes. The email addresses and phone numbers of a record are written
+ * as the number of their slots up to the last non-empty one, followed by the strings of those slots, empty ones included.
+ * Files of version 1 have no offsets table and no trailer. Files of version 2 place a restart point every {@link #RESTART_INTERVAL} records.
+ * Files of version 2 and 3 have no segment table and a shorter trailer, made of the two positions and the {@link #MAGIC} bytes ({@link #UNCHECKED_TRAILER_SIZE}).
+ *
+ * @see AddressBookReader
+ * @see FileManager#importAddressBook(String)
+ * @see FileManager#exportAddressBook(String, AddressBook)
+ */
+public class AddressBookFormat {
+    public static final byte[] MAGIC = {'A', 'B', 'K', 'F'}; /**< The bytes every file in this format starts with */
+    public static final short VERSION = 4; /**< The version of the format written by this class */
+    public static final short CHECKED_VERSION = 4; /**< The first version of the format with checksums */
+    public static final int RESTART_INTERVAL = 16; /**< The average number of records between two restart points */
+    public static final int MAX_RESTART_INTERVAL = 64; /**< The largest number of records between two restart points */
+    public static final int MIN_SEGMENT_RECORDS = 128; /**< The smallest number of records in a segment, except for the last one */
+    public static final int TRAILER_SIZE = 8 + 8 + 8 + 4 + 4; /**< The size of the trailer at the end of the file, in bytes */
+    public static final int UNCHECKED_TRAILER_SIZE = 8 + 8 + 4; /**< The size of the trailer of files of version 2 and 3, in bytes */
+
+    /**
+     * Collects the segments of the records being written and their checksums.
+     */
+    private static class Segments {
+        private final CRC32 crc; /**< The checksum of the bytes written since the beginning of the current segment */
+        private final List<int[]> segments = new ArrayList<>(); /**< The first contact, the position and the checksum of each segment */
+
+        Segments(CRC32 crc) {
+            this.crc = crc;
+        }
+
+        void begin(int first, int position) {
+            end();
+            segments.add(new int[] {first, position, 0});
+            crc.reset();
+        }
+
+        void end() {
+            if (!segments.isEmpty())
+                segments.get(segments.size() - 1)[2] = (int) crc.getValue();
+        }
+    }
+
+    /**
+     * Checks whether the given bytes are the beginning of a file in this format.
+     *
+     * @param[in] header the first bytes of a file
+     * @return true if the bytes start with {@link #MAGIC}
+     */
+    public static boolean isBinaryFormat(byte[] header) {
+        if (header.length < MAGIC.length)
+            return false;
+        for (int i = 0; i < MAGIC.length; i++)
+            if (header[i] != MAGIC[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * Writes the address book to the given stream.
+     *
+     * @param[in] os the stream to write to, which is not closed
+     * @param[in] ab the address book to write
+     * @throws IOException if the stream cannot be written
+     */
+    public static void write(OutputStream os, AddressBook ab) throws IOException {
+        write(os, ab.getLastContactId(), ab.contacts(), ab.trashCan());
+    }
+
+    /**
+     * Writes a list of contacts and a trash can to the given stream.
+     * The list and the trash can of an address book are saved in separate files by writing each of them with an empty other part.
+     *
+     * @param[in] os the stream to write to, which is not closed
+     * @param[in] lastContactId the last identifier assigned to a contact of the address book
+     * @param[in] contacts the contacts of the list, in order
+     * @param[in] trash the trash can
+     * @throws IOException if the stream cannot be written
+     * @see FileManager#getTrashPath(String)
+     */
+    public static void write(OutputStream os, int lastContactId, Collection<Contact> contacts, RecentlyDeleted trash) throws IOException {
+        CRC32 crc = new CRC32();
+        DataOutputStream out = new DataOutputStream(new CheckedOutputStream(os, crc));
+
+        TreeSet<String> tagNames = new TreeSet<>();
+        for (SetProperty<Contact> deleted : trash.get().values())
+            for (Contact c : deleted)
+                for (Tag t : c.getTags())
+                    tagNames.add(t.getNameValue());
+        for (Contact c : contacts)
+            for (Tag t : c.getTags())
+                tagNames.add(t.getNameValue());
+        Map<String, Integer> tagIds = new HashMap<>();
+
+        out.write(MAGIC);
+        out.writeShort(VERSION);
+        writeVarInt(out, lastContactId);
+        writeVarInt(out, tagNames.size());
+        for (String name : tagNames) {
+            tagIds.put(name, tagIds.size());
+            writeString(out, name);
+        }
+
+        writeVarInt(out, contacts.size());
+        int headerCrc = (int) crc.getValue();
+        Segments segments = new Segments(crc);
+        int[] offsets = writeRecords(out, contacts, tagIds, segments);
+        segments.end();
+
+        long trashPosition = out.size();
+        crc.reset();
+        writeVarInt(out, trash.get().size());
+        for (Map.Entry<LocalDateProperty, SetProperty<Contact>> entry : trash.get().entrySet()) {
+            out.writeLong(entry.getKey().get().toEpochDay());
+            writeVarInt(out, entry.getValue().size());
+            writeRecords(out, entry.getValue(), tagIds, null);
+        }
+        int trashCrc = (int) crc.getValue();
+
+        long offsetsPosition = out.size();
+        crc.reset();
+        for (int offset : offsets)
+            out.writeInt(offset);
+        int offsetsCrc = (int) crc.getValue();
+
+        long segmentsPosition = out.size();
+        crc.reset();
+        out.writeInt(headerCrc);
+        out.writeInt(trashCrc);
+        out.writeInt(offsetsCrc);
+        out.writeInt(segments.segments.size());
+        for (int[] segment : segments.segments)
+            for (int value : segment)
+                out.writeInt(value);
+        out.writeLong(offsetsPosition);
+        out.writeLong(trashPosition);
+        out.writeLong(segmentsPosition);
+        out.writeInt((int) crc.getValue());
+        out.write(MAGIC);
+        out.flush();
+    }
+
+    private static int[] writeRecords(DataOutputStream out, Collection<Contact> contacts, Map<String, Integer> tagIds, Segments segments) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+        DataOutputStream record = new DataOutputStream(buffer);
+        int[] offsets = new int[contacts.size()];
+        String previous = "";
+        int count = 0;
+        int sinceRestart = 0;
+        for (Contact c : contacts) {
+            offsets[count++] = out.size();
+            String surname = nonNull(c.getSurnameValue());
+            String fullName = surname + " " + nonNull(c.getNameValue());
+            boolean restart = count == 1 || ++sinceRestart >= MAX_RESTART_INTERVAL || Math.floorMod(fullName.hashCode(), RESTART_INTERVAL) == 0;
+            if (restart) {
+                sinceRestart = 0;
+                if (segments != null && (count == 1 || count - 1 - segments.segments.get(segments.segments.size() - 1)[0] >= MIN_SEGMENT_RECORDS))
+                    segments.begin(count - 1, out.size());
+            }
+            int shared = restart ? 0 : sharedPrefix(previous, fullName);
+
+            buffer.reset();
+            writeVarInt(record, c.getId());
+            writeVarInt(record, shared);
+            writeString(record, fullName.substring(shared));
+            writeVarInt(record, surname.length());
+            writeStrings(record, c.getEmailList());
+            writeStrings(record, c.getPhoneNumberList());
+            writeVarInt(record, c.getTags().size());
+            for (Tag t : c.getTags())
+                writeVarInt(record, tagIds.get(t.getNameValue()));
+            writeString(record, nonNull(c.getPicture()));
+
+            writeVarInt(out, buffer.size());
+            buffer.writeTo(out);
+            previous = fullName;
+        }
+        return offsets;
+    }
+
+    private static int sharedPrefix(String a, String b) {
+        int max = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < max && a.charAt(i) == b.charAt(i))
+            i++;
+        // Never split a surrogate pair
+        if (i > 0 && Character.isHighSurrogate(b.charAt(i - 1)))
+            i--;
+        return i;
+    }
+
+    private static String nonNull(String s) {
+        return s == null ? "" : s;
+    }
+
+    private static void writeStrings(DataOutput out, String[] strings) throws IOException {
+        // The empty slots before the last value are written too, so that every value keeps its slot
+        int count = strings.length;
+        while (count > 0 && nonNull(strings[count - 1]).isEmpty())
+            count--;
+        out.writeByte(count);
+        for (int i = 0; i < count; i++)
+            writeString(out, nonNull(strings[i]));
+    }
+
+    static void writeString(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+}
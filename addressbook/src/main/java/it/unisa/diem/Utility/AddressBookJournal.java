@@ -0,0 +1,370 @@
+package it.unisa.diem.Utility;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import it.unisa.diem.Model.AddressBook;
+import it.unisa.diem.Model.Contact;
+
+/**
+ * Append-only journal of the mutations applied to an {@link AddressBook} since its last full snapshot.
+ *
+ * Every add, delete, restore, permanent deletion, edit and tag operation is recorded as a small record, prefixed by its length
+ * and by the CRC-32 checksum of its bytes, so that saving the address book only costs the size of the changes instead of the size of the whole book.
+ * When the address book is loaded, the records are replayed over the snapshot. Once the journal grows too big compared
+ * to the snapshot, it is compacted: a new snapshot is written and the journal is emptied.
+ *
+ * Records are appended in memory by the thread modifying the address book; the journal file is only written by the
+ * {@link BackgroundSaver} of the address book, which calls {@link #drainPending()}, {@link #write(byte[])} and the compaction methods in order.
+ * The journal is stored next to the address book file, as specified by {@link FileManager#getJournalPath(String)}.
+ * While a compaction is running, the records it covers are kept in a separate file, so that a crash during the
+ * compaction never loses data: replaying them again over the new snapshot has no effect.
+ * A record torn by a crash, or damaged, ends its file: when the journal is opened, each file is cut after its last valid record,
+ * so that the records appended afterwards are not hidden behind it.
+ *
+ * @invariant pending != null
+ */
+public class AddressBookJournal {
+    public static final int MIN_COMPACTION_SIZE = 64 * 1024; /**< The journal size (in bytes) under which it is never compacted */
+    public static final int COMPACTION_RATIO = 2; /**< The journal is compacted when it is bigger than the snapshot divided by this ratio */
+    private static final Operation[] OPERATIONS = Operation.values(); /**< The operations, by the code recorded in the journal */
+    private static final int HEADER_SIZE = 8; /**< The size of the length and of the checksum preceding each record, in bytes */
+
+    /**
+     * The kinds of mutation that can be recorded in the journal.
+     */
+    public enum Operation {
+        ADD,        /**< A contact has been added to the list of contacts */
+        UPDATE,     /**< A contact has been modified in place */
+        DELETE,     /**< A contact has been moved to the trash can */
+        RESTORE,    /**< A contact has been restored from the trash can */
+        PURGE,      /**< A contact has been permanently removed from the trash can */
+        TAG_ADD,    /**< A contact has been added to the set of contacts marked with a tag */
+        TAG_REMOVE  /**< A contact has been removed from the set of contacts marked with a tag */
+    }
+
+    /**
+     * A single mutation read back from the journal.
+     */
+    public static class Record {
+        private final Operation operation;
+        private final int contactId;
+        private final Contact contact;
+        private final String tagName;
+        private final LocalDate date;
+
+        private Record(Operation operation, int contactId, Contact contact, String tagName, LocalDate date) {
+            this.operation = operation;
+            this.contactId = contactId;
+            this.contact = contact;
+            this.tagName = tagName;
+            this.date = date;
+        }
+
+        /** @return the kind of mutation */
+        public Operation getOperation() { return operation; }
+        /** @return the identifier of the mutated contact */
+        public int getContactId() { return contactId; }
+        /** @return the full state of the contact for {@link Operation#ADD} and {@link Operation#UPDATE}, null otherwise */
+        public Contact getContact() { return contact; }
+        /** @return the name of the tag for {@link Operation#TAG_ADD} and {@link Operation#TAG_REMOVE}, null otherwise */
+        public String getTagName() { return tagName; }
+        /** @return the deletion date for {@link Operation#DELETE}, null otherwise */
+        public LocalDate getDate() { return date; }
+    }
+
+    private final String addressBookPath; /**< The path of the snapshot the journal refers to */
+    private final Path journalPath; /**< The path of the journal file */
+    private final Path compactingPath; /**< The path of the records covered by a running compaction */
+    private final ByteArrayOutputStream pending; /**< The records not yet written to the journal file */
+    private final DataOutputStream pendingOut;
+    private int pendingRecords; /**< The number of records in {@link #pending} */
+    private volatile long journalSize; /**< The size of the journal file, in bytes */
+    private volatile long snapshotSize; /**< The size of the last snapshot, in bytes */
+    private boolean opened; /**< True once the files of the journal have been cut after their last valid record */
+
+    /**
+     * Creates the journal of the address book stored at the specified path.
+     *
+     * @param[in] addressBookPath the path of the address book snapshot
+     */
+    public AddressBookJournal(String addressBookPath) {
+        this.addressBookPath = addressBookPath;
+        this.journalPath = Paths.get(FileManager.getJournalPath(addressBookPath));
+        this.compactingPath = Paths.get(FileManager.getJournalPath(addressBookPath) + ".compacting");
+        this.pending = new ByteArrayOutputStream();
+        this.pendingOut = new DataOutputStream(pending);
+        try {
+            this.journalSize = Files.exists(journalPath) ? Files.size(journalPath) : 0;
+            this.snapshotSize = FileManager.getStoredSize(addressBookPath);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the path of the address book snapshot this journal refers to.
+     *
+     * @return the path of the address book snapshot
+     */
+    public String getAddressBookPath() {
+        return addressBookPath;
+    }
+
+    /**
+     * Returns the number of records that have been appended but not yet written to the journal file.
+     *
+     * @return the number of records waiting for {@link #drainPending()}
+     */
+    public int getPendingRecords() {
+        return pendingRecords;
+    }
+
+    /**
+     * Records the addition or the modification of a contact, storing its full state.
+     *
+     * @param[in] operation {@link Operation#ADD} or {@link Operation#UPDATE}
+     * @param[in] c the added or modified contact
+     */
+    public void append(Operation operation, Contact c) {
+        append(operation, c, null, null);
+    }
+
+    /**
+     * Records the deletion of a contact on the specified date.
+     *
+     * @param[in] c the deleted contact
+     * @param[in] deletionDate the date the contact was moved to the trash can
+     */
+    public void appendDelete(Contact c, LocalDate deletionDate) {
+        append(Operation.DELETE, c, null, deletionDate);
+    }
+
+    /**
+     * Records an operation that only needs the identifier of the contact ({@link Operation#RESTORE}, {@link Operation#PURGE}),
+     * or a tag operation ({@link Operation#TAG_ADD}, {@link Operation#TAG_REMOVE}).
+     *
+     * @param[in] operation the kind of mutation
+     * @param[in] c the mutated contact
+     * @param[in] tagName the name of the tag for tag operations, null otherwise
+     */
+    public void append(Operation operation, Contact c, String tagName) {
+        append(operation, c, tagName, null);
+    }
+
+    private synchronized void append(Operation operation, Contact c, String tagName, LocalDate date) {
+        try {
+            ByteArrayOutputStream record = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(record);
+            out.writeByte(operation.ordinal());
+            switch (operation) {
+                case ADD:
+                case UPDATE:
+                    c.writeRecord(out);
+                    break;
+                case DELETE:
+                    out.writeInt(c.getId());
+                    out.writeLong(date.toEpochDay());
+                    break;
+                case TAG_ADD:
+                case TAG_REMOVE:
+                    out.writeInt(c.getId());
+                    out.writeUTF(tagName);
+                    break;
+                default:
+                    out.writeInt(c.getId());
+            }
+            CRC32 crc = new CRC32();
+            crc.update(record.toByteArray());
+            pendingOut.writeInt(record.size());
+            pendingOut.writeInt((int) crc.getValue());
+            record.writeTo(pendingOut);
+            pendingRecords++;
+        } catch (IOException e) {
+            // Writing to memory cannot fail
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Removes the pending records from memory, to be written by {@link #write(byte[])}.
+     *
+     * @return the encoded records appended since the last call
+     * @post getPendingRecords() == 0
+     */
+    public synchronized byte[] drainPending() {
+        byte[] records = pending.toByteArray();
+        pending.reset();
+        pendingRecords = 0;
+        return records;
+    }
+
+    /**
+     * Appends encoded records to the journal file and forces them to disk.
+     *
+     * @param[in] records the records returned by {@link #drainPending()}
+     * @return the number of bytes written
+     * @throws IOException if the journal file cannot be written
+     */
+    public long write(byte[] records) throws IOException {
+        if (records.length == 0)
+            return 0;
+        if (!isOpened())
+            read();
+        try (FileOutputStream fos = new FileOutputStream(journalPath.toFile(), true)) {
+            fos.write(records);
+            fos.getFD().sync();
+        }
+        journalSize += records.length;
+        return records.length;
+    }
+
+    /**
+     * Reads all the records stored for the address book, in the order they have been appended.
+     * A record truncated by a crash while it was being written, or whose checksum does not match, ends its file:
+     * the file is cut after the last valid record, so that the records appended later are read back.
+     * The journal is read when the address book is loaded, before any record is written; otherwise the first write reads it.
+     *
+     * @return the list of the records to replay over the snapshot
+     * @throws IOException if the journal exists but cannot be read, or holds a valid record that cannot be decoded
+     */
+    public synchronized List<Record> read() throws IOException {
+        List<Record> records = new ArrayList<>();
+        readFile(compactingPath, records);
+        journalSize = readFile(journalPath, records);
+        opened = true;
+        return records;
+    }
+
+    private synchronized boolean isOpened() {
+        return opened;
+    }
+
+    /**
+     * Reads the records of a journal file, and cuts it after the last valid one.
+     *
+     * @return the size of the valid part of the file, in bytes
+     */
+    private static long readFile(Path path, List<Record> records) throws IOException {
+        if (!Files.exists(path))
+            return 0;
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path.toFile())))) {
+            long size = Files.size(path);
+            while (size - valid >= HEADER_SIZE) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length <= 0 || length > size - valid - HEADER_SIZE)
+                    break;
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                CRC32 crc = new CRC32();
+                crc.update(bytes);
+                if ((int) crc.getValue() != checksum)
+                    break;
+                records.add(decode(new DataInputStream(new ByteArrayInputStream(bytes))));
+                valid += HEADER_SIZE + length;
+            }
+        }
+        if (valid < Files.size(path)) {
+            // A record torn by a crash, or damaged: the records appended from now on must not follow it
+            System.err.println("AddressBook journal " + path + " damaged after " + records.size() + " records: cut to " + valid + " bytes.");
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+                channel.force(true);
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Decodes a record whose checksum matches: a record that cannot be decoded has been written by another version of the application.
+     */
+    private static Record decode(DataInputStream in) throws IOException {
+        int code = in.readUnsignedByte();
+        if (code >= OPERATIONS.length)
+            throw new StreamCorruptedException("Unknown journal operation: " + code);
+        Operation operation = OPERATIONS[code];
+        try {
+            return decode(operation, in);
+        } catch (RuntimeException e) {
+            throw new StreamCorruptedException("Failed to decode journal record " + operation + ": " + e);
+        }
+    }
+
+    private static Record decode(Operation operation, DataInputStream in) throws IOException {
+        switch (operation) {
+            case ADD:
+            case UPDATE:
+                Contact c = Contact.readRecord(in);
+                return new Record(operation, c.getId(), c, null, null);
+            case DELETE:
+                return new Record(operation, in.readInt(), null, null, LocalDate.ofEpochDay(in.readLong()));
+            case TAG_ADD:
+            case TAG_REMOVE:
+                return new Record(operation, in.readInt(), null, in.readUTF(), null);
+            default:
+                return new Record(operation, in.readInt(), null, null, null);
+        }
+    }
+
+    /**
+     * Checks whether the journal has grown big enough, compared to the snapshot, to be worth compacting.
+     * The sizes are tracked in memory, so the check does not access the disk.
+     *
+     * @return true if the journal should be compacted
+     */
+    public boolean needsCompaction() {
+        long size = journalSize + pending.size();
+        return size > MIN_COMPACTION_SIZE && size > snapshotSize / COMPACTION_RATIO;
+    }
+
+    /**
+     * Starts a compaction: the journal file, which must contain every record included in the snapshot being written, is moved aside.
+     * Records written afterwards go to a new journal file.
+     *
+     * @throws IOException if the journal file cannot be moved
+     * @see #endCompaction(long)
+     */
+    public void beginCompaction() throws IOException {
+        if (!isOpened())
+            read();
+        if (!Files.exists(journalPath))
+            return;
+        if (Files.exists(compactingPath)) {
+            // A previous compaction failed: its records are still needed
+            Files.write(compactingPath, Files.readAllBytes(journalPath), StandardOpenOption.APPEND);
+            Files.delete(journalPath);
+        } else
+            Files.move(journalPath, compactingPath, StandardCopyOption.REPLACE_EXISTING);
+        journalSize = 0;
+    }
+
+    /**
+     * Ends a compaction once the snapshot has been written, deleting the records moved aside by {@link #beginCompaction()}.
+     *
+     * @param[in] snapshotSize the size of the snapshot that has been written, in bytes
+     * @throws IOException if the records moved aside cannot be deleted
+     */
+    public void endCompaction(long snapshotSize) throws IOException {
+        Files.deleteIfExists(compactingPath);
+        this.snapshotSize = snapshotSize;
+    }
+}
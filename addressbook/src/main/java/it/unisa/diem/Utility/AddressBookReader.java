@@ -0,0 +1,366 @@
+package it.unisa.diem.Utility;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+import it.unisa.diem.Model.AddressBook;
+import it.unisa.diem.Model.Contact;
+import it.unisa.diem.Model.RecentlyDeleted;
+
+/**
+ * Reader of the files written in the {@link AddressBookFormat}.
+ *
+ * Reading a file only checks its header and its segment table; the segments of contacts are checked by {@link #verify()}.
+ * The whole book is then decoded by {@link #toAddressBook(ForkJoinPool)}, splitting the contacts in segments decoded in parallel,
+ * or by {@link #recover(ForkJoinPool, IntegrityReport)}, skipping the damaged segments.
+ *
+ * @invariant buffer != null
+ */
+public class AddressBookReader {
+    public static final int SEGMENT_SIZE = 2048; /**< The number of contacts decoded by a single task of {@link #toAddressBook(ForkJoinPool)} */
+
+    private final ByteBuffer buffer; /**< The content of the file */
+    private final int lastContactId; /**< The last identifier assigned to a contact of the book */
+    private final String[] tagNames; /**< The tag dictionary of the file */
+    private int[] offsets; /**< The position of each contact record, read from the offsets table or rebuilt for version 1 files and damaged tables */
+    private final int offsetsPosition; /**< The position of the offsets table, -1 if offsets have been rebuilt */
+    private final int trashPosition; /**< The position of the trash can section */
+    private final int segmentsPosition; /**< The position of the segment table, -1 for files without checksums */
+    private final int[][] segments; /**< The first contact, the position and the checksum of each segment of contacts, null for files without checksums */
+    private final int trashCrc; /**< The checksum of the trash can section */
+    private final int offsetsCrc; /**< The checksum of the offsets table */
+    private final int count; /**< The number of contacts of the list */
+
+    /**
+     * Opens a reader on the given content of a file in the {@link AddressBookFormat}.
+     *
+     * @param[in] buffer the content of the file, from its first byte
+     * @throws IOException if the content is not in the {@link AddressBookFormat}
+     */
+    public AddressBookReader(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        ByteBuffer in = buffer.duplicate();
+        byte[] magic = new byte[AddressBookFormat.MAGIC.length];
+        in.get(magic);
+        if (!AddressBookFormat.isBinaryFormat(magic))
+            throw new StreamCorruptedException("Not an address book file");
+        short version = in.getShort();
+        if (version > AddressBookFormat.VERSION)
+            throw new StreamCorruptedException("Unsupported address book file version: " + version);
+
+        // Files of version 1 have no trailer: their positions are found while reading the records
+        int trailer = buffer.limit() - (version >= AddressBookFormat.CHECKED_VERSION ? AddressBookFormat.TRAILER_SIZE : AddressBookFormat.UNCHECKED_TRAILER_SIZE);
+        int offsetsPosition = version >= 2 ? (int) buffer.getLong(trailer) : -1;
+        int trashPosition = version >= 2 ? (int) buffer.getLong(trailer + 8) : -1;
+        if (version >= AddressBookFormat.CHECKED_VERSION) {
+            // The segment table is checked first, as it holds the checksum of the header
+            segmentsPosition = (int) buffer.getLong(trailer + 16);
+            if (segmentsPosition < 0 || segmentsPosition > trailer || checksum(segmentsPosition, trailer + 24) != buffer.getInt(trailer + 24))
+                throw new StreamCorruptedException("Damaged address book segment table");
+            ByteBuffer table = buffer.duplicate();
+            table.position(segmentsPosition);
+            int headerCrc = table.getInt();
+            trashCrc = table.getInt();
+            offsetsCrc = table.getInt();
+            segments = new int[table.getInt()][3];
+            for (int[] segment : segments)
+                for (int i = 0; i < segment.length; i++)
+                    segment[i] = table.getInt();
+            if (checksum(0, segments.length > 0 ? segments[0][1] : trashPosition) != headerCrc)
+                throw new StreamCorruptedException("Damaged address book header");
+        } else {
+            segmentsPosition = -1;
+            segments = null;
+            trashCrc = 0;
+            offsetsCrc = 0;
+        }
+
+        lastContactId = readVarInt(in);
+        tagNames = new String[readVarInt(in)];
+        for (int i = 0; i < tagNames.length; i++)
+            tagNames[i] = readString(in);
+        int count = readVarInt(in);
+
+        if (version >= 2) {
+            offsets = null;
+            if (offsetsPosition + 4L * count != (segments != null ? segmentsPosition : trailer))
+                throw new StreamCorruptedException("Inconsistent address book offsets table");
+        } else {
+            // No offsets table: the records are skipped once to find their positions
+            offsets = new int[count];
+            for (int i = 0; i < count; i++) {
+                offsets[i] = in.position();
+                int length = readVarInt(in);
+                in.position(in.position() + length);
+            }
+            trashPosition = in.position();
+        }
+        this.offsetsPosition = offsetsPosition;
+        this.trashPosition = trashPosition;
+        this.count = count;
+    }
+
+    /**
+     * Computes the checksum of a range of the file.
+     */
+    private int checksum(int from, int to) {
+        if (from < 0 || from > to || to > buffer.limit())
+            return ~0;
+        ByteBuffer range = buffer.duplicate();
+        range.position(from);
+        range.limit(to);
+        CRC32 crc = new CRC32();
+        crc.update(range);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Checks the segments of the file against their checksums, without decoding them.
+     * The segments are checked concurrently, so the check is only limited by the speed the file can be read at.
+     * The header and the segment table have already been checked when the reader was opened.
+     *
+     * @return the report of the damaged segments, which is always intact for files without checksums
+     */
+    public IntegrityReport verify() {
+        long start = System.nanoTime();
+        if (segments == null)
+            return new IntegrityReport(false, 0, 0, System.nanoTime() - start);
+        boolean[] damaged = new boolean[segments.length];
+        IntStream.range(0, segments.length).parallel().forEach(i ->
+                damaged[i] = checksum(segments[i][1], i + 1 < segments.length ? segments[i + 1][1] : trashPosition) != segments[i][2]);
+        boolean trashDamaged = checksum(trashPosition, offsetsPosition) != trashCrc;
+        boolean offsetsDamaged = checksum(offsetsPosition, segmentsPosition) != offsetsCrc;
+
+        IntegrityReport report = new IntegrityReport(true, segments.length + 2, buffer.limit(), System.nanoTime() - start);
+        for (int i = 0; i < segments.length; i++)
+            if (damaged[i])
+                report.addDamagedSegment(i, segments[i][0], i + 1 < segments.length ? segments[i + 1][0] : count);
+        if (trashDamaged)
+            report.setTrashDamaged();
+        if (offsetsDamaged)
+            report.setOffsetsDamaged();
+        return report;
+    }
+
+    /**
+     * Returns the number of contacts in the list of the book.
+     *
+     * @return the number of contacts
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the last identifier assigned to a contact of the book.
+     *
+     * @return the last identifier assigned to a contact
+     */
+    public int getLastContactId() {
+        return lastContactId;
+    }
+
+    private int offset(int index) {
+        return offsets != null ? offsets[index] : buffer.getInt(offsetsPosition + 4 * index);
+    }
+
+    /**
+     * Decodes the full name stored in the file for the contact at the specified position.
+     * Front-coded names must always be rebuilt from the names stored in the file, starting from the closest restart point.
+     */
+    private String readFullName(int index) {
+        int restart = index;
+        while (restart > 0 && !isRestart(restart))
+            restart--;
+        ByteBuffer in = buffer.duplicate();
+        String fullName = "";
+        for (int i = restart; i <= index; i++) {
+            in.position(offset(i));
+            readVarInt(in); // length
+            readVarInt(in); // id
+            fullName = readName(in, fullName);
+        }
+        return fullName;
+    }
+
+    /**
+     * Checks whether the record at the specified position writes its full name whole.
+     */
+    private boolean isRestart(int index) {
+        ByteBuffer in = buffer.duplicate();
+        in.position(offset(index));
+        readVarInt(in); // length
+        readVarInt(in); // id
+        return readVarInt(in) == 0;
+    }
+
+    /**
+     * Decodes the trash can of the book.
+     *
+     * @return the contacts deleted from the book, by deletion date
+     */
+    public RecentlyDeleted readTrash() {
+        RecentlyDeleted trash = new RecentlyDeleted();
+        ByteBuffer in = buffer.duplicate();
+        in.position(trashPosition);
+        int days = readVarInt(in);
+        for (int i = 0; i < days; i++) {
+            LocalDate deletionDate = LocalDate.ofEpochDay(in.getLong());
+            int deleted = readVarInt(in);
+            String previous = "";
+            for (int j = 0; j < deleted; j++) {
+                Contact c = readRecord(in, previous);
+                trash.put(c, deletionDate);
+                previous = c.getFullNameValue();
+            }
+        }
+        return trash;
+    }
+
+    /**
+     * Decodes the whole book on the given pool, splitting the records in segments of {@link #SEGMENT_SIZE} contacts decoded in parallel.
+     * A segment can be decoded on its own because its first name is rebuilt from the closest restart point, found through the offsets table.
+     * The segments are decoded in order, so the list of contacts is then built in a single pass, without comparing the contacts again.
+     *
+     * @param[in] pool the pool running the decoding tasks
+     * @return the address book stored in the file
+     */
+    public synchronized AddressBook toAddressBook(ForkJoinPool pool) {
+        Contact[] contacts = new Contact[count];
+        ForkJoinTask<RecentlyDeleted> trash = pool.submit(this::readTrash);
+        pool.invoke(new DecodeTask(contacts, 0, count));
+        return new AddressBook(Arrays.asList(contacts), trash.join(), lastContactId);
+    }
+
+    /**
+     * Decodes the intact parts of a damaged file on the given pool, skipping the segments found damaged by {@link #verify()}.
+     * A damaged offsets table is rebuilt from the intact segments, and a damaged trash can is replaced by an empty one.
+     *
+     * @param[in] pool the pool running the decoding tasks
+     * @param[in] report the report returned by {@link #verify()}
+     * @return the address book made of the contacts of the intact segments
+     * @see IntegrityReport#getLostContacts()
+     */
+    public synchronized AddressBook recover(ForkJoinPool pool, IntegrityReport report) {
+        if (report.isIntact())
+            return toAddressBook(pool);
+        if (report.isOffsetsDamaged()) {
+            int[] rebuilt = new int[count];
+            for (int i = 0; i < segments.length; i++) {
+                if (report.isSegmentDamaged(i))
+                    continue;
+                ByteBuffer in = buffer.duplicate();
+                in.position(segments[i][1]);
+                for (int j = segments[i][0]; j < (i + 1 < segments.length ? segments[i + 1][0] : count); j++) {
+                    rebuilt[j] = in.position();
+                    int length = readVarInt(in);
+                    in.position(in.position() + length);
+                }
+            }
+            offsets = rebuilt;
+        }
+        Contact[] contacts = new Contact[count];
+        ForkJoinTask<RecentlyDeleted> trash = report.isTrashDamaged() ? null : pool.submit(this::readTrash);
+        List<DecodeTask> tasks = new ArrayList<>();
+        for (int i = 0; i < segments.length; i++)
+            if (!report.isSegmentDamaged(i))
+                tasks.add(new DecodeTask(contacts, segments[i][0], i + 1 < segments.length ? segments[i + 1][0] : count));
+        for (DecodeTask task : tasks)
+            pool.execute(task);
+        for (DecodeTask task : tasks)
+            task.join();
+        List<Contact> recovered = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            if (contacts[i] != null)
+                recovered.add(contacts[i]);
+        return new AddressBook(recovered, trash == null ? new RecentlyDeleted() : trash.join(), lastContactId);
+    }
+
+    /**
+     * Decodes the records in a range of positions, splitting it in halves until it is no bigger than {@link #SEGMENT_SIZE}.
+     */
+    private class DecodeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L; /**< Tasks are never serialized: declared since RecursiveAction is serializable */
+        private final Contact[] contacts; /**< The decoded contacts, by position */
+        private final int from; /**< The first position of the range */
+        private final int to; /**< The position after the last one of the range */
+
+        DecodeTask(Contact[] contacts, int from, int to) {
+            this.contacts = contacts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SEGMENT_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new DecodeTask(contacts, from, middle), new DecodeTask(contacts, middle, to));
+                return;
+            }
+            ByteBuffer in = buffer.duplicate();
+            String previous = from == 0 || isRestart(from) ? "" : readFullName(from - 1);
+            for (int i = from; i < to; i++) {
+                in.position(offset(i));
+                Contact c = readRecord(in, previous);
+                previous = c.getFullNameValue();
+                contacts[i] = c;
+            }
+        }
+    }
+
+    private Contact readRecord(ByteBuffer in, String previous) {
+        readVarInt(in); // length
+        int id = readVarInt(in);
+        String fullName = readName(in, previous);
+        int surnameLength = readVarInt(in);
+        String[] emails = readStrings(in, Contact.MAX_EMAILS);
+        String[] phones = readStrings(in, Contact.MAX_PHONENUMBERS);
+        String[] tags = new String[readVarInt(in)];
+        for (int j = 0; j < tags.length; j++)
+            tags[j] = tagNames[readVarInt(in)];
+        String picture = readString(in);
+        return new Contact(id, fullName.substring(surnameLength + 1), fullName.substring(0, surnameLength), emails, phones, tags, picture);
+    }
+
+    private static String readName(ByteBuffer in, String previous) {
+        int shared = readVarInt(in);
+        return previous.substring(0, shared) + readString(in);
+    }
+
+    private static String[] readStrings(ByteBuffer in, int slots) {
+        String[] strings = new String[slots];
+        int count = in.get();
+        for (int i = 0; i < slots; i++)
+            strings[i] = i < count ? readString(in) : "";
+        return strings;
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IllegalStateException("Malformed variable-length integer");
+    }
+}
@@ -0,0 +1,332 @@
+package it.unisa.diem.Utility;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import it.unisa.diem.Model.AddressBook;
+import it.unisa.diem.Model.RecentlyDeleted;
+
+/**
+ * Saves an {@link AddressBook} to its file in the background, so that the JavaFX thread never waits for the disk.
+ *
+ * The address book marks itself dirty every time it is modified. The marks are coalesced: the first one schedules a save
+ * after {@link #COALESCING_DELAY_MILLIS} milliseconds, and the following ones are included in the same save.
+ * A save writes the records of the {@link AddressBookJournal} and forces them to disk. When the journal has grown too big, a snapshot
+ * is written instead, replacing the files atomically. The list of contacts and the trash can are saved in separate files, and the saver
+ * tracks which of them have changed since the last snapshot: deleting, restoring or purging contacts only rewrites the list if it has changed,
+ * and changing the list never rewrites the trash can.
+ *
+ * All the saves of all the address books run on a single thread, in the order they have been requested.
+ * The thread is not a daemon, so the saves requested right before the application exits are completed.
+ *
+ * @invariant addressBook != null
+ * @invariant journal != null
+ */
+public class BackgroundSaver {
+    public static final long COALESCING_DELAY_MILLIS = 500; /**< The time waited after the first change before saving, to include the following ones */
+
+    private static final ScheduledThreadPoolExecutor executor = createExecutor(); /**< Runs the saves, one at a time */
+
+    private final AddressBook addressBook; /**< The address book to save */
+    private final AddressBookJournal journal; /**< The journal of the address book */
+    private final AtomicBoolean saveScheduled = new AtomicBoolean(); /**< True if a save is waiting to be run */
+    private final AtomicBoolean snapshotScheduled = new AtomicBoolean(); /**< True if a snapshot is waiting to be written */
+    private final AtomicLong dirtySince = new AtomicLong(); /**< The time of the oldest unsaved change (System.nanoTime()), 0 if there is none */
+    private final AtomicBoolean contactsChanged = new AtomicBoolean(); /**< True if the list of contacts has changed since the last snapshot */
+    private final AtomicBoolean trashChanged = new AtomicBoolean(); /**< True if the trash can has changed since the last snapshot */
+
+    private final AtomicLong saveCount = new AtomicLong(); /**< The number of saves completed */
+    private final AtomicLong snapshotCount = new AtomicLong(); /**< The number of snapshots written */
+    private final AtomicLong contactsWriteCount = new AtomicLong(); /**< The number of snapshots that have written the list of contacts */
+    private final AtomicLong trashWriteCount = new AtomicLong(); /**< The number of snapshots that have written the trash can */
+    private final AtomicLong bytesWritten = new AtomicLong(); /**< The number of bytes written to disk */
+    private final AtomicLong totalLatency = new AtomicLong(); /**< The sum of the latencies of the saves, in nanoseconds */
+    private volatile long lastLatency; /**< The latency of the last save, in nanoseconds */
+    private volatile long maxLatency; /**< The highest latency of a save, in nanoseconds */
+    private volatile long lastSnapshotDuration; /**< The time taken to write the last snapshot, in nanoseconds */
+
+    private static ScheduledThreadPoolExecutor createExecutor() {
+        // Non-daemon worker that dies when idle: saves started right before exiting are completed, but the JVM is not kept alive afterwards
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "address-book-saver");
+            t.setDaemon(false);
+            return t;
+        });
+        executor.setKeepAliveTime(1, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Creates the saver of the given address book.
+     *
+     * @param[in] addressBook the address book to save
+     * @param[in] journal the journal where the changes of the address book are recorded
+     */
+    public BackgroundSaver(AddressBook addressBook, AddressBookJournal journal) {
+        this.addressBook = addressBook;
+        this.journal = journal;
+    }
+
+    /**
+     * Returns the journal written by this saver.
+     *
+     * @return the journal of the address book
+     */
+    public AddressBookJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Notifies that the address book has been modified. A save is scheduled, unless one is already waiting.
+     *
+     * @param[in] contacts true if the list of contacts has changed
+     * @param[in] trash true if the trash can has changed
+     */
+    public void markDirty(boolean contacts, boolean trash) {
+        markChanged(contacts, trash);
+        dirtySince.compareAndSet(0, System.nanoTime());
+        if (saveScheduled.compareAndSet(false, true))
+            executor.schedule(this::save, COALESCING_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records that parts of the address book differ from its files, without scheduling a save:
+     * they are written by the next snapshot.
+     *
+     * @param[in] contacts true if the list of contacts differs from its file
+     * @param[in] trash true if the trash can differs from its file
+     */
+    public void markChanged(boolean contacts, boolean trash) {
+        if (contacts)
+            contactsChanged.set(true);
+        if (trash)
+            trashChanged.set(true);
+    }
+
+    /**
+     * Checks whether the list of contacts has changed since the last snapshot.
+     *
+     * @return true if the next snapshot writes the list of contacts
+     */
+    public boolean isContactsChanged() {
+        return contactsChanged.get();
+    }
+
+    /**
+     * Checks whether the trash can has changed since the last snapshot.
+     *
+     * @return true if the next snapshot writes the trash can
+     */
+    public boolean isTrashChanged() {
+        return trashChanged.get();
+    }
+
+    /**
+     * Schedules a save to be run as soon as possible, without waiting for the coalescing delay.
+     */
+    public void saveNow() {
+        dirtySince.compareAndSet(0, System.nanoTime());
+        saveScheduled.set(true);
+        executor.execute(this::save);
+    }
+
+    /**
+     * Schedules a full snapshot of the address book, replacing its file and its trash can file and emptying the journal.
+     */
+    public void requestSnapshot() {
+        contactsChanged.set(true);
+        trashChanged.set(true);
+        scheduleSnapshot();
+    }
+
+    /**
+     * Schedules a snapshot of the parts of the address book that have changed since the last one.
+     */
+    private void scheduleSnapshot() {
+        dirtySince.compareAndSet(0, System.nanoTime());
+        if (snapshotScheduled.compareAndSet(false, true))
+            executor.execute(this::writeSnapshot);
+    }
+
+    /**
+     * Waits for the saves of all the address books requested so far to be completed.
+     * Saves that are still waiting for the coalescing delay are not waited for.
+     *
+     * @param[in] timeoutMillis the maximum time to wait, in milliseconds
+     * @return true if the saves have been completed, false if the time ran out
+     */
+    public static boolean awaitSaved(long timeoutMillis) {
+        try {
+            executor.submit(() -> { }).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private void save() {
+        if (!saveScheduled.getAndSet(false))
+            return;
+        try {
+            bytesWritten.addAndGet(journal.write(journal.drainPending()));
+            saved();
+            if (journal.needsCompaction())
+                scheduleSnapshot();
+        } catch (IOException e) {
+            // The records are lost from memory, but the next snapshot will include their changes
+            System.err.println("Error saving AddressBook journal: " + e.getMessage());
+            requestSnapshot();
+        }
+    }
+
+    private void writeSnapshot() {
+        snapshotScheduled.set(false);
+        saveScheduled.set(false);
+        long start = System.nanoTime();
+        String path = journal.getAddressBookPath();
+        boolean contacts;
+        boolean trash;
+        AddressBook snapshot = null;
+        RecentlyDeleted trashSnapshot = null;
+        int lastContactId;
+        byte[] records;
+        // The copies and the records they include are taken while the address book cannot be modified
+        synchronized (addressBook) {
+            // Files written before the trash can had its own file keep it inside the address book file: both are rewritten to split them
+            boolean split = !Files.exists(Paths.get(FileManager.getTrashPath(path)));
+            contacts = contactsChanged.getAndSet(false) || split;
+            trash = trashChanged.getAndSet(false) || split;
+            if (contacts)
+                snapshot = addressBook.snapshot();
+            if (trash)
+                trashSnapshot = addressBook.snapshotTrash();
+            lastContactId = addressBook.getLastContactId();
+            records = journal.drainPending();
+        }
+        try {
+            bytesWritten.addAndGet(journal.write(records));
+            journal.beginCompaction();
+            // The trash can is written first, so that a list of contacts is never saved after a trash can older than itself
+            if (trash) {
+                bytesWritten.addAndGet(FileManager.exportTrash(path, lastContactId, trashSnapshot));
+                trashWriteCount.incrementAndGet();
+            }
+            if (contacts) {
+                bytesWritten.addAndGet(FileManager.exportContacts(path, snapshot));
+                contactsWriteCount.incrementAndGet();
+            }
+            journal.endCompaction(FileManager.getStoredSize(path));
+            snapshotCount.incrementAndGet();
+            lastSnapshotDuration = System.nanoTime() - start;
+            saved();
+        } catch (IOException e) {
+            // The records moved aside are kept, and replayed together with the new journal
+            System.err.println("Error writing AddressBook snapshot: " + e.getMessage());
+            if (contacts)
+                contactsChanged.set(true);
+            if (trash)
+                trashChanged.set(true);
+        }
+    }
+
+    private void saved() {
+        long since = dirtySince.getAndSet(0);
+        if (since == 0)
+            return;
+        long latency = System.nanoTime() - since;
+        lastLatency = latency;
+        maxLatency = Math.max(maxLatency, latency);
+        totalLatency.addAndGet(latency);
+        saveCount.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of saves completed, including full snapshots.
+     *
+     * @return the number of saves completed
+     */
+    public long getSaveCount() {
+        return saveCount.get();
+    }
+
+    /**
+     * Returns the number of snapshots written.
+     *
+     * @return the number of snapshots written
+     */
+    public long getSnapshotCount() {
+        return snapshotCount.get();
+    }
+
+    /**
+     * Returns the number of snapshots that have rewritten the file of the list of contacts.
+     *
+     * @return the number of writes of the list of contacts
+     */
+    public long getContactsWriteCount() {
+        return contactsWriteCount.get();
+    }
+
+    /**
+     * Returns the number of snapshots that have rewritten the trash can file.
+     *
+     * @return the number of writes of the trash can
+     */
+    public long getTrashWriteCount() {
+        return trashWriteCount.get();
+    }
+
+    /**
+     * Returns the number of bytes written to disk, counting journal records and snapshots.
+     *
+     * @return the number of bytes written
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * Returns the latency of the last save: the time between the oldest change it included and the moment it was on disk.
+     *
+     * @return the latency of the last save, in milliseconds
+     */
+    public double getLastSaveLatencyMillis() {
+        return lastLatency / 1e6;
+    }
+
+    /**
+     * Returns the highest latency of a save.
+     *
+     * @return the highest latency of a save, in milliseconds
+     * @see #getLastSaveLatencyMillis()
+     */
+    public double getMaxSaveLatencyMillis() {
+        return maxLatency / 1e6;
+    }
+
+    /**
+     * Returns the average latency of the saves.
+     *
+     * @return the average latency of the saves, in milliseconds
+     * @see #getLastSaveLatencyMillis()
+     */
+    public double getAverageSaveLatencyMillis() {
+        long count = saveCount.get();
+        return count == 0 ? 0 : totalLatency.get() / 1e6 / count;
+    }
+
+    /**
+     * Returns the time taken to copy, write and replace the last snapshot.
+     *
+     * @return the duration of the last snapshot, in milliseconds
+     */
+    public double getLastSnapshotMillis() {
+        return lastSnapshotDuration / 1e6;
+    }
+}
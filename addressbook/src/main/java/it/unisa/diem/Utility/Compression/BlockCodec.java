@@ -0,0 +1,43 @@
+package it.unisa.diem.Utility.Compression;
+
+import java.io.IOException;
+
+/**
+ * Classes implementing this interface compress and decompress the blocks of a {@link BlockFramedFile}.
+ * Each block is compressed on its own, so that blocks can be compressed and decompressed concurrently.
+ * Implementations must be thread-safe.
+ */
+public interface BlockCodec {
+    /**
+     * Returns the identifier of the codec, stored in the files it has compressed.
+     * @return the identifier of the codec
+     */
+    byte getId();
+
+    /**
+     * Returns the name of the codec, for reports.
+     * @return the name of the codec
+     */
+    String getName();
+
+    /**
+     * Compresses a block.
+     * @param[in] data the array containing the block
+     * @param[in] offset the position of the block in the array
+     * @param[in] length the length of the block
+     * @return the compressed block
+     */
+    byte[] compress(byte[] data, int offset, int length);
+
+    /**
+     * Decompresses a block.
+     * @param[in] data the compressed block
+     * @param[in] offset the position of the compressed block in the array
+     * @param[in] length the length of the compressed block
+     * @param[out] out the array to write the decompressed block to
+     * @param[in] outOffset the position in the output array to write the decompressed block at
+     * @param[in] rawLength the length of the decompressed block
+     * @throws IOException if the compressed block is corrupted
+     */
+    void decompress(byte[] data, int offset, int length, byte[] out, int outOffset, int rawLength) throws IOException;
+}
@@ -0,0 +1,324 @@
+package it.unisa.diem.Utility.Compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+/**
+ * Frames data into independently compressed blocks.
+ *
+ * The data is split into blocks at content-defined boundaries: a boundary is placed where a rolling hash of the last bytes matches a pattern,
+ * so that inserting or removing bytes only changes the blocks around the change, while the following blocks keep their content.
+ * An instance remembers the blocks of the last data it has framed or unframed: when framing new data, the blocks that have not changed
+ * are not compressed again. The other blocks are compressed concurrently, and all the blocks are decompressed concurrently.
+ *
+ * The framed data is laid out as follows:
+ * - header: the {@link #MAGIC} bytes, the format {@link #VERSION} (2 bytes), the number of blocks (4 bytes) and the size of the data (8 bytes);
+ * - block table: for each block, the identifier of its codec (1 byte, 0 if it is stored uncompressed), its size before and after compression (4 bytes each);
+ * - blocks: the compressed blocks, one after the other.
+ *
+ * @invariant codec != null
+ */
+public class BlockFramedFile {
+    public static final byte[] MAGIC = {'A', 'B', 'K', 'Z'}; /**< The bytes framed data starts with */
+    public static final short VERSION = 1; /**< The version of the format written by this class */
+    public static final int MIN_BLOCK_SIZE = 16 * 1024; /**< The smallest size of a block, except the last one */
+    public static final int MAX_BLOCK_SIZE = 256 * 1024; /**< The largest size of a block */
+    private static final long BOUNDARY_MASK = ((1L << 15) - 1) << 49; /**< A boundary is placed where these bits of the rolling hash are 0: about every 32 KB after the minimum size */
+    private static final byte STORED = 0; /**< The codec identifier of blocks stored uncompressed */
+    private static final long[] GEAR = new long[256]; /**< The random values mixed into the rolling hash for each byte */
+
+    static {
+        Random random = new Random(0x41424B5AL);
+        for (int i = 0; i < GEAR.length; i++)
+            GEAR[i] = random.nextLong();
+    }
+
+    /**
+     * A block of data, with its compressed form.
+     */
+    private static class Block {
+        private final byte[] raw; /**< The content of the block */
+        private final byte codecId; /**< The codec used to compress the block */
+        private final byte[] stored; /**< The compressed content of the block, or its raw content if it did not compress */
+
+        private Block(byte[] raw, byte codecId, byte[] stored) {
+            this.raw = raw;
+            this.codecId = codecId;
+            this.stored = stored;
+        }
+    }
+
+    private final BlockCodec codec; /**< The codec used to compress new blocks */
+    private Map<Long, List<Block>> previous = new HashMap<>(); /**< The blocks of the last data framed or unframed, by checksum and size */
+    private volatile CompressionStats lastStats; /**< The report of the last operation */
+
+    /**
+     * Creates a framer compressing the blocks with the given codec.
+     * @param[in] codec the codec to compress new blocks with
+     */
+    public BlockFramedFile(BlockCodec codec) {
+        if (codec == null) {
+            throw new IllegalArgumentException("Codec cannot be null");
+        }
+        this.codec = codec;
+    }
+
+    /**
+     * Returns the codec used to compress new blocks.
+     * @return the codec of the framer
+     */
+    public BlockCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Returns the report of the last call to {@link #frame(byte[])} or {@link #unframe(byte[])}.
+     * @return the last report, or null if no data has been framed or unframed yet
+     */
+    public CompressionStats getLastStats() {
+        return lastStats;
+    }
+
+    /**
+     * Checks whether the given bytes are the beginning of framed data.
+     * @param[in] header the first bytes of a file
+     * @return true if the bytes start with {@link #MAGIC}
+     */
+    public static boolean isFramed(byte[] header) {
+        if (header.length < MAGIC.length)
+            return false;
+        for (int i = 0; i < MAGIC.length; i++)
+            if (header[i] != MAGIC[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * Returns the codec with the given identifier.
+     * @param[in] id the identifier of the codec
+     * @return the codec, or null if there is none with such identifier
+     */
+    public static BlockCodec codecForId(byte id) {
+        switch (id) {
+            case DeflateCodec.ID:
+                return new DeflateCodec();
+            case LzCodec.ID:
+                return new LzCodec();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Splits data into blocks and compresses them, reusing the compressed blocks of the last data framed or unframed that have not changed.
+     * @param[in] data the data to frame
+     * @return the framed data
+     */
+    public synchronized byte[] frame(byte[] data) {
+        long start = System.nanoTime();
+        List<int[]> bounds = split(data);
+        Block[] blocks = new Block[bounds.size()];
+        int reused = 0;
+        for (int i = 0; i < blocks.length; i++) {
+            int[] b = bounds.get(i);
+            blocks[i] = find(previous, data, b[0], b[1]);
+            if (blocks[i] != null)
+                reused++;
+        }
+        IntStream.range(0, blocks.length).parallel().filter(i -> blocks[i] == null).forEach(i -> {
+            int[] b = bounds.get(i);
+            byte[] raw = new byte[b[1]];
+            System.arraycopy(data, b[0], raw, 0, b[1]);
+            byte[] compressed = codec.compress(raw, 0, raw.length);
+            blocks[i] = compressed.length < raw.length ? new Block(raw, codec.getId(), compressed) : new Block(raw, STORED, raw);
+        });
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2 + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.write(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(blocks.length);
+            out.writeLong(data.length);
+            for (Block block : blocks) {
+                out.writeByte(block.codecId);
+                out.writeInt(block.raw.length);
+                out.writeInt(block.stored.length);
+            }
+            for (Block block : blocks)
+                out.write(block.stored);
+        } catch (IOException e) {
+            // Writing to memory cannot fail
+            throw new UncheckedIOException(e);
+        }
+        remember(blocks);
+        lastStats = new CompressionStats(codec.getName(), data.length, bytes.size(), blocks.length, reused, System.nanoTime() - start);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decompresses framed data, decompressing its blocks concurrently.
+     * The blocks are remembered, so that the next call to {@link #frame(byte[])} does not compress again the ones that have not changed.
+     * @param[in] framed the framed data
+     * @return the original data
+     * @throws IOException if the framed data is corrupted or uses an unknown codec
+     */
+    public synchronized byte[] unframe(byte[] framed) throws IOException {
+        long start = System.nanoTime();
+        Block[] blocks = read(framed, false);
+        byte[] data = join(blocks);
+        remember(blocks);
+        lastStats = new CompressionStats(codec.getName(), data.length, framed.length, blocks.length, 0, System.nanoTime() - start);
+        return data;
+    }
+
+    /**
+     * Decompresses framed data, without remembering its blocks.
+     * @param[in] framed the framed data
+     * @return the original data
+     * @throws IOException if the framed data is corrupted or uses an unknown codec
+     */
+    public static byte[] decompress(byte[] framed) throws IOException {
+        return join(read(framed, false));
+    }
+
+    /**
+     * Decompresses framed data whose blocks may be damaged, without remembering its blocks.
+     * A block that cannot be decompressed is replaced by zeros, so that the data keeps its size and the other blocks their positions.
+     * @param[in] framed the framed data, whose header and block table must be intact
+     * @return the original data, with zeros in place of the damaged blocks
+     * @throws IOException if the header or the block table of the framed data is corrupted
+     */
+    public static byte[] salvage(byte[] framed) throws IOException {
+        return join(read(framed, true));
+    }
+
+    private static Block[] read(byte[] framed, boolean lenient) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(framed);
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            in.get(magic);
+            if (!isFramed(magic))
+                throw new StreamCorruptedException("Not a block-framed file");
+            short version = in.getShort();
+            if (version > VERSION)
+                throw new StreamCorruptedException("Unsupported block-framed file version: " + version);
+            int count = in.getInt();
+            in.getLong(); // size of the data
+            byte[] codecIds = new byte[count];
+            int[] rawLengths = new int[count];
+            int[] storedLengths = new int[count];
+            for (int i = 0; i < count; i++) {
+                codecIds[i] = in.get();
+                rawLengths[i] = in.getInt();
+                storedLengths[i] = in.getInt();
+            }
+            int[] offsets = new int[count];
+            int offset = in.position();
+            for (int i = 0; i < count; i++) {
+                offsets[i] = offset;
+                offset += storedLengths[i];
+            }
+            if (offset != framed.length)
+                throw new StreamCorruptedException("Truncated block-framed file");
+
+            Block[] blocks = new Block[count];
+            IntStream.range(0, count).parallel().forEach(i -> {
+                byte[] stored = new byte[storedLengths[i]];
+                System.arraycopy(framed, offsets[i], stored, 0, stored.length);
+                byte[] raw;
+                if (codecIds[i] == STORED) {
+                    raw = stored;
+                } else {
+                    BlockCodec blockCodec = codecForId(codecIds[i]);
+                    raw = new byte[rawLengths[i]];
+                    try {
+                        if (blockCodec == null)
+                            throw new StreamCorruptedException("Unknown codec: " + codecIds[i]);
+                        blockCodec.decompress(stored, 0, stored.length, raw, 0, raw.length);
+                    } catch (IOException | RuntimeException e) {
+                        if (!lenient)
+                            throw e instanceof IOException ? new UncheckedIOException((IOException) e) : (RuntimeException) e;
+                        raw = new byte[rawLengths[i]];
+                    }
+                }
+                blocks[i] = new Block(raw, codecIds[i], stored);
+            });
+            return blocks;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            throw new StreamCorruptedException("Corrupted block-framed file: " + e);
+        }
+    }
+
+    private static byte[] join(Block[] blocks) {
+        int size = 0;
+        for (Block block : blocks)
+            size += block.raw.length;
+        byte[] data = new byte[size];
+        int offset = 0;
+        for (Block block : blocks) {
+            System.arraycopy(block.raw, 0, data, offset, block.raw.length);
+            offset += block.raw.length;
+        }
+        return data;
+    }
+
+    private void remember(Block[] blocks) {
+        Map<Long, List<Block>> remembered = new HashMap<>();
+        for (Block block : blocks)
+            remembered.computeIfAbsent(key(block.raw, 0, block.raw.length), k -> new ArrayList<>(1)).add(block);
+        previous = remembered;
+    }
+
+    private static Block find(Map<Long, List<Block>> blocks, byte[] data, int offset, int length) {
+        List<Block> candidates = blocks.get(key(data, offset, length));
+        if (candidates != null) {
+            ByteBuffer content = ByteBuffer.wrap(data, offset, length);
+            for (Block block : candidates)
+                if (ByteBuffer.wrap(block.raw).equals(content))
+                    return block;
+        }
+        return null;
+    }
+
+    private static long key(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return crc.getValue() << 32 | length;
+    }
+
+    /**
+     * Splits the data at content-defined boundaries.
+     * @return the offset and the length of each block
+     */
+    private static List<int[]> split(byte[] data) {
+        List<int[]> bounds = new ArrayList<>();
+        int start = 0;
+        long hash = 0;
+        for (int i = 0; i < data.length; i++) {
+            hash = (hash << 1) + GEAR[data[i] & 0xFF];
+            int size = i + 1 - start;
+            if ((size >= MIN_BLOCK_SIZE && (hash & BOUNDARY_MASK) == 0) || size >= MAX_BLOCK_SIZE) {
+                bounds.add(new int[] {start, size});
+                start = i + 1;
+                hash = 0;
+            }
+        }
+        if (start < data.length)
+            bounds.add(new int[] {start, data.length - start});
+        return bounds;
+    }
+}
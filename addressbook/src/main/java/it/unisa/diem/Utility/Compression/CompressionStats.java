@@ -0,0 +1,57 @@
+package it.unisa.diem.Utility.Compression;
+
+/**
+ * Report of a compression or decompression of a {@link BlockFramedFile}.
+ */
+public class CompressionStats {
+    private final String codec; /**< The name of the codec used */
+    private final long rawBytes; /**< The size of the data before compression */
+    private final long storedBytes; /**< The size of the framed data */
+    private final int blocks; /**< The number of blocks */
+    private final int reusedBlocks; /**< The number of blocks whose compressed bytes have been reused from the previous save */
+    private final long nanos; /**< The time taken */
+
+    CompressionStats(String codec, long rawBytes, long storedBytes, int blocks, int reusedBlocks, long nanos) {
+        this.codec = codec;
+        this.rawBytes = rawBytes;
+        this.storedBytes = storedBytes;
+        this.blocks = blocks;
+        this.reusedBlocks = reusedBlocks;
+        this.nanos = nanos;
+    }
+
+    /** @return the name of the codec used */
+    public String getCodec() { return codec; }
+    /** @return the size of the data before compression, in bytes */
+    public long getRawBytes() { return rawBytes; }
+    /** @return the size of the framed data, in bytes */
+    public long getStoredBytes() { return storedBytes; }
+    /** @return the number of blocks */
+    public int getBlocks() { return blocks; }
+    /** @return the number of blocks that have not been compressed again, because they had not changed since the previous save */
+    public int getReusedBlocks() { return reusedBlocks; }
+    /** @return the time taken, in milliseconds */
+    public double getMillis() { return nanos / 1e6; }
+
+    /**
+     * Returns the compression ratio.
+     * @return the size of the data before compression divided by the size of the framed data
+     */
+    public double getRatio() {
+        return storedBytes == 0 ? 0 : (double) rawBytes / storedBytes;
+    }
+
+    /**
+     * Returns the throughput, measured on the data before compression.
+     * @return the number of megabytes (10^6 bytes) processed per second
+     */
+    public double getThroughput() {
+        return nanos == 0 ? 0 : rawBytes / 1e6 / (nanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d -> %d bytes (ratio %.2f), %d/%d blocks reused, %.1f ms, %.1f MB/s",
+                codec, rawBytes, storedBytes, getRatio(), reusedBlocks, blocks, getMillis(), getThroughput());
+    }
+}
@@ -0,0 +1,80 @@
+package it.unisa.diem.Utility.Compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * BlockCodec implementation using the deflate algorithm of {@link Deflater}: it compresses better than {@link LzCodec}, but more slowly.
+ */
+public class DeflateCodec implements BlockCodec {
+    public static final byte ID = 1; /**< The identifier of the codec */
+    private final int level; /**< The compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION} */
+
+    /**
+     * Creates a codec using the default compression level.
+     */
+    public DeflateCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Creates a codec using the given compression level.
+     * @param[in] level the compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}
+     */
+    public DeflateCodec(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "deflate";
+    }
+
+    @Override
+    public byte[] compress(byte[] data, int offset, int length) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+            byte[] out = new byte[length + length / 1000 + 64];
+            int size = 0;
+            while (!deflater.finished()) {
+                if (size == out.length)
+                    out = Arrays.copyOf(out, out.length * 2);
+                size += deflater.deflate(out, size, out.length - size);
+            }
+            return Arrays.copyOf(out, size);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public void decompress(byte[] data, int offset, int length, byte[] out, int outOffset, int rawLength) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data, offset, length);
+            int size = 0;
+            while (size < rawLength) {
+                int n = inflater.inflate(out, outOffset + size, rawLength - size);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                size += n;
+            }
+            if (size != rawLength)
+                throw new IOException("Corrupted deflate block");
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted deflate block: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+}
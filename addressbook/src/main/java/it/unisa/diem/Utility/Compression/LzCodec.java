@@ -0,0 +1,141 @@
+package it.unisa.diem.Utility.Compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * BlockCodec implementation using a byte-oriented LZ77 scheme in the style of LZ4: it compresses less than {@link DeflateCodec}, but much faster.
+ *
+ * The compressed block is a sequence of tokens. Each token is a byte holding the number of literals in its high 4 bits
+ * and the length of the match minus {@link #MIN_MATCH} in its low 4 bits; a value of 15 is continued by extra bytes, added up until one is lower than 255.
+ * The token is followed by the extra bytes of the literal count, the literals, the distance of the match (2 bytes, little-endian)
+ * and the extra bytes of the match length. The last token has no match: the block ends after its literals.
+ */
+public class LzCodec implements BlockCodec {
+    public static final byte ID = 2; /**< The identifier of the codec */
+    private static final int MIN_MATCH = 4; /**< The shortest match that is encoded */
+    private static final int MAX_DISTANCE = 0xFFFF; /**< The farthest match that can be encoded */
+    private static final int HASH_BITS = 14; /**< The number of bits of the hash of the last 4 bytes */
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "lz";
+    }
+
+    @Override
+    public byte[] compress(byte[] data, int offset, int length) {
+        byte[] out = new byte[length + length / 255 + 16];
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+        int end = offset + length;
+        int size = 0;
+        int anchor = offset; // The first literal not yet written
+        int i = offset;
+        while (i + MIN_MATCH <= end) {
+            int h = hash(data, i);
+            int ref = table[h];
+            table[h] = i;
+            if (ref < 0 || i - ref > MAX_DISTANCE || !matches(data, ref, i)) {
+                i++;
+                continue;
+            }
+            int matchLength = MIN_MATCH;
+            while (i + matchLength < end && data[ref + matchLength] == data[i + matchLength])
+                matchLength++;
+            size = writeSequence(out, size, data, anchor, i - anchor, i - ref, matchLength);
+            i += matchLength;
+            anchor = i;
+        }
+        if (anchor < end)
+            size = writeSequence(out, size, data, anchor, end - anchor, 0, 0);
+        return Arrays.copyOf(out, size);
+    }
+
+    private static int writeSequence(byte[] out, int size, byte[] data, int literals, int literalCount, int distance, int matchLength) {
+        int matchCode = matchLength == 0 ? 0 : matchLength - MIN_MATCH;
+        out[size++] = (byte) ((Math.min(literalCount, 15) << 4) | Math.min(matchCode, 15));
+        size = writeLength(out, size, literalCount);
+        System.arraycopy(data, literals, out, size, literalCount);
+        size += literalCount;
+        if (matchLength > 0) {
+            out[size++] = (byte) distance;
+            out[size++] = (byte) (distance >>> 8);
+            size = writeLength(out, size, matchCode);
+        }
+        return size;
+    }
+
+    private static int writeLength(byte[] out, int size, int length) {
+        if (length >= 15) {
+            length -= 15;
+            while (length >= 255) {
+                out[size++] = (byte) 255;
+                length -= 255;
+            }
+            out[size++] = (byte) length;
+        }
+        return size;
+    }
+
+    private static int hash(byte[] data, int i) {
+        int v = (data[i] & 0xFF) | (data[i + 1] & 0xFF) << 8 | (data[i + 2] & 0xFF) << 16 | (data[i + 3] & 0xFF) << 24;
+        return (v * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+
+    private static boolean matches(byte[] data, int a, int b) {
+        return data[a] == data[b] && data[a + 1] == data[b + 1] && data[a + 2] == data[b + 2] && data[a + 3] == data[b + 3];
+    }
+
+    @Override
+    public void decompress(byte[] data, int offset, int length, byte[] out, int outOffset, int rawLength) throws IOException {
+        try {
+            int in = offset;
+            int inEnd = offset + length;
+            int pos = outOffset;
+            int outEnd = outOffset + rawLength;
+            while (pos < outEnd) {
+                int token = data[in++] & 0xFF;
+                int literalCount = token >>> 4;
+                if (literalCount == 15) {
+                    int b;
+                    do {
+                        b = data[in++] & 0xFF;
+                        literalCount += b;
+                    } while (b == 255);
+                }
+                if (pos + literalCount > outEnd || in + literalCount > inEnd)
+                    throw new IOException("Corrupted lz block");
+                System.arraycopy(data, in, out, pos, literalCount);
+                in += literalCount;
+                pos += literalCount;
+                if (pos == outEnd)
+                    break;
+                int distance = (data[in++] & 0xFF) | (data[in++] & 0xFF) << 8;
+                int matchLength = token & 0x0F;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = data[in++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                int ref = pos - distance;
+                if (distance == 0 || ref < outOffset || pos + matchLength > outEnd)
+                    throw new IOException("Corrupted lz block");
+                // Byte by byte: the match may overlap the bytes it produces
+                for (int k = 0; k < matchLength; k++)
+                    out[pos++] = out[ref++];
+            }
+            if (in != inEnd)
+                throw new IOException("Corrupted lz block");
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Corrupted lz block");
+        }
+    }
+}
@@ -1,8 +1,16 @@
 package it.unisa.diem.Utility;
 
 import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 import ezvcard.VCard;
 import ezvcard.VCardVersion;
@@ -10,10 +18,17 @@ import ezvcard.io.text.VCardReader;
 import ezvcard.io.text.VCardWriter;
 import it.unisa.diem.Model.AddressBook;
 import it.unisa.diem.Model.Contact;
+import it.unisa.diem.Model.RecentlyDeleted;
+import it.unisa.diem.Utility.Compression.BlockCodec;
+import it.unisa.diem.Utility.Compression.BlockFramedFile;
+import it.unisa.diem.Utility.Compression.CompressionStats;
+import it.unisa.diem.Utility.Compression.LzCodec;
 import javafx.scene.image.Image;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
@@ -27,6 +42,9 @@ public class FileManager {
     private static final String profileListPath = "addressbook\\assets\\profile_list.obj";
     private static final String addressBookDir = "addressbook\\assets\\address_books";
     private static final String contactPictureDir = "addressbook\\assets\\contact_pictures";
+    private static volatile BlockCodec compressionCodec = new LzCodec(); /**< The codec address books are compressed with, null to store them uncompressed */
+    private static final Map<String, BlockFramedFile> framedFiles = new ConcurrentHashMap<>(); /**< The blocks of each address book file, reused when saving it again */
+    private static final Map<String, IntegrityReport> integrityReports = new ConcurrentHashMap<>(); /**< The report of the last check of each address book file */
 
     /**
      * Returns the path to the profile list file.
@@ -60,6 +78,45 @@ public class FileManager {
         return addressBookDir + "\\address_book_" + timestamp + ".obj";
     }
     
+    /**
+     * Returns the path of the journal of the address book stored at the specified path.
+     * The journal stores the changes applied to the address book since its last full save.
+     * 
+     * @param addressBookPath The path of the address book file.
+     * @return The path of the journal file.
+     * @see AddressBookJournal
+     */
+    public static String getJournalPath(String addressBookPath) {
+        return addressBookPath + ".journal";
+    }
+
+    /**
+     * Returns the path of the trash can of the address book stored at the specified path.
+     * The trash can is saved in its own file, so that deleting, restoring or purging contacts never rewrites the list of contacts.
+     * When the file exists, it replaces the trash can stored in the address book file by older versions.
+     * 
+     * @param addressBookPath The path of the address book file.
+     * @return The path of the trash can file.
+     */
+    public static String getTrashPath(String addressBookPath) {
+        return addressBookPath + ".trash";
+    }
+
+    /**
+     * Returns the space taken on disk by an address book, counting its file and its trash can file but not its journal.
+     * 
+     * @param addressBookPath The path of the address book file.
+     * @return The size of the files of the address book, in bytes.
+     * @throws IOException If the size of the files cannot be read.
+     */
+    public static long getStoredSize(String addressBookPath) throws IOException {
+        long size = 0;
+        for (String path : new String[] {addressBookPath, getTrashPath(addressBookPath)})
+            if (Files.exists(Paths.get(path)))
+                size += Files.size(Paths.get(path));
+        return size;
+    }
+
     /**
      * Generates a unique file path for a contact picture, using a timestamp for uniqueness.
      * The path will be in the format: "contact_pictures/contactPicture_[timestamp].[fileExtension]".
@@ -118,11 +175,297 @@ public class FileManager {
      * @throws ClassCastException If the object type is incorrect.
      */
     public static <T> void exportToFile(String path, T data) throws StreamCorruptedException, ClassCastException {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(path))) {
+        try (FileOutputStream fos = new FileOutputStream(getTemporaryPath(path))) {
+            ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(fos));
             oos.writeObject(data);  // Serialize the object
+            oos.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            throw new StreamCorruptedException("Failed to export to file: " + e.getMessage());
+        }
+        replaceAtomically(path);
+    }
+
+    /**
+     * Returns the path of the temporary file an export to the specified path is written to, before it replaces the file.
+     * 
+     * @param path The file path being exported to.
+     * @return The path of the temporary file.
+     */
+    public static String getTemporaryPath(String path) {
+        return path + ".tmp";
+    }
+
+    /**
+     * Replaces the file at the specified path with its temporary file, in a single step:
+     * after a crash the file is found either whole in its previous version or whole in the new one.
+     * 
+     * @param path The file path being exported to.
+     * @throws StreamCorruptedException If the file cannot be replaced.
+     * @see #getTemporaryPath(String)
+     */
+    private static void replaceAtomically(String path) throws StreamCorruptedException {
+        Path source = Paths.get(getTemporaryPath(path));
+        try {
+            try {
+                Files.move(source, Paths.get(path), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(source, Paths.get(path), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new StreamCorruptedException("Failed to export to file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sets the codec address books are compressed with when they are exported.
+     * Files are read whatever codec they have been compressed with.
+     * 
+     * @param codec The codec to compress address books with, or null to store them uncompressed.
+     * @see BlockFramedFile
+     */
+    public static void setCompressionCodec(BlockCodec codec) {
+        compressionCodec = codec;
+    }
+
+    /**
+     * Returns the codec address books are compressed with when they are exported.
+     * 
+     * @return The codec to compress address books with, or null if they are stored uncompressed.
+     */
+    public static BlockCodec getCompressionCodec() {
+        return compressionCodec;
+    }
+
+    /**
+     * Returns the report of the last compression or decompression of an address book file.
+     * 
+     * @param path The file path of the AddressBook.
+     * @return The compression ratio, throughput and reused blocks of the last export or import of the file, or null if it has not been compressed or decompressed yet.
+     */
+    public static CompressionStats getCompressionStats(String path) {
+        BlockFramedFile framedFile = framedFiles.get(path);
+        return framedFile == null ? null : framedFile.getLastStats();
+    }
+
+    private static BlockFramedFile framedFile(String path, BlockCodec codec) {
+        return framedFiles.compute(path, (p, framedFile) ->
+            framedFile != null && framedFile.getCodec().getId() == codec.getId() ? framedFile : new BlockFramedFile(codec));
+    }
+
+    /**
+     * Returns the report of the last check of an address book file against its checksums.
+     * 
+     * @param path The file path of the AddressBook.
+     * @return The damaged parts of the file found by its last import, verification or recovery, or null if it has not been checked yet.
+     */
+    public static IntegrityReport getIntegrityReport(String path) {
+        return integrityReports.get(path);
+    }
+
+    /**
+     * Returns the path where a damaged AddressBook file is copied before being recovered.
+     * 
+     * @param path The file path of the AddressBook.
+     * @return The path of the copy of the damaged file.
+     */
+    public static String getDamagedPath(String path) {
+        return path + ".damaged";
+    }
+
+    /**
+     * Returns the path where an AddressBook is saved when the file it should have been read from could not be read,
+     * so that the file is never written over.
+     * 
+     * @param path The file path of the AddressBook.
+     * @return The path where the AddressBook is saved instead.
+     */
+    public static String getUnsavedPath(String path) {
+        return path + ".unsaved";
+    }
+
+    /**
+     * Imports an AddressBook from an internal file.
+     * Files in the {@link AddressBookFormat} are checked against their checksums and decoded in parallel, after being decompressed
+     * if they are {@link BlockFramedFile}s, while older files written with Java serialization are read with {@link #importFromFile(String)}.
+     * An empty or missing file is read as an empty AddressBook.
+     * 
+     * @param path The file path to import the AddressBook from.
+     * @return The imported AddressBook.
+     * @throws IOException If the file stream is corrupted.
+     * @see #recoverAddressBook(String)
+     */
+    public static AddressBook importAddressBook(String path) throws StreamCorruptedException, ClassCastException, IOException {
+        if(!Files.exists(Paths.get(path)) || Files.size(Paths.get(path)) == 0){
+            return new AddressBook();
+        }
+        byte[] bytes = Files.readAllBytes(Paths.get(path));
+        if (BlockFramedFile.isFramed(bytes)) {
+            BlockCodec codec = compressionCodec;
+            bytes = codec == null ? BlockFramedFile.decompress(bytes) : framedFile(path, codec).unframe(bytes);
+        } else if (!AddressBookFormat.isBinaryFormat(bytes))
+            return attachTrash(path, importFromFile(path));
+        try {
+            AddressBookReader reader = new AddressBookReader(ByteBuffer.wrap(bytes));
+            IntegrityReport report = reader.verify();
+            integrityReports.put(path, report);
+            if (!report.isIntact())
+                throw new StreamCorruptedException("Damaged address book file: " + report);
+            return attachTrash(path, reader.toAddressBook(ForkJoinPool.commonPool()));
+        } catch (RuntimeException e) {
+            throw new StreamCorruptedException("Failed to import from file: " + e);
+        }
+    }
+
+    /**
+     * Lets the AddressBook read its trash can from its own file, if it has one, the first time the trash can is needed.
+     */
+    private static AddressBook attachTrash(String path, AddressBook ab) {
+        if (Files.exists(Paths.get(getTrashPath(path))))
+            ab.setTrashLoader(() -> importTrash(path));
+        return ab;
+    }
+
+    /**
+     * Imports the trash can of an AddressBook from its own file.
+     * If the file is damaged, the contacts of its intact segments are recovered as by {@link #recoverAddressBook(String)}.
+     * 
+     * @param path The file path of the AddressBook, not of its trash can.
+     * @return The trash can of the AddressBook, empty if it has no trash can file.
+     * @throws IOException If the trash can file cannot be read.
+     * @see #getTrashPath(String)
+     */
+    public static RecentlyDeleted importTrash(String path) throws IOException {
+        String trashPath = getTrashPath(path);
+        try {
+            return importAddressBook(trashPath).trashCan();
+        } catch (StreamCorruptedException e) {
+            RecentlyDeleted trash = recoverAddressBook(trashPath).trashCan();
+            System.err.println("Trash can file damaged, recovered the intact contacts. The damaged file has been kept in "
+                    + getDamagedPath(trashPath) + ". " + getIntegrityReport(trashPath));
+            return trash;
+        }
+    }
+
+    /**
+     * Checks an AddressBook file against its checksums, without decoding its contacts.
+     * 
+     * @param path The file path of the AddressBook, written by {@link #exportAddressBook(String, AddressBook)}.
+     * @return The report of the damaged parts of the file.
+     * @throws IOException If the file cannot be read, or if its header, its segment table or its compression frame are damaged.
+     */
+    public static IntegrityReport verifyAddressBook(String path) throws IOException {
+        byte[] bytes = Files.readAllBytes(Paths.get(path));
+        if (BlockFramedFile.isFramed(bytes))
+            bytes = BlockFramedFile.salvage(bytes);
+        try {
+            IntegrityReport report = new AddressBookReader(ByteBuffer.wrap(bytes)).verify();
+            integrityReports.put(path, report);
+            return report;
+        } catch (RuntimeException e) {
+            throw new StreamCorruptedException("Failed to verify file: " + e);
+        }
+    }
+
+    /**
+     * Imports every intact contact of a damaged AddressBook file, skipping the segments that do not match their checksums.
+     * The damaged file is first copied to {@link #getDamagedPath(String)}, as the next export replaces it.
+     * What has been lost is described by {@link #getIntegrityReport(String)}.
+     * 
+     * @param path The file path to recover the AddressBook from.
+     * @return The AddressBook made of the intact contacts of the file.
+     * @throws IOException If the file cannot be read, or if its header, its segment table or its compression frame are damaged.
+     */
+    public static AddressBook recoverAddressBook(String path) throws IOException {
+        if(!Files.exists(Paths.get(path)) || Files.size(Paths.get(path)) == 0){
+            return new AddressBook();
+        }
+        Files.copy(Paths.get(path), Paths.get(getDamagedPath(path)), StandardCopyOption.REPLACE_EXISTING);
+        byte[] bytes = Files.readAllBytes(Paths.get(path));
+        if (BlockFramedFile.isFramed(bytes))
+            bytes = BlockFramedFile.salvage(bytes);
+        else if (!AddressBookFormat.isBinaryFormat(bytes))
+            return attachTrash(path, importFromFile(path));
+        try {
+            AddressBookReader reader = new AddressBookReader(ByteBuffer.wrap(bytes));
+            IntegrityReport report = reader.verify();
+            integrityReports.put(path, report);
+            return attachTrash(path, reader.recover(ForkJoinPool.commonPool(), report));
+        } catch (RuntimeException e) {
+            throw new StreamCorruptedException("Failed to recover from file: " + e);
+        }
+    }
+
+    /**
+     * Exports an AddressBook to an internal file, using the {@link AddressBookFormat}.
+     * The trash can is exported to its own file, {@link #getTrashPath(String)}, before the list of contacts.
+     * Unless the compression codec has been set to null, the files are framed into compressed blocks by a {@link BlockFramedFile}:
+     * the blocks that have not changed since the file was last exported or imported are not compressed again.
+     * Each file is written to a temporary file, forced to disk and then moved over the previous file,
+     * so that a crash while exporting never leaves a truncated file behind.
+     * 
+     * @param path The file path to export the AddressBook to.
+     * @param ab The AddressBook to be written to the file.
+     * @return The size of the written files, in bytes.
+     * @throws StreamCorruptedException If the file stream is corrupted.
+     * @see #setCompressionCodec(BlockCodec)
+     */
+    public static long exportAddressBook(String path, AddressBook ab) throws StreamCorruptedException {
+        // A list of contacts is never saved after a trash can older than itself
+        long size = exportTrash(path, ab.getLastContactId(), ab.trashCan());
+        return size + exportContacts(path, ab);
+    }
+
+    /**
+     * Exports the list of contacts of an AddressBook to an internal file, leaving its trash can file untouched.
+     * 
+     * @param path The file path to export the AddressBook to.
+     * @param ab The AddressBook whose list of contacts is written to the file. Its trash can is not read.
+     * @return The size of the written file, in bytes.
+     * @throws StreamCorruptedException If the file stream is corrupted.
+     * @see #exportAddressBook(String, AddressBook)
+     */
+    public static long exportContacts(String path, AddressBook ab) throws StreamCorruptedException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        try {
+            AddressBookFormat.write(raw, ab.getLastContactId(), ab.contacts(), new RecentlyDeleted());
+        } catch (IOException e) {
+            throw new StreamCorruptedException("Failed to export to file: " + e.getMessage());
+        }
+        return writeFormatted(path, raw.toByteArray());
+    }
+
+    /**
+     * Exports the trash can of an AddressBook to its own file, leaving the file of the list of contacts untouched.
+     * 
+     * @param path The file path of the AddressBook, not of its trash can.
+     * @param lastContactId The last identifier assigned to a contact of the AddressBook.
+     * @param trash The trash can to be written to the file.
+     * @return The size of the written file, in bytes.
+     * @throws StreamCorruptedException If the file stream is corrupted.
+     * @see #getTrashPath(String)
+     */
+    public static long exportTrash(String path, int lastContactId, RecentlyDeleted trash) throws StreamCorruptedException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        try {
+            AddressBookFormat.write(raw, lastContactId, Collections.<Contact>emptyList(), trash);
+        } catch (IOException e) {
+            throw new StreamCorruptedException("Failed to export to file: " + e.getMessage());
+        }
+        return writeFormatted(getTrashPath(path), raw.toByteArray());
+    }
+
+    private static long writeFormatted(String path, byte[] raw) throws StreamCorruptedException {
+        BlockCodec codec = compressionCodec;
+        byte[] bytes = codec == null ? raw : framedFile(path, codec).frame(raw);
+        try (FileOutputStream fos = new FileOutputStream(getTemporaryPath(path))) {
+            fos.write(bytes);
+            fos.getFD().sync();
         } catch (IOException e) {
             throw new StreamCorruptedException("Failed to export to file: " + e.getMessage());
         }
+        replaceAtomically(path);
+        return bytes.length;
     }
 
     /**
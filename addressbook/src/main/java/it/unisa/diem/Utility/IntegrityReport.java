@@ -0,0 +1,133 @@
+package it.unisa.diem.Utility;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of the check of an address book file against the checksums of its segments.
+ *
+ * The report lists the damaged parts of the file and what is lost by recovering it: the contacts of the damaged segments,
+ * and the whole trash can if its section is damaged. A damaged offsets table loses nothing, as it can be rebuilt from the intact segments.
+ *
+ * @see AddressBookReader#verify()
+ * @see AddressBookReader#recover(java.util.concurrent.ForkJoinPool, IntegrityReport)
+ */
+public class IntegrityReport {
+    private final boolean checked; /**< False if the file has no checksums */
+    private final int segmentCount; /**< The number of segments checked, including the trash can and the offsets table */
+    private final long checkedBytes; /**< The number of bytes checked */
+    private final long nanos; /**< The time taken by the check, in nanoseconds */
+    private final BitSet damagedSegments = new BitSet(); /**< The indexes of the damaged segments of contacts */
+    private final List<String> damaged = new ArrayList<>(); /**< The descriptions of the damaged parts of the file */
+    private int lostContacts; /**< The number of contacts stored in the damaged segments */
+    private boolean trashDamaged; /**< True if the trash can section is damaged */
+    private boolean offsetsDamaged; /**< True if the offsets table is damaged */
+
+    IntegrityReport(boolean checked, int segmentCount, long checkedBytes, long nanos) {
+        this.checked = checked;
+        this.segmentCount = segmentCount;
+        this.checkedBytes = checkedBytes;
+        this.nanos = nanos;
+    }
+
+    void addDamagedSegment(int segment, int firstContact, int endContact) {
+        damagedSegments.set(segment);
+        lostContacts += endContact - firstContact;
+        damaged.add("contacts " + firstContact + "-" + (endContact - 1) + " (segment " + segment + ")");
+    }
+
+    void setTrashDamaged() {
+        trashDamaged = true;
+        damaged.add("trash can");
+    }
+
+    void setOffsetsDamaged() {
+        offsetsDamaged = true;
+        damaged.add("offsets table (rebuilt)");
+    }
+
+    /**
+     * Checks whether the file has checksums. Files written before checksums were introduced are never reported as damaged.
+     *
+     * @return true if the file has been checked
+     */
+    public boolean isChecked() {
+        return checked;
+    }
+
+    /**
+     * Checks whether no damage has been found.
+     *
+     * @return true if every segment matches its checksum
+     */
+    public boolean isIntact() {
+        return damaged.isEmpty();
+    }
+
+    /**
+     * Checks whether a segment of contacts is damaged.
+     *
+     * @param[in] segment the index of the segment in the segment table
+     * @return true if the segment does not match its checksum
+     */
+    public boolean isSegmentDamaged(int segment) {
+        return damagedSegments.get(segment);
+    }
+
+    /**
+     * Returns the number of contacts lost by recovering the file, not counting the contacts of the trash can.
+     *
+     * @return the number of contacts of the damaged segments
+     */
+    public int getLostContacts() {
+        return lostContacts;
+    }
+
+    /**
+     * Checks whether the trash can is lost by recovering the file.
+     *
+     * @return true if the trash can section is damaged
+     */
+    public boolean isTrashDamaged() {
+        return trashDamaged;
+    }
+
+    /**
+     * Checks whether the offsets table is damaged, in which case it is rebuilt when recovering the file.
+     *
+     * @return true if the offsets table is damaged
+     */
+    public boolean isOffsetsDamaged() {
+        return offsetsDamaged;
+    }
+
+    /**
+     * Returns the descriptions of the damaged parts of the file, such as the range of contacts of each damaged segment.
+     *
+     * @return the damaged parts of the file, empty if the file is intact
+     */
+    public List<String> getDamaged() {
+        return Collections.unmodifiableList(damaged);
+    }
+
+    /**
+     * Returns the speed of the check.
+     *
+     * @return the number of megabytes checked per second
+     */
+    public double getThroughput() {
+        return nanos == 0 ? 0 : checkedBytes / 1e6 / (nanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        if (!checked)
+            return "No checksums";
+        String summary = String.format("%d segments, %d bytes checked in %.1f ms (%.0f MB/s)", segmentCount, checkedBytes, nanos / 1e6, getThroughput());
+        if (isIntact())
+            return summary + ": intact";
+        return summary + ": damaged " + String.join(", ", damaged) + "; " + lostContacts + " contacts lost" + (trashDamaged ? ", trash can lost" : "");
+    }
+}
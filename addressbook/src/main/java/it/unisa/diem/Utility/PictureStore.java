@@ -0,0 +1,391 @@
+package it.unisa.diem.Utility;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed store of the pictures of contacts and profiles.
+ *
+ * Every picture is saved once, in a file named after the SHA-256 hash of its content: storing a picture that is already in the store
+ * (choosing the same image twice, importing the same vCard again) writes nothing and returns the path of the existing file.
+ * The store counts the references to each file: a contact saved in an address book or a profile holds one reference to its picture.
+ * The counts are saved in the {@link #REFERENCES_FILE} of the store.
+ *
+ * A background sweeper deletes the files nobody refers to. Files are only deleted once they have been unreferenced for
+ * {@link #GRACE_PERIOD_MILLIS} milliseconds, so that a picture being edited, but not yet saved in an address book, is never lost.
+ * Paths outside the store, such as the default picture or pictures saved by older versions, are never counted nor deleted.
+ */
+public class PictureStore {
+    public static final String REFERENCES_FILE = "references"; /**< The name of the file of the reference counts, inside the store */
+    public static final long SAVE_DELAY_MILLIS = 500; /**< The time waited after a change of the counts before saving them, to include the following ones */
+    public static final long SWEEP_DELAY_MILLIS = 60 * 1000; /**< The time waited after a file becomes unreferenced before sweeping the store */
+    public static final long GRACE_PERIOD_MILLIS = 60 * 60 * 1000; /**< The time a file must have been unreferenced before it is deleted */
+
+    private static final String pictureDir = "addressbook\\assets\\pictures";
+    private static final ScheduledThreadPoolExecutor executor = createExecutor(); /**< Saves the counts and sweeps the store, one task at a time */
+    private static final Map<String, Integer> references = new HashMap<>(); /**< The number of references to each file of the store, by file name */
+    private static boolean loaded; /**< True once the counts have been read from the store */
+    private static final AtomicBoolean saveScheduled = new AtomicBoolean(); /**< True if a save of the counts is waiting to be run */
+    private static final AtomicBoolean sweepScheduled = new AtomicBoolean(); /**< True if a sweep is waiting to be run */
+    private static final AtomicLong storedBytes = new AtomicLong(); /**< The number of bytes written to the store */
+    private static final AtomicLong deduplicatedBytes = new AtomicLong(); /**< The number of bytes not written because the picture was already stored */
+    private static final AtomicLong sweptFiles = new AtomicLong(); /**< The number of unreferenced files deleted */
+
+    private static ScheduledThreadPoolExecutor createExecutor() {
+        // Same policy as the saver of the address books: pending saves are completed before exiting, and the JVM is not kept alive afterwards
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "picture-store");
+            t.setDaemon(false);
+            return t;
+        });
+        executor.setKeepAliveTime(1, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Returns the directory of the store.
+     *
+     * @return the path of the directory holding the pictures
+     */
+    public static String getPictureDir() {
+        return pictureDir;
+    }
+
+    /**
+     * Checks whether a picture path refers to a file of the store.
+     *
+     * @param[in] path the path of a picture
+     * @return true if the picture is saved in the store
+     */
+    public static boolean isStored(String path) {
+        return path != null && !path.isEmpty() && Paths.get(pictureDir).equals(Paths.get(path).getParent());
+    }
+
+    /**
+     * Copies a picture into the store, unless a picture with the same content is already stored.
+     * The file is hashed while it is copied, so it is read only once.
+     *
+     * @param[in] source the path of the picture to store
+     * @return the path of the stored picture
+     * @throws IOException if the picture cannot be read or copied
+     */
+    public static String store(Path source) throws IOException {
+        Path dir = Files.createDirectories(Paths.get(pictureDir));
+        Path temporary = Files.createTempFile(dir, "picture", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            long size;
+            try (InputStream in = new DigestInputStream(Files.newInputStream(source), digest)) {
+                size = Files.copy(in, temporary, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Path target = dir.resolve(fileName(digest.digest(), extension(source.getFileName().toString())));
+            // Under the lock of the sweeper, so that an existing file cannot be deleted before it is touched
+            synchronized (references) {
+                if (Files.exists(target)) {
+                    deduplicatedBytes.addAndGet(size);
+                } else {
+                    try {
+                        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (AtomicMoveNotSupportedException e) {
+                        Files.move(temporary, target);
+                    }
+                    storedBytes.addAndGet(size);
+                }
+                touch(target);
+            }
+            return target.toString();
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Saves a picture into the store, unless a picture with the same content is already stored.
+     *
+     * @param[in] data the content of the picture
+     * @param[in] extension the extension of the picture file (e.g., "jpg", "png")
+     * @return the path of the stored picture
+     * @throws IOException if the picture cannot be written
+     */
+    public static String store(byte[] data, String extension) throws IOException {
+        if (data == null) {
+            throw new IllegalArgumentException("Data cannot be null");
+        }
+        Path dir = Files.createDirectories(Paths.get(pictureDir));
+        Path target = dir.resolve(fileName(sha256().digest(data), extension));
+        synchronized (references) {
+            if (Files.exists(target)) {
+                deduplicatedBytes.addAndGet(data.length);
+            } else {
+                Path temporary = Files.createTempFile(dir, "picture", ".tmp");
+                try {
+                    try (OutputStream out = Files.newOutputStream(temporary)) {
+                        out.write(data);
+                    }
+                    Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    Files.deleteIfExists(temporary);
+                }
+                storedBytes.addAndGet(data.length);
+            }
+            touch(target);
+        }
+        return target.toString();
+    }
+
+    /**
+     * Adds a reference to a stored picture. Paths outside the store are ignored.
+     *
+     * @param[in] path the path of the picture
+     */
+    public static void acquire(String path) {
+        if (!isStored(path))
+            return;
+        synchronized (references) {
+            load();
+            references.merge(Paths.get(path).getFileName().toString(), 1, Integer::sum);
+        }
+        scheduleSave();
+    }
+
+    /**
+     * Removes a reference to a stored picture. When the last reference is removed, the picture is deleted by the next sweep.
+     * Paths outside the store are ignored.
+     *
+     * @param[in] path the path of the picture
+     */
+    public static void release(String path) {
+        if (!isStored(path))
+            return;
+        Path file = Paths.get(path);
+        boolean unreferenced;
+        synchronized (references) {
+            load();
+            Integer count = references.get(file.getFileName().toString());
+            unreferenced = count == null || count <= 1;
+            if (unreferenced)
+                references.remove(file.getFileName().toString());
+            else
+                references.put(file.getFileName().toString(), count - 1);
+        }
+        if (unreferenced) {
+            // The grace period starts now
+            try {
+                touch(file);
+            } catch (IOException e) {
+                System.err.println("Cannot update picture " + path + ": " + e.getMessage());
+            }
+            scheduleSweep(SWEEP_DELAY_MILLIS);
+        }
+        scheduleSave();
+    }
+
+    /**
+     * Returns the number of references to a stored picture.
+     *
+     * @param[in] path the path of the picture
+     * @return the number of contacts and profiles referring to the picture, 0 if the path is outside the store
+     */
+    public static int getReferenceCount(String path) {
+        if (!isStored(path))
+            return 0;
+        synchronized (references) {
+            load();
+            return references.getOrDefault(Paths.get(path).getFileName().toString(), 0);
+        }
+    }
+
+    /**
+     * Returns the number of bytes written to the store since the application started.
+     *
+     * @return the size of the pictures added to the store
+     */
+    public static long getStoredBytes() {
+        return storedBytes.get();
+    }
+
+    /**
+     * Returns the number of bytes not written to the store because an identical picture was already stored.
+     *
+     * @return the size of the pictures deduplicated
+     */
+    public static long getDeduplicatedBytes() {
+        return deduplicatedBytes.get();
+    }
+
+    /**
+     * Returns the number of unreferenced files deleted by the sweeper since the application started.
+     *
+     * @return the number of files swept
+     */
+    public static long getSweptFiles() {
+        return sweptFiles.get();
+    }
+
+    /**
+     * Schedules a sweep of the store in the background, to delete the pictures left unreferenced by previous runs of the application.
+     */
+    public static void start() {
+        scheduleSweep(SWEEP_DELAY_MILLIS);
+    }
+
+    /**
+     * Deletes the files of the store that have been unreferenced for at least {@link #GRACE_PERIOD_MILLIS} milliseconds,
+     * including the temporary files left by interrupted copies.
+     *
+     * @return the number of files deleted
+     */
+    public static int sweep() {
+        Path dir = Paths.get(pictureDir);
+        if (!Files.isDirectory(dir))
+            return 0;
+        long threshold = System.currentTimeMillis() - GRACE_PERIOD_MILLIS;
+        int deleted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.equals(REFERENCES_FILE) || name.equals(REFERENCES_FILE + ".tmp"))
+                    continue;
+                try {
+                    synchronized (references) {
+                        load();
+                        // Checked under the lock, so that a picture cannot be acquired while it is being deleted
+                        if (references.containsKey(name) || Files.getLastModifiedTime(file).toMillis() > threshold)
+                            continue;
+                        if (Files.deleteIfExists(file))
+                            deleted++;
+                    }
+                } catch (IOException e) {
+                    System.err.println("Cannot sweep picture " + file + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot sweep the picture store: " + e.getMessage());
+        }
+        sweptFiles.addAndGet(deleted);
+        return deleted;
+    }
+
+    private static void scheduleSweep(long delay) {
+        if (sweepScheduled.compareAndSet(false, true)) {
+            executor.schedule(() -> {
+                sweepScheduled.set(false);
+                sweep();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void scheduleSave() {
+        if (saveScheduled.compareAndSet(false, true)) {
+            executor.schedule(() -> {
+                saveScheduled.set(false);
+                try {
+                    save();
+                } catch (IOException e) {
+                    System.err.println("Cannot save the picture references: " + e.getMessage());
+                }
+            }, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes the reference counts to the store, replacing the file atomically.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public static void save() throws IOException {
+        Path dir = Files.createDirectories(Paths.get(pictureDir));
+        Path file = dir.resolve(REFERENCES_FILE);
+        Path temporary = dir.resolve(REFERENCES_FILE + ".tmp");
+        synchronized (references) {
+            if (!loaded)
+                return;
+            try (BufferedWriter out = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Integer> entry : references.entrySet()) {
+                    out.write(entry.getKey() + " " + entry.getValue());
+                    out.newLine();
+                }
+            }
+        }
+        try {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads the reference counts from the store the first time they are needed.
+     * Must be called while holding the lock on {@link #references}.
+     */
+    private static void load() {
+        if (loaded)
+            return;
+        loaded = true;
+        Path file = Paths.get(pictureDir, REFERENCES_FILE);
+        if (!Files.exists(file))
+            return;
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int separator = line.lastIndexOf(' ');
+                if (separator > 0)
+                    references.put(line.substring(0, separator), Integer.parseInt(line.substring(separator + 1)));
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Cannot read the picture references: " + e.getMessage());
+        }
+    }
+
+    private static void touch(Path file) throws IOException {
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+    }
+
+    private static String fileName(byte[] hash, String extension) {
+        StringBuilder name = new StringBuilder(hash.length * 2 + 5);
+        for (byte b : hash)
+            name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        if (extension != null && !extension.isEmpty()) {
+            String normalized = extension.toLowerCase();
+            name.append('.').append(normalized.equals("jpeg") ? "jpg" : normalized);
+        }
+        return name.toString();
+    }
+
+    private static String extension(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 ? "" : fileName.substring(dot + 1);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package it.unisa.diem.Utility;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import it.unisa.diem.Model.Contact;
+import it.unisa.diem.Model.QueryPlan;
+import it.unisa.diem.Model.SearchSession;
+import it.unisa.diem.Model.TagQuery;
+import javafx.application.Platform;
+
+/**
+ * Runs the searches typed in the search bar in the background, so that the JavaFX thread never waits for them.
+ *
+ * Keystrokes are debounced: a search starts {@link #DEBOUNCE_MILLIS} milliseconds after the last keystroke, and the keystrokes typed
+ * in the meantime only replace the query waiting to be run. Every query supersedes the previous ones: a superseded search stops
+ * testing contacts as soon as it notices, and its results are never shown. The results of the last query are handed
+ * to the JavaFX thread all at once, to be shown with a single change of the table.
+ * Each search copies its candidates from the address book under its lock, and tests them outside of it.
+ *
+ * All the searches of all the address books run on a single thread, which is a daemon: it never keeps the application alive.
+ *
+ * @invariant session != null
+ * @invariant publisher != null
+ */
+public class SearchExecutor {
+    public static final long DEBOUNCE_MILLIS = 150; /**< The time waited after the last keystroke before searching */
+
+    private static final ScheduledThreadPoolExecutor executor = createExecutor(); /**< Runs the searches, one at a time */
+
+    private final SearchSession session; /**< The session running the searches; only used by the thread of the executor */
+    private final Executor publisher; /**< Runs the publication of the results on the thread of the user interface */
+    private final AtomicLong generation = new AtomicLong(); /**< The number of queries submitted or cancelled: only the search of the last one is current */
+    private ScheduledFuture<?> pending; /**< The search waiting for the end of the debounce delay, null if there is none */
+    private long started; /**< The generation of the last search started, guarded by this */
+
+    private final AtomicLong publishedCount = new AtomicLong(); /**< The number of searches whose results have been shown */
+    private final AtomicLong debouncedCount = new AtomicLong(); /**< The number of queries replaced before their search started */
+    private final AtomicLong supersededCount = new AtomicLong(); /**< The number of searches stopped or discarded because a newer query was submitted */
+    private final AtomicLong totalLatency = new AtomicLong(); /**< The sum of the latencies of the shown searches, in nanoseconds */
+    private volatile long lastLatency; /**< The latency of the last shown search, in nanoseconds */
+    private volatile long maxLatency; /**< The highest latency of a shown search, in nanoseconds */
+    private volatile long lastSearchDuration; /**< The time taken by the last completed search on the background thread, in nanoseconds */
+
+    private static ScheduledThreadPoolExecutor createExecutor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "address-book-search");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.setKeepAliveTime(1, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        // Debounced searches are dropped right away instead of waiting for their delay in the queue
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Creates an executor running the searches of the given session and showing their results on the JavaFX thread.
+     *
+     * @param[in] session the session running the searches
+     * @throws IllegalArgumentException if session is null
+     */
+    public SearchExecutor(SearchSession session) {
+        this(session, Platform::runLater);
+    }
+
+    /**
+     * Creates an executor running the searches of the given session and showing their results through the given executor.
+     *
+     * @param[in] session the session running the searches
+     * @param[in] publisher runs the publication of the results on the thread of the user interface
+     * @throws IllegalArgumentException if session or publisher is null
+     */
+    public SearchExecutor(SearchSession session, Executor publisher) {
+        if (session == null || publisher == null)
+            throw new IllegalArgumentException("Session and publisher cannot be null");
+        this.session = session;
+        this.publisher = publisher;
+    }
+
+    /**
+     * Submits a query, superseding the previous ones. Its results are shown only if no other query is submitted
+     * or cancelled in the meantime.
+     *
+     * @param[in] text the text typed in the search bar
+     * @param[in] scope the tags chosen in the main view, {@link TagQuery#ALL} or null if none is
+     * @param[in] show shows the matching contacts, the most relevant first, or every contact if the result is null; called on the thread of the user interface
+     */
+    public synchronized void submit(String text, TagQuery scope, Consumer<List<Contact>> show) {
+        long typed = System.nanoTime();
+        long current = generation.incrementAndGet();
+        dropPending(current - 1);
+        pending = executor.schedule(() -> search(current, typed, text, scope, show), DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancels the submitted queries: their results will not be shown.
+     */
+    public synchronized void cancel() {
+        dropPending(generation.getAndIncrement());
+        pending = null;
+    }
+
+    /**
+     * Cancels the search waiting for the end of the debounce delay, if it has not started yet.
+     *
+     * @param[in] replaced the generation of the query being replaced
+     */
+    private void dropPending(long replaced) {
+        // A search that has already started is not debounced: it notices it has been superseded
+        if (pending != null && pending.cancel(false) && started != replaced)
+            debouncedCount.incrementAndGet();
+    }
+
+    /**
+     * Forgets the results kept to refine the next query, after the contacts of the address book have changed.
+     * The searches submitted afterwards look into every contact again.
+     *
+     * @see SearchSession#invalidate()
+     */
+    public void invalidate() {
+        executor.execute(session::invalidate);
+    }
+
+    /**
+     * Returns the plan of the last query restricted to fields or with negations, as run by the session.
+     * Unlike the session, it can be read from the thread of the user interface.
+     *
+     * @return the plan of the last such query, null if there was none
+     * @see SearchSession#getLastPlan()
+     */
+    public QueryPlan getLastPlan() {
+        return session.getLastPlan();
+    }
+
+    private void search(long current, long typed, String text, TagQuery scope, Consumer<List<Contact>> show) {
+        synchronized (this) {
+            // A query replaced before its search started has been counted as debounced
+            if (generation.get() != current)
+                return;
+            started = current;
+        }
+        long start = System.nanoTime();
+        List<Contact> matches;
+        try {
+            matches = session.search(text, scope, () -> generation.get() != current);
+        } catch (CancellationException e) {
+            supersededCount.incrementAndGet();
+            return;
+        } catch (RuntimeException e) {
+            // A failed search must not stop the thread: the previous results stay on screen
+            System.err.println("Error searching the address book: " + e.getMessage());
+            session.invalidate();
+            return;
+        }
+        lastSearchDuration = System.nanoTime() - start;
+        publisher.execute(() -> {
+            if (generation.get() != current) {
+                supersededCount.incrementAndGet();
+                return;
+            }
+            show.accept(matches);
+            published(typed);
+        });
+    }
+
+    private void published(long typed) {
+        long latency = System.nanoTime() - typed;
+        lastLatency = latency;
+        maxLatency = Math.max(maxLatency, latency);
+        totalLatency.addAndGet(latency);
+        publishedCount.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of searches whose results have been shown.
+     *
+     * @return the number of shown searches
+     */
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    /**
+     * Returns the number of queries replaced by a newer keystroke before their search started.
+     *
+     * @return the number of debounced queries
+     */
+    public long getDebouncedCount() {
+        return debouncedCount.get();
+    }
+
+    /**
+     * Returns the number of searches stopped, or whose results have been discarded, because a newer query was submitted.
+     *
+     * @return the number of superseded searches
+     */
+    public long getSupersededCount() {
+        return supersededCount.get();
+    }
+
+    /**
+     * Returns the latency of the last shown search: the time between the keystroke that submitted its query and the moment its results were shown,
+     * including the debounce delay.
+     *
+     * @return the latency of the last shown search, in milliseconds
+     */
+    public double getLastLatencyMillis() {
+        return lastLatency / 1e6;
+    }
+
+    /**
+     * Returns the highest latency of a shown search.
+     *
+     * @return the highest latency of a shown search, in milliseconds
+     * @see #getLastLatencyMillis()
+     */
+    public double getMaxLatencyMillis() {
+        return maxLatency / 1e6;
+    }
+
+    /**
+     * Returns the average latency of the shown searches.
+     *
+     * @return the average latency of the shown searches, in milliseconds
+     * @see #getLastLatencyMillis()
+     */
+    public double getAverageLatencyMillis() {
+        long count = publishedCount.get();
+        return count == 0 ? 0 : totalLatency.get() / 1e6 / count;
+    }
+
+    /**
+     * Returns the time taken by the last completed search on the background thread, without the debounce delay and the publication.
+     *
+     * @return the duration of the last search, in milliseconds
+     */
+    public double getLastSearchMillis() {
+        return lastSearchDuration / 1e6;
+    }
+}
@@ -0,0 +1,102 @@
+package it.unisa.diem.Model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javafx.beans.InvalidationListener;
+
+public class BatchTagTest {
+    private AddressBook book;
+    private List<Contact> contacts;
+
+    @BeforeEach
+    public void setUp() {
+        book = new AddressBook();
+        contacts = new ArrayList<>();
+        for (String name : new String[] { "Anna", "Bruno", "Carla", "Dario", "Elena" }) {
+            Contact c = new Contact(name, "Surname");
+            book.add(c);
+            contacts.add(c);
+        }
+        contacts.get(0).addTag("gym");
+        book.addTagToContact(tag("gym"), contacts.get(0));
+    }
+
+    private static Tag tag(String name) {
+        Tag t = new Tag();
+        t.setNameValue(name);
+        return t;
+    }
+
+    @Test
+    public void testTaggingManyContacts() {
+        assertEquals(3, book.addTagToContacts(tag("work"), contacts.subList(0, 3)));
+        assertEquals(3, book.getTagMap().get(tag("work")).size());
+        for (Contact c : contacts)
+            assertEquals(contacts.indexOf(c) < 3, c.hasTag(tag("work")), c.getNameValue());
+        assertEquals(3, book.tagStatistics().count(tag("work")));
+        assertEquals(1, book.tagStatistics().cooccurrence(tag("work"), tag("gym")));
+        assertEquals(3, book.select(TagQuery.of(tag("work"))).cardinality());
+        assertEquals(1, book.select(TagQuery.of(tag("work")).withAllOf(tag("gym"))).cardinality());
+    }
+
+    @Test
+    public void testTaggingAgainChangesNothing() {
+        book.addTagToContacts(tag("work"), contacts.subList(0, 3));
+        assertEquals(1, book.addTagToContacts(tag("work"), contacts.subList(2, 4)));
+        assertEquals(0, book.addTagToContacts(tag("work"), contacts.subList(0, 4)));
+        assertEquals(4, book.tagStatistics().count(tag("work")));
+        assertEquals(4, book.getTagMap().get(tag("work")).size());
+    }
+
+    @Test
+    public void testContactsOutsideTheListAreNotTagged() {
+        Contact stranger = new Contact("Fabio", "Surname");
+        book.delete(contacts.get(4));
+        assertEquals(1, book.addTagToContacts(tag("work"), Arrays.asList(stranger, contacts.get(4), contacts.get(1), null)));
+        assertFalse(stranger.hasTag(tag("work")));
+        assertFalse(contacts.get(4).hasTag(tag("work")));
+        assertEquals(1, book.tagStatistics().count(tag("work")));
+    }
+
+    @Test
+    public void testInvalidTagIsNotAdded() {
+        assertEquals(0, book.addTagToContacts(tag("a tag name longer than the limit"), contacts));
+        assertEquals(1, book.getTagMap().size());
+    }
+
+    @Test
+    public void testTagSetIsReplacedOnce() {
+        book.addTagToContacts(tag("work"), contacts.subList(0, 1));
+        int[] invalidations = { 0 };
+        book.getTagMap().get(tag("work")).addListener((InvalidationListener) observable -> invalidations[0]++);
+        assertEquals(contacts.size() - 1, book.addTagToContacts(tag("work"), contacts));
+        assertEquals(1, invalidations[0]);
+        assertEquals(contacts.size(), book.getTagMap().get(tag("work")).size());
+    }
+
+    @Test
+    public void testUntaggingManyContacts() {
+        book.addTagToContacts(tag("work"), contacts);
+        assertEquals(2, book.removeTagFromContacts(tag("work"), contacts.subList(0, 2)));
+        assertEquals(0, book.removeTagFromContacts(tag("work"), contacts.subList(0, 2)));
+        assertEquals(3, book.tagStatistics().count(tag("work")));
+        assertEquals(0, book.tagStatistics().cooccurrence(tag("work"), tag("gym")));
+        assertFalse(contacts.get(0).hasTag(tag("work")));
+        assertTrue(contacts.get(2).hasTag(tag("work")));
+
+        assertEquals(3, book.removeTagFromContacts(tag("work"), contacts));
+        assertNull(book.getTagMap().get(tag("work")));
+        assertEquals(0, book.select(TagQuery.of(tag("work"))).cardinality());
+        assertEquals(0, book.tagStatistics().count(tag("work")));
+    }
+}
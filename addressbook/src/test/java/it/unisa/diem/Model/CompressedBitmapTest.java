@@ -0,0 +1,147 @@
+package it.unisa.diem.Model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+public class CompressedBitmapTest {
+
+    /**
+     * Returns random ints spread over a few chunks: some sparse, kept in arrays, and some dense, kept in bitmaps.
+     */
+    private static TreeSet<Integer> randomSet(Random random, int dense) {
+        TreeSet<Integer> set = new TreeSet<>();
+        for (int i = 0; i < 3000; i++)
+            set.add(random.nextInt(4 << 16));
+        for (int i = 0; i < dense; i++)
+            set.add((1 << 16) + random.nextInt(1 << 14));
+        set.add(0);
+        set.add(0xFFFF);
+        return set;
+    }
+
+    private static CompressedBitmap bitmap(TreeSet<Integer> set) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int value : set)
+            assertTrue(bitmap.add(value));
+        return bitmap;
+    }
+
+    private static int[] array(TreeSet<Integer> set) {
+        return set.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static void assertSame(TreeSet<Integer> expected, CompressedBitmap actual) {
+        assertEquals(expected.size(), actual.cardinality());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+        assertArrayEquals(array(expected), actual.toArray());
+        PrimitiveIterator.OfInt iterator = actual.iterator();
+        for (int value : expected)
+            assertEquals(value, iterator.nextInt());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testAddRemoveContains() {
+        Random random = new Random(1);
+        TreeSet<Integer> expected = new TreeSet<>();
+        CompressedBitmap bitmap = new CompressedBitmap();
+        // Enough ints in the first chunk to turn its array into a bitmap and back
+        for (int i = 0; i < 40000; i++) {
+            int value = random.nextInt(1 << 13) + (random.nextInt(10) == 0 ? random.nextInt(1 << 20) : 0);
+            if (random.nextInt(3) == 0)
+                assertEquals(expected.remove(value), bitmap.remove(value));
+            else
+                assertEquals(expected.add(value), bitmap.add(value));
+        }
+        assertSame(expected, bitmap);
+        for (int value = 0; value < 1 << 14; value++)
+            assertEquals(expected.contains(value), bitmap.contains(value));
+        for (int value : array(expected))
+            assertTrue(bitmap.remove(value));
+        assertSame(new TreeSet<>(), bitmap);
+    }
+
+    @Test
+    public void testNegativeValues() {
+        CompressedBitmap bitmap = CompressedBitmap.of(1, 2);
+        assertThrows(IllegalArgumentException.class, () -> bitmap.add(-1));
+        assertFalse(bitmap.contains(-1));
+        assertFalse(bitmap.remove(-1));
+    }
+
+    @Test
+    public void testSetOperationsMatchTreeSets() {
+        Random random = new Random(2);
+        for (int dense : new int[] { 0, 10000 }) {
+            TreeSet<Integer> a = randomSet(random, dense);
+            TreeSet<Integer> b = randomSet(random, 10000 - dense);
+            CompressedBitmap x = bitmap(a);
+            CompressedBitmap y = bitmap(b);
+
+            TreeSet<Integer> and = new TreeSet<>(a);
+            and.retainAll(b);
+            assertSame(and, x.and(y));
+            assertSame(and, y.and(x));
+            TreeSet<Integer> or = new TreeSet<>(a);
+            or.addAll(b);
+            assertSame(or, x.or(y));
+            assertSame(or, y.or(x));
+            TreeSet<Integer> andNot = new TreeSet<>(a);
+            andNot.removeAll(b);
+            assertSame(andNot, x.andNot(y));
+
+            // The operands are left unchanged
+            assertSame(a, x);
+            assertSame(b, y);
+            assertSame(new TreeSet<>(), x.andNot(x));
+            assertEquals(x, x.and(x));
+        }
+    }
+
+    @Test
+    public void testCopyOfAndEquals() {
+        CompressedBitmap bitmap = CompressedBitmap.of(70000, 3, 1, 3);
+        assertArrayEquals(new int[] { 1, 3, 70000 }, bitmap.toArray());
+        assertEquals("[1, 3, 70000]", bitmap.toString());
+        CompressedBitmap copy = bitmap.copy();
+        assertEquals(bitmap, copy);
+        assertEquals(bitmap.hashCode(), copy.hashCode());
+        copy.add(5);
+        assertFalse(bitmap.contains(5));
+        assertFalse(bitmap.equals(copy));
+        assertEquals(new CompressedBitmap(), CompressedBitmap.of());
+    }
+
+    @Test
+    public void testIteratorStopsAtTheEnd() {
+        PrimitiveIterator.OfInt iterator = CompressedBitmap.of(0xFFFF, 0x10000).iterator();
+        assertEquals(0xFFFF, iterator.nextInt());
+        assertEquals(0x10000, iterator.nextInt());
+        assertFalse(iterator.hasNext());
+        assertThrows(NoSuchElementException.class, iterator::nextInt);
+        assertFalse(new CompressedBitmap().iterator().hasNext());
+    }
+
+    @Test
+    public void testDenseChunksAreSmaller() {
+        CompressedBitmap sparse = new CompressedBitmap();
+        CompressedBitmap dense = new CompressedBitmap();
+        for (int i = 0; i < 60000; i++) {
+            if (i % 16 == 0)
+                sparse.add(i);
+            dense.add(i);
+        }
+        assertTrue(sparse.sizeInBytes() < 3 * sparse.cardinality());
+        assertTrue(dense.sizeInBytes() < dense.cardinality() / 4);
+    }
+}
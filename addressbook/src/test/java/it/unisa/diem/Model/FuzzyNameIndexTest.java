@@ -0,0 +1,140 @@
+package it.unisa.diem.Model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class FuzzyNameIndexTest {
+    private static final String[] NAMES = { "Mario", "Maria", "Marco", "Anna", "Giuseppe", "Rosa", "Luca", "Nicolò", "Chiara", "Ilaria" };
+    private static final String[] SURNAMES = { "Rossi", "Russo", "Rossini", "Ferrari", "Esposito", "Sposito", "De Luca", "Bianchi", "Ricci" };
+
+    private List<Contact> contacts;
+    private FuzzyNameIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        Random random = new Random(3);
+        contacts = new ArrayList<>();
+        for (int i = 1; i <= 300; i++)
+            contacts.add(new Contact(i, NAMES[random.nextInt(NAMES.length)], SURNAMES[random.nextInt(SURNAMES.length)],
+                    new String[] { "", "", "" }, new String[] { "", "", "" }, new String[0], ""));
+        index = new FuzzyNameIndex(contacts);
+    }
+
+    /**
+     * Finds the closest contacts by computing the distance of every word of the query from every word of every contact.
+     */
+    private List<Contact> scan(String query, int maxDistance, int k, Predicate<? super Contact> filter) {
+        String[] queryWords = FuzzyNameIndex.words(query);
+        Map<Contact, Integer> distances = new IdentityHashMap<>();
+        for (Contact c : contacts) {
+            if (queryWords.length == 0 || !filter.test(c))
+                continue;
+            int total = 0;
+            for (String q : queryWords) {
+                int closest = Integer.MAX_VALUE;
+                for (String word : FuzzyNameIndex.words(c))
+                    closest = Math.min(closest, FuzzyNameIndex.distance(q, word));
+                if (closest > FuzzyNameIndex.tolerance(q, maxDistance)) {
+                    total = -1;
+                    break;
+                }
+                total += closest;
+            }
+            if (total >= 0)
+                distances.put(c, total);
+        }
+        List<Contact> found = new ArrayList<>(distances.keySet());
+        found.sort(Comparator.comparingInt((Contact c) -> distances.get(c))
+                .thenComparing(c -> c.getFullNameValue().toLowerCase())
+                .thenComparingInt(Contact::getId));
+        return found.size() > k ? found.subList(0, k) : found;
+    }
+
+    private void assertSameAsScan(String query, int maxDistance, int k, Predicate<? super Contact> filter) {
+        assertEquals(scan(query, maxDistance, k, filter), index.find(query, maxDistance, k, filter), query);
+    }
+
+    @Test
+    public void testDistance() {
+        assertEquals(0, FuzzyNameIndex.distance("rossi", "rossi"));
+        assertEquals(1, FuzzyNameIndex.distance("rossi", "rosi"));
+        assertEquals(1, FuzzyNameIndex.distance("rossi", "russi"));
+        assertEquals(2, FuzzyNameIndex.distance("rossi", "russo"));
+        assertEquals(3, FuzzyNameIndex.distance("kitten", "sitting"));
+        assertEquals(5, FuzzyNameIndex.distance("", "rossi"));
+        // Above the bound only the fact that it is exceeded is known
+        assertEquals(2, FuzzyNameIndex.distance("kitten", "sitting", 1));
+        assertEquals(2, FuzzyNameIndex.distance("a", "rossi", 1));
+        assertEquals(3, FuzzyNameIndex.distance("kitten", "sitting", 3));
+    }
+
+    @Test
+    public void testWordsAndTolerance() {
+        assertArrayEquals(new String[] { "de", "luca", "nicolo" }, FuzzyNameIndex.words("De Luca, Nicolò de"));
+        assertEquals(0, FuzzyNameIndex.words((String) null).length);
+        assertEquals(1, FuzzyNameIndex.tolerance("luca", FuzzyNameIndex.MAX_DISTANCE));
+        assertEquals(2, FuzzyNameIndex.tolerance("rossini", FuzzyNameIndex.MAX_DISTANCE));
+        assertEquals(0, FuzzyNameIndex.tolerance("rossini", 0));
+    }
+
+    @Test
+    public void testMistypedNamesAreFound() {
+        for (Contact c : index.find("Rosi", FuzzyNameIndex.MAX_DISTANCE, 1000, c -> true))
+            assertTrue(c.getSurnameValue().startsWith("Ross") || c.getSurnameValue().equals("Russo") || c.getNameValue().equals("Rosa"), c.getFullNameValue());
+        List<Contact> found = index.find("Espostio Mraio", FuzzyNameIndex.MAX_DISTANCE, 1000, c -> true);
+        assertTrue(!found.isEmpty());
+        for (Contact c : found)
+            assertTrue(c.getSurnameValue().endsWith("sposito") && c.getNameValue().startsWith("Mar"), c.getFullNameValue());
+    }
+
+    @Test
+    public void testLookupsMatchTheScan() {
+        Predicate<Contact> even = c -> c.getId() % 2 == 0;
+        for (String query : new String[] { "rosi", "russo", "esposto", "sposito", "mari", "nicolo", "nikolo", "de luka", "ilaria rossi", "chiar bianki", "zzzz", "" })
+            for (int maxDistance = 0; maxDistance <= FuzzyNameIndex.MAX_DISTANCE; maxDistance++) {
+                assertSameAsScan(query, maxDistance, 1000, c -> true);
+                assertSameAsScan(query, maxDistance, 5, c -> true);
+                assertSameAsScan(query, maxDistance, 1000, even);
+            }
+        assertTrue(index.find("rossi", FuzzyNameIndex.MAX_DISTANCE, 0, c -> true).isEmpty());
+    }
+
+    @Test
+    public void testIndexFollowsEditsAndRemovals() {
+        Contact edited = contacts.get(0);
+        edited.setSurname("Quagliarella");
+        index.update(edited);
+        assertEquals(edited, index.find("Quagliarela", FuzzyNameIndex.MAX_DISTANCE, 10, c -> true).get(0));
+        assertSameAsScan(SURNAMES[0], FuzzyNameIndex.MAX_DISTANCE, 1000, c -> true);
+
+        Contact removed = contacts.remove(1);
+        index.remove(removed);
+        assertEquals(contacts.size(), index.size());
+        assertTrue(!index.find(removed.getFullNameValue(), FuzzyNameIndex.MAX_DISTANCE, 1000, c -> true).contains(removed));
+    }
+
+    @Test
+    public void testUnusedWordsAreDropped() {
+        for (int round = 0; round < 8; round++)
+            for (Contact c : contacts) {
+                c.setSurname("Surname" + round + "x" + c.getId());
+                index.update(c);
+            }
+        assertEquals(contacts.size(), index.size());
+        assertTrue(index.find("Surname3x1", 0, 10, c -> true).isEmpty());
+        assertSameAsScan("Surname7x12", FuzzyNameIndex.MAX_DISTANCE, 1000, c -> true);
+        assertSameAsScan("Rossi", FuzzyNameIndex.MAX_DISTANCE, 1000, c -> true);
+    }
+}
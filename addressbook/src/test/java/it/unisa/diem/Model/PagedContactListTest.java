@@ -0,0 +1,93 @@
+package it.unisa.diem.Model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class PagedContactListTest {
+    private AddressBook book;
+    private List<Contact> added;
+
+    @BeforeEach
+    public void setUp() {
+        book = new AddressBook();
+        added = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Contact c = new Contact(String.format("Name%04d", (i * 7919) % 2000), "Surname");
+            if (i % 10 == 0)
+                c.addTag("even");
+            book.add(c);
+            added.add(c);
+        }
+    }
+
+    @Test
+    public void testPositionsFollowTheSortedOrder() {
+        PagedContactList paged = new PagedContactList(book, 16, 64);
+        int i = 0;
+        for (Contact c : book.sortedContacts()) {
+            assertSame(c, paged.get(i));
+            assertEquals(i, paged.indexOf(c));
+            i++;
+        }
+        assertEquals(book.contacts().size(), paged.size());
+        assertTrue(paged.getCachedPages() <= paged.getMaxCachedPages());
+    }
+
+    @Test
+    public void testOnlyRequestedPagesAreLoaded() {
+        PagedContactList paged = new PagedContactList(book, 16, 64);
+        paged.get(0);
+        paged.get(1);
+        paged.get(1999);
+        assertEquals(2, paged.getPageLoads());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedPagesAreDropped() {
+        // Two cached pages of 16 contacts
+        PagedContactList paged = new PagedContactList(book, 16, 64);
+        assertEquals(2, paged.getMaxCachedPages());
+        paged.get(0);
+        paged.get(100);
+        paged.get(1);
+        paged.get(200);
+        assertEquals(1, paged.getPageEvictions());
+        paged.get(2);
+        assertEquals(3, paged.getPageLoads());
+        paged.get(100);
+        assertEquals(4, paged.getPageLoads());
+        assertEquals(2, paged.getCachedPages());
+    }
+
+    @Test
+    public void testChangesAreFollowedWithoutRebuilding() {
+        PagedContactList paged = new PagedContactList(book, 16, 64);
+        book.add(new Contact("Aaron", "Zed"));
+        book.delete(added.get(5));
+        assertEquals(1, paged.getRebuilds());
+        int i = 0;
+        for (Contact c : book.sortedContacts())
+            assertSame(c, paged.get(i++));
+        assertEquals(book.contacts().size(), paged.size());
+    }
+
+    @Test
+    public void testSelectedContactsAreSortedWithoutReadingPages() {
+        PagedContactList paged = new PagedContactList(book, 16, 64);
+        Tag even = book.getTagRegistry().find("even");
+        List<Contact> selected = book.sortedContactsOf(book.select(TagQuery.of(even)));
+        assertEquals(200, selected.size());
+        for (int i = 1; i < selected.size(); i++)
+            assertTrue(selected.get(i - 1).getFullNameValue().compareTo(selected.get(i).getFullNameValue()) < 0);
+        for (Contact c : selected)
+            assertTrue(c.hasTag(even));
+        assertEquals(0, paged.getPageLoads());
+    }
+}
@@ -0,0 +1,124 @@
+package it.unisa.diem.Model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class PhoneIndexTest {
+    private List<Contact> contacts;
+    private PhoneIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        Random random = new Random(13);
+        contacts = new ArrayList<>();
+        for (int i = 1; i <= 400; i++) {
+            String[] phones = { "333 " + (1000000 + random.nextInt(20000)), i % 3 == 0 ? "+39 089 " + (100000 + random.nextInt(1000)) : "", "" };
+            contacts.add(new Contact(i, "Name" + i, "Surname", new String[] { "", "", "" }, phones, new String[0], ""));
+        }
+        index = new PhoneIndex(contacts);
+    }
+
+    private static Set<Contact> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * Checks that a lookup finds exactly the contacts found by testing the digits of every number of every contact.
+     */
+    private void assertSameAsScan(String query, PhoneIndex.Match match) {
+        String d = PhoneIndex.digits(query);
+        Set<Contact> scanned = identitySet();
+        for (Contact c : contacts)
+            for (String phone : c.getPhoneNumberList()) {
+                String number = PhoneIndex.digits(phone);
+                boolean matches = match == PhoneIndex.Match.EXACT ? number.equals(d)
+                        : match == PhoneIndex.Match.PREFIX ? number.startsWith(d) : number.endsWith(d);
+                if (!number.isEmpty() && !d.isEmpty() && matches)
+                    scanned.add(c);
+            }
+        List<Contact> looked = index.find(query, match);
+        Set<Contact> found = identitySet();
+        found.addAll(looked);
+        assertEquals(looked.size(), found.size(), query);
+        assertEquals(scanned, found, match + " " + query);
+    }
+
+    @Test
+    public void testDigitsDropEveryOtherCharacter() {
+        assertEquals("393331234567", PhoneIndex.digits("+39 (333) 123-4567"));
+        assertEquals("", PhoneIndex.digits("no digits"));
+        assertEquals("", PhoneIndex.digits(null));
+    }
+
+    @Test
+    public void testLookupsMatchTheScan() {
+        Random random = new Random(5);
+        for (int i = 0; i < 300; i++) {
+            String number = PhoneIndex.digits(contacts.get(random.nextInt(contacts.size())).getPhoneNumberAtIndex(0));
+            int length = 1 + random.nextInt(number.length());
+            assertSameAsScan(number, PhoneIndex.Match.EXACT);
+            assertSameAsScan(number.substring(0, length), PhoneIndex.Match.PREFIX);
+            assertSameAsScan(number.substring(number.length() - length), PhoneIndex.Match.SUFFIX);
+        }
+        for (String query : new String[] { "3933", "089", "39089", "0", "9999999999999" })
+            for (PhoneIndex.Match match : PhoneIndex.Match.values())
+                assertSameAsScan(query, match);
+    }
+
+    @Test
+    public void testFormattingIsIgnored() {
+        Contact c = contacts.get(2);
+        String number = PhoneIndex.digits(c.getPhoneNumberAtIndex(1));
+        assertTrue(index.find(number, PhoneIndex.Match.EXACT).contains(c));
+        assertTrue(index.find("+39 089", PhoneIndex.Match.PREFIX).contains(c));
+        assertTrue(index.find("(" + number.substring(number.length() - 4) + ")", PhoneIndex.Match.SUFFIX).contains(c));
+        assertTrue(index.find("+-() ", PhoneIndex.Match.PREFIX).isEmpty());
+    }
+
+    @Test
+    public void testIndexFollowsEditsAndRemovals() {
+        Contact edited = contacts.get(0);
+        String old = edited.getPhoneNumberAtIndex(0);
+        edited.setPhoneNumber("555 0101", 0);
+        index.update(edited);
+        assertTrue(index.find("5550101", PhoneIndex.Match.EXACT).contains(edited));
+        assertTrue(!index.find(old, PhoneIndex.Match.EXACT).contains(edited));
+        assertSameAsScan(old, PhoneIndex.Match.EXACT);
+
+        Contact removed = contacts.remove(1);
+        index.remove(removed);
+        assertEquals(contacts.size(), index.size());
+        assertTrue(!index.find(removed.getPhoneNumberAtIndex(0), PhoneIndex.Match.EXACT).contains(removed));
+
+        Contact stranger = new Contact("Fabio", "Verdi");
+        stranger.addPhoneNumber("5550101");
+        index.update(stranger);
+        assertEquals(1, index.find("5550101", PhoneIndex.Match.EXACT).size());
+    }
+
+    @Test
+    public void testManyRemovalsRebuildTheTries() {
+        for (int round = 0; round < 10; round++)
+            for (Contact c : contacts) {
+                c.setPhoneNumber("333 " + (round * 1000 + c.getId()), 0);
+                index.update(c);
+            }
+        assertEquals(contacts.size(), index.size());
+        for (PhoneIndex.Match match : PhoneIndex.Match.values()) {
+            assertSameAsScan("3339", match);
+            assertSameAsScan("333" + (9000 + contacts.get(7).getId()), match);
+            assertSameAsScan("089", match);
+        }
+        assertTrue(index.find("3330", PhoneIndex.Match.PREFIX).isEmpty());
+    }
+}
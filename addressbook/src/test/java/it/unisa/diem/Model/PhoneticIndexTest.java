@@ -0,0 +1,110 @@
+package it.unisa.diem.Model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class PhoneticIndexTest {
+    private static final String[] NAMES = { "Mario", "Iacopo", "Jacopo", "Giusi", "Chiara", "Kiara", "Filippo", "Gigliola", "Nicolò" };
+    private static final String[] SURNAMES = { "Esposito", "Sposito", "Cacace", "Caccace", "Cuomo", "Quomo", "Rossi", "Russo", "Sciarra", "Ciampi" };
+
+    private List<Contact> contacts;
+    private PhoneticIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        Random random = new Random(11);
+        contacts = new ArrayList<>();
+        for (int i = 1; i <= 300; i++)
+            contacts.add(new Contact(i, NAMES[random.nextInt(NAMES.length)], SURNAMES[random.nextInt(SURNAMES.length)],
+                    new String[] { "", "", "" }, new String[] { "", "", "" }, new String[0], ""));
+        index = new PhoneticIndex(contacts);
+    }
+
+    private static Set<Contact> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * Checks that a lookup finds exactly the contacts having every key of the query, found by encoding the name of every contact.
+     */
+    private void assertSameAsScan(String query) {
+        List<String> queryKeys = Arrays.asList(PhoneticIndex.keys(query));
+        Set<Contact> scanned = identitySet();
+        for (Contact c : contacts)
+            if (!queryKeys.isEmpty() && Arrays.asList(PhoneticIndex.keys(c)).containsAll(queryKeys))
+                scanned.add(c);
+        List<Contact> looked = index.find(query);
+        Set<Contact> found = identitySet();
+        found.addAll(looked);
+        assertEquals(looked.size(), found.size(), query);
+        assertEquals(scanned, found, query);
+        assertTrue(index.estimate(query) >= found.size(), query);
+    }
+
+    @Test
+    public void testWordsPronouncedAlikeShareTheKey() {
+        String[][] alike = {
+            { "Esposito", "Sposito" }, { "Istrice", "Strice" }, { "Cacace", "Caccace" }, { "Cuomo", "Quomo" }, { "Iacopo", "Jacopo" },
+            { "Chiara", "Kiara" }, { "Filippo", "Philippo" }, { "Nicolò", "NICOLO" },
+            { "Sciarra", "Sciara" }, { "Ghezzi", "Ghezi" }, { "Walter", "Valter" }, { "Hugo", "Ugo" }, { "Gnocchi", "Gnokki" },
+        };
+        for (String[] pair : alike)
+            assertEquals(PhoneticIndex.key(pair[0]), PhoneticIndex.key(pair[1]), pair[0] + " " + pair[1]);
+        assertEquals("KAKACE", PhoneticIndex.key("Caccace"));
+        assertEquals("XARA", PhoneticIndex.key("Sciarra"));
+        // The "i" of a soft consonant followed by a vowel is not a sound of its own
+        assertEquals("CAMPI", PhoneticIndex.key("Ciampi"));
+        assertEquals("JUSTI", PhoneticIndex.key("Giusti"));
+        assertEquals("KS", PhoneticIndex.key("x"));
+        assertEquals("", PhoneticIndex.key("'-"));
+    }
+
+    @Test
+    public void testWordsPronouncedDifferentlyDoNotShareTheKey() {
+        String[][] different = { { "Rossi", "Russo" }, { "Ghezzi", "Gezzi" }, { "Giusti", "Gusti" }, { "Ciampi", "Campi" }, { "Gnocchi", "Nocchi" }, { "Scelsi", "Skelsi" } };
+        for (String[] pair : different)
+            assertNotEquals(PhoneticIndex.key(pair[0]), PhoneticIndex.key(pair[1]), pair[0] + " " + pair[1]);
+    }
+
+    @Test
+    public void testKeysOfAText() {
+        assertArrayEquals(new String[] { PhoneticIndex.key("esposito"), PhoneticIndex.key("mario") }, PhoneticIndex.keys("Sposito, Mario Esposito"));
+        assertEquals(0, PhoneticIndex.keys((String) null).length);
+    }
+
+    @Test
+    public void testLookupsMatchTheScan() {
+        for (String query : new String[] { "esposito", "Sposito", "cacace", "quomo", "jacopo cuomo", "kiara", "Giusi Rossi", "sciara", "nicolo", "ciampi mario", "verdi", "", "--" })
+            assertSameAsScan(query);
+        assertTrue(index.find("Espozito").isEmpty());
+        assertEquals(0, index.estimate("verdi mario"));
+    }
+
+    @Test
+    public void testIndexFollowsEditsAndRemovals() {
+        Contact edited = contacts.get(0);
+        edited.setSurname("Quagliarella");
+        index.update(edited);
+        assertTrue(index.find("Cuagliarela").contains(edited));
+        assertSameAsScan(SURNAMES[0]);
+
+        Contact removed = contacts.remove(1);
+        index.remove(removed);
+        assertEquals(contacts.size(), index.size());
+        assertTrue(!index.find(removed.getFullNameValue()).contains(removed));
+        assertSameAsScan(removed.getSurnameValue());
+    }
+}
@@ -0,0 +1,76 @@
+package it.unisa.diem.Model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class QueryPlanTest {
+    private AddressBook book;
+
+    @BeforeEach
+    public void setUp() {
+        book = new AddressBook();
+        String[][] people = {
+            { "Mario", "Rossi", "work" }, { "Anna", "Rossini", "old" }, { "Luca", "Esposito", "work" },
+            { "Chiara", "Sposito", "" }, { "Marco", "Bianchi", "work" }, { "Rosa", "Verdi", "gym" },
+        };
+        for (String[] person : people) {
+            Contact c = new Contact(person[0], person[1]);
+            if (!person[2].isEmpty())
+                c.addTag(person[2]);
+            book.add(c);
+        }
+    }
+
+    private Set<String> run(String text) {
+        QueryPlan plan = QueryPlan.plan(SearchQuery.parse(text), book);
+        List<Contact> found = plan.execute();
+        Set<String> names = new HashSet<>();
+        for (Contact c : found)
+            names.add(c.getNameValue());
+        assertEquals(found.size(), names.size(), text);
+        return names;
+    }
+
+    private static Set<String> names(String... names) {
+        return new HashSet<>(Arrays.asList(names));
+    }
+
+    @Test
+    public void testClausesAreAllSatisfied() {
+        assertEquals(names("Mario", "Anna"), run("name:ross"));
+        assertEquals(names("Mario"), run("name:ross tag:work"));
+        assertEquals(names("Mario", "Luca", "Marco"), run("tag:work"));
+        assertEquals(names("Anna"), run("name:ross -tag:work"));
+        assertEquals(names("Rosa"), run("ros -name:ross -name:rossini"));
+    }
+
+    @Test
+    public void testSoundsLikeClauses() {
+        assertTrue(run("sounds:esposito").containsAll(names("Luca", "Chiara")));
+        assertEquals(names("Chiara"), run("sounds:esposito -name:esposito"));
+    }
+
+    @Test
+    public void testExplanationListsEveryStepWithItsRows() {
+        QueryPlan plan = QueryPlan.plan(SearchQuery.parse("name:ross tag:work"), book);
+        assertFalse(plan.getSteps().isEmpty());
+        for (QueryPlan.Step step : plan.getSteps())
+            assertTrue(step.getRows() < 0);
+        plan.execute();
+        for (QueryPlan.Step step : plan.getSteps())
+            assertTrue(step.getRows() >= 0);
+        String explanation = plan.explain();
+        assertTrue(explanation.contains("rows"), explanation);
+        assertTrue(explanation.contains("Total"), explanation);
+        assertEquals(plan.getSteps().size() + 2, explanation.split("\\R").length, explanation);
+    }
+}
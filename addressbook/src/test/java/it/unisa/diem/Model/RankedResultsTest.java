@@ -0,0 +1,84 @@
+package it.unisa.diem.Model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class RankedResultsTest {
+    private static final String[] NAMES = { "Mario", "Maria", "Marianna", "Anna", "Rosa", "Marco", "Amaro" };
+    private static final String[] SURNAMES = { "Rossi", "Mari", "Esposito", "Romario", "Bianchi" };
+
+    private static List<Contact> contacts(Random random, int count) {
+        List<Contact> contacts = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            String name = NAMES[random.nextInt(NAMES.length)];
+            String surname = SURNAMES[random.nextInt(SURNAMES.length)];
+            String email = random.nextBoolean() ? name.toLowerCase() + i + "@unisa.it" : "";
+            String[] tags = random.nextInt(4) == 0 ? new String[] { "mare" } : new String[0];
+            contacts.add(new Contact(i, name, surname, new String[] { email, "", "" }, new String[] { "3331" + i, "", "" }, tags, null));
+        }
+        return contacts;
+    }
+
+    /**
+     * Sorts the matches all at once, in the order the ranked results read them.
+     */
+    private static List<Contact> sorted(List<Contact> matches, String query) {
+        String q = SearchKeys.normalize(query.trim());
+        List<Contact> sorted = new ArrayList<>(matches);
+        sorted.sort(Comparator.comparingInt((Contact c) -> -RankedResults.relevance(c, q))
+                .thenComparing(c -> c.getSearchKeys().getSurnameName())
+                .thenComparingInt(Contact::getId));
+        return sorted;
+    }
+
+    @Test
+    public void testOrderMatchesAFullSort() {
+        Random random = new Random(6);
+        List<Contact> contacts = contacts(random, 1000);
+        for (String query : new String[] { "mari", "Maria", "ma", "rossi", "mare", "anna rosa", "3331", "" }) {
+            Collections.shuffle(contacts, random);
+            List<Contact> expected = sorted(contacts, query);
+            RankedResults ranked = new RankedResults(contacts, query);
+            assertEquals(expected.size(), ranked.size());
+            for (int i = 0; i < expected.size(); i++)
+                assertSame(expected.get(i), ranked.get(i), query + " at " + i);
+        }
+    }
+
+    @Test
+    public void testBetterHitsComeFirst() {
+        Contact exactName = new Contact(1, "Mari", "Bianchi", new String[3], new String[3], new String[0], null);
+        Contact exactEmail = new Contact(2, "Anna", "Bianchi", new String[] { "mari@unisa.it", "", "" }, new String[3], new String[0], null);
+        Contact prefix = new Contact(3, "Mario", "Bianchi", new String[3], new String[3], new String[0], null);
+        Contact substring = new Contact(4, "Rosa", "Romari", new String[3], new String[3], new String[0], null);
+        List<Contact> ranked = new RankedResults(Arrays.asList(substring, prefix, exactEmail, exactName), "MARI ");
+        assertEquals(Arrays.asList(exactName, exactEmail, prefix, substring), ranked);
+    }
+
+    @Test
+    public void testMatchesAreOrderedOnlyAsTheyAreRead() {
+        List<Contact> contacts = contacts(new Random(7), 1000);
+        RankedResults ranked = new RankedResults(contacts, "mari");
+        assertEquals(0, ranked.getOrderedCount());
+        ranked.get(0);
+        int firstBatch = ranked.getOrderedCount();
+        assertTrue(firstBatch > 0 && firstBatch < 100);
+        ranked.get(firstBatch - 1);
+        assertEquals(firstBatch, ranked.getOrderedCount());
+        ranked.get(999);
+        assertEquals(1000, ranked.getOrderedCount());
+        assertThrows(IndexOutOfBoundsException.class, () -> ranked.get(1000));
+        assertThrows(UnsupportedOperationException.class, () -> ranked.add(contacts.get(0)));
+    }
+}
@@ -0,0 +1,83 @@
+package it.unisa.diem.Model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SearchKeysTest {
+    private Contact contact;
+
+    @BeforeEach
+    public void setUp() {
+        contact = new Contact(1, "Nicolò", "D'Angelo", new String[] {"Nicolo@Unisa.it", "", ""}, new String[] {"333 1234567", "", ""}, new String[] {"Work"}, null);
+    }
+
+    /**
+     * Checks that the keys of the contact have been computed again, and returns them.
+     */
+    private SearchKeys assertOutdated(SearchKeys previous) {
+        SearchKeys keys = contact.getSearchKeys();
+        assertNotSame(previous, keys);
+        assertSame(keys, contact.getSearchKeys());
+        return keys;
+    }
+
+    @Test
+    public void testKeysAreNormalizedAndShared() {
+        SearchKeys keys = contact.getSearchKeys();
+        assertSame(keys, contact.getSearchKeys());
+        assertEquals("nicolo", keys.getName());
+        assertEquals("d'angelo", keys.getSurname());
+        assertEquals("d'angelo nicolo", keys.getSurnameName());
+        assertEquals("nicolo d'angelo", keys.getNameSurname());
+        assertEquals("nicolo@unisa.it", keys.getEmails()[0]);
+        assertEquals("333 1234567", keys.getPhones()[0]);
+        assertArrayEquals(new String[] {"work"}, keys.getTags());
+        String ascii = "mario";
+        assertSame(ascii, SearchKeys.normalize(ascii));
+        assertEquals("", SearchKeys.normalize(null));
+    }
+
+    @Test
+    public void testEveryChangeOfASearchableFieldOutdatesTheKeys() {
+        SearchKeys keys = contact.getSearchKeys();
+        contact.setName("Mario");
+        keys = assertOutdated(keys);
+        assertEquals("mario", keys.getName());
+        // The fields edited through their properties, as by the table of the main view
+        contact.getSurname().set("Rossi");
+        keys = assertOutdated(keys);
+        assertEquals("rossi mario", keys.getSurnameName());
+
+        contact.setEmail("mario@unisa.it", 1);
+        keys = assertOutdated(keys);
+        assertEquals("mario@unisa.it", keys.getEmails()[1]);
+        contact.removeEmailAtIndex(0);
+        keys = assertOutdated(keys);
+        contact.setPhoneNumber("089 7654321", 2);
+        keys = assertOutdated(keys);
+        assertEquals("089 7654321", keys.getPhones()[2]);
+        contact.addTag("Gym");
+        keys = assertOutdated(keys);
+        assertEquals(2, keys.getTags().length);
+        contact.removeTag("Work");
+        keys = assertOutdated(keys);
+        assertArrayEquals(new String[] {"gym"}, keys.getTags());
+    }
+
+    @Test
+    public void testOutdatedKeysAreNotChanged() {
+        SearchKeys keys = contact.getSearchKeys();
+        contact.setName("Mario");
+        assertEquals("nicolo", keys.getName());
+        assertEquals("mario", contact.getSearchKeys().getName());
+        // A change that does not succeed leaves the keys as they are
+        keys = contact.getSearchKeys();
+        contact.setEmail("", 0);
+        assertSame(keys, contact.getSearchKeys());
+    }
+}
@@ -0,0 +1,70 @@
+package it.unisa.diem.Model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SearchSessionTest {
+    private AddressBook book;
+    private SearchSession session;
+    private Contact anna;
+    private Contact bruno;
+
+    @BeforeEach
+    public void setUp() {
+        book = new AddressBook();
+        anna = new Contact("Anna", "Rossi");
+        bruno = new Contact("Bruno", "Verdi");
+        book.add(anna);
+        book.add(bruno);
+        book.add(new Contact("Carla", "Bianchi"));
+        session = new SearchSession(book);
+    }
+
+    private static Set<String> names(List<Contact> contacts) {
+        Set<String> names = new HashSet<>();
+        for (Contact c : contacts)
+            names.add(c.getNameValue());
+        return names;
+    }
+
+    @Test
+    public void testEmptyQueryMatchesEveryContact() {
+        assertNull(session.search("  ", null));
+    }
+
+    @Test
+    public void testMatchesContainTheQuery() {
+        assertEquals(names(Arrays.asList(anna)), names(session.search("ros", null)));
+        assertEquals(new HashSet<>(Arrays.asList("Anna", "Carla")), names(session.search("an", null)));
+    }
+
+    @Test
+    public void testRefinedQueryFindsContactsEditedInPlace() {
+        assertEquals(names(Arrays.asList(anna)), names(session.search("ro", null)));
+        long edits = book.getEditCount();
+        bruno.setSurname("Rossini");
+        book.update(bruno);
+        assertTrue(book.getEditCount() > edits);
+        assertEquals(names(Arrays.asList(anna, bruno)), names(session.search("ros", null)));
+    }
+
+    @Test
+    public void testRefinedQueryFindsContactsTaggedInPlace() {
+        assertFalse(names(session.search("gy", null)).contains("Bruno"));
+        bruno.addTag("gym");
+        Tag t = new Tag();
+        t.setNameValue("gym");
+        book.addTagToContact(t, bruno);
+        assertEquals(names(Arrays.asList(bruno)), names(session.search("gym", null)));
+    }
+}
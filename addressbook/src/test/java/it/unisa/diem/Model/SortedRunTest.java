@@ -0,0 +1,51 @@
+package it.unisa.diem.Model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+public class SortedRunTest {
+
+    private static List<Integer> list(SortedSet<Integer> set) {
+        return new ArrayList<>(set);
+    }
+
+    @Test
+    public void testRunsAreMergedWithoutDuplicates() {
+        SortedRun<Integer> run = SortedRun.of(Arrays.asList(1, 3, 3, 5, 2, 4, 9, 0, 5));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 9), list(run));
+        assertEquals(0, (int) run.first());
+        assertEquals(9, (int) run.last());
+        assertEquals(list(run), list(new TreeSet<>(run)));
+        assertThrows(NoSuchElementException.class, () -> SortedRun.of(new ArrayList<Integer>()).first());
+    }
+
+    @Test
+    public void testRangesMatchTheTreeSet() {
+        Random random = new Random(4);
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+            values.add(random.nextInt(500) * 2);
+        SortedRun<Integer> run = SortedRun.of(values);
+        TreeSet<Integer> tree = new TreeSet<>(values);
+        for (int i = 0; i < 200; i++) {
+            int from = random.nextInt(1002) - 1;
+            int to = from + random.nextInt(300);
+            assertEquals(list(tree.headSet(to)), list(run.headSet(to)));
+            assertEquals(list(tree.tailSet(from)), list(run.tailSet(from)));
+            assertEquals(list(tree.subSet(from, to)), list(run.subSet(from, to)));
+            assertEquals(list(tree.subSet(from, to).headSet((from + to) / 2)), list(run.subSet(from, to).headSet((from + to) / 2)));
+        }
+        assertThrows(IllegalArgumentException.class, () -> run.subSet(10, 2));
+        assertThrows(UnsupportedOperationException.class, () -> run.headSet(100).add(1));
+    }
+}
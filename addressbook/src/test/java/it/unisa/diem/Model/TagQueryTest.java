@@ -0,0 +1,116 @@
+package it.unisa.diem.Model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TagQueryTest {
+    private static final String[] TAGS = { "work", "gym", "rome", "milan", "old", "family" };
+
+    private AddressBook book;
+    private List<Contact> contacts;
+
+    @BeforeEach
+    public void setUp() {
+        Random random = new Random(9);
+        book = new AddressBook();
+        contacts = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Contact c = new Contact("Name" + i, "Surname");
+            // Rarer and rarer tags
+            for (int t = 0; t < TAGS.length; t++)
+                if (random.nextInt(t + 2) == 0)
+                    c.addTag(TAGS[t]);
+            book.add(c);
+            contacts.add(c);
+        }
+    }
+
+    private static Tag tag(String name) {
+        Tag t = new Tag();
+        t.setNameValue(name);
+        return t;
+    }
+
+    /**
+     * Returns the identifiers of the contacts of the book selected by a query, looking into the tags of each contact.
+     */
+    private List<Integer> selectedByTags(TagQuery query) {
+        List<Integer> ids = new ArrayList<>();
+        for (Contact c : book.contacts()) {
+            boolean all = query.getAllOf().stream().allMatch(c::hasTag);
+            boolean any = query.getAnyOf().isEmpty() || query.getAnyOf().stream().anyMatch(c::hasTag);
+            boolean none = query.getNoneOf().stream().noneMatch(c::hasTag);
+            if (all && any && none)
+                ids.add(c.getId());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private void assertSelects(TagQuery query) {
+        List<Integer> selected = new ArrayList<>();
+        book.select(query).forEach(selected::add);
+        assertEquals(selectedByTags(query), selected, query.toString());
+    }
+
+    @Test
+    public void testSelectionMatchesTheTagsOfEachContact() {
+        Random random = new Random(10);
+        assertSelects(TagQuery.ALL);
+        for (int i = 0; i < 300; i++) {
+            TagQuery query = TagQuery.ALL;
+            for (int roles = random.nextInt(5); roles > 0; roles--) {
+                Tag t = tag(TAGS[random.nextInt(TAGS.length)]);
+                int role = random.nextInt(3);
+                query = role == 0 ? query.withAllOf(t) : role == 1 ? query.withAnyOf(t) : query.withNoneOf(t);
+            }
+            assertSelects(query);
+        }
+        // A tag no contact is marked with
+        assertEquals(0, book.select(TagQuery.of(tag("unknown"))).cardinality());
+        assertSelects(TagQuery.ALL.withNoneOf(tag("unknown")));
+    }
+
+    @Test
+    public void testSelectionFollowsTheList() {
+        for (int i = 0; i < 100; i++)
+            book.delete(contacts.get(i));
+        contacts.get(200).removeTag("work");
+        book.removeTagFromContact(tag("work"), contacts.get(200));
+        contacts.get(201).addTag("old");
+        book.addTagToContact(tag("old"), contacts.get(201));
+        assertSelects(TagQuery.ALL);
+        assertSelects(TagQuery.ALL.withNoneOf(tag("old")));
+        assertSelects(TagQuery.of(tag("work")).withAnyOf(tag("rome")).withAnyOf(tag("milan")).withNoneOf(tag("old")));
+    }
+
+    @Test
+    public void testEachTagHasOneRole() {
+        TagQuery query = TagQuery.of(tag("work")).withAnyOf(tag("rome")).withAnyOf(tag("milan")).withNoneOf(tag("old"));
+        assertEquals("work AND (milan OR rome) NOT old", query.toString());
+        TagQuery moved = query.withNoneOf(tag("work"));
+        assertTrue(moved.getAllOf().isEmpty());
+        assertTrue(moved.getNoneOf().contains(tag("work")));
+        assertEquals(query, moved.withAllOf(tag("work")));
+        assertEquals(query.hashCode(), moved.withAllOf(tag("work")).hashCode());
+        assertEquals(TagQuery.ALL, TagQuery.of(tag("gym")).without(tag("gym")));
+        assertSame(query, query.without(tag("gym")));
+        assertTrue(TagQuery.ALL.isEmpty());
+        assertFalse(query.contains(tag("gym")));
+        assertSame(TagQuery.ALL, TagQuery.of(null));
+        assertThrows(IllegalArgumentException.class, () -> query.withAnyOf(null));
+        assertThrows(IllegalArgumentException.class, () -> new TagQuery(Arrays.asList(tag("a"), null), Collections.emptySet(), Collections.emptySet()));
+    }
+}
@@ -0,0 +1,93 @@
+package it.unisa.diem.Model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TagRegistryTest {
+    private AddressBook book;
+
+    @BeforeEach
+    public void setUp() {
+        book = new AddressBook();
+    }
+
+    private static Tag tag(String name) {
+        Tag t = new Tag();
+        t.setNameValue(name);
+        return t;
+    }
+
+    private Contact added(String name, String... tags) {
+        Contact c = new Contact(name, "Surname");
+        for (String t : tags)
+            c.addTag(t);
+        book.add(c);
+        return c;
+    }
+
+    @Test
+    public void testRegistryInternsOneTagPerName() {
+        TagRegistry registry = new TagRegistry();
+        int id = registry.register("work");
+        assertEquals(id, registry.register("work"));
+        assertSame(registry.intern("work"), registry.get(id));
+        assertSame(registry.find("work"), registry.get(id));
+        assertEquals(id, registry.idOf(tag("work")));
+        assertEquals(-1, registry.idOf("home"));
+        assertNull(registry.find("home"));
+        assertEquals(-1, registry.register("a tag name longer than the limit"));
+        assertThrows(IndexOutOfBoundsException.class, () -> registry.get(registry.size()));
+    }
+
+    @Test
+    public void testContactsShareTheTagsOfTheirBook() {
+        Contact a = added("Anna", "work", "gym");
+        Contact b = new Contact("Bruno", "Surname");
+        b.addTag("work");
+        Tag detached = b.getTags().iterator().next();
+        assertNotSame(book.getTagRegistry().find("work"), detached);
+        book.add(b);
+        assertSame(book.getTagRegistry().find("work"), b.getTags().iterator().next());
+        // The tags of a contact are ordered by name
+        Tag[] tagsOfA = a.getTags().toArray(new Tag[0]);
+        assertSame(book.getTagRegistry().find("gym"), tagsOfA[0]);
+        assertSame(tagsOfA[1], b.getTags().iterator().next());
+        assertTrue(b.hasTag(detached));
+        assertEquals(2, book.getTagRegistry().cardinality(tag("work")));
+        assertEquals(1, book.getTagRegistry().cardinality(tag("gym")));
+        assertEquals(0, book.getTagRegistry().cardinality(tag("missing")));
+
+        AddressBook other = new AddressBook();
+        Contact c = new Contact("Carla", "Surname");
+        c.addTag("family");
+        c.addTag("work");
+        other.add(c);
+        assertNotSame(other.getTagRegistry().find("work"), book.getTagRegistry().find("work"));
+        assertEquals(0, other.getTagRegistry().cardinality(tag("gym")));
+        assertTrue(c.hasTag(tag("work")));
+    }
+
+    @Test
+    public void testCardinalitiesFollowTheList() {
+        Contact a = added("Anna", "work", "gym");
+        added("Bruno", "work");
+        book.delete(a);
+        Map<Tag, Integer> cardinalities = book.getTagRegistry().cardinalities();
+        assertEquals(1, cardinalities.size());
+        assertEquals(1, (int) cardinalities.get(tag("work")));
+        // Identifiers are never reused, even for a tag no longer marking any contact
+        int gym = book.getTagRegistry().idOf("gym");
+        assertTrue(gym >= 0);
+        assertEquals(0, book.getTagRegistry().cardinality(tag("gym")));
+        assertEquals(gym, book.getTagRegistry().register("gym"));
+    }
+}
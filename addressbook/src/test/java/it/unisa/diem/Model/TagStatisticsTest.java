@@ -0,0 +1,101 @@
+package it.unisa.diem.Model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TagStatisticsTest {
+    private AddressBook book;
+
+    @BeforeEach
+    public void setUp() {
+        book = new AddressBook();
+    }
+
+    private static Tag tag(String name) {
+        Tag t = new Tag();
+        t.setNameValue(name);
+        return t;
+    }
+
+    private Contact added(String name, String... tags) {
+        Contact c = new Contact(name, "Surname");
+        for (String t : tags)
+            c.addTag(t);
+        book.add(c);
+        return c;
+    }
+
+    @Test
+    public void testCountsFollowAddAndDelete() {
+        Contact a = added("Anna", "work", "gym");
+        added("Bruno", "work");
+        added("Carla", "gym", "family");
+        TagStatistics.Snapshot stats = book.tagStatistics();
+        assertEquals(2, stats.count(tag("work")));
+        assertEquals(2, stats.count(tag("gym")));
+        assertEquals(1, stats.cooccurrence(tag("work"), tag("gym")));
+        assertEquals(1, stats.cooccurrence(tag("gym"), tag("work")));
+        assertEquals(0, stats.cooccurrence(tag("work"), tag("family")));
+        assertEquals(2, stats.cooccurrence(tag("work"), tag("work")));
+
+        book.delete(a);
+        stats = book.tagStatistics();
+        assertEquals(1, stats.count(tag("work")));
+        assertEquals(1, stats.count(tag("gym")));
+        assertEquals(0, stats.cooccurrence(tag("work"), tag("gym")));
+        assertEquals(book.getTagRegistry().cardinalities(), stats.getCounts());
+    }
+
+    @Test
+    public void testSnapshotDoesNotChangeWithTheBook() {
+        added("Anna", "work");
+        TagStatistics.Snapshot before = book.tagStatistics();
+        added("Bruno", "work");
+        assertEquals(1, before.count(tag("work")));
+        assertEquals(2, book.tagStatistics().count(tag("work")));
+    }
+
+    @Test
+    public void testTaggingAndUntaggingAContactOfTheBook() {
+        Contact c = added("Anna", "work");
+        c.addTag("gym");
+        book.addTagToContact(tag("gym"), c);
+        assertEquals(1, book.tagStatistics().count(tag("gym")));
+        assertEquals(1, book.tagStatistics().cooccurrence(tag("gym"), tag("work")));
+
+        c.removeTag("work");
+        book.removeTagFromContact(tag("work"), c);
+        TagStatistics.Snapshot stats = book.tagStatistics();
+        assertEquals(0, stats.count(tag("work")));
+        assertEquals(0, stats.cooccurrence(tag("gym"), tag("work")));
+        assertEquals(1, stats.count(tag("gym")));
+    }
+
+    @Test
+    public void testContactTaggedBeforeBeingAddedIsCountedOnce() {
+        Contact c = new Contact("Anna", "Surname");
+        c.addTag("work");
+        book.addTagToContact(tag("work"), c);
+        assertEquals(0, book.tagStatistics().count(tag("work")));
+        book.add(c);
+        assertEquals(1, book.tagStatistics().count(tag("work")));
+        assertEquals(1, book.getTagMap().get(tag("work")).size());
+    }
+
+    @Test
+    public void testCooccurringTagsAreSortedByCount() {
+        added("Anna", "work", "gym", "family");
+        added("Bruno", "work", "gym");
+        added("Carla", "work", "family");
+        added("Dario", "work", "gym");
+        Map<Tag, Integer> cooccurring = book.tagStatistics().cooccurring(tag("work"));
+        assertEquals(Arrays.asList("gym", "family"), Arrays.asList(cooccurring.keySet().stream().map(Tag::getNameValue).toArray()));
+        assertEquals(Arrays.asList(3, 2), Arrays.asList(cooccurring.values().toArray()));
+        assertEquals(0, book.tagStatistics().cooccurring(tag("missing")).size());
+    }
+}
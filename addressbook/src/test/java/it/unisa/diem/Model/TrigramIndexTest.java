@@ -0,0 +1,128 @@
+package it.unisa.diem.Model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TrigramIndexTest {
+    private static final String[] NAMES = { "Mario", "Maria", "Anna", "Giuseppe", "Rosa", "Luca", "Chiara", "Marco", "Ilaria" };
+    private static final String[] SURNAMES = { "Rossi", "Russo", "Ferrari", "Esposito", "Bianchi", "Romano", "Colombo", "Ricci" };
+    private static final String[] DOMAINS = { "gmail.com", "unisa.it", "libero.it" };
+    private static final String[] TAGS = { "work", "family", "gym", "university" };
+
+    private List<Contact> contacts;
+    private TrigramIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        Random random = new Random(42);
+        contacts = new ArrayList<>();
+        for (int i = 1; i <= 500; i++) {
+            String name = NAMES[random.nextInt(NAMES.length)];
+            String surname = SURNAMES[random.nextInt(SURNAMES.length)];
+            String[] emails = { name.toLowerCase() + i + "@" + DOMAINS[random.nextInt(DOMAINS.length)], "", "" };
+            String[] phones = { "3" + (100000000 + random.nextInt(900000000)), "", "" };
+            String[] tags = random.nextBoolean() ? new String[] { TAGS[random.nextInt(TAGS.length)] } : new String[0];
+            contacts.add(new Contact(i, name, surname, emails, phones, tags, ""));
+        }
+        index = new TrigramIndex(contacts);
+    }
+
+    private static Set<Contact> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * Checks that the candidates of a query, tested with the search filters, are exactly the contacts found by testing every contact.
+     */
+    private void assertSameAsScan(String query) {
+        Predicate<Contact> predicate = SearchSession.predicate(query, null);
+        Set<Contact> scanned = identitySet();
+        for (Contact c : contacts)
+            if (predicate.test(c))
+                scanned.add(c);
+        // A query without text has no candidates to look up: every contact is one
+        List<Contact> looked = index.candidates(SearchKeys.normalize(query));
+        Set<Contact> candidates = identitySet();
+        candidates.addAll(looked == null ? contacts : looked);
+        assertTrue(candidates.containsAll(scanned), "Missing candidates for " + query);
+        Set<Contact> found = identitySet();
+        for (Contact c : candidates)
+            if (predicate.test(c))
+                found.add(c);
+        assertEquals(scanned, found, query);
+        assertTrue(index.estimate(SearchKeys.normalize(query)) >= scanned.size(), query);
+    }
+
+    @Test
+    public void testInfixQueriesAreFound() {
+        Contact mario = new Contact(1000, "Mario", "Verdi", new String[] { "", "", "" }, new String[] { "", "", "" }, new String[0], "");
+        contacts.add(mario);
+        index.add(mario);
+        assertTrue(index.candidates("ari").contains(mario));
+        assertTrue(index.candidates("erdi mar").contains(mario));
+        for (String query : new String[] { "ari", "oss", "ssi", "@gmai", "nisa.i", "ilar", "amil", "ork", "rdi" })
+            assertSameAsScan(query);
+    }
+
+    @Test
+    public void testShortQueriesAreFound() {
+        for (String query : new String[] { "a", "r", "3", "@", "ss", "o.", "ia" })
+            assertSameAsScan(query);
+    }
+
+    @Test
+    public void testRandomSubstringsMatchTheScan() {
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            Contact c = contacts.get(random.nextInt(contacts.size()));
+            String text = (c.getSurnameValue() + " " + c.getNameValue() + " " + c.getEmailAtIndex(0) + " " + c.getPhoneNumberAtIndex(0)).toLowerCase();
+            int from = random.nextInt(text.length());
+            int to = Math.min(text.length(), from + 1 + random.nextInt(8));
+            assertSameAsScan(text.substring(from, to));
+        }
+    }
+
+    @Test
+    public void testQueriesFoundNowhereHaveNoCandidates() {
+        assertTrue(index.candidates("zzqx").isEmpty());
+        assertEquals(0, index.estimate("zzqx"));
+    }
+
+    @Test
+    public void testIndexFollowsEditsAndRemovals() {
+        Contact edited = contacts.get(0);
+        edited.setSurname("Quagliarella");
+        index.update(edited);
+        assertTrue(index.candidates("glia").contains(edited));
+        assertSameAsScan("glia");
+
+        Contact removed = contacts.remove(1);
+        index.remove(removed);
+        assertEquals(contacts.size(), index.size());
+        for (String query : new String[] { "a", "ss", removed.getEmailAtIndex(0) })
+            assertTrue(!index.candidates(query).contains(removed), query);
+    }
+
+    @Test
+    public void testUnusedSlotsAreReclaimed() {
+        for (int round = 0; round < 5; round++)
+            for (Contact c : contacts) {
+                c.setName(NAMES[round % NAMES.length]);
+                index.update(c);
+            }
+        assertEquals(contacts.size(), index.size());
+        assertSameAsScan(NAMES[4].toLowerCase().substring(1));
+        assertSameAsScan("ros");
+    }
+}
@@ -0,0 +1,207 @@
+package it.unisa.diem.Utility;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.unisa.diem.Model.AddressBook;
+import it.unisa.diem.Model.Contact;
+import it.unisa.diem.Model.RecentlyDeleted;
+import it.unisa.diem.Model.Tag;
+import it.unisa.diem.Utility.Compression.BlockCodec;
+
+public class AddressBookFormatTest {
+    private static final String[] NAMES = { "Mario", "Maria", "Anna", "Giuseppe", "Rosa", "Luca", "Zoë", "Nicolò" };
+    private static final String[] SURNAMES = { "Rossi", "Rossini", "Russo", "Ferrari", "D'Angelo", "Esposito", "Bianchi" };
+
+    private List<Contact> contacts;
+    private RecentlyDeleted trash;
+    private int lastContactId;
+
+    @BeforeEach
+    public void setUp() {
+        contacts = new ArrayList<>();
+        for (int i = 1; i <= 700; i++) {
+            String name = NAMES[i % NAMES.length];
+            String surname = SURNAMES[(i / NAMES.length) % SURNAMES.length] + (i / 56);
+            String[] emails = { i % 3 == 0 ? "" : name.toLowerCase() + i + "@unisa.it", "", "" };
+            String[] phones = { "3331234" + (100 + i), i % 5 == 0 ? "089" + i : "", "" };
+            String[] tags = i % 4 == 0 ? new String[] { "work", "gym" } : i % 4 == 1 ? new String[] { "family" } : new String[0];
+            contacts.add(new Contact(i, name, surname, emails, phones, tags, i % 7 == 0 ? "file:/pictures/" + i + ".png" : ""));
+        }
+        trash = new RecentlyDeleted();
+        LocalDate today = LocalDate.now();
+        trash.put(new Contact(701, "Elena", "Verdi", new String[] { "elena@unisa.it", "", "" }, new String[] { "", "", "" }, new String[] { "old" }, ""), today);
+        trash.put(new Contact(702, "Fabio", "Verdi", new String[] { "", "", "" }, new String[] { "3330000000", "", "" }, new String[0], ""), today.minusDays(3));
+        lastContactId = 710;
+    }
+
+    private byte[] write() throws IOException {
+        // The format writes the contacts in the order of the list, which is sorted by full name
+        TreeSet<Contact> sorted = new TreeSet<>(contacts);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AddressBookFormat.write(out, lastContactId, sorted, trash);
+        return out.toByteArray();
+    }
+
+    /**
+     * Rewrites a file of the current version as a file of an older version, which has the same records and trash can.
+     * Versions 2 and 3 only differ in where the restart points are, which the reader finds in the records themselves.
+     */
+    static byte[] downgrade(byte[] file, short version) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(file);
+        int trailer = file.length - AddressBookFormat.TRAILER_SIZE;
+        long offsetsPosition = buffer.getLong(trailer);
+        long trashPosition = buffer.getLong(trailer + 8);
+        long segmentsPosition = buffer.getLong(trailer + 16);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (version == 1) {
+            out.write(file, 0, (int) offsetsPosition);
+        } else {
+            out.write(file, 0, (int) segmentsPosition);
+            out.writeLong(offsetsPosition);
+            out.writeLong(trashPosition);
+            out.write(AddressBookFormat.MAGIC);
+        }
+        byte[] downgraded = bytes.toByteArray();
+        ByteBuffer.wrap(downgraded).putShort(AddressBookFormat.MAGIC.length, version);
+        return downgraded;
+    }
+
+    private static void assertSameContact(Contact expected, Contact actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getNameValue(), actual.getNameValue());
+        assertEquals(expected.getSurnameValue(), actual.getSurnameValue());
+        assertArrayEquals(expected.getEmailList(), actual.getEmailList());
+        assertArrayEquals(expected.getPhoneNumberList(), actual.getPhoneNumberList());
+        assertEquals(names(expected), names(actual));
+        assertEquals(expected.getPicture() == null ? "" : expected.getPicture(), actual.getPicture());
+    }
+
+    private static List<String> names(Contact c) {
+        List<String> names = new ArrayList<>();
+        for (Tag t : c.getTags())
+            names.add(t.getNameValue());
+        names.sort(null);
+        return names;
+    }
+
+    private void assertSameBook(AddressBook book) {
+        assertEquals(lastContactId, book.getLastContactId());
+        Map<Integer, Contact> read = new HashMap<>();
+        for (Contact c : book.contacts())
+            read.put(c.getId(), c);
+        assertEquals(contacts.size(), read.size());
+        for (Contact c : contacts)
+            assertSameContact(c, read.get(c.getId()));
+        RecentlyDeleted readTrash = book.trashCan();
+        assertEquals(trash.contacts().size(), readTrash.contacts().size());
+        for (Contact c : trash.contacts()) {
+            Contact deleted = null;
+            for (Contact d : readTrash.contacts())
+                if (d.getId() == c.getId())
+                    deleted = d;
+            assertNotNull(deleted);
+            assertSameContact(c, deleted);
+            assertEquals(trash.getDeletionDate(c), readTrash.getDeletionDate(deleted));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        byte[] file = write();
+        assertTrue(AddressBookFormat.isBinaryFormat(file));
+        assertEquals(AddressBookFormat.VERSION, ByteBuffer.wrap(file).getShort(AddressBookFormat.MAGIC.length));
+        AddressBookReader reader = new AddressBookReader(ByteBuffer.wrap(file));
+        assertEquals(contacts.size(), reader.size());
+        assertEquals(lastContactId, reader.getLastContactId());
+        assertSameBook(reader.toAddressBook(ForkJoinPool.commonPool()));
+    }
+
+    @Test
+    public void testOlderVersionsAreRead() throws IOException {
+        byte[] file = write();
+        for (short version = 1; version < AddressBookFormat.CHECKED_VERSION; version++) {
+            byte[] old = downgrade(file, version);
+            AddressBookReader reader = new AddressBookReader(ByteBuffer.wrap(old));
+            assertEquals(contacts.size(), reader.size());
+            IntegrityReport report = reader.verify();
+            assertFalse(report.isChecked());
+            assertTrue(report.isIntact());
+            assertSameBook(reader.toAddressBook(ForkJoinPool.commonPool()));
+            assertSameBook(reader.recover(ForkJoinPool.commonPool(), report));
+        }
+    }
+
+    @Test
+    public void testValuesAfterAnEmptySlotKeepTheirSlot() throws IOException {
+        // The edit form stores each field in its own slot, so the first slots may be empty
+        contacts.add(new Contact(703, "Gianni", "Gap", new String[] { "", "second@unisa.it", "" }, new String[] { "", "", "3330000003" }, new String[0], ""));
+        contacts.add(new Contact(704, "Ida", "Gap", new String[] { "first@unisa.it", "", "third@unisa.it" }, new String[] { "", "3330000004", "" }, new String[0], ""));
+        trash.put(new Contact(705, "Leo", "Gap", new String[] { "", "", "third@unisa.it" }, new String[] { "", "3330000005", "" }, new String[0], ""), LocalDate.now());
+        AddressBookReader reader = new AddressBookReader(ByteBuffer.wrap(write()));
+        assertSameBook(reader.toAddressBook(ForkJoinPool.commonPool()));
+    }
+
+    @Test
+    public void testEmptyBook() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AddressBookFormat.write(out, 0, new ArrayList<>(), new RecentlyDeleted());
+        AddressBook book = new AddressBookReader(ByteBuffer.wrap(out.toByteArray())).toAddressBook(ForkJoinPool.commonPool());
+        assertTrue(book.contacts().isEmpty());
+        assertTrue(book.trashCan().contacts().isEmpty());
+    }
+
+    @Test
+    public void testOtherFilesAreRejected() throws IOException {
+        byte[] file = write();
+        byte[] newer = file.clone();
+        ByteBuffer.wrap(newer).putShort(AddressBookFormat.MAGIC.length, (short) (AddressBookFormat.VERSION + 1));
+        assertThrows(StreamCorruptedException.class, () -> new AddressBookReader(ByteBuffer.wrap(newer)));
+        byte[] serialized = { (byte) 0xAC, (byte) 0xED, 0, 5, 0, 0 };
+        assertFalse(AddressBookFormat.isBinaryFormat(serialized));
+        assertThrows(StreamCorruptedException.class, () -> new AddressBookReader(ByteBuffer.wrap(serialized)));
+    }
+
+    @Test
+    public void testFilesRoundTrip(@TempDir Path dir) throws IOException {
+        String path = dir.resolve("book").toString();
+        AddressBook book = new AddressBook(new TreeSet<>(contacts), trash, lastContactId);
+        BlockCodec codec = FileManager.getCompressionCodec();
+        try {
+            for (BlockCodec used : new BlockCodec[] { codec, null }) {
+                FileManager.setCompressionCodec(used);
+                FileManager.exportAddressBook(path, book);
+                assertTrue(Files.exists(dir.resolve("book")));
+                assertTrue(Files.exists(Paths.get(FileManager.getTrashPath(path))));
+                assertSameBook(FileManager.importAddressBook(path));
+            }
+        } finally {
+            FileManager.setCompressionCodec(codec);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package it.unisa.diem.Utility;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.unisa.diem.Model.AddressBook;
+import it.unisa.diem.Model.Contact;
+import it.unisa.diem.Utility.AddressBookJournal.Operation;
+import it.unisa.diem.Utility.AddressBookJournal.Record;
+
+public class AddressBookJournalTest {
+    @TempDir
+    Path dir;
+
+    private String bookPath;
+    private Path journalPath;
+
+    @BeforeEach
+    public void setUp() {
+        bookPath = dir.resolve("book.obj").toString();
+        journalPath = Paths.get(FileManager.getJournalPath(bookPath));
+    }
+
+    private static Contact contact(int id, String name) {
+        return new Contact(id, name, "Rossi", new String[] {name.toLowerCase() + "@example.com", "", ""}, new String[] {"3331234567", "", ""}, new String[] {"work"}, null);
+    }
+
+    private static void flush(AddressBookJournal journal) throws IOException {
+        journal.write(journal.drainPending());
+    }
+
+    @Test
+    public void testRecordsAreReadBackInOrder() throws IOException {
+        AddressBookJournal journal = new AddressBookJournal(bookPath);
+        journal.append(Operation.ADD, contact(1, "Mario"));
+        journal.appendDelete(contact(1, "Mario"), LocalDate.of(2024, 3, 1));
+        journal.append(Operation.TAG_ADD, contact(2, "Luigi"), "friends");
+        journal.append(Operation.RESTORE, contact(1, "Mario"), null);
+        assertEquals(4, journal.getPendingRecords());
+        flush(journal);
+        assertEquals(0, journal.getPendingRecords());
+
+        List<Record> records = new AddressBookJournal(bookPath).read();
+        assertEquals(4, records.size());
+        assertEquals(Operation.ADD, records.get(0).getOperation());
+        assertEquals("Mario", records.get(0).getContact().getNameValue());
+        assertEquals(1, records.get(0).getContactId());
+        assertEquals(Operation.DELETE, records.get(1).getOperation());
+        assertEquals(LocalDate.of(2024, 3, 1), records.get(1).getDate());
+        assertEquals(Operation.TAG_ADD, records.get(2).getOperation());
+        assertEquals(2, records.get(2).getContactId());
+        assertEquals("friends", records.get(2).getTagName());
+        assertEquals(Operation.RESTORE, records.get(3).getOperation());
+    }
+
+    @Test
+    public void testTornRecordIsCutWhenOpenedAndLaterRecordsAreKept() throws IOException {
+        AddressBookJournal journal = new AddressBookJournal(bookPath);
+        journal.append(Operation.ADD, contact(1, "Mario"));
+        journal.append(Operation.ADD, contact(2, "Luigi"));
+        flush(journal);
+        long valid = Files.size(journalPath);
+        // A record whose length was written, but not its bytes, as after a crash
+        Files.write(journalPath, new byte[] {0, 0, 1, 0, 7, 7, 7}, StandardOpenOption.APPEND);
+
+        AddressBookJournal reopened = new AddressBookJournal(bookPath);
+        assertEquals(2, reopened.read().size());
+        assertEquals(valid, Files.size(journalPath));
+        reopened.append(Operation.ADD, contact(3, "Anna"));
+        flush(reopened);
+
+        List<Record> records = new AddressBookJournal(bookPath).read();
+        assertEquals(3, records.size());
+        assertEquals("Anna", records.get(2).getContact().getNameValue());
+    }
+
+    @Test
+    public void testFirstWriteCutsTornRecordEvenIfNotRead() throws IOException {
+        AddressBookJournal journal = new AddressBookJournal(bookPath);
+        journal.append(Operation.ADD, contact(1, "Mario"));
+        flush(journal);
+        Files.write(journalPath, new byte[] {0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+
+        AddressBookJournal reopened = new AddressBookJournal(bookPath);
+        reopened.append(Operation.PURGE, contact(1, "Mario"), null);
+        flush(reopened);
+
+        List<Record> records = new AddressBookJournal(bookPath).read();
+        assertEquals(2, records.size());
+        assertEquals(Operation.PURGE, records.get(1).getOperation());
+    }
+
+    @Test
+    public void testRecordWithWrongChecksumEndsTheJournal() throws IOException {
+        AddressBookJournal journal = new AddressBookJournal(bookPath);
+        journal.append(Operation.ADD, contact(1, "Mario"));
+        flush(journal);
+        long first = Files.size(journalPath);
+        journal.append(Operation.ADD, contact(2, "Luigi"));
+        journal.append(Operation.ADD, contact(3, "Anna"));
+        flush(journal);
+        byte[] bytes = Files.readAllBytes(journalPath);
+        bytes[(int) first + 12] ^= 0x55;
+        Files.write(journalPath, bytes);
+
+        List<Record> records = new AddressBookJournal(bookPath).read();
+        assertEquals(1, records.size());
+        assertEquals(first, Files.size(journalPath));
+    }
+
+    @Test
+    public void testUnknownOperationIsReportedAndNotCut() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        byte[] record = {(byte) 0x7F, 0, 0, 0, 1};
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        out.writeInt(record.length);
+        out.writeInt((int) crc.getValue());
+        out.write(record);
+        Files.write(journalPath, bytes.toByteArray());
+
+        assertThrows(StreamCorruptedException.class, () -> new AddressBookJournal(bookPath).read());
+        assertTrue(Arrays.equals(bytes.toByteArray(), Files.readAllBytes(journalPath)));
+    }
+
+    @Test
+    public void testCompactionKeepsRecordsUntilItEnds() throws IOException {
+        AddressBookJournal journal = new AddressBookJournal(bookPath);
+        journal.read();
+        journal.append(Operation.ADD, contact(1, "Mario"));
+        flush(journal);
+        journal.beginCompaction();
+        assertFalse(Files.exists(journalPath));
+        journal.append(Operation.ADD, contact(2, "Luigi"));
+        flush(journal);
+        // A crash before the end of the compaction: both records are replayed
+        assertEquals(2, new AddressBookJournal(bookPath).read().size());
+        journal.endCompaction(0);
+        assertEquals(1, new AddressBookJournal(bookPath).read().size());
+    }
+
+    @Test
+    public void testAddressBookReplaysTheJournal() throws IOException {
+        AddressBook book = new AddressBook();
+        book.writeToFile(bookPath);
+        assertTrue(BackgroundSaver.awaitSaved(5000));
+        Contact mario = new Contact("Mario", "Rossi");
+        mario.addTag("work");
+        book.add(mario);
+        Contact luigi = new Contact("Luigi", "Verdi");
+        book.add(luigi);
+        book.delete(luigi);
+        book.writeToFile(bookPath);
+        assertTrue(BackgroundSaver.awaitSaved(5000));
+        assertTrue(Files.size(journalPath) > 0);
+
+        AddressBook loaded = AddressBook.readFromFile(bookPath);
+        assertEquals(1, loaded.contacts().size());
+        Contact read = loaded.contacts().iterator().next();
+        assertEquals("Mario", read.getNameValue());
+        assertNotNull(loaded.getTagRegistry().find("work"));
+        assertEquals(1, loaded.trashCan().contacts().size());
+    }
+
+    @Test
+    public void testReplayKeepsValuesAfterAnEmptySlot() throws IOException {
+        AddressBook book = new AddressBook();
+        book.writeToFile(bookPath);
+        assertTrue(BackgroundSaver.awaitSaved(5000));
+        // The edit form stores each field in its own slot, so the first slots may be empty
+        Contact added = new Contact(0, "Mario", "Rossi", new String[] {"", "mario@example.com", ""}, new String[] {"", "", "3331234567"}, new String[0], null);
+        book.add(added);
+        Contact edited = new Contact("Luigi", "Verdi");
+        book.add(edited);
+        edited.setEmail("luigi@example.com", 2);
+        edited.setPhoneNumber("3337654321", 1);
+        book.update(edited);
+        book.writeToFile(bookPath);
+        assertTrue(BackgroundSaver.awaitSaved(5000));
+        assertTrue(Files.size(journalPath) > 0);
+
+        AddressBook loaded = AddressBook.readFromFile(bookPath);
+        assertEquals(2, loaded.contacts().size());
+        for (Contact c : loaded.contacts()) {
+            Contact expected = c.getNameValue().equals("Mario") ? added : edited;
+            assertArrayEquals(expected.getEmailList(), c.getEmailList());
+            assertArrayEquals(expected.getPhoneNumberList(), c.getPhoneNumberList());
+        }
+    }
+
+    @Test
+    public void testUnreadableFileIsNeverWrittenOver() throws IOException {
+        byte[] original = "not an address book".getBytes("UTF-8");
+        Files.write(Paths.get(bookPath), original);
+        AddressBook empty = AddressBook.unreadable(bookPath);
+        empty.add(new Contact("Mario", "Rossi"));
+        empty.writeToFile(bookPath);
+        assertTrue(BackgroundSaver.awaitSaved(5000));
+
+        assertTrue(Arrays.equals(original, Files.readAllBytes(Paths.get(bookPath))));
+        assertEquals(1, AddressBook.readFromFile(FileManager.getUnsavedPath(bookPath)).contacts().size());
+    }
+}
@@ -0,0 +1,100 @@
+package it.unisa.diem.Utility;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.unisa.diem.Model.AddressBook;
+import it.unisa.diem.Model.Contact;
+import it.unisa.diem.Model.RecentlyDeleted;
+
+public class BackgroundSaverTest {
+    @TempDir
+    Path dir;
+
+    private String bookPath;
+    private AddressBook book;
+
+    @BeforeEach
+    public void setUp() {
+        bookPath = dir.resolve("book.obj").toString();
+        book = new AddressBook();
+        for (int i = 0; i < 10; i++)
+            book.add(new Contact("Name" + i, "Rossi"));
+    }
+
+    @Test
+    public void testChangesAreCoalescedIntoOneSave() throws IOException, InterruptedException {
+        book.writeToFile(bookPath);
+        assertTrue(BackgroundSaver.awaitSaved(5000));
+        BackgroundSaver saver = book.getSaver();
+        assertEquals(1, saver.getSnapshotCount());
+        long saves = saver.getSaveCount();
+        long bytes = saver.getBytesWritten();
+
+        for (int i = 0; i < 50; i++)
+            book.add(new Contact("Added" + i, "Verdi"));
+        // Saves waiting for the coalescing delay are not waited for
+        Thread.sleep(2 * BackgroundSaver.COALESCING_DELAY_MILLIS);
+        assertTrue(BackgroundSaver.awaitSaved(5000));
+
+        assertEquals(saves + 1, saver.getSaveCount());
+        assertEquals(1, saver.getSnapshotCount());
+        assertEquals(50, new AddressBookJournal(bookPath).read().size());
+        assertEquals(bytes + Files.size(Paths.get(FileManager.getJournalPath(bookPath))), saver.getBytesWritten());
+        // The latency of a change includes the coalescing delay
+        assertTrue(saver.getLastSaveLatencyMillis() >= BackgroundSaver.COALESCING_DELAY_MILLIS);
+        assertEquals(60, AddressBook.readFromFile(bookPath).contacts().size());
+    }
+
+    @Test
+    public void testSnapshotIsNotChangedByLaterEdits() {
+        Contact deleted = new Contact("Elena", "Verdi");
+        book.add(deleted);
+        book.delete(deleted);
+        AddressBook snapshot = book.snapshot();
+        RecentlyDeleted trash = book.snapshotTrash();
+
+        Contact first = book.contacts().iterator().next();
+        first.setName("Changed");
+        book.add(new Contact("Added", "Verdi"));
+        book.trashCan().remove(deleted);
+
+        assertEquals(10, snapshot.contacts().size());
+        for (Contact c : snapshot.contacts())
+            assertTrue(c.getNameValue().startsWith("Name"));
+        assertEquals(1, trash.contacts().size());
+        assertEquals(LocalDate.now(), trash.getDeletionDate(trash.contacts().iterator().next()));
+    }
+
+    @Test
+    public void testFailedWriteLeavesThePreviousFile() throws IOException {
+        FileManager.exportAddressBook(bookPath, book);
+        byte[] saved = Files.readAllBytes(Paths.get(bookPath));
+        // The temporary file cannot be created, as after a failure in the middle of the write
+        Path temporary = Files.createDirectory(Paths.get(FileManager.getTemporaryPath(bookPath)));
+        book.add(new Contact("Added", "Verdi"));
+        assertThrows(StreamCorruptedException.class, () -> FileManager.exportAddressBook(bookPath, book));
+        assertArrayEquals(saved, Files.readAllBytes(Paths.get(bookPath)));
+        assertEquals(10, FileManager.importAddressBook(bookPath).contacts().size());
+
+        Files.delete(temporary);
+        FileManager.exportAddressBook(bookPath, book);
+        assertEquals(11, FileManager.importAddressBook(bookPath).contacts().size());
+        assertFalse(Files.exists(temporary));
+        assertFalse(Files.exists(Paths.get(FileManager.getTemporaryPath(FileManager.getTrashPath(bookPath)))));
+    }
+}
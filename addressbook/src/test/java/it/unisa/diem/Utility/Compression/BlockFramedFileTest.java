@@ -0,0 +1,92 @@
+package it.unisa.diem.Utility.Compression;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+public class BlockFramedFileTest {
+    private static final int HEADER_SIZE = 18; /**< Magic, version, block count and data size */
+    private static final int BLOCK_ENTRY_SIZE = 9; /**< Codec, raw and stored length of a block */
+
+    private static byte[] records(int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++)
+            text.append(i).append(" Rossi Mario").append(i % 50).append(" mario").append(i * 31).append("@unisa.it 333").append(1000000 + i * 37).append('\n');
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testFramedDataRoundTrips() throws IOException {
+        byte[] data = records(20000);
+        for (BlockCodec codec : new BlockCodec[] { new LzCodec(), new DeflateCodec() }) {
+            BlockFramedFile file = new BlockFramedFile(codec);
+            byte[] framed = file.frame(data);
+            assertTrue(BlockFramedFile.isFramed(framed));
+            assertTrue(framed.length < data.length / 2);
+            assertEquals(data.length, file.getLastStats().getRawBytes());
+            assertEquals(framed.length, file.getLastStats().getStoredBytes());
+            assertTrue(file.getLastStats().getBlocks() > 1);
+            assertArrayEquals(data, BlockFramedFile.decompress(framed));
+            assertArrayEquals(data, new BlockFramedFile(codec).unframe(framed));
+            assertEquals(codec.getId(), BlockFramedFile.codecForId(codec.getId()).getId());
+        }
+        byte[] empty = new BlockFramedFile(new LzCodec()).frame(new byte[0]);
+        assertEquals(0, BlockFramedFile.decompress(empty).length);
+        assertFalse(BlockFramedFile.isFramed(data));
+    }
+
+    @Test
+    public void testUnchangedBlocksAreReused() throws IOException {
+        byte[] data = records(20000);
+        BlockFramedFile file = new BlockFramedFile(new LzCodec());
+        file.frame(data);
+        assertEquals(0, file.getLastStats().getReusedBlocks());
+        int blocks = file.getLastStats().getBlocks();
+
+        // A few bytes changed in the middle, and a few inserted: the blocks move, but their boundaries follow the content
+        byte[] edited = new byte[data.length + 3];
+        int middle = data.length / 2;
+        System.arraycopy(data, 0, edited, 0, middle);
+        edited[middle] = 'x';
+        edited[middle + 1] = 'y';
+        edited[middle + 2] = 'z';
+        System.arraycopy(data, middle, edited, middle + 3, data.length - middle);
+        edited[middle + 10] ^= 1;
+        byte[] framed = file.frame(edited);
+        int reused = file.getLastStats().getReusedBlocks();
+        assertTrue(reused >= blocks - 3, reused + " of " + blocks + " blocks reused");
+        assertTrue(reused < file.getLastStats().getBlocks());
+        assertArrayEquals(edited, BlockFramedFile.decompress(framed));
+
+        // The blocks read from a file are reused by the next save
+        BlockFramedFile loaded = new BlockFramedFile(new LzCodec());
+        loaded.unframe(framed);
+        assertArrayEquals(framed, loaded.frame(edited));
+        assertEquals(loaded.getLastStats().getBlocks(), loaded.getLastStats().getReusedBlocks());
+    }
+
+    @Test
+    public void testDamagedBlockIsSalvagedAsZeros() throws IOException {
+        byte[] data = records(20000);
+        byte[] framed = new BlockFramedFile(new LzCodec()).frame(data);
+        ByteBuffer header = ByteBuffer.wrap(framed);
+        int firstBlock = HEADER_SIZE + header.getInt(BlockFramedFile.MAGIC.length + 2) * BLOCK_ENTRY_SIZE;
+        int firstRawLength = header.getInt(HEADER_SIZE + 1);
+        Arrays.fill(framed, firstBlock, firstBlock + 64, (byte) 0xFF);
+
+        assertThrows(IOException.class, () -> BlockFramedFile.decompress(framed));
+        byte[] salvaged = BlockFramedFile.salvage(framed);
+        assertEquals(data.length, salvaged.length);
+        assertArrayEquals(new byte[firstRawLength], Arrays.copyOf(salvaged, firstRawLength));
+        assertArrayEquals(Arrays.copyOfRange(data, firstRawLength, data.length), Arrays.copyOfRange(salvaged, firstRawLength, data.length));
+    }
+}
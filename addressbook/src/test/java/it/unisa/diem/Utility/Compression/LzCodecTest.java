@@ -0,0 +1,62 @@
+package it.unisa.diem.Utility.Compression;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class LzCodecTest {
+    private final LzCodec codec = new LzCodec();
+
+    private byte[] roundTrip(byte[] data, int offset, int length) throws IOException {
+        byte[] compressed = codec.compress(data, offset, length);
+        byte[] out = new byte[length + 3];
+        codec.decompress(compressed, 0, compressed.length, out, 3, length);
+        assertArrayEquals(Arrays.copyOfRange(data, offset, offset + length), Arrays.copyOfRange(out, 3, out.length));
+        return compressed;
+    }
+
+    private static byte[] records(int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++)
+            text.append("Rossi Mario").append(i % 50).append(" mario").append(i).append("@unisa.it 333").append(1000000 + i * 37).append('\n');
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testRepetitiveDataIsCompressed() throws IOException {
+        byte[] data = records(2000);
+        assertTrue(roundTrip(data, 0, data.length).length < data.length / 3);
+        // Overlapping matches: a run of one byte refers to itself
+        byte[] run = new byte[5000];
+        Arrays.fill(run, (byte) 'a');
+        assertTrue(roundTrip(run, 0, run.length).length < 100);
+    }
+
+    @Test
+    public void testAnyDataRoundTrips() throws IOException {
+        Random random = new Random(8);
+        for (int size : new int[] { 0, 1, 3, 4, 5, 17, 1000, 70000, 200000 }) {
+            byte[] data = new byte[size + 10];
+            random.nextBytes(data);
+            // Random bytes with repeated pieces, some farther than the longest distance
+            for (int i = 0; i + 300 < size; i += 1000 + random.nextInt(90000))
+                System.arraycopy(data, i, data, i + 100 + random.nextInt(200), 100);
+            roundTrip(data, 5, size);
+        }
+    }
+
+    @Test
+    public void testDamagedBlockIsRejected() {
+        byte[] data = records(200);
+        byte[] compressed = codec.compress(data, 0, data.length);
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+        assertThrows(IOException.class, () -> codec.decompress(truncated, 0, truncated.length, new byte[data.length], 0, data.length));
+    }
+}
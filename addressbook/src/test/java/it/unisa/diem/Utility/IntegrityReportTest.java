@@ -0,0 +1,163 @@
+package it.unisa.diem.Utility;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.unisa.diem.Model.AddressBook;
+import it.unisa.diem.Model.Contact;
+import it.unisa.diem.Model.RecentlyDeleted;
+import it.unisa.diem.Utility.Compression.BlockCodec;
+
+public class IntegrityReportTest {
+    private TreeSet<Contact> contacts;
+    private RecentlyDeleted trash;
+    private byte[] file;
+    private int[][] segments;
+    private int offsetsPosition;
+    private int trashPosition;
+    private int segmentsPosition;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        contacts = new TreeSet<>();
+        for (int i = 1; i <= 1000; i++)
+            contacts.add(new Contact(i, "Name" + i, "Surname" + (i % 97), new String[] { "name" + i + "@unisa.it", "", "" }, new String[] { "", "", "" }, new String[0], ""));
+        trash = new RecentlyDeleted();
+        trash.put(new Contact(1001, "Elena", "Verdi", new String[] { "", "", "" }, new String[] { "", "", "" }, new String[0], ""), LocalDate.now());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AddressBookFormat.write(out, 1001, contacts, trash);
+        file = out.toByteArray();
+
+        ByteBuffer buffer = ByteBuffer.wrap(file);
+        int trailer = file.length - AddressBookFormat.TRAILER_SIZE;
+        offsetsPosition = (int) buffer.getLong(trailer);
+        trashPosition = (int) buffer.getLong(trailer + 8);
+        segmentsPosition = (int) buffer.getLong(trailer + 16);
+        buffer.position(segmentsPosition + 12);
+        segments = new int[buffer.getInt()][3];
+        for (int[] segment : segments)
+            for (int i = 0; i < segment.length; i++)
+                segment[i] = buffer.getInt();
+    }
+
+    private byte[] damaged(int position) {
+        byte[] copy = file.clone();
+        copy[position] ^= 0x5A;
+        return copy;
+    }
+
+    private static Set<Integer> ids(AddressBook book) {
+        Set<Integer> ids = new HashSet<>();
+        for (Contact c : book.contacts())
+            ids.add(c.getId());
+        return ids;
+    }
+
+    @Test
+    public void testIntactFile() throws IOException {
+        assertTrue(segments.length > 2);
+        IntegrityReport report = new AddressBookReader(ByteBuffer.wrap(file)).verify();
+        assertTrue(report.isChecked());
+        assertTrue(report.isIntact());
+        assertEquals(0, report.getLostContacts());
+        assertTrue(report.getDamaged().isEmpty());
+    }
+
+    @Test
+    public void testDamagedSegmentLosesOnlyItsContacts() throws IOException {
+        int first = segments[1][1];
+        int end = segments[2][1];
+        AddressBookReader reader = new AddressBookReader(ByteBuffer.wrap(damaged((first + end) / 2)));
+        IntegrityReport report = reader.verify();
+        assertFalse(report.isIntact());
+        assertTrue(report.isSegmentDamaged(1));
+        assertFalse(report.isSegmentDamaged(0));
+        assertFalse(report.isSegmentDamaged(2));
+        int lost = segments[2][0] - segments[1][0];
+        assertEquals(lost, report.getLostContacts());
+        assertEquals(1, report.getDamaged().size());
+
+        AddressBook recovered = reader.recover(ForkJoinPool.commonPool(), report);
+        assertEquals(contacts.size() - lost, recovered.contacts().size());
+        int position = 0;
+        Set<Integer> ids = ids(recovered);
+        for (Contact c : contacts) {
+            boolean inDamagedSegment = position >= segments[1][0] && position < segments[2][0];
+            assertEquals(!inDamagedSegment, ids.contains(c.getId()), c.getFullNameValue());
+            position++;
+        }
+        assertEquals(1, recovered.trashCan().contacts().size());
+    }
+
+    @Test
+    public void testDamagedTrashCanIsReplacedByAnEmptyOne() throws IOException {
+        AddressBookReader reader = new AddressBookReader(ByteBuffer.wrap(damaged(trashPosition + 2)));
+        IntegrityReport report = reader.verify();
+        assertTrue(report.isTrashDamaged());
+        assertEquals(0, report.getLostContacts());
+        AddressBook recovered = reader.recover(ForkJoinPool.commonPool(), report);
+        assertEquals(contacts.size(), recovered.contacts().size());
+        assertTrue(recovered.trashCan().contacts().isEmpty());
+    }
+
+    @Test
+    public void testDamagedOffsetsTableIsRebuilt() throws IOException {
+        AddressBookReader reader = new AddressBookReader(ByteBuffer.wrap(damaged(offsetsPosition + 4 * 500 + 1)));
+        IntegrityReport report = reader.verify();
+        assertTrue(report.isOffsetsDamaged());
+        AddressBook recovered = reader.recover(ForkJoinPool.commonPool(), report);
+        Set<Integer> ids = ids(recovered);
+        for (Contact c : contacts)
+            assertTrue(ids.contains(c.getId()));
+        for (Contact c : recovered.contacts())
+            assertTrue(c.getNameValue().startsWith("Name") && c.getEmailAtIndex(0).equals(c.getNameValue().toLowerCase() + "@unisa.it"));
+    }
+
+    @Test
+    public void testDamagedHeaderOrSegmentTableIsRejected() {
+        assertThrows(StreamCorruptedException.class, () -> new AddressBookReader(ByteBuffer.wrap(damaged(AddressBookFormat.MAGIC.length + 3))));
+        assertThrows(StreamCorruptedException.class, () -> new AddressBookReader(ByteBuffer.wrap(damaged(segmentsPosition + 20))));
+        assertThrows(StreamCorruptedException.class, () -> new AddressBookReader(ByteBuffer.wrap(damaged(file.length - 10))));
+    }
+
+    @Test
+    public void testDamagedFileIsRecoveredByTheFileManager(@TempDir Path dir) throws IOException {
+        String path = dir.resolve("book").toString();
+        FileManager.exportAddressBook(path, new AddressBook(contacts, trash, 1001));
+        BlockCodec codec = FileManager.getCompressionCodec();
+        try {
+            // Uncompressed, so that a byte of a segment can be damaged in place
+            FileManager.setCompressionCodec(null);
+            FileManager.exportContacts(path, new AddressBook(contacts, new RecentlyDeleted(), 1001));
+            byte[] bytes = Files.readAllBytes(Paths.get(path));
+            bytes[(segments[0][1] + segments[1][1]) / 2] ^= 0x5A;
+            Files.write(Paths.get(path), bytes);
+        } finally {
+            FileManager.setCompressionCodec(codec);
+        }
+        assertThrows(StreamCorruptedException.class, () -> FileManager.importAddressBook(path));
+        assertFalse(FileManager.verifyAddressBook(path).isIntact());
+        AddressBook recovered = FileManager.recoverAddressBook(path);
+        assertEquals(contacts.size() - (segments[1][0] - segments[0][0]), recovered.contacts().size());
+        assertTrue(Files.exists(Paths.get(FileManager.getDamagedPath(path))));
+    }
+}
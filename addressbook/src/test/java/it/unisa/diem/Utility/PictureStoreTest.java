@@ -0,0 +1,105 @@
+package it.unisa.diem.Utility;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PictureStoreTest {
+    private final Random random = new Random();
+    private final List<String> stored = new ArrayList<>();
+
+    /**
+     * Stores a picture no other test has stored, so that the counts of the store start from 0.
+     */
+    private String storeNew(byte[] data) throws IOException {
+        random.nextBytes(data);
+        String path = PictureStore.store(data, "png");
+        stored.add(path);
+        return path;
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        // The store is shared with the application: only the pictures of the test are removed
+        for (String path : stored) {
+            while (PictureStore.getReferenceCount(path) > 0)
+                PictureStore.release(path);
+            Files.deleteIfExists(Paths.get(path));
+        }
+    }
+
+    @Test
+    public void testSameContentIsStoredOnce(@TempDir Path dir) throws IOException {
+        byte[] data = new byte[4096];
+        long storedBytes = PictureStore.getStoredBytes();
+        long deduplicatedBytes = PictureStore.getDeduplicatedBytes();
+        String path = storeNew(data);
+        assertTrue(PictureStore.isStored(path));
+        assertEquals(path, PictureStore.store(data.clone(), "png"));
+        Path copy = dir.resolve("copy.png");
+        Files.write(copy, data);
+        assertEquals(path, PictureStore.store(copy));
+        assertEquals(storedBytes + data.length, PictureStore.getStoredBytes());
+        assertEquals(deduplicatedBytes + 2 * data.length, PictureStore.getDeduplicatedBytes());
+
+        data[0] ^= 1;
+        String changed = PictureStore.store(data, "png");
+        stored.add(changed);
+        assertNotEquals(path, changed);
+    }
+
+    @Test
+    public void testReferencesAreCounted() throws IOException {
+        String path = storeNew(new byte[100]);
+        assertEquals(0, PictureStore.getReferenceCount(path));
+        PictureStore.acquire(path);
+        PictureStore.acquire(path);
+        assertEquals(2, PictureStore.getReferenceCount(path));
+        PictureStore.release(path);
+        assertEquals(1, PictureStore.getReferenceCount(path));
+        PictureStore.release(path);
+        PictureStore.release(path);
+        assertEquals(0, PictureStore.getReferenceCount(path));
+
+        // Pictures outside the store are never counted
+        String outside = "file:/pictures/1.png";
+        assertFalse(PictureStore.isStored(outside));
+        PictureStore.acquire(outside);
+        assertEquals(0, PictureStore.getReferenceCount(outside));
+    }
+
+    @Test
+    public void testOnlyFilesUnreferencedForTheGracePeriodAreSwept() throws IOException {
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 2 * PictureStore.GRACE_PERIOD_MILLIS);
+        String unreferenced = storeNew(new byte[100]);
+        String referenced = storeNew(new byte[100]);
+        String released = storeNew(new byte[100]);
+        PictureStore.acquire(referenced);
+        PictureStore.acquire(released);
+        for (String path : new String[] { unreferenced, referenced, released })
+            Files.setLastModifiedTime(Paths.get(path), old);
+        // The grace period of a picture starts again when its last reference is released
+        PictureStore.release(released);
+
+        long swept = PictureStore.getSweptFiles();
+        assertTrue(PictureStore.sweep() >= 1);
+        assertTrue(PictureStore.getSweptFiles() > swept);
+        assertFalse(Files.exists(Paths.get(unreferenced)));
+        assertTrue(Files.exists(Paths.get(referenced)));
+        assertTrue(Files.exists(Paths.get(released)));
+    }
+}
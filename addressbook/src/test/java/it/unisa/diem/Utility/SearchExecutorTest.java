@@ -0,0 +1,95 @@
+package it.unisa.diem.Utility;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import it.unisa.diem.Model.AddressBook;
+import it.unisa.diem.Model.Contact;
+import it.unisa.diem.Model.SearchSession;
+
+public class SearchExecutorTest {
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private SearchSession session;
+    private final BlockingQueue<List<String>> shown = new LinkedBlockingQueue<>();
+
+    @BeforeEach
+    public void setUp() {
+        AddressBook book = new AddressBook();
+        book.add(new Contact("Mario", "Rossi"));
+        book.add(new Contact("Maria", "Bianchi"));
+        book.add(new Contact("Luigi", "Verdi"));
+        session = new SearchSession(book);
+    }
+
+    private void show(List<Contact> matches) {
+        List<String> names = new ArrayList<>();
+        for (Contact c : matches)
+            names.add(c.getNameValue());
+        shown.add(names);
+    }
+
+    @Test
+    public void testKeystrokesAreDebounced() throws InterruptedException {
+        // Results are published on the thread of the search
+        SearchExecutor searches = new SearchExecutor(session, Runnable::run);
+        searches.submit("m", null, this::show);
+        searches.submit("ma", null, this::show);
+        searches.submit("mari", null, this::show);
+        searches.submit("mario", null, this::show);
+        List<String> names = shown.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(names);
+        assertEquals(1, names.size());
+        assertEquals("Mario", names.get(0));
+        // The queries replaced before their search started are never run
+        assertNull(shown.poll(3 * SearchExecutor.DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(3, searches.getDebouncedCount());
+        assertEquals(1, searches.getPublishedCount());
+        assertEquals(0, searches.getSupersededCount());
+    }
+
+    @Test
+    public void testResultsOfSupersededSearchesAreNotShown() throws InterruptedException {
+        // Results wait for the test to publish them, as they wait for the thread of the user interface
+        BlockingQueue<Runnable> publications = new LinkedBlockingQueue<>();
+        SearchExecutor searches = new SearchExecutor(session, publications::add);
+        searches.submit("mario", null, this::show);
+        Runnable first = publications.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(first);
+        searches.submit("luigi", null, this::show);
+        first.run();
+        assertNull(shown.poll());
+        assertEquals(1, searches.getSupersededCount());
+        assertEquals(0, searches.getDebouncedCount());
+
+        Runnable second = publications.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(second);
+        second.run();
+        List<String> names = shown.poll();
+        assertEquals(1, names.size());
+        assertEquals("Luigi", names.get(0));
+        assertEquals(1, searches.getPublishedCount());
+    }
+
+    @Test
+    public void testCancelledQueriesAreNotShown() throws InterruptedException {
+        SearchExecutor searches = new SearchExecutor(session, Runnable::run);
+        searches.submit("mario", null, this::show);
+        searches.cancel();
+        assertNull(shown.poll(3 * SearchExecutor.DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(1, searches.getDebouncedCount());
+        assertEquals(0, searches.getPublishedCount());
+        assertThrows(IllegalArgumentException.class, () -> new SearchExecutor(session, null));
+    }
+}
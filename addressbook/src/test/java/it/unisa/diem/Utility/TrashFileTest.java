@@ -0,0 +1,113 @@
+package it.unisa.diem.Utility;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import it.unisa.diem.Model.AddressBook;
+import it.unisa.diem.Model.Contact;
+import it.unisa.diem.Model.RecentlyDeleted;
+
+public class TrashFileTest {
+    @TempDir
+    Path dir;
+
+    private String bookPath;
+    private Path trashPath;
+
+    private static Contact contact(int id, String name) {
+        return new Contact(id, name, "Rossi", new String[] {name.toLowerCase() + "@example.com", "", ""}, new String[] {"3331234567", "", ""}, new String[0], null);
+    }
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        bookPath = dir.resolve("book.obj").toString();
+        trashPath = Paths.get(FileManager.getTrashPath(bookPath));
+        TreeSet<Contact> contacts = new TreeSet<>();
+        for (int i = 1; i <= 20; i++)
+            contacts.add(contact(i, "Name" + i));
+        RecentlyDeleted trash = new RecentlyDeleted();
+        trash.put(contact(21, "Elena"), LocalDate.of(2024, 3, 1));
+        trash.put(contact(22, "Fabio"), LocalDate.of(2024, 3, 2));
+        FileManager.exportAddressBook(bookPath, new AddressBook(contacts, trash, 22));
+    }
+
+    @Test
+    public void testTrashIsReadWhenFirstNeeded() throws IOException {
+        AddressBook book = FileManager.importAddressBook(bookPath);
+        assertFalse(book.isTrashLoaded());
+        assertEquals(20, book.contacts().size());
+        assertNotNull(book.getById(5));
+        assertFalse(book.isTrashLoaded());
+
+        // Looking up a deleted contact reads the trash can
+        Contact elena = book.getById(21);
+        assertTrue(book.isTrashLoaded());
+        assertEquals("Elena", elena.getNameValue());
+        assertEquals(2, book.trashCan().contacts().size());
+        assertEquals(LocalDate.of(2024, 3, 1), book.trashCan().getDeletionDate(elena));
+    }
+
+    @Test
+    public void testLoaderIsCalledOnce() {
+        AddressBook book = new AddressBook();
+        RecentlyDeleted trash = new RecentlyDeleted();
+        trash.put(contact(3, "Elena"), LocalDate.of(2024, 3, 1));
+        AtomicInteger calls = new AtomicInteger();
+        book.setTrashLoader(() -> {
+            calls.incrementAndGet();
+            return trash;
+        });
+        assertEquals(0, calls.get());
+        assertSame(trash, book.trashCan());
+        assertSame(trash, book.trashCan());
+        assertEquals(1, calls.get());
+        assertEquals(3, book.getLastContactId());
+    }
+
+    @Test
+    public void testSavesOfTheListNeverRewriteTheTrash() throws IOException {
+        byte[] trashBytes = Files.readAllBytes(trashPath);
+        FileTime trashModified = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(trashPath, trashModified);
+
+        AddressBook book = AddressBook.readFromFile(bookPath);
+        // Enough records for the journal to be compacted into a snapshot
+        for (int i = 0; i < 2000; i++)
+            book.add(new Contact("Added" + i, "Verdi"));
+        book.writeToFile(bookPath);
+        assertTrue(BackgroundSaver.awaitSaved(5000));
+        // The snapshot is scheduled by the save
+        assertTrue(BackgroundSaver.awaitSaved(5000));
+
+        BackgroundSaver saver = book.getSaver();
+        assertTrue(saver.getSnapshotCount() > 0);
+        assertTrue(saver.getContactsWriteCount() > 0);
+        assertEquals(0, saver.getTrashWriteCount());
+        assertFalse(book.isTrashLoaded());
+        assertArrayEquals(trashBytes, Files.readAllBytes(trashPath));
+        assertEquals(trashModified, Files.getLastModifiedTime(trashPath));
+
+        AddressBook loaded = AddressBook.readFromFile(bookPath);
+        assertEquals(2020, loaded.contacts().size());
+        assertFalse(loaded.isTrashLoaded());
+        assertEquals(2, loaded.trashCan().contacts().size());
+        assertEquals("Fabio", loaded.getById(22).getNameValue());
+    }
+}